@@ -19,6 +19,9 @@
 */
 package org.unitime.commons.hibernate.stats;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.hibernate.SessionFactory;
 import org.hibernate.stat.CacheRegionStatistics;
 import org.hibernate.stat.CollectionStatistics;
@@ -26,11 +29,13 @@ import org.hibernate.stat.EntityStatistics;
 import org.hibernate.stat.QueryStatistics;
 import org.hibernate.stat.Statistics;
 import org.unitime.commons.Debug;
+import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.commons.web.htmlgen.Table;
 import org.unitime.commons.web.htmlgen.TableCell;
 import org.unitime.commons.web.htmlgen.TableHeaderCell;
 import org.unitime.commons.web.htmlgen.TableRow;
 import org.unitime.timetable.model.dao._RootDAO;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 
 /**
@@ -39,6 +44,43 @@ import org.unitime.timetable.model.dao._RootDAO;
  */
 public class StatsProvider {
     
+    /**
+     * Register Hibernate statistics (when enabled) with the metrics registry
+     * @param registry metrics registry
+     */
+    public static void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("unitime_hibernate_statistics", "Hibernate statistics (cumulative, only available when Hibernate statistics are enabled)", "statistic", new MetricsRegistry.LabeledGauge() {
+            @Override
+            public Map<String, ? extends Number> getValues() {
+                if (!HibernateUtil.isConfigured()) return null;
+                Statistics stats = HibernateUtil.getHibernateContext().getSessionFactory().getStatistics();
+                if (!stats.isStatisticsEnabled()) return null;
+                Map<String, Long> ret = new HashMap<String, Long>();
+                ret.put("sessions_opened", stats.getSessionOpenCount());
+                ret.put("transactions", stats.getTransactionCount());
+                ret.put("connections", stats.getConnectCount());
+                ret.put("flushes", stats.getFlushCount());
+                ret.put("statements_prepared", stats.getPrepareStatementCount());
+                ret.put("queries_executed", stats.getQueryExecutionCount());
+                ret.put("query_max_time_ms", stats.getQueryExecutionMaxTime());
+                ret.put("entities_loaded", stats.getEntityLoadCount());
+                ret.put("entities_fetched", stats.getEntityFetchCount());
+                ret.put("entities_inserted", stats.getEntityInsertCount());
+                ret.put("entities_updated", stats.getEntityUpdateCount());
+                ret.put("entities_deleted", stats.getEntityDeleteCount());
+                ret.put("collections_loaded", stats.getCollectionLoadCount());
+                ret.put("collections_fetched", stats.getCollectionFetchCount());
+                ret.put("second_level_cache_hits", stats.getSecondLevelCacheHitCount());
+                ret.put("second_level_cache_misses", stats.getSecondLevelCacheMissCount());
+                ret.put("second_level_cache_puts", stats.getSecondLevelCachePutCount());
+                ret.put("query_cache_hits", stats.getQueryCacheHitCount());
+                ret.put("query_cache_misses", stats.getQueryCacheMissCount());
+                ret.put("optimistic_failures", stats.getOptimisticFailureCount());
+                return ret;
+            }
+        });
+    }
+    
     public static String getStatsHtml(boolean summaryOnly) {
         return new StatsProvider().getStatsHtml(new _RootDAO().getSession().getSessionFactory(), summaryOnly);
     }
@@ -4142,6 +4142,48 @@ public interface CourseMessages extends Messages {
 	@DefaultMessage("Hide Details")
 	String actionHideDetails();
 	
+	@DefaultMessage("Latency")
+	String sectMetricsLatency();
+	
+	@DefaultMessage("Counters & Gauges")
+	String sectMetricsValues();
+	
+	@DefaultMessage("Refresh")
+	String actionRefreshMetrics();
+	
+	@DefaultMessage("Reset")
+	String actionResetMetrics();
+	
+	@DefaultMessage("Metric")
+	String columnMetricName();
+	
+	@DefaultMessage("Label")
+	String columnMetricLabel();
+	
+	@DefaultMessage("Count")
+	String columnMetricCount();
+	
+	@DefaultMessage("Mean [ms]")
+	String columnMetricMean();
+	
+	@DefaultMessage("50% [ms]")
+	String columnMetricP50();
+	
+	@DefaultMessage("90% [ms]")
+	String columnMetricP90();
+	
+	@DefaultMessage("99% [ms]")
+	String columnMetricP99();
+	
+	@DefaultMessage("Max [ms]")
+	String columnMetricMax();
+	
+	@DefaultMessage("Value")
+	String columnMetricValue();
+	
+	@DefaultMessage("No metrics recorded yet.")
+	String infoNoMetrics();
+	
 	@DefaultMessage("Name")
 	String columnDatePatternName();
 	
@@ -0,0 +1,123 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.action;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.apache.struts2.convention.annotation.Action;
+import org.apache.struts2.convention.annotation.Result;
+import org.apache.struts2.tiles.annotation.TilesDefinition;
+import org.apache.struts2.tiles.annotation.TilesPutAttribute;
+import org.unitime.commons.web.WebTable;
+import org.unitime.localization.impl.Localization;
+import org.unitime.localization.messages.CourseMessages;
+import org.unitime.timetable.form.BlankForm;
+import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.util.metrics.LatencyHistogram;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/** 
+ *  @author Tomas Muller
+ */
+@Action(value = "performanceMetrics", results = {
+		@Result(name = "show", type = "tiles", location = "performanceMetrics.tiles")
+	})
+@TilesDefinition(name = "performanceMetrics.tiles", extend = "baseLayout", putAttributes =  {
+		@TilesPutAttribute(name = "title", value = "Performance Metrics"),
+		@TilesPutAttribute(name = "body", value = "/admin/performanceMetrics.jsp")
+	})
+public class PerformanceMetricsAction extends UniTimeAction<BlankForm>{
+	private static final long serialVersionUID = -3470861962526466046L;
+	protected static final CourseMessages MSG = Localization.create(CourseMessages.class);
+	private static final DecimalFormat sDF = new DecimalFormat("#,##0.0");
+	
+	@Override
+	public String execute() {
+		sessionContext.checkPermission(Right.PerformanceMetrics);
+		if (MSG.actionResetMetrics().equals(op)) {
+			MetricsRegistry.getInstance().reset();
+		}
+		WebTable.setOrder(sessionContext, "performanceMetrics.ord", request.getParameter("ord"), 1);
+		return "show";
+	}
+	
+	protected static String help(String name) {
+		String help = MetricsRegistry.getInstance().getHelp(name);
+		return help == null ? name : "<span title='" + StringEscapeUtils.escapeHtml4(help) + "'>" + name + "</span>";
+	}
+	
+	protected static String ms(long micros) {
+		return sDF.format(micros / 1000.0);
+	}
+	
+	public String getLatency() {
+		WebTable table = new WebTable(8, MSG.sectMetricsLatency(), "performanceMetrics.action?ord=%%",
+				new String[] { MSG.columnMetricName(), MSG.columnMetricLabel(), MSG.columnMetricCount(), MSG.columnMetricMean(),
+						MSG.columnMetricP50(), MSG.columnMetricP90(), MSG.columnMetricP99(), MSG.columnMetricMax() },
+				new String[] { "left", "left", "right", "right", "right", "right", "right", "right" },
+				new boolean[] { true, true, false, false, false, false, false, false });
+		int lines = 0;
+		for (Map.Entry<String, LatencyHistogram> e: MetricsRegistry.getInstance().getHistograms().entrySet()) {
+			LatencyHistogram h = e.getValue();
+			if (h.getCount() == 0) continue;
+			int idx = e.getKey().indexOf(' ');
+			String name = (idx < 0 ? e.getKey() : e.getKey().substring(0, idx));
+			String label = (idx < 0 ? "" : e.getKey().substring(idx + 1));
+			long p50 = h.getValueAtPercentile(50), p90 = h.getValueAtPercentile(90), p99 = h.getValueAtPercentile(99);
+			table.addLine(null, new String[] {
+					help(name),
+					StringEscapeUtils.escapeHtml4(label),
+					String.valueOf(h.getCount()),
+					sDF.format(h.getMean() / 1000.0),
+					ms(p50), ms(p90), ms(p99), ms(h.getMax())
+			}, new Comparable[] {
+					name, label, h.getCount(), h.getMean(), p50, p90, p99, h.getMax()
+			});
+			lines ++;
+		}
+		if (lines == 0) return null;
+		return table.printTable(WebTable.getOrder(sessionContext, "performanceMetrics.ord"));
+	}
+	
+	public String getValues() {
+		WebTable table = new WebTable(3, MSG.sectMetricsValues(), null,
+				new String[] { MSG.columnMetricName(), MSG.columnMetricLabel(), MSG.columnMetricValue() },
+				new String[] { "left", "left", "right" },
+				new boolean[] { true, true, false });
+		int lines = 0;
+		for (Map.Entry<String, Number> e: MetricsRegistry.getInstance().getValues().entrySet()) {
+			int idx = e.getKey().indexOf(' ');
+			String name = (idx < 0 ? e.getKey() : e.getKey().substring(0, idx));
+			String label = (idx < 0 ? "" : e.getKey().substring(idx + 1));
+			table.addLine(null, new String[] {
+					help(name),
+					StringEscapeUtils.escapeHtml4(label),
+					e.getValue().toString()
+			}, new Comparable[] {
+					name, label, e.getValue().doubleValue()
+			});
+			lines ++;
+		}
+		if (lines == 0) return null;
+		return table.printTable();
+	}
+}
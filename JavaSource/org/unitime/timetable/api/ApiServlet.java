@@ -36,6 +36,7 @@ import org.unitime.timetable.gwt.shared.PageAccessException;
 import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.context.AnonymousUserContext;
 import org.unitime.timetable.security.context.HttpSessionContext;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 /**
  * @author Tomas Muller
@@ -78,6 +79,30 @@ public class ApiServlet extends HttpServlet {
 		}
 	}
 
+	@Override
+	protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		long t0 = System.nanoTime();
+		try {
+			super.service(request, response);
+		} finally {
+			recordMetrics(request, response, t0);
+		}
+	}
+	
+	protected void recordMetrics(HttpServletRequest request, HttpServletResponse response, long t0) {
+		try {
+			String reference = getReference(request);
+			// only record known services to keep the number of distinct labels bounded
+			if (!WebApplicationContextUtils.getWebApplicationContext(getServletContext()).containsBean(reference)) return;
+			String service = request.getMethod() + " " + reference;
+			MetricsRegistry.getInstance().histogram("unitime_api_request_seconds", "REST API request execution time", "service", service).recordSince(t0);
+			if (response.getStatus() >= 400)
+				MetricsRegistry.getInstance().counter("unitime_api_errors_total", "REST API requests that have failed", "service", service).increment();
+		} catch (Throwable t) {
+			sLog.warn("Failed to record request metrics: " + t.getMessage(), t);
+		}
+	}
+
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		try {
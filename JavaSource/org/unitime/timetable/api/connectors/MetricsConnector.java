@@ -0,0 +1,64 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.api.connectors;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Service;
+import org.unitime.timetable.api.ApiConnector;
+import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/**
+ * Performance metrics (see {@link MetricsRegistry}) in the Prometheus text exposition format.
+ * 
+ * @author Tomas Muller
+ */
+@Service("/api/metrics")
+public class MetricsConnector extends ApiConnector {
+	
+	@Override
+	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		authenticateWithTokenIfNeeded(request, response);
+		try {
+			sessionContext.checkPermissionAnyAuthority(Right.PerformanceMetrics);
+			
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentType("text/plain; version=0.0.4");
+			response.setCharacterEncoding("UTF-8");
+			response.setHeader("Cache-Control", "no-cache");
+			
+			PrintWriter out = response.getWriter();
+			MetricsRegistry.getInstance().writePrometheus(out);
+			out.flush();
+		} finally {
+			revokeTokenAuthenticationIfNeeded(request, response);
+		}
+	}
+	
+	@Override
+	protected String getName() {
+		return "metrics";
+	}
+}
@@ -125,6 +125,16 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 	}
 
 	public void loadXml(Element rootElement) throws Exception {
+		loadXml(rootElement, rootElement.elementIterator());
+	}
+	
+	/**
+	 * Streaming import: the offerings are imported as they are read, each offering is committed once it is loaded.
+	 * When the input cannot be read till the end (e.g., the XML is not well formed further down), the offerings read
+	 * before the error remain imported, but the unmatched offerings, courses, and classes are not deleted.
+	 */
+	@Override
+	public void loadXml(Element rootElement, Iterator<Element> elements) throws Exception {
 		initializeTrimLeadingZeros();
 		
 		try {
@@ -147,7 +157,7 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 
 	        initializeLoad(rootElement, rootElementName);
 			preLoadAction();
-	        loadOfferings(rootElement);
+	        loadOfferings(elements);
 	        
 	        if (!incremental) {
 		        deleteUnmatchedInstructionalOfferings();
@@ -201,9 +211,17 @@ public abstract class BaseCourseOfferingImport extends EventRelatedImports {
 	// If a post load action needs to take place before the data is loaded override this method
 	protected abstract void postLoadAction();
 
-	protected void loadOfferings(Element rootElement) throws Exception{    
-			for ( Iterator<?> it = rootElement.elementIterator(); it.hasNext(); ) {
-	    		Element element = (Element) it.next();
+	protected void loadOfferings(Iterator<Element> elements) throws Exception{    
+			int count = 0;
+			while (true) {
+				Element element = null;
+				try {
+					if (!elements.hasNext()) break;
+					element = elements.next();
+				} catch (RuntimeException e) {
+					throw new Exception("Failed to read the element after " + count + " elements (the offerings read so far have been imported, unmatched data was not deleted): " + e.getMessage(), e);
+				}
+				count ++;
 	    		try {
 	            elementOffering(element);	             
 	            flush(true);
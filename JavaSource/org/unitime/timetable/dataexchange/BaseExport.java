@@ -21,14 +21,15 @@ package org.unitime.timetable.dataexchange;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
-import org.dom4j.io.OutputFormat;
-import org.dom4j.io.XMLWriter;
+import org.dom4j.Element;
 import org.unitime.timetable.model.Session;
 
 /**
@@ -39,6 +40,7 @@ import org.unitime.timetable.model.Session;
 
 public abstract class BaseExport extends DataExchangeHelper {
     protected static Log sLog = LogFactory.getLog(BaseExport.class);
+    private XmlElementWriter iWriter = null;
     
     public BaseExport() {
         super();
@@ -46,15 +48,15 @@ public abstract class BaseExport extends DataExchangeHelper {
     
     public void saveXml(String fileName, Session session, Properties parameters) throws Exception {
         debug("Saving "+fileName);
-        Document doc = saveXml(session, parameters);
-        FileOutputStream fos = null;
+        OutputStream out = null;
         try {
-            fos = new FileOutputStream(fileName);
-            (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(doc);
-            fos.flush();fos.close();fos=null;
+            out = new FileOutputStream(fileName);
+            if (fileName.endsWith(".gz")) out = new GZIPOutputStream(out);
+            saveXml(out, session, parameters);
+            out.flush();out.close();out=null;
         } finally {
             try {
-                if (fos!=null) fos.close();
+                if (out!=null) out.close();
             } catch (IOException e) {
                 fatal("Unable to write file "+fileName+", reason:"+e.getMessage(),e);
                 throw e;
@@ -62,6 +64,21 @@ public abstract class BaseExport extends DataExchangeHelper {
         }
     }
     
+    /**
+     * Write the export into the given output. Exports that call {@link #flushXml(Document)} while they are
+     * creating the document get their elements written out as they go.
+     */
+    public void saveXml(OutputStream output, Session session, Properties parameters) throws Exception {
+        Document document = DocumentHelper.createDocument();
+        iWriter = new XmlElementWriter(output);
+        try {
+            saveXml(document, session, parameters);
+            iWriter.close(document);
+        } finally {
+            iWriter = null;
+        }
+    }
+    
     public Document saveXml(Session session, Properties parameters) throws Exception {
         Document document = DocumentHelper.createDocument();
         saveXml(document, session, parameters);
@@ -69,4 +86,22 @@ public abstract class BaseExport extends DataExchangeHelper {
     }    
     
     public abstract void saveXml(Document document, Session session, Properties parameters) throws Exception;
+    
+    /**
+     * When the export is being streamed, write out the elements that have been added to the root element so far
+     * (they are removed from the document). Does nothing when the whole document is being returned.
+     * The document type (if any) and the root element with its attributes must be set up before the first call.
+     */
+    protected void flushXml(Document document) throws IOException {
+        if (iWriter != null) iWriter.flush(document);
+    }
+
+    /**
+     * When the export is being streamed, write out the elements that have been added to the given section (a child
+     * of the root element) so far. See {@link XmlElementWriter#flush(Document, Element)} for details.
+     * Does nothing when the whole document is being returned.
+     */
+    protected void flushXml(Document document, Element section) throws IOException {
+        if (iWriter != null) iWriter.flush(document, section);
+    }
 }
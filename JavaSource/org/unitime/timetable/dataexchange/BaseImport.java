@@ -22,13 +22,13 @@ package org.unitime.timetable.dataexchange;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.dom4j.Document;
-import org.dom4j.DocumentException;
 import org.dom4j.Element;
-import org.dom4j.io.SAXReader;
 import org.unitime.timetable.model.TimetableManager;
 
 /**
@@ -63,15 +63,27 @@ public abstract class BaseImport extends DataExchangeHelper {
     
     public void loadXml(InputStream inputStream) throws Exception {
         try {
-            Document document = (new SAXReader()).read(inputStream);
-            loadXml(document.getRootElement());
-        } catch (DocumentException e) {
+            XmlElementStream stream = new XmlElementStream(inputStream);
+            loadXml(stream.getRootElement(), stream);
+        } catch (XMLStreamException e) {
             fatal("Unable to parse given XML, reason:"+e.getMessage(), e);
         }
     }    
     
     public abstract void loadXml(Element rootElement) throws Exception;
     
+    /**
+     * Streaming import: the root element only contains the attributes, its child elements are read from the input
+     * as the iterator is consumed. By default, all the elements are read first and {@link #loadXml(Element)} is called.
+     * Imports that process the top-level elements one by one can override this method to keep the memory footprint
+     * independent of the size of the imported file.
+     */
+    public void loadXml(Element rootElement, Iterator<Element> elements) throws Exception {
+        while (elements.hasNext())
+            rootElement.add(elements.next());
+        loadXml(rootElement);
+    }
+    
     protected String getRequiredStringAttribute(Element element, String attributeName, String elementName) throws Exception{		
 		String attributeValue = element.attributeValue(attributeName);
 		if (attributeValue == null || attributeValue.trim().length() == 0){
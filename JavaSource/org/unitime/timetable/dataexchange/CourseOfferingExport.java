@@ -138,11 +138,13 @@ public class CourseOfferingExport extends BaseExport {
                 if ("all".equals(parameters.getProperty("tmtbl.export.exam.type", "all")) || "final".equals(parameters.getProperty("tmtbl.export.exam.type", "all"))) {
                     for (Exam exam : new TreeSet<Exam>(Exam.findAllFinal(session.getUniqueId()))) {
                         exportExam(root, null, exam, session);
+                        flushXml(document);
                     }
                 }
                 if ("all".equals(parameters.getProperty("tmtbl.export.exam.type", "all")) || "midterm".equals(parameters.getProperty("tmtbl.export.exam.type", "all"))) {
                     for (Exam exam : new TreeSet<Exam>(Exam.findAllMidterm(session.getUniqueId()))) {
                          exportExam(root, null, exam, session);
+                         flushXml(document);
                     }
                 }
             } else {
@@ -212,6 +214,7 @@ public class CourseOfferingExport extends BaseExport {
                 info("Exporting "+offerings.size()+" offerings ...");
                 for (InstructionalOffering io : offerings) {
                     exportInstructionalOffering(root, io, session);
+                    flushXml(document);
                 }
             }
             
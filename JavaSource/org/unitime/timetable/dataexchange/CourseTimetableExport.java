@@ -92,6 +92,7 @@ public class CourseTimetableExport extends CourseOfferingExport {
             			}
             		}
             	}
+            	flushXml(document);
             }
             
             commitTransaction();
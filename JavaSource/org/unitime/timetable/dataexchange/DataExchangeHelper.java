@@ -19,6 +19,8 @@
 */
 package org.unitime.timetable.dataexchange;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Hashtable;
 import java.util.Properties;
 
@@ -270,12 +272,35 @@ public class DataExchangeHelper {
         imp.loadXml(document.getRootElement());
     }
     
+    /**
+     * Import the given XML input. Unlike {@link #importDocument(Document, String, Log)}, the input does not need to be parsed
+     * into a document first: imports that support it get the top-level elements one by one as they are read.
+     */
+    public static void importStream(InputStream input, String userId, Log log) throws Exception {
+        XmlElementStream stream = new XmlElementStream(input);
+        BaseImport imp = createImportBase(stream.getRootElement().getName());
+        imp.setLog(log);
+        if (userId != null)
+        	imp.setManager(TimetableManager.findByExternalId(userId));
+        imp.loadXml(stream.getRootElement(), stream);
+    }
+    
     public static Document exportDocument(String rootName, Session session, Properties parameters, Log log) throws Exception {
         BaseExport exp = createExportBase(rootName);
         exp.setLog(log);
         return exp.saveXml(session, parameters);
     }
     
+    /**
+     * Export into the given output. Unlike {@link #exportDocument(String, Session, Properties, Log)}, exports that support it
+     * write their elements out as they are created instead of building the whole document in memory first.
+     */
+    public static void exportStream(String rootName, Session session, Properties parameters, OutputStream output, Log log) throws Exception {
+        BaseExport exp = createExportBase(rootName);
+        exp.setLog(log);
+        exp.saveXml(output, session, parameters);
+    }
+    
     public interface LogWriter {
     	public void println(String message);
     }
@@ -20,8 +20,11 @@
 package org.unitime.timetable.dataexchange;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Properties;
 import java.util.TreeSet;
 
@@ -313,7 +316,7 @@ public class PointInTimeDataExport extends BaseExport {
     
     
 	@SuppressWarnings("unchecked")
-	private TreeSet<InstructionalOffering> findOfferingsWithClasses(Session acadSession) {
+	private TreeSet<InstructionalOffering> findOfferingsWithClasses(Session acadSession, SubjectArea sa) {
 		StringBuilder querySb =  new StringBuilder();
 		querySb.append("select io, cco ")
 		       .append(" from InstructionalOffering io, CourseOffering cco") 
@@ -362,16 +365,14 @@ public class PointInTimeDataExport extends BaseExport {
 		
 		
 		TreeSet<InstructionalOffering> offerings = new TreeSet<InstructionalOffering>(new InstructionalOfferingComparator(null));
-		for(SubjectArea sa : acadSession.getSubjectAreas()){
-			info("Fetching Instructional Offerings for Subject Area:  " + sa.getSubjectAreaAbbreviation());
-			for (Object[] objects : getHibSession()
-					.createQuery(querySb.toString(), Object[].class)
-					.setParameter("sessId", acadSession.getUniqueId())
-					.setParameter("saId", sa.getUniqueId())
-					.setFetchSize(1000)
-					.list()) {
-				offerings.add((InstructionalOffering) objects[0]);				
-			}
+		info("Fetching Instructional Offerings for Subject Area:  " + sa.getSubjectAreaAbbreviation());
+		for (Object[] objects : getHibSession()
+				.createQuery(querySb.toString(), Object[].class)
+				.setParameter("sessId", acadSession.getUniqueId())
+				.setParameter("saId", sa.getUniqueId())
+				.setFetchSize(1000)
+				.list()) {
+			offerings.add((InstructionalOffering) objects[0]);				
 		}
 		return(offerings);
 					
@@ -502,7 +503,7 @@ public class PointInTimeDataExport extends BaseExport {
 	
 	
 	@SuppressWarnings("unchecked")
-	private ArrayList<Object[]> findClassEvents(Session acadSession) {
+	private ArrayList<Object[]> findClassEvents(Session acadSession, SubjectArea sa) {
 		StringBuilder querySb1 =  new StringBuilder();
 		querySb1.append("select e, m, l")
 		  .append(" from ClassEvent e, Room l") 
@@ -543,26 +544,145 @@ public class PointInTimeDataExport extends BaseExport {
 		
 
 		ArrayList<Object[]> events = new ArrayList<Object[]>();
-		for(SubjectArea sa : acadSession.getSubjectAreas()){
-			info("Fetching Class Events for Subject Area:  " + sa.getSubjectAreaAbbreviation());
-			events.addAll(getHibSession()
-					.createQuery(querySb1.toString(), Object[].class)
-					.setParameter("sessId", acadSession.getUniqueId())
-					.setParameter("saId", sa.getUniqueId())
-					.setFetchSize(1000)
-					.list());
-			events.addAll(getHibSession()
-					.createQuery(querySb2.toString(), Object[].class)
-					.setParameter("sessId", acadSession.getUniqueId())
-					.setParameter("saId", sa.getUniqueId())
-					.setFetchSize(1000)
-					.list());
-			}
+		info("Fetching Class Events for Subject Area:  " + sa.getSubjectAreaAbbreviation());
+		events.addAll(getHibSession()
+				.createQuery(querySb1.toString(), Object[].class)
+				.setParameter("sessId", acadSession.getUniqueId())
+				.setParameter("saId", sa.getUniqueId())
+				.setFetchSize(1000)
+				.list());
+		events.addAll(getHibSession()
+				.createQuery(querySb2.toString(), Object[].class)
+				.setParameter("sessId", acadSession.getUniqueId())
+				.setParameter("saId", sa.getUniqueId())
+				.setFetchSize(1000)
+				.list());
 
 		return(events);
 					
 	}
 
+	private <T> List<T> findUsed(Session acadSession, String query, Class<T> type) {
+		return getHibSession()
+				.createQuery(query, type)
+				.setParameter("sessId", acadSession.getUniqueId())
+				.list();
+	}
+	
+	/**
+	 * Export the lookup sections (departments, locations, patterns, types, academic areas, etc.) from their own queries,
+	 * so that they are complete before any student or offering is exported. Only the entities that can be referenced
+	 * by the offerings and students of the session are exported.
+	 */
+	private void exportLookups(Session acadSession) {
+		info("Exporting departments and subject areas ...");
+		for (Department department : Department.findAll(acadSession.getUniqueId())) {
+			exportDepartment(department);
+		}
+		for (SubjectArea subjectArea : new TreeSet<SubjectArea>(acadSession.getSubjectAreas())) {
+			exportSubjectArea(subjectArea);
+		}
+		
+		info("Exporting departmental instructors ...");
+		for (DepartmentalInstructor instructor : findUsed(acadSession,
+				"select distinct ci.instructor from ClassInstructor ci where ci.classInstructing.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessId and ci.classInstructing.cancelled = false",
+				DepartmentalInstructor.class)) {
+			exportDepartmentalInstructor(instructor);
+		}
+		for (DepartmentalInstructor instructor : findUsed(acadSession,
+				"select distinct oc.instructor from OfferingCoordinator oc where oc.offering.session.uniqueId = :sessId and oc.offering.notOffered = false",
+				DepartmentalInstructor.class)) {
+			if (!departmentalInstructorElements.containsKey(instructor.getUniqueId()))
+				exportDepartmentalInstructor(instructor);
+		}
+		for (TeachingResponsibility responsibility : findUsed(acadSession,
+				"select distinct ci.responsibility from ClassInstructor ci where ci.classInstructing.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessId",
+				TeachingResponsibility.class)) {
+			exportTeachingResponsibility(responsibility);
+		}
+		for (TeachingResponsibility responsibility : findUsed(acadSession,
+				"select distinct oc.responsibility from OfferingCoordinator oc where oc.offering.session.uniqueId = :sessId",
+				TeachingResponsibility.class)) {
+			if (!teachingResponsibilityElements.containsKey(responsibility.getUniqueId()))
+				exportTeachingResponsibility(responsibility);
+		}
+		
+		ArrayList<Location> locations = findLocations(acadSession);
+		info("Exporting " + locations.size() + " locations ...");
+		for (Location location : locations) {
+			exportLocation(location);
+		}
+		
+		info("Exporting course and class types ...");
+		for (CourseType courseType : findUsed(acadSession,
+				"select distinct co.courseType from CourseOffering co where co.instructionalOffering.session.uniqueId = :sessId",
+				CourseType.class)) {
+			exportCourseType(courseType);
+		}
+		for (ClassDurationType classDurationType : findUsed(acadSession,
+				"select distinct c.classDurationType from InstrOfferingConfig c where c.instructionalOffering.session.uniqueId = :sessId",
+				ClassDurationType.class)) {
+			exportClassDurationType(classDurationType);
+		}
+		for (InstructionalMethod instructionalMethod : findUsed(acadSession,
+				"select distinct c.instructionalMethod from InstrOfferingConfig c where c.instructionalOffering.session.uniqueId = :sessId",
+				InstructionalMethod.class)) {
+			exportInstructionalMethod(instructionalMethod);
+		}
+		for (CourseCreditType creditType : findUsed(acadSession,
+				"select distinct c.creditType from CourseCreditUnitConfig c where c.subpartOwner.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessId",
+				CourseCreditType.class)) {
+			exportCreditType(creditType);
+		}
+		for (CourseCreditUnitType creditUnitType : findUsed(acadSession,
+				"select distinct c.creditUnitType from CourseCreditUnitConfig c where c.subpartOwner.instrOfferingConfig.instructionalOffering.session.uniqueId = :sessId",
+				CourseCreditUnitType.class)) {
+			exportCreditUnitType(creditUnitType);
+		}
+		
+		ArrayList<TimePattern> timePatterns = findTimePatterns(acadSession);
+		info("Exporting " + timePatterns.size() + " time patterns ...");
+		for (TimePattern timePattern : timePatterns) {
+			exportTimePattern(timePattern);
+		}
+		info("Default Date Pattern:  " + acadSession.getDefaultDatePatternNotNull());
+		for (DatePattern datePattern : DatePattern.findAllUsed(acadSession.getUniqueId())) {
+			exportDatePattern(datePattern);
+		}
+		if (!datePatternElements.containsKey(acadSession.getDefaultDatePatternNotNull().getUniqueId())) {
+			exportDatePattern(acadSession.getDefaultDatePatternNotNull());
+		}
+		
+		ArrayList<AcademicArea> academicAreas = findAcademicAreas(acadSession);
+		info("Exporting " + academicAreas.size() + " academic areas ...");
+		for (AcademicArea academicArea : academicAreas) {
+			exportAcademicArea(academicArea);
+			for (PosMajor major : academicArea.getPosMajors()) {
+				if (majorElements.containsKey(major.getUniqueId())) continue;
+				exportMajor(major);
+				for (PosMajorConcentration concentration : major.getConcentrations()) {
+					exportConcentration(concentration);
+				}
+			}
+			for (PosMinor minor : academicArea.getPosMinors()) {
+				if (!minorElements.containsKey(minor.getUniqueId()))
+					exportMinor(minor);
+			}
+		}
+		for (AcademicClassification academicClassification : AcademicClassification.getAcademicClassificationList(acadSession.getUniqueId())) {
+			exportAcademicClassification(academicClassification);
+		}
+		for (Degree degree : Degree.findBySession(getHibSession(), acadSession.getUniqueId())) {
+			exportDegree(degree);
+		}
+		for (Program program : Program.findBySession(getHibSession(), acadSession.getUniqueId())) {
+			exportProgram(program);
+		}
+		for (Campus campus : Campus.findBySession(getHibSession(), acadSession.getUniqueId())) {
+			exportCampus(campus);
+		}
+	}
+
     public void saveXml(Document document, Session session, Properties parameters) throws Exception {
         try {
             beginTransaction();
@@ -589,26 +709,6 @@ public class PointInTimeDataExport extends BaseExport {
                        
             document.addDocType(sRootElementName, "-//UniTime//DTD University Course Timetabling/EN", "http://www.unitime.org/interface/PointInTimeData.dtd");
             
-            info("Loading Data...");
-            TreeSet<InstructionalOffering> offerings = findOfferingsWithClasses(session);
-            info("Loaded " + offerings.size() + " Instructional Offerings");
-            ArrayList<AcademicArea> academicAreas = findAcademicAreas(session);
-            info("Loaded " + academicAreas.size() + " Academic Areas");
-            ArrayList<StudentClassEnrollment> studentClassEnrollments = findStudentClassEnrollments(session);
-            info("Loaded " + studentClassEnrollments.size() + " Student Class Enrollments");
-            ArrayList<Location> locations = findLocations(session);
-            info("Loaded " + locations.size() + " Locations");
-            ArrayList<TimePattern> timePatterns = findTimePatterns(session);
-            info("Loaded " + timePatterns.size() + " Time Patterns");
-            ArrayList<Object[]> eventMeetings = findClassEvents(session);
-            info("Loaded " + eventMeetings.size() + " Class Events");
-            info("Default Date Pattern:  " + session.getDefaultDatePatternNotNull());
-            timePatterns.size();
-            locations.size();
-            Date endTransTimestamp = new Date();
-            info("Data extract for Point in Time Data ended at:  " + endTransTimestamp.toString());
-            info("Milliseconds elapsed = " + (endTransTimestamp.getTime() - timestamp.getTime()));
-                    
             departmentsElement = root.addElement(sDepartmentsElementName);
             roomTypesElement = root.addElement(sRoomTypesElementName);
             creditTypesElement = root.addElement(sCreditTypesElementName);
@@ -616,7 +716,6 @@ public class PointInTimeDataExport extends BaseExport {
             positionTypesElement = root.addElement(sPositionTypesElementName);
             teachingResponsibilitiesElement = root.addElement(sTeachingResponsibilitiesElementName);
             locationsElement = root.addElement(sLocationsElementName);
-            studentsElement = root.addElement(sStudentsElementName);
             courseTypesElement = root.addElement(sCourseTypesElementName);
             classDurationTypesElement = root.addElement(sClassDurationTypesElementName);
             instructionalMethodsElement = root.addElement(sInstructionalMethodsElementName);
@@ -626,38 +725,58 @@ public class PointInTimeDataExport extends BaseExport {
             academicClassificationsElement = root.addElement(sAcademicClassificationsElementName);
             majorsElement = root.addElement(sMajorsElementName);
             minorsElement = root.addElement(sMinorsElementName);
-            offeringsElement = root.addElement(sOfferingsElementName);
             degreesElement = root.addElement(sDegreesElementName);
             programsElement = root.addElement(sProgramsElementName);
             campusesElement = root.addElement(sCampusesElementName);
-
             
-            info("Exporting "+offerings.size()+" offerings ...");
-            for (InstructionalOffering io : offerings) {
-            	info("Exporting offering: " + io.getControllingCourseOffering().getCourseNameWithTitle());
-                exportInstructionalOffering(offeringsElement, io, session);
-            }
-            int numMeetings = eventMeetings.size();
-            info("Exporting student class enrollments ...");
-            for(StudentClassEnrollment sce : studentClassEnrollments){
+            // lookup sections are written first, the students and the offerings are then streamed section by section
+            exportLookups(session);
+            flushXml(document);
+            
+            ArrayList<StudentClassEnrollment> studentClassEnrollments = findStudentClassEnrollments(session);
+            info("Exporting " + studentClassEnrollments.size() + " student class enrollments ...");
+            Collections.sort(studentClassEnrollments, new Comparator<StudentClassEnrollment>() {
+				@Override
+				public int compare(StudentClassEnrollment e1, StudentClassEnrollment e2) {
+					return e1.getStudent().getUniqueId().compareTo(e2.getStudent().getUniqueId());
+				}
+			});
+            studentsElement = root.addElement(sStudentsElementName);
+            for (StudentClassEnrollment sce : studentClassEnrollments) {
+            	if (!studentElements.containsKey(sce.getStudent().getUniqueId()) && studentElements.size() >= sBatchSize) {
+            		flushXml(document, studentsElement);
+            		studentElements.clear();
+            	}
             	exportStudentClassEnrollment(sce);
             }
-            info("Exporting "+  numMeetings +" class event meetings ...");
-            int count = 0;
-            for (Object[] objs : eventMeetings) {
-            	count++;
-            	ClassEvent classEvent = (ClassEvent)objs[0];
-            	Meeting meeting = (Meeting)objs[1];
-            	Location location = (Location)objs[2];
-                exportClassEvent(classEvent, meeting, location);
-                if (count % 10000 == 0){
-                	info("Exported " + count + " of " + numMeetings + " class event meetings, " + 100 * count / numMeetings + "% complete.");
-                }
+            flushXml(document, studentsElement);
+            studentElements.clear();
+            studentClassEnrollments = null;
+            
+            offeringsElement = root.addElement(sOfferingsElementName);
+            int numOfferings = 0, numMeetings = 0;
+            for (SubjectArea subjectArea : new TreeSet<SubjectArea>(session.getSubjectAreas())) {
+            	TreeSet<InstructionalOffering> offerings = findOfferingsWithClasses(session, subjectArea);
+            	for (InstructionalOffering io : offerings) {
+            		info("Exporting offering: " + io.getControllingCourseOffering().getCourseNameWithTitle());
+            		exportInstructionalOffering(offeringsElement, io, session);
+            	}
+            	for (Object[] objs : findClassEvents(session, subjectArea)) {
+            		ClassEvent classEvent = (ClassEvent)objs[0];
+            		Meeting meeting = (Meeting)objs[1];
+            		Location location = (Location)objs[2];
+            		exportClassEvent(classEvent, meeting, location);
+            		numMeetings++;
+            	}
+            	numOfferings += offerings.size();
+            	flushXml(document, offeringsElement);
+            	classElements.clear();
+            	classEventElements.clear();
             }
-            info("Export of class event meetings complete.");
+            info("Exported " + numOfferings + " offerings with " + numMeetings + " class event meetings.");
             Date endProcessingTimestamp = new Date();
             info("XML creation for Point in Time Data ended at:  " + endProcessingTimestamp.toString());
-            info("Milliseconds elapsed since data extract = " + (endProcessingTimestamp.getTime() - endTransTimestamp.getTime()));
+            info("Milliseconds elapsed = " + (endProcessingTimestamp.getTime() - timestamp.getTime()));
 
             commitTransaction();
 
@@ -1030,7 +1149,7 @@ public class PointInTimeDataExport extends BaseExport {
 
     private void exportAcadAreaMinorClassification(Element acadAreaMinorClassificationElement,
     		StudentAreaClassificationMinor acm) {
-    	if (!majorElements.containsKey(acm.getMinor().getUniqueId())){
+    	if (!minorElements.containsKey(acm.getMinor().getUniqueId())){
     		exportMinor(acm.getMinor());
     	}
     	if (!academicAreaElements.containsKey(acm.getAcademicArea().getUniqueId())){
@@ -23,6 +23,8 @@ import java.util.Properties;
 
 import org.dom4j.Document;
 import org.dom4j.Element;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.unitime.timetable.model.Class_;
 import org.unitime.timetable.model.CourseOffering;
 import org.unitime.timetable.model.Session;
@@ -45,30 +47,21 @@ public class StudentEnrollmentExport extends BaseExport {
 	        root.addAttribute("term", session.getAcademicTerm());
 	        document.addDocType("studentEnrollments", "-//UniTime//UniTime Student Enrollments DTD/EN", "http://www.unitime.org/interface/StudentEnrollment.dtd");
 	        
-	        for (Student student: getHibSession().createQuery(
+	        ScrollableResults<Student> students = getHibSession().createQuery(
 	        		"select s from Student s where s.session.uniqueId = :sessionId", Student.class)
-	        		.setParameter("sessionId", session.getUniqueId()).list()) {
-	        	if (student.getClassEnrollments().isEmpty()) continue;
-	        	Element studentEl = root.addElement("student");
-	        	studentEl.addAttribute("externalId",
-	        			student.getExternalUniqueId() == null || student.getExternalUniqueId().isEmpty() ? student.getUniqueId().toString() : student.getExternalUniqueId());
-	        	for (StudentClassEnrollment enrollment: student.getClassEnrollments()) {
-	        		Element classEl = studentEl.addElement("class");
-	        		Class_ clazz = enrollment.getClazz();
-	        		CourseOffering course = enrollment.getCourseOffering();
-	        		String extId = (course == null ? clazz.getExternalUniqueId() : clazz.getExternalId(course));
-	        		if (extId != null && !extId.isEmpty())
-	        			classEl.addAttribute("externalId", extId);
-	        		classEl.addAttribute("id", clazz.getUniqueId().toString());
-	        		if (course != null) {
-	        			if (course.getExternalUniqueId() != null && !course.getExternalUniqueId().isEmpty())
-	        				classEl.addAttribute("courseId", course.getExternalUniqueId());
-	        			classEl.addAttribute("subject", course.getSubjectAreaAbbv());
-	        			classEl.addAttribute("courseNbr", course.getCourseNbr());
+	        		.setParameter("sessionId", session.getUniqueId()).setFetchSize(sBatchSize).scroll(ScrollMode.FORWARD_ONLY);
+	        try {
+	        	int count = 0;
+	        	while (students.next()) {
+	        		exportStudent(root, students.get());
+	        		if (++count % sBatchSize == 0) {
+	        			// write out the students exported so far and release them from the hibernate session
+	        			flushXml(document);
+	        			getHibSession().clear();
 	        		}
-	        		classEl.addAttribute("type", clazz.getSchedulingSubpart().getItypeDesc().trim());
-	        		classEl.addAttribute("suffix", getClassSuffix(clazz));
 	        	}
+	        } finally {
+	        	students.close();
 	        }
 	        
             commitTransaction();
@@ -77,5 +70,28 @@ public class StudentEnrollmentExport extends BaseExport {
             rollbackTransaction();
 		}
 	}
-
+	
+	protected void exportStudent(Element root, Student student) {
+		if (student.getClassEnrollments().isEmpty()) return;
+		Element studentEl = root.addElement("student");
+		studentEl.addAttribute("externalId",
+				student.getExternalUniqueId() == null || student.getExternalUniqueId().isEmpty() ? student.getUniqueId().toString() : student.getExternalUniqueId());
+		for (StudentClassEnrollment enrollment: student.getClassEnrollments()) {
+			Element classEl = studentEl.addElement("class");
+			Class_ clazz = enrollment.getClazz();
+			CourseOffering course = enrollment.getCourseOffering();
+			String extId = (course == null ? clazz.getExternalUniqueId() : clazz.getExternalId(course));
+			if (extId != null && !extId.isEmpty())
+				classEl.addAttribute("externalId", extId);
+			classEl.addAttribute("id", clazz.getUniqueId().toString());
+			if (course != null) {
+				if (course.getExternalUniqueId() != null && !course.getExternalUniqueId().isEmpty())
+					classEl.addAttribute("courseId", course.getExternalUniqueId());
+				classEl.addAttribute("subject", course.getSubjectAreaAbbv());
+				classEl.addAttribute("courseNbr", course.getCourseNbr());
+			}
+			classEl.addAttribute("type", clazz.getSchedulingSubpart().getItypeDesc().trim());
+			classEl.addAttribute("suffix", getClassSuffix(clazz));
+		}
+	}
 }
@@ -57,6 +57,16 @@ public class StudentEnrollmentImport extends BaseImport {
 
 	@Override
 	public void loadXml(Element rootElement) throws Exception {
+		loadXml(rootElement, rootElement.elementIterator());
+	}
+
+	/**
+	 * Streaming import: the students are imported as they are read. Every {@link #sBatchSize} students, the changes are flushed
+	 * and the imported students are evicted from the hibernate session. The import runs in a single transaction, so nothing is
+	 * committed when the input cannot be read till the end.
+	 */
+	@Override
+	public void loadXml(Element rootElement, Iterator<Element> elements) throws Exception {
 		boolean trimLeadingZerosFromExternalId = ApplicationProperty.DataExchangeTrimLeadingZerosFromExternalIds.isTrue();
 
         if (!rootElement.getName().equalsIgnoreCase("studentEnrollments"))
@@ -146,8 +156,10 @@ public class StudentEnrollmentImport extends BaseImport {
 	        
 	        info("Importing enrollments...");
 	        Date ts = new Date();
-	        for (Iterator i = rootElement.elementIterator("student"); i.hasNext(); ) {
-	            Element studentElement = (Element) i.next();
+	        List<Student> batch = new ArrayList<Student>();
+	        while (elements.hasNext()) {
+	            Element studentElement = elements.next();
+	            if (!"student".equals(studentElement.getName())) continue;
 	            
 	            String externalId = studentElement.attributeValue("externalId");
 	            if (externalId == null) continue;
@@ -396,7 +408,15 @@ public class StudentEnrollmentImport extends BaseImport {
             			getHibSession().merge(cd);
             		}
             	}
-
+            	
+            	batch.add(student);
+            	if (batch.size() >= sBatchSize) {
+            		// write out the students imported so far and release them from the hibernate session
+            		getHibSession().flush();
+            		for (Student s: batch)
+            			getHibSession().evict(s);
+            		batch.clear();
+            	}
 	        }
  	        
 	        if (!incremental)
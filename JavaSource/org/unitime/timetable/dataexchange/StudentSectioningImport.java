@@ -100,6 +100,22 @@ public class StudentSectioningImport extends BaseImport {
     }
     
     public void loadXml(Element rootElement) {
+    	loadStudents(rootElement, rootElement.elementIterator());
+    }
+    
+    /**
+     * Streaming import: when the enrollment mode is given (attribute enrollments of the root element), the students are imported as they are read.
+     * Otherwise, all the students need to be read first to determine the mode.
+     */
+    @Override
+    public void loadXml(Element rootElement, Iterator<Element> studentElements) throws Exception {
+    	if (rootElement.attributeValue("enrollments") == null)
+    		super.loadXml(rootElement, studentElements);
+    	else
+    		loadStudents(rootElement, studentElements);
+    }
+    
+    protected void loadStudents(Element rootElement, Iterator<Element> studentElements) {
         try {
             beginTransaction();
             
@@ -285,8 +301,9 @@ public class StudentSectioningImport extends BaseImport {
             Set<Long> updatedStudents = new HashSet<Long>();
             List<Student> createdStudents = new ArrayList<Student>();
             
-            for (Iterator i1 = rootElement.elementIterator("student"); i1.hasNext(); ) {
-                Element studentElement = (Element) i1.next();
+            while (studentElements.hasNext()) {
+                Element studentElement = studentElements.next();
+                if (!"student".equals(studentElement.getName())) continue;
                 
 	            String externalId = studentElement.attributeValue("key");
 	            if (externalId == null) continue;
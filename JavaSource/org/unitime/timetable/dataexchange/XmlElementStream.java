@@ -0,0 +1,162 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.dataexchange;
+
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.QName;
+
+/**
+ * Streaming XML reader: the root element is read with its attributes only, its child elements are
+ * then read one by one (each as a complete dom4j sub-tree) as the iterator is being consumed.
+ * This way, only the element that is being processed needs to be kept in memory.
+ * 
+ * @author Tomas Muller
+ */
+public class XmlElementStream implements Iterator<Element> {
+	private static XMLInputFactory sFactory = null;
+	private DocumentFactory iDocumentFactory = DocumentFactory.getInstance();
+	private XMLStreamReader iReader;
+	private Document iDocument;
+	private Element iRoot;
+	private Element iNext = null;
+	private boolean iEndOfRoot = false;
+	
+	public XmlElementStream(InputStream input) throws XMLStreamException {
+		iReader = getFactory().createXMLStreamReader(input);
+		while (iReader.hasNext()) {
+			if (iReader.next() == XMLStreamConstants.START_ELEMENT) {
+				iRoot = createElement();
+				iDocument = iDocumentFactory.createDocument(iRoot);
+				return;
+			}
+		}
+		throw new XMLStreamException("No root element found.");
+	}
+	
+	protected static synchronized XMLInputFactory getFactory() {
+		if (sFactory == null) {
+			sFactory = XMLInputFactory.newInstance();
+			sFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			sFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			sFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		}
+		return sFactory;
+	}
+	
+	/**
+	 * Root element, containing the attributes but none of the child elements that have not been read yet
+	 */
+	public Element getRootElement() { return iRoot; }
+	
+	/**
+	 * Read the remaining elements into the root element
+	 * @return the whole document
+	 */
+	public Document readAll() {
+		while (hasNext())
+			iRoot.add(next());
+		return iDocument;
+	}
+	
+	protected Element createElement() {
+		Element element = iDocumentFactory.createElement(qname(iReader.getLocalName(), iReader.getPrefix(), iReader.getNamespaceURI()));
+		for (int i = 0; i < iReader.getNamespaceCount(); i++)
+			element.addNamespace(iReader.getNamespacePrefix(i) == null ? "" : iReader.getNamespacePrefix(i), iReader.getNamespaceURI(i));
+		for (int i = 0; i < iReader.getAttributeCount(); i++)
+			element.addAttribute(qname(iReader.getAttributeLocalName(i), iReader.getAttributePrefix(i), iReader.getAttributeNamespace(i)), iReader.getAttributeValue(i));
+		return element;
+	}
+	
+	protected QName qname(String name, String prefix, String uri) {
+		if (uri == null || uri.isEmpty()) return iDocumentFactory.createQName(name);
+		return iDocumentFactory.createQName(name, prefix == null ? "" : prefix, uri);
+	}
+	
+	/**
+	 * Read the element at the current position of the reader (including all its content)
+	 */
+	protected Element readElement() throws XMLStreamException {
+		Element element = createElement();
+		Element current = element;
+		while (iReader.hasNext()) {
+			switch (iReader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = createElement();
+				current.add(child);
+				current = child;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				current.addText(iReader.getText());
+				break;
+			case XMLStreamConstants.CDATA:
+				current.addCDATA(iReader.getText());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (current == element) return element;
+				current = current.getParent();
+				break;
+			}
+		}
+		throw new XMLStreamException("Unexpected end of document inside of " + element.getName() + ".");
+	}
+	
+	@Override
+	public boolean hasNext() {
+		if (iNext != null) return true;
+		if (iEndOfRoot) return false;
+		try {
+			while (iReader.hasNext()) {
+				switch (iReader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					iNext = readElement();
+					return true;
+				case XMLStreamConstants.END_ELEMENT:
+					iEndOfRoot = true;
+					iReader.close();
+					return false;
+				}
+			}
+		} catch (XMLStreamException e) {
+			throw new RuntimeException("Unable to parse given XML, reason:" + e.getMessage(), e);
+		}
+		iEndOfRoot = true;
+		return false;
+	}
+
+	@Override
+	public Element next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		Element ret = iNext;
+		iNext = null;
+		return ret;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.dataexchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.Node;
+import org.dom4j.io.OutputFormat;
+import org.dom4j.io.XMLWriter;
+import org.xml.sax.SAXException;
+
+/**
+ * Streaming XML writer: the content of the root element is written out (and removed from the document) each time
+ * {@link #flush(Document)} is called. The output is the same as when the whole document is written at the end.
+ * Large sections (children of the root element) can be written out piece by piece using {@link #flush(Document, Element)}.
+ * 
+ * @author Tomas Muller
+ */
+public class XmlElementWriter {
+	private SectionWriter iWriter;
+	private boolean iStarted = false;
+	private Element iSection = null;
+	
+	public XmlElementWriter(OutputStream output) throws IOException {
+		iWriter = new SectionWriter(output);
+	}
+	
+	/**
+	 * Write the declaration, the document type, and the start of the root element (when called for the first time)
+	 * followed by the current content of the root element. The written content is removed from the root element.
+	 * An open section (see {@link #flush(Document, Element)}) is closed first.
+	 */
+	public void flush(Document document) throws IOException {
+		Element root = document.getRootElement();
+		if (root == null) return;
+		if (!iStarted) {
+			try {
+				iWriter.startDocument();
+			} catch (SAXException e) {
+				throw new IOException(e.getMessage(), e);
+			}
+			if (document.getDocType() != null)
+				iWriter.write(document.getDocType());
+			iWriter.writeOpen(root);
+			iStarted = true;
+		}
+		if (iSection != null) {
+			iWriter.writeClose(iSection, 1);
+			iSection = null;
+		}
+		write(root, 1);
+		iWriter.flush();
+	}
+	
+	/**
+	 * Write the current content of the given section (a child of the root element) and remove it from the document.
+	 * When called for the first time, the section is detached from the root element and everything that precedes it
+	 * is written together with the start of the section. The section is closed by the next {@link #flush(Document)}
+	 * or {@link #close(Document)} call, so the elements that follow it must be added to the root afterwards.
+	 */
+	public void flush(Document document, Element section) throws IOException {
+		if (section != iSection) {
+			section.detach();
+			flush(document);
+			iWriter.writeOpen(section, 1);
+			iSection = section;
+		}
+		write(section, 2);
+		iWriter.flush();
+	}
+	
+	private void write(Element parent, int indent) throws IOException {
+		iWriter.setIndentLevel(indent);
+		for (Node node: new ArrayList<Node>(parent.content())) {
+			if (node.getNodeType() == Node.TEXT_NODE && node.getText().trim().isEmpty()) continue;
+			iWriter.write(node);
+		}
+		iWriter.setIndentLevel(0);
+		parent.clearContent();
+	}
+	
+	/**
+	 * Write the remaining content of the document and close the root element
+	 */
+	public void close(Document document) throws IOException {
+		flush(document);
+		if (iStarted) {
+			iWriter.println();
+			iWriter.writeClose(document.getRootElement());
+			iWriter.println();
+		}
+		iWriter.flush();
+	}
+	
+	private static class SectionWriter extends XMLWriter {
+		SectionWriter(OutputStream output) throws IOException {
+			super(output, OutputFormat.createPrettyPrint());
+		}
+		
+		void writeOpen(Element element, int indent) throws IOException {
+			setIndentLevel(indent);
+			writePrintln();
+			indent();
+			writeOpen(element);
+			setIndentLevel(0);
+		}
+		
+		void writeClose(Element element, int indent) throws IOException {
+			setIndentLevel(indent);
+			writePrintln();
+			indent();
+			writeClose(element);
+			setIndentLevel(0);
+		}
+	}
+}
@@ -402,6 +402,16 @@ public enum ApplicationProperty {
 	@Description("Room Filter: distance limit (in meters) for nearby locations")
 	EventNearByDistance("tmtbl.events.nearByDistance"),
 
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Events: use an in-memory room occupancy index to avoid conflict checking queries for rooms that are not used at the given times (changes made on other cluster nodes are only seen after the time to live)")
+	EventOccupancyIndexEnabled("unitime.events.occupancyIndex.enabled"),
+
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Events: time to live (in seconds) of an entry of the room occupancy index")
+	EventOccupancyIndexTimeToLive("unitime.events.occupancyIndex.timeToLive"),
+
 	@Type(Integer.class)
 	@DefaultValue("0")
 	@Description("Rooms: default break time for a room of type % (% is the room type reference)")
@@ -676,6 +686,16 @@ public enum ApplicationProperty {
 
 	@Description("Online Student Scheduling Log: besides of the database, also log the actions in the given file (if set)")
 	OnlineSchedulingLogFile("unitime.sectioning.log.file"),
+
+	@Type(Integer.class)
+	@DefaultValue("500")
+	@Description("Online Student Scheduling Log: number of records persisted in one batch, the log is flushed as soon as there are this many records waiting")
+	OnlineSchedulingLogBatchSize("unitime.sectioning.log.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("60")
+	@Description("Online Student Scheduling Log: maximal time in seconds between two flushes of the log into the database")
+	OnlineSchedulingLogFlushInterval("unitime.sectioning.log.flushInterval"),
 	
 	@Type(Boolean.class)
 	@DefaultValue("true")
@@ -734,6 +754,11 @@ public enum ApplicationProperty {
 	@Description("Room Availability: include events from other academic sessions")
 	RoomAvailabilityIncludeOtherTerms("tmtbl.room.availability.includeOtherTerms"),
 
+	@Type(Integer.class)
+	@DefaultValue("20")
+	@Description("Room Availability: maximal number of time frames kept in the default room availability cache, least recently used are dropped first (0 for no limit)")
+	RoomAvailabilityCacheSize("tmtbl.room.availability.cacheSize"),
+
 	@DefaultValue("{ call room_avail_interface.request(?) }")
 	@Description("Blob Room Availability Service: request sql")
 	BlobRoomAvailabilityRequestSQL("tmtbl.room.availability.request"),
@@ -1636,6 +1661,22 @@ public enum ApplicationProperty {
 	@Description("Query Log: record request object/parameters as JSON message")
 	QueryLogJSON("unitime.query.log.json"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("GWT RPC: execute requests asynchronously using the request type thread pools (see the GwtRpcPool annotation), requires servlet async support")
+	GwtRpcDispatcherEnabled("unitime.rpc.dispatcher.enabled"),
+
+	@Type(Integer.class)
+	@Description("GWT RPC: number of threads of the % thread pool (interactive, default, or report; defaults to 20, 20, and 5 respectively)")
+	@Parameter("pool")
+	GwtRpcPoolSize("unitime.rpc.pool.%.size"),
+
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("GWT RPC: maximal number of requests waiting in the % thread pool (when exceeded, the request is executed directly by the servlet container thread)")
+	@Parameter("pool")
+	GwtRpcPoolQueueSize("unitime.rpc.pool.%.queue"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Classes: if there are two or more scheduling subparts in a parent-child relation with the same instructional type (e.g., Lec - Lec a - Lec b stacked underneath), inherit preferences and the date pattern from the parent subpart whenever possible")
@@ -1898,6 +1939,16 @@ public enum ApplicationProperty {
 	@Description("Solver: passivate solution after given number of minutes of inactivity (disable passivation by setting to zero)")
 	SolverPasivationTime("unitime.solver.passivation.time"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Solver: compress the passivated solution (the passivated solution is stored in a compact binary format)")
+	SolverPassivationCompress("unitime.solver.passivation.compress"),
+
+	@Type(Integer.class)
+	@DefaultValue("20")
+	@Description("Solver: maximal number of course timetabling solvers whose class assignments are cached between requests, least recently used are dropped first (0 to disable the cache)")
+	SolverAssignmentCacheSize("unitime.solver.assignmentCache.size"),
+
 	@Type(Integer.class)
 	@DefaultValue("300")
 	@Description("Online Student Scheduling: sectioning queue load interval in seconds")
@@ -1908,6 +1959,31 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: sectioning queue update interval in seconds")
 	OnlineSchedulingQueueUpdateInterval("unitime.sectioning.queue.updateInterval"),
 
+	@Type(Boolean.class)
+	@DefaultValue("true")
+	@Description("Online Student Scheduling: when a sectioning queue item is created, notify the online student scheduling servers right away (the sectioning queue is polled only as a safety net)")
+	OnlineSchedulingQueuePushEnabled("unitime.sectioning.queue.push"),
+
+	@Type(Integer.class)
+	@DefaultValue("300")
+	@Description("Online Student Scheduling: when the sectioning queue notifications are enabled, how often (in seconds) the sectioning queue is still checked for changes that were not notified (e.g., made outside of a transaction or on a different node). Should be well above the sectioning queue update interval (values below it are ignored), otherwise the notifications do not reduce the polling.")
+	OnlineSchedulingQueueSafetyNetInterval("unitime.sectioning.queue.safetyNetInterval"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: periodically store a snapshot of the online student scheduling server state in the data folder and use it to speed up the server start")
+	OnlineSchedulingSnapshotEnabled("unitime.enrollment.snapshot.enabled"),
+
+	@Type(Integer.class)
+	@DefaultValue("30")
+	@Description("Online Student Scheduling: how often (in minutes) the snapshot of the online student scheduling server state is taken (when enabled)")
+	OnlineSchedulingSnapshotInterval("unitime.enrollment.snapshot.interval"),
+
+	@Type(Integer.class)
+	@DefaultValue("10")
+	@Description("Online Student Scheduling: when restoring from a snapshot, students changed up to the given number of minutes before the snapshot was taken are reloaded as well")
+	OnlineSchedulingSnapshotMargin("unitime.enrollment.snapshot.margin"),
+
 	@Description("Online Student Scheduling: only academic sessions matching this year (regular expression) are loaded in")
 	OnlineSchedulingAcademicYear("unitime.enrollment.year"),
 
@@ -1927,6 +2003,21 @@ public enum ApplicationProperty {
 	@Description("Online Student Scheduling: asynchronous execution thread pool size")
 	OnlineSchedulingServerAsyncPoolSize("unitime.enrollment.server.asyncPoolSize"),
 
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Online Student Scheduling: maximal number of asynchronous actions waiting for execution (0 for no limit)")
+	OnlineSchedulingServerAsyncQueueSize("unitime.enrollment.server.asyncQueueSize"),
+
+	@DefaultValue("callerRuns")
+	@Values({"callerRuns", "abort"})
+	@Description("Online Student Scheduling: what to do with an asynchronous action when the queue is full (callerRuns: execute the action in the calling thread, abort: fail the action)")
+	OnlineSchedulingServerAsyncRejectionPolicy("unitime.enrollment.server.asyncRejectionPolicy"),
+
+	@Type(Boolean.class)
+	@DefaultValue("false")
+	@Description("Online Student Scheduling: use virtual threads for asynchronous execution (requires Java 21 or later, platform threads are used otherwise)")
+	OnlineSchedulingServerAsyncVirtualThreads("unitime.enrollment.server.asyncVirtualThreads"),
+
 	@Type(Integer.class)
 	@DefaultValue("366")
 	@Description("Change Log: automatically remove records after the given number of days")
@@ -1962,6 +2053,19 @@ public enum ApplicationProperty {
 	@Description("Configuration: automatically remove published batch student scheduling solutions after the given number of days")
 	LogCleanupSectioningSolutionLog("unitime.cleanup.publishedSolutions"),
 
+	@Type(Integer.class)
+	@DefaultValue("10000")
+	@Description("Log Cleanup: number of records removed in one transaction (0 to remove all old records of a table in one transaction)")
+	LogCleanupBatchSize("unitime.cleanup.batchSize"),
+
+	@Type(Integer.class)
+	@DefaultValue("100")
+	@Description("Log Cleanup: pause in milliseconds between two batches of removed records")
+	LogCleanupBatchPause("unitime.cleanup.batchPause"),
+
+	@Description("Log Cleanup: when set, removed records are first written into a compressed CSV file in the given folder (relative to the data folder, if not absolute)")
+	LogCleanupArchiveFolder("unitime.cleanup.archive"),
+
 	@DefaultValue("WARN")
 	@Values({"ERROR", "WARN", "INFO"})
 	@Description("Message Log: minimum message level to be logged in the MessageLog table")
@@ -2791,6 +2895,11 @@ public enum ApplicationProperty {
 	@Description("Time Grid XLS Export: font name")
 	TimeGridXLSFontName("unitime.timeGrid.xls.fontName"),
 
+	@Type(Integer.class)
+	@DefaultValue("1000")
+	@Description("Export: JDBC fetch size used when scrolling through the results of a report export")
+	ExportFetchSize("unitime.export.fetchSize"),
+
 	@Type(Integer.class)
 	@DefaultValue("1")
 	@Description("Task Scheduler: task execution service check interval in minutes")
@@ -3066,6 +3175,11 @@ public enum ApplicationProperty {
 	@Description("Edit Course Offering: external managers can edit course offerings.")
 	PermissionCourseOfferingAllowsExternalEdit("unitime.permissions.courseOfferingAllowExternalEdits"),
 
+	@Type(Integer.class)
+	@DefaultValue("5")
+	@Description("Permissions: number of seconds for which permission checks of a user are remembered between requests (0 to remember them only for the duration of a request)")
+	PermissionCacheTimeToLive("unitime.permissions.cache.ttl"),
+
 	@Type(Boolean.class)
 	@DefaultValue("false")
 	@Description("Enable Funding Department Functionality.")
@@ -40,6 +40,8 @@ import org.unitime.timetable.events.EventFilterBackend.EventQuery.EventInstance;
 import org.unitime.timetable.gwt.command.client.GwtRpcException;
 import org.unitime.timetable.gwt.command.client.GwtRpcResponseList;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.shared.EventInterface;
 import org.unitime.timetable.gwt.shared.EventInterface.ContactInterface;
 import org.unitime.timetable.gwt.shared.EventInterface.EventFilterRpcRequest;
@@ -103,6 +105,7 @@ import org.unitime.timetable.util.Formats;
  * @author Tomas Muller
  */
 @GwtRpcImplements(EventLookupRpcRequest.class)
+@GwtRpcPool(Pool.REPORT)
 public class EventLookupBackend extends EventAction<EventLookupRpcRequest, GwtRpcResponseList<EventInterface>>{
 	private static Log sLog = LogFactory.getLog(EventLookupBackend.class);
 
@@ -19,7 +19,9 @@
 */
 package org.unitime.timetable.events;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -31,6 +33,8 @@ import org.hibernate.query.Query;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.defaults.UserProperty;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.shared.EventInterface;
 import org.unitime.timetable.gwt.shared.EventInterface.ApprovalStatus;
 import org.unitime.timetable.gwt.shared.EventInterface.ContactInterface;
@@ -64,11 +68,13 @@ import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.security.rights.Right;
 import org.unitime.timetable.util.CalendarUtils;
 import org.unitime.timetable.util.Constants;
+import org.unitime.timetable.util.RoomOccupancyIndex;
 
 /**
  * @author Tomas Muller
  */
 @GwtRpcImplements(EventRoomAvailabilityRpcRequest.class)
+@GwtRpcPool(Pool.REPORT)
 public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabilityRpcRequest, EventRoomAvailabilityRpcResponse> {
 	
 	@Override
@@ -78,7 +84,13 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 		Session session = SessionDAO.getInstance().get(request.getSessionId());
 		String nameFormat = context.getUser().getProperty(UserProperty.NameFormat);
 		
+		RoomOccupancyIndex index = RoomOccupancyIndex.getInstance();
+		
 		if (request.hasDates() && request.hasLocations()) {
+			List<Date> meetingDates = new ArrayList<Date>();
+			for (Integer date: request.getDates())
+				meetingDates.add(CalendarUtils.dateOfYear2date(session.getSessionStartYear(), date));
+			
 			for (int idx = 0; idx < request.getLocations().size(); idx += 1000) {
 			
 				String dates = "";
@@ -89,24 +101,35 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 				for (int i = 0; i + idx < request.getLocations().size() && i < 1000; i++)
 					locations += (locations.isEmpty() ? "" : ",") + ":l" + i;
 				
-				Query<Object[]> roomsQuery = EventDAO.getInstance().getSession().createQuery(
-						"select m, l.permanentId from Meeting m, Location x, Location l " +
-						"where m.startPeriod<:stopTime and m.stopPeriod>:startTime and m.approvalStatus <= 1 and " +
-						"l.session.uniqueId = :sessionId and l.permanentId in (" + locations + ") and l.ignoreRoomCheck = false and " +
-						"(x.uniqueId = l.uniqueId or x.parentRoom.uniqueId = l.uniqueId or x.uniqueId = l.parentRoom.uniqueId) and " +
-						"m.locationPermanentId = x.permanentId and m.meetingDate in ("+dates+")", Object[].class);
+				// only look for conflicts in the locations that are used at the given time
+				List<Long> occupied = request.getLocations().subList(idx, Math.min(idx + 1000, request.getLocations().size()));
+				if (index != null)
+					occupied = new ArrayList<Long>(index.getOccupied(request.getSessionId(), occupied, meetingDates, request.getStartSlot(), request.getEndSlot(), EventDAO.getInstance().getSession()));
+				
+				String occupiedLocations = "";
+				for (int i = 0; i < occupied.size(); i++)
+					occupiedLocations += (occupiedLocations.isEmpty() ? "" : ",") + ":l" + i;
 				
-				roomsQuery.setParameter("startTime", request.getStartSlot());
-				roomsQuery.setParameter("stopTime", request.getEndSlot());
-				roomsQuery.setParameter("sessionId", request.getSessionId());
-				for (int i = 0; i < request.getDates().size(); i++) {
-					Date date = CalendarUtils.dateOfYear2date(session.getSessionStartYear(), request.getDates().get(i));
-					roomsQuery.setParameter("d" + i, date);
+				List<Object[]> rooms = new ArrayList<Object[]>();
+				if (!occupied.isEmpty()) {
+					Query<Object[]> roomsQuery = EventDAO.getInstance().getSession().createQuery(
+							"select m, l.permanentId from Meeting m, Location x, Location l " +
+							"where m.startPeriod<:stopTime and m.stopPeriod>:startTime and m.approvalStatus <= 1 and " +
+							"l.session.uniqueId = :sessionId and l.permanentId in (" + occupiedLocations + ") and l.ignoreRoomCheck = false and " +
+							"(x.uniqueId = l.uniqueId or x.parentRoom.uniqueId = l.uniqueId or x.uniqueId = l.parentRoom.uniqueId) and " +
+							"m.locationPermanentId = x.permanentId and m.meetingDate in ("+dates+")", Object[].class);
+					
+					roomsQuery.setParameter("startTime", request.getStartSlot());
+					roomsQuery.setParameter("stopTime", request.getEndSlot());
+					roomsQuery.setParameter("sessionId", request.getSessionId());
+					for (int i = 0; i < meetingDates.size(); i++)
+						roomsQuery.setParameter("d" + i, meetingDates.get(i));
+					for (int i = 0; i < occupied.size(); i++)
+						roomsQuery.setParameter("l" + i, occupied.get(i));
+					rooms = roomsQuery.list();
 				}
-				for (int i = 0; i + idx < request.getLocations().size() && i < 1000; i++)
-					roomsQuery.setParameter("l" + i, request.getLocations().get(idx + i));
 				
-				for (Object[] o: roomsQuery.list()) {
+				for (Object[] o: rooms) {
 					Meeting m = (Meeting)o[0];
 					Long permId = (Long)o[1];
 					MeetingConflictInterface conflict = new MeetingConflictInterface();
@@ -331,7 +354,9 @@ public class EventRoomAvailabilityBackend extends EventAction<EventRoomAvailabil
 					available = false;
 				}
 				
-				if (!location.isIgnoreRoomCheck())
+				if (!location.isIgnoreRoomCheck() && (index == null || !index.getOccupied(location.getSession().getUniqueId(),
+						Collections.singleton(location.getPermanentId()), Collections.singleton(meeting.getMeetingDate()),
+						meeting.getStartSlot(), meeting.getEndSlot(), EventDAO.getInstance().getSession()).isEmpty()))
 					for (Meeting m: EventDAO.getInstance().getSession().createQuery(
 							"select m from Meeting m, Location x, Location l "+
 							"where m.startPeriod < :stopTime and m.stopPeriod > :startTime and m.approvalStatus <= 1 and " +
@@ -32,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.cpsolver.ifs.util.DataProperties;
 import org.cpsolver.ifs.util.DistanceMetric;
@@ -63,6 +64,7 @@ import org.unitime.timetable.model.dao.RoomFeatureTypeDAO;
 import org.unitime.timetable.model.dao.TimetableManagerDAO;
 import org.unitime.timetable.security.UserAuthority;
 import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.util.LocationSpatialIndex;
 
 /**
  * @author Tomas Muller
@@ -70,6 +72,7 @@ import org.unitime.timetable.security.rights.Right;
 @GwtRpcImplements(RoomFilterRpcRequest.class)
 public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 	private DistanceMetric iMetrics;
+	private static Map<Long, LocationSpatialIndex> sSpatialIndexes = new ConcurrentHashMap<Long, LocationSpatialIndex>();
 	private static double EPSILON = 0.000001;
 	private static DecimalFormat sCDF = new DecimalFormat("0.000000");
 	private static DecimalFormat sNF = new DecimalFormat("0000");
@@ -283,7 +286,9 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 			}
 			
 			if (!coord.isEmpty()) {
+				Set<Long> candidates = getNearbyCandidates(sessionId, locations, coord, allowedDistance);
 				for (Location location: locations) {
+					if (candidates != null && !candidates.contains(location.getUniqueId())) continue;
 					if (building != null && !building.isEmpty() && (location instanceof Room) && building.contains(((Room)location).getBuilding().getAbbreviation())) continue;
 					if (query != null && !query.match(new LocationMatcher(location, featureTypes))) continue;
 					Coordinates c = new Coordinates(location);
@@ -372,6 +377,61 @@ public class RoomFilterBackend extends FilterBoxBackend<RoomFilterRpcRequest> {
 		}
 	}
 	
+	/**
+	 * Locations that may be within the allowed distance from the given coordinates, using a spatial index of the academic session
+	 * (locations with a travel time to any of the given coordinates are included as well).
+	 * @return null when all the locations need to be checked
+	 */
+	protected Set<Long> getNearbyCandidates(Long sessionId, List<Location> locations, Set<Coordinates> coord, double allowedDistance) {
+		LocationSpatialIndex index = getSpatialIndex(sessionId, locations, allowedDistance);
+		List<double[]> xy = new ArrayList<double[]>(coord.size());
+		Set<Long> ids = new HashSet<Long>();
+		for (Coordinates c: coord) {
+			if (!c.hasCoordinates()) continue;
+			xy.add(new double[] {c.x(), c.y()});
+			ids.add(c.id());
+		}
+		Set<Long> candidates = index.getCandidates(xy);
+		if (candidates == null) return null;
+		Map<Long, Map<Long, Integer>> travelTimes = getDistanceMetric().getTravelTimes();
+		if (travelTimes != null && !travelTimes.isEmpty())
+			for (Map.Entry<Long, Map<Long, Integer>> e: travelTimes.entrySet()) {
+				if (ids.contains(e.getKey())) {
+					candidates.addAll(e.getValue().keySet());
+				} else {
+					for (Long id: e.getValue().keySet())
+						if (ids.contains(id)) { candidates.add(e.getKey()); break; }
+				}
+			}
+		return candidates;
+	}
+	
+	/**
+	 * Spatial index of all the locations of the academic session. The index is re-created when any of the given locations
+	 * is not in the index or it has different coordinates (e.g., when a room was added or edited).
+	 */
+	protected LocationSpatialIndex getSpatialIndex(Long sessionId, List<Location> locations, double allowedDistance) {
+		LocationSpatialIndex index = sSpatialIndexes.get(sessionId);
+		boolean legacy = getDistanceMetric().isLegacy();
+		if (index != null && index.isLegacy() == legacy && index.getDistance() == allowedDistance) {
+			boolean upToDate = true;
+			for (Location location: locations)
+				if (!index.isUpToDate(location.getUniqueId(), location.getCoordinateX(), location.getCoordinateY())) {
+					upToDate = false; break;
+				}
+			if (upToDate) return index;
+		}
+		index = new LocationSpatialIndex(legacy, allowedDistance);
+		for (Object[] o: RoomDAO.getInstance().getSession().createQuery(
+				"select l.uniqueId, l.coordinateX, l.coordinateY from Location l where l.session.uniqueId = :sessionId", Object[].class)
+				.setParameter("sessionId", sessionId).list())
+			index.add((Long)o[0], (Double)o[1], (Double)o[2]);
+		for (Location location: locations)
+			index.add(location.getUniqueId(), location.getCoordinateX(), location.getCoordinateY());
+		sSpatialIndexes.put(sessionId, index);
+		return index;
+	}
+	
 	public DistanceMetric getDistanceMetric() {
 		if (iMetrics == null) {
 			DataProperties config = new DataProperties();
@@ -40,11 +40,23 @@ public class JSONPrinter implements Printer {
 	private Set<Integer> iHiddenColumns = new HashSet<Integer>();
 	private String[] iHeader = null;
 	private List<Map<String,Object>> iList = new ArrayList<Map<String,Object>>();
+	private boolean iStreaming = false;
+	private Gson iGson = null;
+	private int iCount = 0;
 	
 	public JSONPrinter(PrintWriter writer) {
 		iOut = writer;
 	}
 	
+	/**
+	 * @param streaming when set, each line is written out as soon as it is printed
+	 * (instead of collecting the whole list in memory and writing it on flush)
+	 */
+	public JSONPrinter(PrintWriter writer, boolean streaming) {
+		iOut = writer;
+		iStreaming = streaming;
+	}
+	
 	@Override
 	public String getContentType() {
 		return "application/json";
@@ -80,20 +92,37 @@ public class JSONPrinter implements Printer {
 			else if ("false".equals(f)) entry.put(h, Boolean.FALSE);
 			else entry.put(h, f);
 		}
-		iList.add(entry);
+		if (iStreaming) {
+			iOut.print(iCount == 0 ? "[\n" : ",\n");
+			iOut.print(getGson().toJson(entry));
+			iCount++;
+		} else {
+			iList.add(entry);
+		}
 	}
 	
 	protected Gson createGson() {
 		return new GsonBuilder().setPrettyPrinting().create();
 	}
 	
+	protected Gson getGson() {
+		if (iGson == null)
+			iGson = createGson();
+		return iGson;
+	}
+	
 	@Override
 	public void flush() {
+		if (iStreaming) return;
 		iOut.print(createGson().toJson(iList));
 		iOut.flush();
 	}
 	
 	@Override
 	public void close() {
+		if (iStreaming) {
+			iOut.print(iCount == 0 ? "[]" : "\n]");
+			iOut.flush();
+		}
 	}
 }
@@ -75,6 +75,7 @@ public class XLSPrinter implements Printer {
 	private Map<String, CellStyle> iStyles;
 	private Map<String, Font> iFonts = new HashMap<String, Font>();
 	private Map<String, Short> iColors = new HashMap<String, Short>();
+	private String[] iHeader = null;
 	
 	
 	public XLSPrinter(OutputStream output, boolean checkLast) {
@@ -155,6 +156,7 @@ public class XLSPrinter implements Printer {
 	
 	@Override
 	public void printHeader(String... fields) {
+		iHeader = fields;
 		Row headerRow = iSheet.createRow(iRowNum++);
 		
 		int cellIdx = 0;
@@ -174,7 +176,7 @@ public class XLSPrinter implements Printer {
 	@Override
 	public void printLine(String... fields) {
 		int cellIdx = 0;
-		Row row = iSheet.createRow(iRowNum++);
+		Row row = createRow();
 		int nrLines = 1;
 		for (int idx = 0; idx < fields.length; idx++) {
 			if (iHiddenColumns.contains(idx)) continue;
@@ -206,7 +208,7 @@ public class XLSPrinter implements Printer {
 	
 	public void printLine(A... fields) {
 		int cellIdx = 0;
-		Row row = iSheet.createRow(iRowNum++);
+		Row row = createRow();
 		int nrLines = 1;
 		for (int idx = 0; idx < fields.length; idx++) {
 			if (iHiddenColumns.contains(idx)) continue;
@@ -277,6 +279,19 @@ public class XLSPrinter implements Printer {
 		iLastLine = fields;
 	}
 	
+	/**
+	 * Create a new row. When the current sheet has reached the maximal number of rows
+	 * of the XLS format (65536), a new sheet is started and the last header is repeated.
+	 */
+	protected Row createRow() {
+		if (iRowNum >= iWorkbook.getSpreadsheetVersion().getMaxRows()) {
+			newSheet();
+			iLastLine = null;
+			if (iHeader != null) printHeader(iHeader);
+		}
+		return iSheet.createRow(iRowNum++);
+	}
+	
 	protected Short colorToShort(Color c) {
 		if (c == null) c = Color.black;
 		String colorId = Integer.toHexString(c.getRGB());
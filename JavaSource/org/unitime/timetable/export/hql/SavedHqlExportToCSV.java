@@ -40,9 +40,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import org.dom4j.Document;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.springframework.stereotype.Service;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.events.EventAction.EventContext;
 import org.unitime.timetable.export.BufferedPrinter;
 import org.unitime.timetable.export.CSVPrinter;
@@ -76,6 +79,18 @@ public class SavedHqlExportToCSV implements Exporter {
 	public String reference() {
 		return "hql-report.csv";
 	}
+	
+	protected Printer createPrinter(ExportHelper helper) throws IOException {
+		return new CSVPrinter(helper, false);
+	}
+	
+	protected String getExtension() {
+		return "csv";
+	}
+	
+	protected boolean isBinary() {
+		return false;
+	}
 
 	@Override
 	public void export(ExportHelper helper) throws IOException {
@@ -173,39 +188,44 @@ public class SavedHqlExportToCSV implements Exporter {
 		}
 		if (!hasAppearancePermission) throw new AccessDeniedException();
 		
-		BufferedPrinter out = new BufferedPrinter(new CSVPrinter(helper, false));
-		helper.setup(out.getContentType(), hql.getName().replace('/', '-').replace('\\', '-').replace(':', '-') + ".csv", false);
+		String sort = helper.getParameter("sort");
+		Printer printer = createPrinter(helper);
+		// rows only need to be buffered when they are to be sorted, otherwise they are streamed directly to the output
+		Printer out = (sort != null && !"0".equals(sort) ? new BufferedPrinter(printer) : printer);
+		helper.setup(out.getContentType(), hql.getName().replace('/', '-').replace('\\', '-').replace(':', '-') + "." + getExtension(), isBinary());
 		
 		execute(context.getUser(), out, hql.getQuery(), params, 0, -1, hql.getParameters());
 		
-		String sort = helper.getParameter("sort");
-		if (sort != null && !"0".equals(sort)) {
-			final boolean asc = Integer.parseInt(sort) > 0;
-			final int col = Math.abs(Integer.parseInt(sort)) - 1;
-			Collections.sort(out.getBuffer(), new Comparator<String[]>() {
-				int compare(String[] a, String[] b, int col) {
-					for (int i = 0; i < a.length; i++) {
-						int c = (col + i) % a.length;
-						try {
-							int cmp = Double.valueOf(a[c] == null ? "0" : a[c]).compareTo(Double.valueOf(b[c] == null ? "0" : b[c]));
-							if (cmp != 0) return cmp;
-						} catch (NumberFormatException e) {
-							int cmp = (a[c] == null ? "" : a[c]).compareTo(b[c] == null ? "" : b[c]);
-							if (cmp != 0) return cmp;
-						}
-					}
-					return 0;
-				}	
-				@Override
-				public int compare(String[] a, String[] b) {
-					return asc ? compare(a, b, col) : compare(b, a, col);
-				}
-			});
-		}
+		if (out instanceof BufferedPrinter)
+			sort((BufferedPrinter)out, sort);
 		
 		out.close();
 	}
 	
+	protected static void sort(BufferedPrinter out, String sort) {
+		final boolean asc = Integer.parseInt(sort) > 0;
+		final int col = Math.abs(Integer.parseInt(sort)) - 1;
+		Collections.sort(out.getBuffer(), new Comparator<String[]>() {
+			int compare(String[] a, String[] b, int col) {
+				for (int i = 0; i < a.length; i++) {
+					int c = (col + i) % a.length;
+					try {
+						int cmp = Double.valueOf(a[c] == null ? "0" : a[c]).compareTo(Double.valueOf(b[c] == null ? "0" : b[c]));
+						if (cmp != 0) return cmp;
+					} catch (NumberFormatException e) {
+						int cmp = (a[c] == null ? "" : a[c]).compareTo(b[c] == null ? "" : b[c]);
+						if (cmp != 0) return cmp;
+					}
+				}
+				return 0;
+			}	
+			@Override
+			public int compare(String[] a, String[] b) {
+				return asc ? compare(a, b, col) : compare(b, a, col);
+			}
+		});
+	}
+	
 	public static void execute(UserContext user, Printer out, String hql, List<SavedHQLInterface.IdValue> options, int fromRow, int maxRows, Collection<SavedHQLParameter> parameters) throws SavedHQLException, PageAccessException {
 		try {
 			for (SavedHQL.Option o: SavedHQL.Option.values()) {
@@ -234,7 +254,8 @@ public class SavedHqlExportToCSV implements Exporter {
 				q.setMaxResults(maxRows);
 			if (fromRow > 0)
 				q.setFirstResult(fromRow);
-			q.setCacheable(true);
+			if (maxRows > 0)
+				q.setCacheable(true);
 			if (parameters != null && !parameters.isEmpty()) {
 				parameters: for (SavedHQLParameter parameter: parameters) {
 					String value = parameter.getDefaultValue();
@@ -296,19 +317,18 @@ public class SavedHqlExportToCSV implements Exporter {
 					}
 				}
 			}
-			int len = -1;
-			for (Tuple o: q.list()) {
-				if (len < 0) {
-					len = length(o);
-					String[] line = new String[len];
-					header(line, o);
-					if (line.length > 0 && line[0].startsWith("__")) out.hideColumn(0);
-					out.printHeader(line);
+			if (maxRows > 0) {
+				int len = -1;
+				for (Tuple o: q.list())
+					len = print(out, o, len);
+			} else {
+				// unlimited export: scroll through the results instead of loading them all in memory
+				q.setFetchSize(ApplicationProperty.ExportFetchSize.intValue());
+				try (ScrollableResults<Tuple> results = q.scroll(ScrollMode.FORWARD_ONLY)) {
+					int len = -1;
+					while (results.next())
+						len = print(out, results.get(), len);
 				}
-				String[] line = new String[len];
-				line(line, o);
-				out.printLine(line);
-				out.flush();
 			}
 		} catch (PageAccessException e) {
 			throw e;
@@ -320,6 +340,21 @@ public class SavedHqlExportToCSV implements Exporter {
 		}
 	}
 	
+	private static int print(Printer out, Tuple o, int len) throws IOException {
+		if (len < 0) {
+			len = length(o);
+			String[] line = new String[len];
+			header(line, o);
+			if (line.length > 0 && line[0].startsWith("__")) out.hideColumn(0);
+			out.printHeader(line);
+		}
+		String[] line = new String[len];
+		line(line, o);
+		out.printLine(line);
+		out.flush();
+		return len;
+	}
+	
 	private static boolean skip(Attribute t) {
         try {
             Class ts = t.getJavaType().getMethod("toString", new Class[]{}).getDeclaringClass();
@@ -23,6 +23,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
@@ -39,6 +41,8 @@ import org.springframework.web.context.support.WebApplicationContextUtils;
 import org.unitime.timetable.gwt.command.client.GwtRpcResponseBoolean;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.shared.MenuInterface.IsSessionBusyRpcRequest;
 import org.unitime.timetable.security.SessionContext;
 
@@ -80,11 +84,26 @@ public class BusySessions {
 
 		@Override
 		public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
-			String id = increment(request);
+			final String id = increment(request);
+			boolean async = false;
 			try {
 				chain.doFilter(request, response);
+				if (id != null && request.isAsyncStarted()) {
+					// asynchronous request (see GwtRpcServlet) -> decrement when completed
+					request.getAsyncContext().addListener(new AsyncListener() {
+						@Override
+						public void onComplete(AsyncEvent event) throws IOException { decrement(event.getSuppliedRequest(), id); }
+						@Override
+						public void onTimeout(AsyncEvent event) throws IOException {}
+						@Override
+						public void onError(AsyncEvent event) throws IOException {}
+						@Override
+						public void onStartAsync(AsyncEvent event) throws IOException {}
+					});
+					async = true;
+				}
 			} finally {
-				decrement(request, id);
+				if (!async) decrement(request, id);
 			}
 		}
 
@@ -168,6 +187,7 @@ public class BusySessions {
 	}
 
 	@GwtRpcImplements(IsSessionBusyRpcRequest.class)
+	@GwtRpcPool(Pool.INTERACTIVE)
 	public static class Backend implements GwtRpcImplementation<IsSessionBusyRpcRequest, GwtRpcResponseBoolean> {
 		private @Autowired Tracker unitimeBusySessions;
 		
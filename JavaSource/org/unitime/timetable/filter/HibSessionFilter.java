@@ -31,6 +31,7 @@ import javax.servlet.ServletResponse;
 import org.cpsolver.ifs.util.JProf;
 import org.unitime.commons.Debug;
 import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 
 
 /**
@@ -66,6 +67,8 @@ public class HibSessionFilter implements Filter {
 			request.setAttribute("TimeStamp", Double.valueOf(JProf.currentTimeSec()));
 		
 		try {
+			PermissionCache.beginRequest();
+			
 			// Process request
 			chain.doFilter(request,response);
 
@@ -79,6 +82,8 @@ public class HibSessionFilter implements Filter {
 
             // Let others handle it... maybe another interceptor for exceptions?
             throw new ServletException(ex);
+        } finally {
+        	PermissionCache.endRequest();
         }
  		
 	}
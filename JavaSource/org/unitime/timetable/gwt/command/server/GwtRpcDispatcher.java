@@ -0,0 +1,135 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.server;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/**
+ * Executes GWT RPC requests using bounded thread pools, one for each {@link GwtRpcPool.Pool},
+ * so that long running requests cannot starve the short ones. The queue wait times (unitime_rpc_queue_wait_seconds)
+ * and the rejected requests (unitime_rpc_rejected_total) are recorded in the {@link MetricsRegistry} for each request class,
+ * the execution times are recorded by the {@link GwtRpcServlet} (unitime_rpc_request_seconds).
+ * 
+ * @author Tomas Muller
+ */
+public class GwtRpcDispatcher {
+	private static Log sLog = LogFactory.getLog(GwtRpcDispatcher.class);
+	private static GwtRpcDispatcher sInstance = null;
+	
+	private Map<Pool, ThreadPoolExecutor> iPools = new EnumMap<Pool, ThreadPoolExecutor>(Pool.class);
+	
+	private GwtRpcDispatcher() {
+		for (final Pool pool: Pool.values()) {
+			String ref = pool.name().toLowerCase();
+			int size = Math.max(1, Integer.parseInt(ApplicationProperty.GwtRpcPoolSize.value(ref, String.valueOf(pool.getDefaultSize()))));
+			int queue = Math.max(1, ApplicationProperty.GwtRpcPoolQueueSize.intValue(ref));
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queue), new ThreadFactory() {
+				private AtomicInteger iCounter = new AtomicInteger(0);
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "RPC-" + pool.name().toLowerCase() + "-" + iCounter.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			executor.allowCoreThreadTimeOut(true);
+			iPools.put(pool, executor);
+		}
+		MetricsRegistry.getInstance().gauge("unitime_rpc_pool_active_threads", "GWT RPC requests being executed", "pool", new MetricsRegistry.LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				Map<String, Integer> ret = new HashMap<String, Integer>();
+				for (Map.Entry<Pool, ThreadPoolExecutor> e: iPools.entrySet())
+					ret.put(e.getKey().name().toLowerCase(), e.getValue().getActiveCount());
+				return ret;
+			}
+		});
+		MetricsRegistry.getInstance().gauge("unitime_rpc_pool_queued_requests", "GWT RPC requests waiting for a thread", "pool", new MetricsRegistry.LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				Map<String, Integer> ret = new HashMap<String, Integer>();
+				for (Map.Entry<Pool, ThreadPoolExecutor> e: iPools.entrySet())
+					ret.put(e.getKey().name().toLowerCase(), e.getValue().getQueue().size());
+				return ret;
+			}
+		});
+	}
+	
+	public static synchronized GwtRpcDispatcher getInstance() {
+		if (sInstance == null)
+			sInstance = new GwtRpcDispatcher();
+		return sInstance;
+	}
+	
+	public static synchronized void shutdown() {
+		if (sInstance != null) {
+			for (ThreadPoolExecutor executor: sInstance.iPools.values())
+				executor.shutdownNow();
+			sInstance = null;
+		}
+	}
+	
+	/**
+	 * Returns the pool for the given implementation, based on its {@link GwtRpcPool} annotation
+	 */
+	public static Pool getPool(GwtRpcImplementation<?, ?> implementation) {
+		GwtRpcPool pool = (implementation == null ? null : implementation.getClass().getAnnotation(GwtRpcPool.class));
+		return (pool == null ? Pool.DEFAULT : pool.value());
+	}
+	
+	/**
+	 * Submit a request for execution
+	 * @param pool thread pool to use
+	 * @param requestName request class name (for metrics)
+	 * @param task request execution
+	 * @return false if the pool is full (the task is not executed in this case)
+	 */
+	public boolean execute(final Pool pool, final String requestName, final Runnable task) {
+		final long t0 = System.nanoTime();
+		try {
+			iPools.get(pool).execute(new Runnable() {
+				@Override
+				public void run() {
+					MetricsRegistry.getInstance().histogram("unitime_rpc_queue_wait_seconds", "GWT RPC request time spent waiting for a thread", "request", requestName).recordSince(t0);
+					task.run();
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			sLog.warn("Pool " + pool.name().toLowerCase() + " is full, " + requestName + " will be executed directly.");
+			MetricsRegistry.getInstance().counter("unitime_rpc_rejected_total", "GWT RPC requests executed directly because their thread pool was full", "request", requestName).increment();
+			return false;
+		}
+	}
+}
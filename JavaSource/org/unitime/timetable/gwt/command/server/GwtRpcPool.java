@@ -0,0 +1,55 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.gwt.command.server;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Thread pool that is used to execute the annotated {@link GwtRpcImplementation}.
+ * Implementations that are not annotated are executed by the {@link Pool#DEFAULT} pool.
+ * 
+ * @author Tomas Muller
+ */
+@Target({ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Component
+public @interface GwtRpcPool {
+	Pool value();
+	
+	public static enum Pool {
+		/** Short requests that the user is waiting for (suggestions, filters, lookups) */
+		INTERACTIVE(20),
+		/** All other requests */
+		DEFAULT(20),
+		/** Long running requests (reports, event lookups, etc.) */
+		REPORT(5),
+		;
+		
+		private int iDefaultSize;
+		Pool(int defaultSize) { iDefaultSize = defaultSize; }
+		
+		public int getDefaultSize() { return iDefaultSize; }
+	}
+}
@@ -19,16 +19,21 @@
 */
 package org.unitime.timetable.gwt.command.server;
 
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,7 +41,12 @@ import org.cpsolver.ifs.util.JProf;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
@@ -54,6 +64,7 @@ import org.unitime.timetable.security.SessionContext;
 import org.unitime.timetable.security.context.HttpSessionContext;
 import org.unitime.timetable.security.evaluation.PermissionCheck;
 import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 import com.google.gson.FieldNamingStrategy;
 import com.google.gson.Gson;
@@ -62,7 +73,12 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import com.google.gwt.user.client.rpc.IncompatibleRemoteServiceException;
 import com.google.gwt.user.client.rpc.IsSerializable;
+import com.google.gwt.user.client.rpc.SerializationException;
+import com.google.gwt.user.server.rpc.RPC;
+import com.google.gwt.user.server.rpc.RPCRequest;
+import com.google.gwt.user.server.rpc.RPCServletUtils;
 import com.google.gwt.user.server.rpc.RemoteServiceServlet;
 
 /**
@@ -127,6 +143,131 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	@Override
 	public void destroy() {
 		if (iSaver != null) iSaver.interrupt();
+		GwtRpcDispatcher.shutdown();
+	}
+	
+	/**
+	 * When enabled and supported by the servlet container, the {@link GwtRpcService#execute(GwtRpcRequest)} calls
+	 * are decoded on the container thread, but executed asynchronously using the thread pool of the request's
+	 * implementation (see {@link GwtRpcPool}). Other calls are processed the usual way.
+	 */
+	@Override
+	protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!"POST".equals(request.getMethod()) || !request.isAsyncSupported() || !ApplicationProperty.GwtRpcDispatcherEnabled.isTrue()) {
+			super.service(request, response);
+			return;
+		}
+		synchronized (this) {
+			if (perThreadRequest == null) perThreadRequest = new ThreadLocal<HttpServletRequest>();
+			if (perThreadResponse == null) perThreadResponse = new ThreadLocal<HttpServletResponse>();
+		}
+		perThreadRequest.set(request);
+		perThreadResponse.set(response);
+		try {
+			String payload = readContent(request);
+			onBeforeRequestDeserialized(payload);
+			checkPermutationStrongName();
+			RPCRequest rpcRequest = null;
+			try {
+				rpcRequest = RPC.decodeRequest(payload, getClass(), this);
+			} catch (IncompatibleRemoteServiceException e) {
+				log("An IncompatibleRemoteServiceException was thrown while processing this call.", e);
+				writeResponse(request, response, RPC.encodeResponseForFailedRequest(null, e));
+				return;
+			}
+			onAfterRequestDeserialized(rpcRequest);
+			
+			GwtRpcImplementation<?, ?> implementation = null;
+			if ("execute".equals(rpcRequest.getMethod().getName()) && rpcRequest.getParameters().length == 1 && rpcRequest.getParameters()[0] instanceof GwtRpcRequest) {
+				try {
+					implementation = getImplementation((GwtRpcRequest)rpcRequest.getParameters()[0]);
+				} catch (Exception e) {
+					// no implementation -> let execute(GwtRpcRequest) fail the usual way
+				}
+			}
+			if (implementation == null) {
+				processAndWriteResponse(request, response, rpcRequest);
+				return;
+			}
+			
+			String requestName = rpcRequest.getParameters()[0].getClass().getSimpleName();
+			GwtRpcPool.Pool pool = GwtRpcDispatcher.getPool(implementation);
+			GwtRpcDispatcher dispatcher = GwtRpcDispatcher.getInstance();
+			AsyncExecution execution = new AsyncExecution(request.startAsync(request, response), rpcRequest);
+			if (!dispatcher.execute(pool, requestName, execution)) {
+				// pool is full -> execute on the container thread
+				execution.run();
+			}
+		} catch (Throwable e) {
+			doUnexpectedFailure(e);
+		} finally {
+			perThreadRequest.set(null);
+			perThreadResponse.set(null);
+		}
+	}
+	
+	protected void processAndWriteResponse(HttpServletRequest request, HttpServletResponse response, RPCRequest rpcRequest) throws ServletException, IOException, SerializationException {
+		String responsePayload = processCall(rpcRequest);
+		onAfterResponseSerialized(responsePayload);
+		writeResponse(request, response, responsePayload);
+	}
+	
+	protected void writeResponse(HttpServletRequest request, HttpServletResponse response, String responsePayload) throws IOException {
+		RPCServletUtils.writeResponse(getServletContext(), response, responsePayload, shouldCompressResponse(request, response, responsePayload));
+	}
+	
+	/**
+	 * Execution of a decoded request outside of the servlet container thread. The request attributes, security context,
+	 * and locale of the original thread are passed along, the async context is completed afterwards.
+	 */
+	private class AsyncExecution implements Runnable {
+		private AsyncContext iAsyncContext;
+		private RPCRequest iRequest;
+		private SecurityContext iSecurityContext;
+		private String iLocale;
+		
+		AsyncExecution(AsyncContext asyncContext, RPCRequest request) {
+			iAsyncContext = asyncContext;
+			iAsyncContext.setTimeout(0);
+			iRequest = request;
+			iSecurityContext = SecurityContextHolder.getContext();
+			iLocale = Localization.getLocale();
+		}
+		
+		@Override
+		public void run() {
+			HttpServletRequest request = (HttpServletRequest)iAsyncContext.getRequest();
+			HttpServletResponse response = (HttpServletResponse)iAsyncContext.getResponse();
+			RequestAttributes previousAttributes = RequestContextHolder.getRequestAttributes();
+			SecurityContext previousSecurityContext = SecurityContextHolder.getContext();
+			String previousLocale = Localization.getLocale();
+			ServletRequestAttributes attributes = new ServletRequestAttributes(request, response);
+			RequestContextHolder.setRequestAttributes(attributes);
+			SecurityContextHolder.setContext(iSecurityContext);
+			Localization.setLocale(iLocale);
+			perThreadRequest.set(request);
+			perThreadResponse.set(response);
+			try {
+				SessionContext context = getSessionContext();
+				ApplicationProperties.setSessionId(context.getUser() == null ? null : context.getUser().getCurrentAcademicSessionId());
+				processAndWriteResponse(request, response, iRequest);
+			} catch (Throwable e) {
+				doUnexpectedFailure(e);
+			} finally {
+				attributes.requestCompleted();
+				perThreadRequest.set(null);
+				perThreadResponse.set(null);
+				if (previousAttributes == null) RequestContextHolder.resetRequestAttributes();
+				else RequestContextHolder.setRequestAttributes(previousAttributes);
+				SecurityContextHolder.setContext(previousSecurityContext);
+				if (previousLocale == null) Localization.removeLocale();
+				else Localization.setLocale(previousLocale);
+				Formats.removeFormats();
+				ApplicationProperties.setSessionId(null);
+				HibernateUtil.closeCurrentThreadSessions();
+				iAsyncContext.complete();
+			}
+		}
 	}
 	
 	public static <T extends GwtRpcResponse> GwtRpcImplementation<GwtRpcRequest<T>, T> getImplementation(Class<? extends GwtRpcRequest<T>> requestClass, ApplicationContext applicationContext) throws BeansException {
@@ -218,6 +359,13 @@ public class GwtRpcServlet extends RemoteServiceServlet implements GwtRpcService
 	}
 	
 	private <T extends GwtRpcResponse> void log(GwtRpcRequest<T> request, T response, Throwable exception, long time, SessionContext context, GwtRpcLogging logging) {
+		try {
+			MetricsRegistry.getInstance().histogram("unitime_rpc_request_seconds", "GWT RPC request execution time", "request", request.getClass().getSimpleName()).record(time, TimeUnit.MILLISECONDS);
+			if (exception != null)
+				MetricsRegistry.getInstance().counter("unitime_rpc_errors_total", "GWT RPC requests that have failed", "request", request.getClass().getSimpleName()).increment();
+		} catch (Throwable t) {
+			sLog.warn("Failed to record request metrics: " + t.getMessage(), t);
+		}
 		try {
 			if (iSaver == null) return;
 			if (logging != null) {
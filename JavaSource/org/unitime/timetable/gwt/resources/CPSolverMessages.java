@@ -110,9 +110,15 @@ public interface CPSolverMessages extends Messages, Constants {
 	@DefaultMessage("Model successfully loaded.")
 	String infoModelLoaded();
 	
+	@DefaultMessage("Solver was passivated in {0} seconds ({1} kB), activated in {2} seconds.")
+	String infoSolverActivated(String passivationTime, String size, String activationTime);
+	
 	@DefaultMessage("Using room availability that was updated on {0}.")
 	String infoUsingRoomAvailability(String timeStamp);
 	
+	@DefaultMessage("{0} took {1} seconds.")
+	String infoPhaseTime(String phase, String seconds);
+	
 	@DefaultMessage("Posted {0} constraint between {1} ({2})")
 	String infoPostedConstraint(String type, String classes, String prefernce);
 	
@@ -439,6 +445,9 @@ public interface CPSolverMessages extends Messages, Constants {
 	@DefaultMessage("Loading room availabilities ...")
 	String phaseLoadRoomAvailabilities();
 	
+	@DefaultMessage("Loading room and instructor availabilities ...")
+	String phaseLoadCommittedAvailabilities();
+	
 	@DefaultMessage("Loading instructor distr. constraints for {0} ...")
 	String phaseLoadInstructorGroupConstraints(String department);
 	
@@ -511,6 +520,9 @@ public interface CPSolverMessages extends Messages, Constants {
 	@DefaultMessage("Loading instructor availability...")
 	String phaseLoadingInstructorAvailability();
 	
+	@DefaultMessage("Loading room and instructor availability...")
+	String phaseLoadingAvailability();
+	
 	@DefaultMessage("Posting automatic {0} {1} constraints...")
 	String phasePostingAutomaticConstraint(String preference, String type);
 	
@@ -1088,6 +1088,9 @@ public interface StudentSectioningMessages extends Messages {
 	@DefaultMessage("Academic session is not available for student scheduling.")
 	String exceptionNoServerForSession();
 
+	@DefaultMessage("Student scheduling server is too busy, please try again later.")
+	String exceptionServerBusy();
+
 	@DefaultMessage("Wrong class or instructional offering.")
 	String exceptionBadClassOrOffering();
 	
@@ -23,6 +23,8 @@ package org.unitime.timetable.model;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
@@ -33,6 +35,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
+import org.hibernate.Transaction;
 import org.hibernate.query.Query;
 import org.hibernate.proxy.HibernateProxy;
 import org.unitime.commons.Debug;
@@ -42,6 +45,7 @@ import org.unitime.timetable.model.base.BaseChangeLog;
 import org.unitime.timetable.model.dao.ChangeLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
 import org.unitime.timetable.security.SessionContext;
+import org.unitime.timetable.security.evaluation.PermissionCache;
 import org.unitime.timetable.util.Formats;
 
 /**
@@ -183,6 +187,7 @@ public class ChangeLog extends BaseChangeLog implements Comparable<ChangeLog> {
             Operation operation,
             SubjectArea subjArea,
             Department dept) {
+        PermissionCache.invalidate();
         try {
         	if (!context.isAuthenticated()) {
         		Debug.warning("Unable to add change log -- no user.");
@@ -212,6 +217,26 @@ public class ChangeLog extends BaseChangeLog implements Comparable<ChangeLog> {
         }
     }
         
+    /**
+     * Forget all remembered permission checks. As the change is not visible to other transactions until committed,
+     * the permission cache is invalidated once more after the transaction of the given hibernate session is committed.
+     */
+    protected static void invalidatePermissionCache(org.hibernate.Session hibSession) {
+        PermissionCache.invalidate();
+        Transaction tx = hibSession.getTransaction();
+        if (tx != null && tx.isActive()) {
+            tx.registerSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {}
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == Status.STATUS_COMMITTED)
+                        PermissionCache.invalidate();
+                }
+            });
+        }
+    }
+        
     public static void addChange(
             org.hibernate.Session hibSession,
             TimetableManager manager,
@@ -246,6 +271,7 @@ public class ChangeLog extends BaseChangeLog implements Comparable<ChangeLog> {
             Operation operation,
             SubjectArea subjArea,
             Department dept) {
+        invalidatePermissionCache(hibSession != null ? hibSession : ChangeLogDAO.getInstance().getSession());
         try {
             if (session==null) {
                 Debug.warning("Unable to add change log -- no academic session.");
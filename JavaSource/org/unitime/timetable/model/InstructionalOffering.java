@@ -29,6 +29,7 @@ import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -245,41 +246,6 @@ public class InstructionalOffering extends BaseInstructionalOffering {
 		query.append("select distinct io ");
 		query.append(" from InstructionalOffering as io inner join io.courseOfferings as co ");
 
-		if (fetchStructure) {
-			query.append("left join fetch io.courseOfferings as cox ");
-			query.append("left join fetch io.instrOfferingConfigs as ioc ");
-			query.append("left join fetch ioc.schedulingSubparts as ss ");
-			query.append("left join fetch ss.classes as c ");
-			query.append("left join fetch ss.childSubparts as css ");
-			query.append("left join fetch c.childClasses as cc ");
-		}
-
-		if (fetchCredits)
-			query.append("left join fetch ss.creditConfigs as ssc ");
-
-		if (fetchPreferences || fetchInstructors) {
-			query.append("left join fetch c.classInstructors as ci ");
-			query.append("left join fetch ci.instructor as di ");
-		}
-
-		if (fetchAssignments) {
-			query.append("left join fetch c.assignments as ca ");
-			query.append("left join fetch ca.rooms as car ");
-		}
-
-		if (fetchPreferences) {
-			query.append("left join fetch c.preferences as cp ");
-			query.append("left join fetch ss.preferences as ssp ");
-			query.append("left join fetch di.preferences as dip ");
-		}
-
-		if (fetchReservations) {
-			query.append("left join fetch ioc.individualReservations as ir ");
-			query.append("left join fetch ioc.studentGroupReservations as sgr ");
-			query.append("left join fetch ioc.acadAreaReservations as aar ");
-			query.append("left join fetch ioc.posReservations as pr ");
-		}
-
 		query.append(" where io.session.uniqueId=:sessionId ");
 
 		if (ApplicationProperty.CourseOfferingTitleSearch.isTrue() && courseNbr != null && courseNbr.length() > 2) {
@@ -340,12 +306,64 @@ public class InstructionalOffering extends BaseInstructionalOffering {
         TreeSet<InstructionalOffering> ts = new TreeSet<InstructionalOffering>(new InstructionalOfferingComparator(Long.valueOf(subjectAreaId)));
 
         long sTime = new java.util.Date().getTime();
-		ts.addAll(q.list());
+        List<InstructionalOffering> offerings = q.list();
+        fetch(hibSession, offerings, fetchStructure, fetchCredits, fetchInstructors, fetchPreferences, fetchAssignments, fetchReservations);
+		ts.addAll(offerings);
 		long eTime = new java.util.Date().getTime();
         Debug.debug("fetch time = " + (eTime - sTime));
 
         return ts;
 	}
+	
+	/**
+	 * Load the requested collections of the given offerings into the session. Each collection is loaded by a separate
+	 * query (for up to 1000 offerings at a time), instead of one query with all the fetch joins that returns
+	 * a cartesian product of the collections.
+	 */
+	public static void fetch(
+			org.hibernate.Session hibSession,
+			Collection<InstructionalOffering> offerings,
+	        boolean fetchStructure,
+	        boolean fetchCredits,
+	        boolean fetchInstructors,
+	        boolean fetchPreferences,
+	        boolean fetchAssignments,
+	        boolean fetchReservations) {
+		List<String> queries = new ArrayList<String>();
+		if (fetchStructure) {
+			queries.add("select distinct io from InstructionalOffering io left join fetch io.courseOfferings where io.uniqueId in :offeringIds");
+			queries.add("select distinct io from InstructionalOffering io left join fetch io.instrOfferingConfigs where io.uniqueId in :offeringIds");
+			queries.add("select distinct ioc from InstrOfferingConfig ioc left join fetch ioc.schedulingSubparts where ioc.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct ss from SchedulingSubpart ss left join fetch ss.classes where ss.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct ss from SchedulingSubpart ss left join fetch ss.childSubparts where ss.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct c from Class_ c left join fetch c.childClasses where c.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+		}
+		if (fetchCredits)
+			queries.add("select distinct ss from SchedulingSubpart ss left join fetch ss.creditConfigs where ss.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+		if (fetchPreferences || fetchInstructors)
+			queries.add("select distinct c from Class_ c left join fetch c.classInstructors ci left join fetch ci.instructor where c.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+		if (fetchAssignments) {
+			queries.add("select distinct c from Class_ c left join fetch c.assignments where c.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct a from Assignment a left join fetch a.rooms where a.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+		}
+		if (fetchPreferences) {
+			queries.add("select distinct c from Class_ c left join fetch c.preferences where c.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct ss from SchedulingSubpart ss left join fetch ss.preferences where ss.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+			queries.add("select distinct di from ClassInstructor ci inner join ci.instructor di left join fetch di.preferences where ci.classInstructing.schedulingSubpart.instrOfferingConfig.instructionalOffering.uniqueId in :offeringIds");
+		}
+		if (fetchReservations)
+			queries.add("select distinct io from InstructionalOffering io left join fetch io.reservations where io.uniqueId in :offeringIds");
+		if (queries.isEmpty() || offerings.isEmpty()) return;
+		
+		List<Long> offeringIds = new ArrayList<Long>(offerings.size());
+		for (InstructionalOffering offering: offerings)
+			offeringIds.add(offering.getUniqueId());
+		for (int i = 0; i < offeringIds.size(); i += 1000) {
+			List<Long> ids = offeringIds.subList(i, Math.min(i + 1000, offeringIds.size()));
+			for (String query: queries)
+				hibSession.createQuery(query, Object.class).setParameterList("offeringIds", ids, Long.class).list();
+		}
+	}
 
     /**
      * Deletes all classes for this offering
@@ -22,6 +22,9 @@ package org.unitime.timetable.model;
 
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
 
@@ -42,6 +45,7 @@ import org.unitime.timetable.model.dao.MeetingDAO;
 import org.unitime.timetable.model.dao.RoomDAO;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.RoomOccupancyIndex;
 
 /**
  * @author Tomas Muller, Stephanie Schluttenhofer, Zuzana Mullerova
@@ -74,6 +78,13 @@ public class Meeting extends BaseMeeting implements Comparable<Meeting> {
 		CANCELLED,
 		;
 	}
+	
+	@PostPersist
+	@PostUpdate
+	@PostRemove
+	protected void meetingChanged() {
+		RoomOccupancyIndex.meetingChanged(this);
+	}
 
 	@Override
 	public Object clone()  {
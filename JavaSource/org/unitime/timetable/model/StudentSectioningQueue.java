@@ -23,6 +23,8 @@ package org.unitime.timetable.model;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Table;
 import jakarta.persistence.Transient;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
 
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
@@ -37,6 +39,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -45,7 +48,11 @@ import org.dom4j.Element;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.SAXReader;
 import org.dom4j.io.XMLWriter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.hibernate.HibernateException;
+import org.hibernate.Transaction;
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.base.BaseStudentSectioningQueue;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.security.UserContext;
@@ -58,6 +65,7 @@ import org.unitime.timetable.security.UserContext;
 @Table(name = "sectioning_queue")
 public class StudentSectioningQueue extends BaseStudentSectioningQueue implements Comparable<StudentSectioningQueue> {
 	private static final long serialVersionUID = 8492171207847794888L;
+	private static Log sLog = LogFactory.getLog(StudentSectioningQueue.class);
 
 	public StudentSectioningQueue() {
 		super();
@@ -154,6 +162,7 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.persist(q);
+		publish(hibSession, q);
 	}
 	
 	protected static void addItem(org.hibernate.Session hibSession, UserContext user, Long sessionId, Type type, Long... ids) {
@@ -173,6 +182,58 @@ public class StudentSectioningQueue extends BaseStudentSectioningQueue implement
 		}
 		q.setMessage(d);
 		hibSession.persist(q);
+		publish(hibSession, q);
+	}
+	
+	/**
+	 * Listener that is notified when a new item is added to the student sectioning queue
+	 * (registered by the online student scheduling container).
+	 */
+	public static interface QueueListener {
+		public void queueChanged(Long sessionId, Date timeStamp);
+	}
+	private static List<QueueListener> sListeners = new CopyOnWriteArrayList<QueueListener>();
+	
+	public static void addListener(QueueListener listener) {
+		sListeners.add(listener);
+	}
+	
+	public static void removeListener(QueueListener listener) {
+		sListeners.remove(listener);
+	}
+	
+	/**
+	 * Notify the queue listeners about the new queue item once the current transaction is committed.
+	 * The servers still read the queue from the database (the notification only wakes up the updater of the academic session).
+	 * Without an active transaction, the item is not visible to the servers before the caller commits, so the change is left
+	 * to the regular queue check.
+	 */
+	protected static void publish(org.hibernate.Session hibSession, StudentSectioningQueue q) {
+		if (sListeners.isEmpty() || !ApplicationProperty.OnlineSchedulingQueuePushEnabled.isTrue()) return;
+		final Long sessionId = q.getSessionId();
+		final Date timeStamp = q.getTimeStamp();
+		Transaction tx = hibSession.getTransaction();
+		if (tx != null && tx.isActive()) {
+			tx.registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {}
+				@Override
+				public void afterCompletion(int status) {
+					if (status == Status.STATUS_COMMITTED)
+						publish(sessionId, timeStamp);
+				}
+			});
+		}
+	}
+	
+	protected static void publish(Long sessionId, Date timeStamp) {
+		for (QueueListener listener: sListeners) {
+			try {
+				listener.queueChanged(sessionId, timeStamp);
+			} catch (Exception e) {
+				sLog.warn("Failed to notify online student scheduling servers: " + e.getMessage(), e);
+			}
+		}
 	}
 	
 	@Transient
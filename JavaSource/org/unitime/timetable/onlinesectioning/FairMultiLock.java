@@ -0,0 +1,385 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cpsolver.ifs.util.ToolBox;
+import org.unitime.timetable.util.metrics.LatencyHistogram;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/**
+ * Alternative to {@link MultiLock} that does not serialize all the lock and unlock operations through a single lock.
+ * Each id has its own fair (FIFO) semaphore that is created when needed and dropped when there is nobody holding or waiting for it.
+ * The ids are always acquired in the same (ascending) order to avoid deadlocks. The {@link #lockAll()} takes all the permits
+ * of a fair global semaphore of which every individual lock holds one permit, so that it waits for the existing locks to be released
+ * while the new lock requests are queued behind it. Since semaphores have no owner, a lock can be released by a different thread
+ * (as needed by {@link OnlineSectioningServer#unlockOffering(Long)}).<br>
+ * The lock also keeps track of the lock wait times (histogram) and of the contention on each id (number of times somebody
+ * had to wait and the total wait time), see {@link #getWaitTimes()} and {@link #getContention(int)}. Only the most contended ids
+ * are kept. Both are exported through the {@link MetricsRegistry}: the wait times as unitime_sectioning_lock_wait_seconds,
+ * the total wait time of the most contended ids as unitime_sectioning_lock_contention_seconds.
+ * 
+ * @author Tomas Muller
+ */
+public class FairMultiLock extends MultiLock {
+	private static final int sContentionLimit = 1000;
+	private static final int sContentionExported = 10;
+	private static Map<String, WeakReference<FairMultiLock>> sLocks = new ConcurrentHashMap<String, WeakReference<FairMultiLock>>();
+	private Log iLog;
+	private Semaphore iGlobal = new Semaphore(Integer.MAX_VALUE, true);
+	private Map<Long, Entry> iEntries = new ConcurrentHashMap<Long, Entry>();
+	private Map<Long, Contention> iContention = new ConcurrentHashMap<Long, Contention>();
+	private LatencyHistogram iWaitHistogram = null;
+	
+	private static BiFunction<Long, Entry, Entry> sAcquire = new BiFunction<Long, Entry, Entry>() {
+		@Override
+		public Entry apply(Long id, Entry entry) {
+			if (entry == null) entry = new Entry();
+			entry.iUsers.incrementAndGet();
+			return entry;
+		}
+	};
+	
+	private static BiFunction<Long, Entry, Entry> sRelease = new BiFunction<Long, Entry, Entry>() {
+		@Override
+		public Entry apply(Long id, Entry entry) {
+			if (entry == null) return null;
+			return entry.iUsers.decrementAndGet() <= 0 ? null : entry;
+		}
+	};
+
+	static {
+		MetricsRegistry.getInstance().gauge("unitime_sectioning_lock_contention_seconds", "Online student scheduling most contended locks: total time spent waiting for the lock (label is session and offering id, or negative student id)", "lock", new MetricsRegistry.LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				Map<String, Double> ret = new TreeMap<String, Double>();
+				for (Map.Entry<String, WeakReference<FairMultiLock>> e: sLocks.entrySet()) {
+					FairMultiLock lock = e.getValue().get();
+					if (lock == null) {
+						sLocks.remove(e.getKey(), e.getValue());
+						continue;
+					}
+					for (Map.Entry<Long, Contention> c: lock.top(sContentionExported))
+						ret.put(e.getKey() + " " + c.getKey(), c.getValue().iWaitTime.get() / 1000.0);
+				}
+				return ret;
+			}
+		});
+	}
+
+	public FairMultiLock() {
+		iLog = LogFactory.getLog(FairMultiLock.class.getName() + ".lock");
+		iWaitHistogram = new LatencyHistogram();
+	}
+	
+	public FairMultiLock(AcademicSessionInfo session) {
+		iLog = LogFactory.getLog(FairMultiLock.class.getName() + ".lock[" + session.toCompactString() + "]");
+		iWaitHistogram = MetricsRegistry.getInstance().histogram("unitime_sectioning_lock_wait_seconds", "Online student scheduling time spent waiting for a lock", "session", session.toCompactString());
+		sLocks.put(session.toCompactString(), new WeakReference<FairMultiLock>(this));
+	}
+	
+	private static List<Long> sorted(Collection<Long> ids) {
+		return new ArrayList<Long>(new TreeSet<Long>(ids));
+	}
+	
+	@Override
+	public Unlock lock(Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) return new Unlock(ids);
+		return tryLock(ids, -1);
+	}
+	
+	/**
+	 * Lock the given ids, waiting at most the given number of milliseconds.
+	 * @param ids ids to lock
+	 * @param timeout timeout in milliseconds, negative value means no timeout
+	 * @return lock that is to be released, null when it was not possible to acquire all the ids in the given time
+	 */
+	public Unlock tryLock(Collection<Long> ids, long timeout) {
+		if (ids == null || ids.isEmpty()) return new Unlock(ids);
+		iLog.debug("Locking " + ids + " ...");
+		long t0 = System.currentTimeMillis();
+		long deadline = (timeout < 0 ? -1 : t0 + timeout);
+		if (!acquire(iGlobal, 1, deadline)) {
+			iLog.debug("Failed to lock " + ids + " in " + timeout + " ms");
+			return null;
+		}
+		List<Long> acquired = new ArrayList<Long>(ids.size());
+		for (Long id: sorted(ids)) {
+			Entry entry = iEntries.compute(id, sAcquire);
+			long t1 = System.currentTimeMillis();
+			if (entry.iPermit.tryAcquire()) {
+				acquired.add(id);
+				continue;
+			}
+			boolean success = acquire(entry.iPermit, 1, deadline);
+			contention(id).waited(System.currentTimeMillis() - t1);
+			if (!success) {
+				iEntries.compute(id, sRelease);
+				release(acquired);
+				iGlobal.release();
+				record(System.currentTimeMillis() - t0);
+				iLog.debug("Failed to lock " + ids + " in " + timeout + " ms");
+				return null;
+			}
+			acquired.add(id);
+		}
+		record(System.currentTimeMillis() - t0);
+		iLog.debug("Locked: " + ids);
+		return new Unlock(acquired);
+	}
+	
+	private boolean acquire(Semaphore semaphore, int permits, long deadline) {
+		if (deadline < 0) {
+			semaphore.acquireUninterruptibly(permits);
+			return true;
+		}
+		try {
+			return semaphore.tryAcquire(permits, Math.max(0l, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	private void release(Collection<Long> ids) {
+		for (Long id: ids) {
+			Entry entry = iEntries.get(id);
+			if (entry != null) {
+				entry.iPermit.release();
+				iEntries.compute(id, sRelease);
+			}
+		}
+	}
+	
+	@Override
+	protected void unlock(Collection<Long> ids) {
+		if (ids == null || ids.isEmpty()) return;
+		iLog.debug("Unlocking " + ids + " ...");
+		release(ids);
+		iGlobal.release();
+		iLog.debug("Unlocked: " + ids);
+	}
+	
+	@Override
+	public UnlockAll lockAll() {
+		iLog.debug("Locking all ...");
+		long t0 = System.currentTimeMillis();
+		iGlobal.acquireUninterruptibly(Integer.MAX_VALUE);
+		record(System.currentTimeMillis() - t0);
+		iLog.debug("Locked: all");
+		return new UnlockAll();
+	}
+	
+	@Override
+	public void unlockAll() {
+		iLog.debug("Unlocking all ...");
+		iGlobal.release(Integer.MAX_VALUE);
+		iLog.debug("Unlocked: all");
+	}
+	
+	@Override
+	public Set<Long> locked() {
+		Set<Long> ret = new TreeSet<Long>();
+		for (Map.Entry<Long, Entry> e: iEntries.entrySet())
+			if (e.getValue().iPermit.availablePermits() == 0) ret.add(e.getKey());
+		return ret;
+	}
+	
+	@Override
+	public boolean isLocked(Long id) {
+		Entry entry = iEntries.get(id);
+		return entry != null && entry.iPermit.availablePermits() == 0;
+	}
+	
+	/**
+	 * Number of threads waiting for the given id
+	 */
+	public int getQueueLength(Long id) {
+		Entry entry = iEntries.get(id);
+		return entry == null ? 0 : entry.iPermit.getQueueLength();
+	}
+	
+	private Contention contention(Long id) {
+		Contention c = iContention.get(id);
+		if (c == null) {
+			c = new Contention();
+			Contention other = iContention.putIfAbsent(id, c);
+			if (other != null) c = other;
+			else if (iContention.size() > 2 * sContentionLimit) prune();
+		}
+		return c;
+	}
+	
+	/**
+	 * Keep only the {@link #sContentionLimit} most contended ids
+	 */
+	private synchronized void prune() {
+		if (iContention.size() <= 2 * sContentionLimit) return;
+		List<Map.Entry<Long, Contention>> entries = top(-1);
+		for (Map.Entry<Long, Contention> e: entries.subList(sContentionLimit, entries.size()))
+			iContention.remove(e.getKey(), e.getValue());
+	}
+	
+	private List<Map.Entry<Long, Contention>> top(int limit) {
+		List<Map.Entry<Long, Contention>> entries = new ArrayList<Map.Entry<Long, Contention>>(iContention.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Long, Contention>>() {
+			@Override
+			public int compare(Map.Entry<Long, Contention> e1, Map.Entry<Long, Contention> e2) {
+				int cmp = Long.compare(e2.getValue().iWaitTime.get(), e1.getValue().iWaitTime.get());
+				if (cmp != 0) return cmp;
+				return e1.getKey().compareTo(e2.getKey());
+			}
+		});
+		return (limit > 0 && entries.size() > limit ? entries.subList(0, limit) : entries);
+	}
+	
+	private void record(long waitTime) {
+		iWaitHistogram.record(waitTime, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Lock wait times histogram
+	 */
+	public LatencyHistogram getWaitTimes() {
+		return iWaitHistogram;
+	}
+	
+	/**
+	 * Most contended ids: id (offering id, or negative student id) and the number of times somebody had to wait for it and the total wait time 
+	 * @param limit maximal number of ids to return
+	 */
+	public Map<Long, String> getContention(int limit) {
+		Map<Long, String> ret = new LinkedHashMap<Long, String>();
+		for (Map.Entry<Long, Contention> e: top(limit))
+			ret.put(e.getKey(), e.getValue().toString());
+		return ret;
+	}
+	
+	/**
+	 * Reset lock wait statistics
+	 */
+	public void resetStatistics() {
+		iContention.clear();
+		iWaitHistogram.reset();
+	}
+	
+	private static class Entry {
+		private Semaphore iPermit = new Semaphore(1, true);
+		private AtomicInteger iUsers = new AtomicInteger(0);
+	}
+	
+	private static class Contention {
+		private AtomicLong iCount = new AtomicLong(0);
+		private AtomicLong iWaitTime = new AtomicLong(0);
+		
+		private void waited(long time) {
+			iCount.incrementAndGet();
+			iWaitTime.addAndGet(time);
+		}
+		
+		@Override
+		public String toString() {
+			return iCount.get() + " waits, " + iWaitTime.get() + " ms";
+		}
+	}
+	
+	public static void main(String[] args) {
+		try {
+			final FairMultiLock lock = new FairMultiLock();
+			for (int i = 1; i <= 1000; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							while (true) {
+								int nrCourses = 2 + ToolBox.random(9);
+								Set<Long> courses = new HashSet<Long>();
+								for (int i = 0; i < nrCourses; i++) {
+									long courseId;
+									do {
+										courseId = ToolBox.random(1000);
+									} while (!courses.add(courseId));
+								}
+								Unlock l = lock.lock(courses);
+								try {
+									Thread.sleep(ToolBox.random(100));
+								} catch (InterruptedException e) {}
+								l.release();
+							}
+						} catch (Exception e) {
+							System.err.println(Thread.currentThread().getName() + e.getMessage());
+							e.printStackTrace();
+						}
+					}
+				});
+				t.setName("[T" + i + "]: ");
+				t.setDaemon(true);
+				t.start();
+			}
+			for (int i = 1; i <= 3; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (true) {
+							try {
+								Thread.sleep(ToolBox.random(5000));
+							} catch (InterruptedException e) {}
+							lock.lockAll();
+							try {
+								Thread.sleep(ToolBox.random(1000));
+							} catch (InterruptedException e) {}
+							lock.unlockAll();
+						}
+					}
+				});
+				t.setName("[A" + i + "]: ");
+				t.setDaemon(true);
+				t.start();		
+			}
+			for (int i = 0; i < 6; i++) {
+				Thread.sleep(10000);
+				System.out.println("Wait times: " + lock.getWaitTimes());
+				System.out.println("Contention: " + lock.getContention(10));
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+}
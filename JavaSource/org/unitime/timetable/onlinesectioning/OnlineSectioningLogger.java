@@ -25,34 +25,59 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Vector;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.CacheMode;
+import org.hibernate.Transaction;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.StudentSectioningConstants;
 import org.unitime.timetable.gwt.server.DayCode;
 import org.unitime.timetable.model.Session;
-import org.unitime.timetable.model.Student;
 import org.unitime.timetable.model.dao.OnlineSectioningLogDAO;
 import org.unitime.timetable.model.dao.SessionDAO;
-import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 /**
+ * Online sectioning log writer. Recorded actions are put in a bounded non-blocking queue (see unitime.sectioning.log.limit),
+ * which is persisted in batches (see unitime.sectioning.log.batchSize) either when there are enough actions waiting
+ * or when the flush interval (see unitime.sectioning.log.flushInterval) has passed, whichever comes first.
+ * 
  * @author Tomas Muller
  */
 public class OnlineSectioningLogger extends Thread {
 	private static Log sLog = LogFactory.getLog(OnlineSectioningLogger.class);
 	protected static StudentSectioningConstants CONST = Localization.create(StudentSectioningConstants.class);
-	private List<OnlineSectioningLog.Action> iActions = new Vector<OnlineSectioningLog.Action>();
-	private boolean iActive = false;
+	private Queue<OnlineSectioningLog.Action> iActions = new ConcurrentLinkedQueue<OnlineSectioningLog.Action>();
+	private AtomicInteger iQueueSize = new AtomicInteger(0);
+	private AtomicLong iQueued = new AtomicLong(0), iPersisted = new AtomicLong(0), iDropped = new AtomicLong(0), iSkipped = new AtomicLong(0), iFailed = new AtomicLong(0);
+	private volatile boolean iActive = false;
 	private boolean iEnabled = false;
 	private int iLogLimit = -1;
+	private int iBatchSize = 500;
+	private long iFlushInterval = 60000;
+	private long iLastDropped = 0, iLastSkipped = 0;
 	private PrintWriter iOut = null;
+	private Map<Long, String> iStudentExternalIds = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+			return size() > 10000;
+		}
+	};
 	
 	private static OnlineSectioningLogger sInstance = null;
 	
@@ -84,26 +109,65 @@ public class OnlineSectioningLogger extends Thread {
 		setDaemon(true);
 		iEnabled = ApplicationProperty.OnlineSchedulingLoggingEnabled.isTrue(); 
 		iLogLimit = ApplicationProperty.OnlineSchedulingLogLimit.intValue();
+		iBatchSize = Math.max(1, ApplicationProperty.OnlineSchedulingLogBatchSize.intValue());
+		iFlushInterval = 1000l * Math.max(1, ApplicationProperty.OnlineSchedulingLogFlushInterval.intValue());
 		try {
 			if (ApplicationProperty.OnlineSchedulingLogFile.value() != null)
 				iOut = new PrintWriter(new FileWriter(new File(ApplicationProperty.OnlineSchedulingLogFile.value()), true));
 		} catch (IOException e) {
 			sLog.warn("Unable to create sectioning log: " + e.getMessage(), e);
 		}
+		MetricsRegistry.getInstance().gauge("unitime_sectioning_log_actions", "Online student scheduling log: actions waiting to be persisted (queue) and the number of queued, persisted, dropped, and failed actions", "state", new MetricsRegistry.LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				OnlineSectioningLogger logger = sInstance;
+				return logger == null ? null : logger.getStatistics();
+			}
+		});
 	}
 	
 	public boolean isEnabled() { return iEnabled; }
 	public void setEnabled(boolean enabled) { iEnabled = enabled; }
 	public boolean isActive() { return iActive; }
+	
+	/** Number of actions currently waiting to be persisted */
+	public int getQueueSize() { return iQueueSize.get(); }
+	/** Number of actions that have been queued since the logger was started */
+	public long getQueuedCount() { return iQueued.get(); }
+	/** Number of actions that have been persisted since the logger was started */
+	public long getPersistedCount() { return iPersisted.get(); }
+	/** Number of actions that have been dropped because the queue was full */
+	public long getDroppedCount() { return iDropped.get(); }
+	/** Number of actions that have not been persisted because the student external id could not be resolved */
+	public long getSkippedCount() { return iSkipped.get(); }
+	/** Number of actions that failed to persist */
+	public long getFailedCount() { return iFailed.get(); }
+	
+	public Map<String, Long> getStatistics() {
+		Map<String, Long> ret = new LinkedHashMap<String, Long>();
+		ret.put("queue", Long.valueOf(getQueueSize()));
+		ret.put("queued", getQueuedCount());
+		ret.put("persisted", getPersistedCount());
+		ret.put("dropped", getDroppedCount());
+		ret.put("skipped", getSkippedCount());
+		ret.put("failed", getFailedCount());
+		return ret;
+	}
 
 	public void record(OnlineSectioningLog.Log log) {
 		if (log == null || !isEnabled() || !isActive()) return;
 		for (OnlineSectioningLog.Action action: log.getActionList()) {
 			if (action.hasStartTime() && action.hasStudent() && action.hasOperation() && action.hasSession() && ApplicationProperty.OnlineSchedulingLogOperation.isTrue(action.getOperation())
 				&& ApplicationProperty.OnlineSchedulingLogOperation.isTrue(action.getOperation() + "." + (action.hasResult() ? action.getResult().name() : "NULL"))) {
-				synchronized (iActions) {
-					if (iLogLimit <= 0 || iActions.size() < iLogLimit)
-						iActions.add(action);
+				if (iLogLimit > 0 && iQueueSize.incrementAndGet() > iLogLimit) {
+					iQueueSize.decrementAndGet();
+					iDropped.incrementAndGet();
+					LockSupport.unpark(this);
+				} else {
+					if (iLogLimit <= 0) iQueueSize.incrementAndGet();
+					iActions.offer(action);
+					iQueued.incrementAndGet();
+					if (iQueueSize.get() >= iBatchSize) LockSupport.unpark(this);
 				}
 				if (iOut != null) {
 					synchronized (iOut) {
@@ -244,90 +308,160 @@ public class OnlineSectioningLogger extends Thread {
 			return h + ":" + (m < 10 ? "0" : "") + m;
 	}
 	
+	protected void resolveStudentExternalIds(List<OnlineSectioningLog.Action> actions, org.hibernate.Session hibSession) {
+		Set<Long> studentIds = new HashSet<Long>();
+		synchronized (iStudentExternalIds) {
+			for (OnlineSectioningLog.Action q: actions) {
+				if (q.getStudent().hasExternalId() && !q.getStudent().getExternalId().isEmpty()) continue;
+				if (!q.getStudent().hasUniqueId() || iStudentExternalIds.containsKey(q.getStudent().getUniqueId())) continue;
+				studentIds.add(q.getStudent().getUniqueId());
+			}
+		}
+		if (studentIds.isEmpty()) return;
+		List<Long> ids = new ArrayList<Long>(studentIds);
+		for (int i = 0; i < ids.size(); i += 1000) {
+			for (Object[] o: hibSession.createQuery(
+					"select s.uniqueId, s.externalUniqueId from Student s where s.uniqueId in :studentIds", Object[].class)
+					.setParameterList("studentIds", ids.subList(i, Math.min(i + 1000, ids.size()))).list()) {
+				synchronized (iStudentExternalIds) {
+					iStudentExternalIds.put((Long)o[0], (String)o[1]);
+				}
+			}
+		}
+	}
+	
+	protected String getStudentExternalId(OnlineSectioningLog.Action q) {
+		if (q.getStudent().hasExternalId() && !q.getStudent().getExternalId().isEmpty())
+			return q.getStudent().getExternalId();
+		synchronized (iStudentExternalIds) {
+			return iStudentExternalIds.get(q.getStudent().getUniqueId());
+		}
+	}
+	
+	protected org.unitime.timetable.model.OnlineSectioningLog createLog(OnlineSectioningLog.Action q, String studentExternalId, Session session) {
+		org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
+		log.setAction(q.toByteArray());
+		log.setOperation(q.getOperation());
+		log.setStudent(studentExternalId);
+		log.setTimeStamp(new Date(q.getStartTime()));
+		if (q.hasResult())
+			log.setResult(q.getResult().getNumber());
+		if (q.hasUser() && q.getUser().hasExternalId())
+			log.setUser(q.getUser().getExternalId());
+		if (q.hasCpuTime())
+			log.setCpuTime(q.getCpuTime());
+		if (q.hasStartTime() && q.hasEndTime())
+			log.setWallTime(q.getEndTime() - q.getStartTime());
+		if (q.hasApiGetTime())
+			log.setApiGetTime(q.getApiGetTime());
+		if (q.hasApiPostTime())
+			log.setApiPostTime(q.getApiPostTime());
+		if (q.hasApiException())
+			log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
+		try {
+			String message = getMessage(q);
+			if (message != null && !message.isEmpty())
+				log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
+		} catch (Exception e) {
+			if (!q.getMessageList().isEmpty()) {
+				String message = null; int level = 0;
+				for (OnlineSectioningLog.Message m: q.getMessageList()) {
+					if (message != null && !message.isEmpty() && (!m.hasLevel() || level > m.getLevel().getNumber())) continue;
+					if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
+					else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
+				}
+				if (message != null && !message.isEmpty())
+					log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
+			}
+		}
+		log.setSession(session);
+		return log;
+	}
+	
+	/**
+	 * Persist the given actions in one transaction, using JDBC batching of the inserts
+	 */
+	protected void persist(List<OnlineSectioningLog.Action> actions) {
+		sLog.debug("Persisting " + actions.size() + " actions...");
+		org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
+		hibSession.setCacheMode(CacheMode.IGNORE);
+		hibSession.setJdbcBatchSize(iBatchSize);
+		Transaction tx = null;
+		try {
+			tx = hibSession.beginTransaction();
+			resolveStudentExternalIds(actions, hibSession);
+			Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
+			int persisted = 0;
+			for (OnlineSectioningLog.Action q: actions) {
+				String studentExternalId = getStudentExternalId(q);
+				if (studentExternalId == null || studentExternalId.isEmpty()) {
+					iSkipped.incrementAndGet();
+					continue;
+				}
+				Long sessionId = q.getSession().getUniqueId();
+				Session session = sessions.get(sessionId);
+				if (session == null) {
+					session = SessionDAO.getInstance().get(sessionId, hibSession);
+					sessions.put(sessionId, session);
+				}
+				hibSession.persist(createLog(q, studentExternalId, session));
+				persisted ++;
+			}
+			hibSession.flush();
+			tx.commit();
+			iPersisted.addAndGet(persisted);
+		} catch (Throwable t) {
+			iFailed.addAndGet(actions.size());
+			sLog.warn("Failed to save " + actions.size() + " log actions: " + t.getMessage(), t);
+			if (tx != null && tx.isActive()) {
+				try {
+					tx.rollback();
+				} catch (Exception e) {}
+			}
+		} finally {
+			hibSession.close();
+		}
+	}
+	
+	/**
+	 * Persist all the actions that are waiting in the queue, in batches of at most unitime.sectioning.log.batchSize actions
+	 */
+	protected void flush() {
+		long dropped = iDropped.get();
+		while (!iActions.isEmpty()) {
+			List<OnlineSectioningLog.Action> batch = new ArrayList<OnlineSectioningLog.Action>(iBatchSize);
+			OnlineSectioningLog.Action action;
+			while (batch.size() < iBatchSize && (action = iActions.poll()) != null) {
+				batch.add(action);
+				iQueueSize.decrementAndGet();
+			}
+			if (!batch.isEmpty()) persist(batch);
+		}
+		if (dropped > iLastDropped) {
+			sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, " + (dropped - iLastDropped) + " messages have been dropped.");
+			iLastDropped = dropped;
+		}
+		long skipped = iSkipped.get();
+		if (skipped > iLastSkipped) {
+			sLog.warn((skipped - iLastSkipped) + " log messages have not been persisted because the student could not be found.");
+			iLastSkipped = skipped;
+		}
+	}
+	
 	public void run() {
 		sLog.info("Online Sectioning Logger is up.");
 		try {
 			iActive = true;
+			long lastFlush = System.currentTimeMillis();
 			while (true) {
-				try {
-					sleep(60000);
-				} catch (InterruptedException e) {
-				}
-				List<OnlineSectioningLog.Action> actionsToSave = null;
-				synchronized (iActions) {
-					if (!iActions.isEmpty()) {
-						actionsToSave = new ArrayList<OnlineSectioningLog.Action>(iActions);
-						iActions.clear();
-					}
-				}
-				try {
-					if (actionsToSave != null) {
-						sLog.debug("Persisting " + actionsToSave.size() + " actions...");
-						if (iLogLimit > 0 && actionsToSave.size() >= iLogLimit)
-							sLog.warn("The limit of " + iLogLimit + " unpersisted log messages was reached, some messages have been dropped.");
-						org.hibernate.Session hibSession = OnlineSectioningLogDAO.getInstance().createNewSession();
-						hibSession.setCacheMode(CacheMode.IGNORE);
-						try {
-							Hashtable<Long, Session> sessions = new Hashtable<Long, Session>();
-							for (OnlineSectioningLog.Action q: actionsToSave) {
-								org.unitime.timetable.model.OnlineSectioningLog log = new org.unitime.timetable.model.OnlineSectioningLog();
-								log.setAction(q.toByteArray());
-								log.setOperation(q.getOperation());
-								String studentExternalId = (q.getStudent().hasExternalId() ? q.getStudent().getExternalId() : null);
-								if (studentExternalId == null || studentExternalId.isEmpty()) {
-									Student student = StudentDAO.getInstance().get(q.getStudent().getUniqueId(), hibSession);
-									if (student == null) continue;
-									studentExternalId = student.getExternalUniqueId();
-								}
-								log.setStudent(studentExternalId);
-								log.setTimeStamp(new Date(q.getStartTime()));
-								if (q.hasResult())
-									log.setResult(q.getResult().getNumber());
-								if (q.hasUser() && q.getUser().hasExternalId())
-									log.setUser(q.getUser().getExternalId());
-								if (q.hasCpuTime())
-									log.setCpuTime(q.getCpuTime());
-								if (q.hasStartTime() && q.hasEndTime())
-									log.setWallTime(q.getEndTime() - q.getStartTime());
-								if (q.hasApiGetTime())
-									log.setApiGetTime(q.getApiGetTime());
-								if (q.hasApiPostTime())
-									log.setApiPostTime(q.getApiPostTime());
-								if (q.hasApiException())
-									log.setApiException(q.getApiException() != null && q.getApiException().length() > 255 ? q.getApiException().substring(0, 255) : q.getApiException());
-								try {
-									String message = getMessage(q);
-									if (message != null && !message.isEmpty())
-										log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
-								} catch (Exception e) {
-									if (!q.getMessageList().isEmpty()) {
-										String message = null; int level = 0;
-										for (OnlineSectioningLog.Message m: q.getMessageList()) {
-											if (message != null && !message.isEmpty() && (!m.hasLevel() || level > m.getLevel().getNumber())) continue;
-											if (m.hasText()) { message = m.getText(); level = m.getLevel().getNumber(); }
-											else if (m.hasException()) { message = m.getException(); level = m.getLevel().getNumber(); }
-										}
-										if (message != null && !message.isEmpty())
-											log.setMessage(message.length() > 255 ? message.substring(0, 252) + "..." : message);
-									}
-								}
-								Long sessionId = q.getSession().getUniqueId();
-								Session session = sessions.get(sessionId);
-								if (session == null) {
-									session = SessionDAO.getInstance().get(sessionId, hibSession);
-									sessions.put(sessionId, session);
-								}
-								log.setSession(session);
-								hibSession.persist(log);
-							}
-							hibSession.flush();
-						} finally {
-							hibSession.close();
-						}
-					}
-				} catch (Throwable t) {
-					sLog.warn("Failed to save " + actionsToSave.size() + " log actions: " + t.getMessage(), t);
+				long wait = lastFlush + iFlushInterval - System.currentTimeMillis();
+				if (iActive && wait > 0 && iQueueSize.get() < iBatchSize && (iLogLimit <= 0 || iQueueSize.get() < iLogLimit)) {
+					LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(wait));
+					Thread.interrupted();
+					continue;
 				}
+				lastFlush = System.currentTimeMillis();
+				flush();
 				if (!iActive) break;
 			}
 		} catch (Throwable t) {
@@ -336,6 +470,7 @@ public class OnlineSectioningLogger extends Thread {
 			iActive = false;
 			if (iOut != null) { iOut.flush(); iOut.close(); }
 		}
-		sLog.info("Online Sectioning Logger is down.");	}
+		sLog.info("Online Sectioning Logger is down.");
+	}
 
 }
@@ -30,6 +30,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.unitime.timetable.gwt.shared.CourseRequestInterface;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.onlinesectioning.FairMultiLock;
 import org.unitime.timetable.onlinesectioning.MultiLock;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
@@ -51,15 +52,28 @@ public abstract class AbstractLockingServer extends AbstractServer {
 	
 	protected AbstractLockingServer(AcademicSessionInfo session, boolean allowAsyncCalls) {
 		super(session, allowAsyncCalls);
-		iMultiLock = new MultiLock(getAcademicSession());
+		iMultiLock = createMultiLock();
 	}
 	
 	@Override
 	protected void load(OnlineSectioningServerContext context) {
-		iMultiLock = new MultiLock(getAcademicSession());
+		iMultiLock = createMultiLock();
 		super.load(context);
 	}
 	
+	/**
+	 * Use the {@link FairMultiLock} when MultiLock.Fair is set to true, {@link MultiLock} otherwise
+	 */
+	protected MultiLock createMultiLock() {
+		if (getConfig().getPropertyBoolean("MultiLock.Fair", false))
+			return new FairMultiLock(getAcademicSession());
+		return new MultiLock(getAcademicSession());
+	}
+	
+	protected MultiLock getMultiLock() {
+		return iMultiLock;
+	}
+	
 	@Override
 	public Lock readLock() {
 		if (iLock == null)
@@ -32,8 +32,9 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,7 +49,6 @@ import org.cpsolver.studentsct.online.expectations.OverExpectedCriterion;
 import org.cpsolver.studentsct.online.selection.StudentSchedulingAssistantWeights;
 import org.hibernate.CacheMode;
 import org.jgroups.blocks.locking.LockService;
-import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
@@ -76,15 +76,22 @@ import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
 import org.unitime.timetable.onlinesectioning.custom.CourseDetailsProvider;
 import org.unitime.timetable.onlinesectioning.model.XCourse;
 import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
 import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XTime;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
+import org.unitime.timetable.onlinesectioning.solver.OfferingTemplate;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.PersistExpectedSpacesAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
+import org.unitime.timetable.onlinesectioning.updates.RestoreSnapshotAction;
 import org.unitime.timetable.util.Constants;
 import org.unitime.timetable.util.DateUtils;
 import org.unitime.timetable.util.Formats;
 import org.unitime.timetable.util.MemoryCounter;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 /**
  * @author Tomas Muller
@@ -96,13 +103,17 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	private DataProperties iConfig = null;
 	private OnlineSectioningActionFactory iActionFactory = null;
 	
-	protected List<AsyncExecutor> iExecutors = new ArrayList<AsyncExecutor>();
-	private Queue<Runnable> iExecutorQueue = new LinkedList<Runnable>();
+	protected AsyncActionExecutor iExecutor = null;
 	private HashSet<CacheElement<Long>> iOfferingsToPersistExpectedSpaces = new HashSet<CacheElement<Long>>();
 	private static ThreadLocal<LinkedList<OnlineSectioningHelper>> sHelper = new ThreadLocal<LinkedList<OnlineSectioningHelper>>();
+	private static ThreadLocal<Priority> sPriority = new ThreadLocal<Priority>();
 	protected Map<String, Object> iProperties = new HashMap<String, Object>();
 	
 	private MasterAcquiringThread iMasterThread;
+	private Map<Long, OfferingTemplate> iOfferingTemplates = new ConcurrentHashMap<Long, OfferingTemplate>();
+	private Map<Long, Long> iOfferingVersions = new ConcurrentHashMap<Long, Long>();
+	private AtomicLong iOfferingVersion = new AtomicLong(0);
+	private volatile long iOfferingBaseVersion = 0;
 	
 	public AbstractServer(OnlineSectioningServerContext context) throws SectioningException {
 		iConfig = new ServerConfig();
@@ -126,9 +137,7 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			AcademicSessionInfo academicSession = new AcademicSessionInfo(session);
 			iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + academicSession.toCompactString() + "]");
 			iProperties.put("AcademicSession", academicSession);
-			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
-			for (int i = 0; i < asncPoolSize; i++)
-				new AsyncExecutor(academicSession, 1 + i).start();
+			createExecutor(academicSession);
 		} finally {
 			hibSession.close();
 		}
@@ -149,11 +158,16 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		iLog = LogFactory.getLog(OnlineSectioningServer.class.getName() + ".server[" + session.toCompactString() + "]");
 		iProperties.put("AcademicSession", session);
-		if (allowAsyncCalls) {
-			int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
-			for (int i = 0; i < asncPoolSize; i++)
-				new AsyncExecutor(session, 1 + i).start();
-		}
+		if (allowAsyncCalls)
+			createExecutor(session);
+	}
+	
+	protected void createExecutor(AcademicSessionInfo session) {
+		int asncPoolSize = ApplicationProperty.OnlineSchedulingServerAsyncPoolSize.intValue();
+		if (asncPoolSize > 0)
+			iExecutor = new AsyncActionExecutor(session, asncPoolSize,
+					ApplicationProperty.OnlineSchedulingServerAsyncQueueSize.intValue(),
+					ApplicationProperty.OnlineSchedulingServerAsyncVirtualThreads.isTrue());
 	}
 	
 	protected void load(OnlineSectioningServerContext context) throws SectioningException {
@@ -167,12 +181,24 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		
 	protected void loadOnMaster(OnlineSectioningServerContext context) throws SectioningException {
 		try {
+			boolean restore = ApplicationProperty.OnlineSchedulingSnapshotEnabled.isTrue() && !Boolean.TRUE.equals(getProperty("ReloadIsNeeded", Boolean.FALSE));
 			setProperty("ReloadIsNeeded", Boolean.FALSE);
 			final OnlineSectioningLog.Entity user = OnlineSectioningLog.Entity.newBuilder()
 					.setExternalId(StudentClassEnrollment.SystemChange.SYSTEM.name())
 					.setName(StudentClassEnrollment.SystemChange.SYSTEM.getName())
 					.setType(OnlineSectioningLog.Entity.EntityType.OTHER).build();
 			if (context.isWaitTillStarted()) {
+				if (restore) {
+					try {
+						if (Boolean.TRUE.equals(execute(createAction(RestoreSnapshotAction.class), user))) {
+							setReady(true);
+							getMemUsage();
+							return;
+						}
+					} catch (Throwable exception) {
+						iLog.warn("Failed to restore server from a snapshot: " + exception.getMessage(), exception);
+					}
+				}
 				try {
 					execute(createAction(ReloadAllData.class), user);
 				} catch (Throwable exception) {
@@ -195,35 +221,27 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 					return;
 				}
 				setProperty("ReloadingAllData", Boolean.TRUE);
-				execute(createAction(ReloadAllData.class), user, new ServerCallback<Boolean>() {
-					@Override
-					public void onSuccess(Boolean result) {
-						if (getAcademicSession().isSectioningEnabled())
-							execute(createAction(CheckAllOfferingsAction.class), user, new ServerCallback<Boolean>() {
-								@Override
-								public void onSuccess(Boolean result) {
-									setProperty("ReloadingAllData", Boolean.FALSE);
-									setReady(true);
-									getMemUsage();
-								}
-								@Override
-								public void onFailure(Throwable exception) {
-									setProperty("ReloadingAllData", Boolean.FALSE);
-									iLog.error("Failed to check all offerings: " + exception.getMessage(), exception);
-								}
-							});
-						else {
-							setProperty("ReloadingAllData", Boolean.FALSE);
-							setReady(true);
-							getMemUsage();
+				if (restore) {
+					execute(createAction(RestoreSnapshotAction.class), user, new ServerCallback<Boolean>() {
+						@Override
+						public void onSuccess(Boolean result) {
+							if (Boolean.TRUE.equals(result)) {
+								setProperty("ReloadingAllData", Boolean.FALSE);
+								setReady(true);
+								getMemUsage();
+							} else {
+								reloadAllData(user);
+							}
 						}
-					}
-					@Override
-					public void onFailure(Throwable exception) {
-						setProperty("ReloadingAllData", Boolean.FALSE);
-						iLog.error("Failed to load server: " + exception.getMessage(), exception);
-					}
-				});
+						@Override
+						public void onFailure(Throwable exception) {
+							iLog.warn("Failed to restore server from a snapshot: " + exception.getMessage(), exception);
+							reloadAllData(user);
+						}
+					});
+				} else {
+					reloadAllData(user);
+				}
 			}
 		} catch (Throwable t) {
 			if (t instanceof SectioningException) throw (SectioningException)t;
@@ -231,6 +249,38 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 	}
 	
+	private void reloadAllData(final OnlineSectioningLog.Entity user) {
+		execute(createAction(ReloadAllData.class), user, new ServerCallback<Boolean>() {
+			@Override
+			public void onSuccess(Boolean result) {
+				if (getAcademicSession().isSectioningEnabled())
+					execute(createAction(CheckAllOfferingsAction.class), user, new ServerCallback<Boolean>() {
+						@Override
+						public void onSuccess(Boolean result) {
+							setProperty("ReloadingAllData", Boolean.FALSE);
+							setReady(true);
+							getMemUsage();
+						}
+						@Override
+						public void onFailure(Throwable exception) {
+							setProperty("ReloadingAllData", Boolean.FALSE);
+							iLog.error("Failed to check all offerings: " + exception.getMessage(), exception);
+						}
+					});
+				else {
+					setProperty("ReloadingAllData", Boolean.FALSE);
+					setReady(true);
+					getMemUsage();
+				}
+			}
+			@Override
+			public void onFailure(Throwable exception) {
+				setProperty("ReloadingAllData", Boolean.FALSE);
+				iLog.error("Failed to load server: " + exception.getMessage(), exception);
+			}
+		});
+	}
+	
 	@Override
 	public long getMemUsage() {
 		Runtime rt = Runtime.getRuntime();
@@ -385,8 +435,11 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 	public <E> E execute(OnlineSectioningAction<E> action, OnlineSectioningLog.Entity user) throws SectioningException {
 		Long oldSessionId = ApplicationProperties.getSessionId();
 		ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
+		Priority oldPriority = sPriority.get();
+		sPriority.set(getPriority(action));
 		
 		long c0 = OnlineSectioningHelper.getCpuTime();
+		long t0 = System.nanoTime();
 		String cacheMode = getConfig().getProperty(action.name() + ".CacheMode", getConfig().getProperty("CacheMode"));
 		OnlineSectioningHelper h = new OnlineSectioningHelper(user, cacheMode != null ? CacheMode.valueOf(cacheMode) : action instanceof HasCacheMode ? ((HasCacheMode)action).getCacheMode() : CacheMode.IGNORE);
 		
@@ -446,31 +499,43 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 			if (iLog.isDebugEnabled())
 				iLog.debug("Executed: " + h.getLog() + " (" + h.getLog().toByteArray().length + " bytes)");
 			OnlineSectioningLogger.getInstance().record(h.getLog());
+			MetricsRegistry.getInstance().histogram("unitime_sectioning_action_seconds", "Online student scheduling action execution time", "action", action.name()).recordSince(t0);
 			releaseCurrentHelper();
 			ApplicationProperties.setSessionId(oldSessionId);
+			if (oldPriority == null)
+				sPriority.remove();
+			else
+				sPriority.set(oldPriority);
 		}
 	}
 	
+	/**
+	 * Priority of an action, based on its {@link AsyncPriority} annotation. An action that is executed
+	 * from within an action of a lower priority gets the lower priority.
+	 */
+	protected Priority getPriority(OnlineSectioningAction<?> action) {
+		AsyncPriority annotation = action.getClass().getAnnotation(AsyncPriority.class);
+		Priority priority = (annotation == null ? Priority.INTERACTIVE : annotation.value());
+		Priority current = sPriority.get();
+		return (current != null && current.compareTo(priority) > 0 ? current : priority);
+	}
+	
 	@Override
 	public <E> void execute(final OnlineSectioningAction<E> action, final OnlineSectioningLog.Entity user, final ServerCallback<E> callback) throws SectioningException {
-		if (iExecutors == null || iExecutors.isEmpty()) {
-			try {
-				callback.onSuccess(execute(action, user));
-			} catch (Throwable t) {
-				callback.onFailure(t);
-			}
-			return;
-		}
-		final String locale = Localization.getLocale();
-		synchronized (iExecutorQueue) {
-			iExecutorQueue.offer(new Runnable() {
+		if (iExecutor != null) {
+			final String locale = Localization.getLocale();
+			final Priority priority = getPriority(action);
+			AsyncActionExecutor.Submission submission = iExecutor.execute(priority, action.name(), new Runnable() {
 				@Override
 				public void run() {
 					Localization.setLocale(locale);
+					sPriority.set(priority);
 					try {
 						callback.onSuccess(execute(action, user));
 					} catch (Throwable t) {
 						callback.onFailure(t);
+					} finally {
+						sPriority.remove();
 					}
 				}
 				
@@ -479,60 +544,30 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 					return action.name();
 				}
 			});
-			iExecutorQueue.notify();
-		}
-	}
-	
-	public class AsyncExecutor extends Thread {
-		private boolean iStop = false;
-		private int iId;
-		
-		public AsyncExecutor(AcademicSessionInfo session, int id) {
-			iId = id;
-			setName("AsyncExecutor[" + session + "-" + id + "]");
-			setDaemon(true);
-			iExecutors.add(this);
-		}
-		
-		public void run() {
-			try {
-				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
-				Runnable job;
-				while (!iStop) {
-					synchronized (iExecutorQueue) {
-						job = iExecutorQueue.poll();
-						if (job == null) {
-							try {
-								iLog.debug("Executor " + iId + " is waiting for a new job...");
-								iExecutorQueue.wait();
-							} catch (InterruptedException e) {}
-							continue;
-						}		
-					}
-					job.run();
-					if (HibernateUtil.closeCurrentThreadSessions())
-						iLog.debug("Job " + job + " did not close current-thread hibernate session.");
-				}
-				iLog.info("Executor " + iId + " stopped.");
-			} finally {
-				ApplicationProperties.setSessionId(null);
-				Localization.removeLocale();
-				Formats.removeFormats();
-				iExecutors.remove(this);
+			if (submission == AsyncActionExecutor.Submission.ACCEPTED) return;
+			if (submission == AsyncActionExecutor.Submission.SHUT_DOWN) {
+				iLog.warn("Asynchronous executor has been shut down, " + action.name() + " has been rejected.");
+				callback.onFailure(new SectioningException(MSG.exceptionNoServerForSession()));
+				return;
 			}
+			if ("abort".equals(ApplicationProperty.OnlineSchedulingServerAsyncRejectionPolicy.value())) {
+				iLog.warn("Asynchronous queue is full, " + action.name() + " has been rejected.");
+				callback.onFailure(new SectioningException(MSG.exceptionServerBusy()));
+				return;
+			}
+			iLog.info("Asynchronous queue is full, " + action.name() + " will be executed directly.");
+		}
+		try {
+			callback.onSuccess(execute(action, user));
+		} catch (Throwable t) {
+			callback.onFailure(t);
 		}
-		
 	}
 	
 	@Override
 	public void unload() {
-		if (iExecutors != null) {
-			for (AsyncExecutor ex: iExecutors)
-				ex.iStop = true;
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.notifyAll();
-			}
-		}
+		if (iExecutor != null)
+			iExecutor.shutdown();
 		if (iMasterThread != null)
 			iMasterThread.dispose();
 	}
@@ -731,6 +766,61 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		return new XEnrollments(offeringId, getRequests(offeringId));
 	}
 	
+	/**
+	 * Use {@link OfferingTemplate} cache (parameter OnlineSectioning.OfferingTemplateCache, defaults to true).
+	 * Only servers that call {@link #offeringChanged(Long)} whenever an offering, its expectations, or its enrollments change can use the cache.
+	 */
+	protected boolean isOfferingTemplateCacheEnabled() {
+		return getConfig().getPropertyBoolean("OnlineSectioning.OfferingTemplateCache", true);
+	}
+	
+	/**
+	 * Offering template (offering, its enrollments and expectations, and the data needed to create its solver copy)
+	 * for the current version of the offering. The template is created when needed and reused until the offering changes.
+	 * @return null if the offering does not exist or the cache is disabled
+	 */
+	public OfferingTemplate getOfferingTemplate(Long offeringId) {
+		if (!isOfferingTemplateCacheEnabled()) return null;
+		// the version must be read before the offering data
+		long version = getOfferingVersion(offeringId);
+		OfferingTemplate template = iOfferingTemplates.get(offeringId);
+		if (template != null && template.getVersion() == version) return template;
+		XOffering offering = getOffering(offeringId);
+		if (offering == null) return null;
+		template = new OfferingTemplate(version, offering, getEnrollments(offeringId), getExpectations(offeringId));
+		iOfferingTemplates.put(offeringId, template);
+		return template;
+	}
+	
+	protected long getOfferingVersion(Long offeringId) {
+		Long version = iOfferingVersions.get(offeringId);
+		return Math.max(iOfferingBaseVersion, version == null ? 0l : version.longValue());
+	}
+	
+	/**
+	 * Offering, its expectations, or its enrollments have changed: cached offering template is no longer valid.
+	 */
+	protected void offeringChanged(Long offeringId) {
+		iOfferingVersions.put(offeringId, iOfferingVersion.incrementAndGet());
+		iOfferingTemplates.remove(offeringId);
+	}
+	
+	/**
+	 * Course request has been added, removed, or changed: the offering of its enrollment (if any) has changed.
+	 */
+	protected void requestChanged(XRequest request) {
+		if (request instanceof XCourseRequest && ((XCourseRequest)request).getEnrollment() != null)
+			offeringChanged(((XCourseRequest)request).getEnrollment().getOfferingId());
+	}
+	
+	/**
+	 * All offerings have changed (e.g., the server has been cleared).
+	 */
+	protected void allOfferingsChanged() {
+		iOfferingBaseVersion = iOfferingVersion.incrementAndGet();
+		iOfferingTemplates.clear();
+	}
+	
 	private class MasterAcquiringThread extends Thread {
 		private java.util.concurrent.locks.Lock iLock;
 		private AtomicBoolean iMaster = new AtomicBoolean(false);
@@ -749,20 +839,19 @@ public abstract class AbstractServer implements OnlineSectioningServer {
 		}
 		
 		private void executeLoadOnMaster() {
-			synchronized (iExecutorQueue) {
-				iExecutorQueue.offer(new Runnable() {
-					@Override
-					public void run() {
-						loadOnMaster(iContext);
-					}
-					
-					@Override
-					public String toString() {
-						return "load-on-master";
-					}
-				});
-				iExecutorQueue.notify();
+			Runnable load = new Runnable() {
+				@Override
+				public void run() {
+					loadOnMaster(iContext);
+				}
+				
+				@Override
+				public String toString() {
+					return "load-on-master";
+				}
 			};
+			if (iExecutor == null || iExecutor.execute(Priority.INTERACTIVE, "load-on-master", load) == AsyncActionExecutor.Submission.QUEUE_FULL)
+				load.run();
 		}
 		
 		@Override
@@ -0,0 +1,228 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
+import org.unitime.timetable.util.Formats;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/**
+ * Executes asynchronous online sectioning actions of an academic session. Waiting actions are ordered by
+ * their {@link AsyncPriority} (interactive first, then wait-listing, then bulk operations) and by the time
+ * of their submission. The number of waiting actions can be limited, queue wait times are recorded for each action.
+ * 
+ * @author Tomas Muller
+ */
+public class AsyncActionExecutor {
+	private static Log sLog = LogFactory.getLog(AsyncActionExecutor.class);
+	private static Set<AsyncActionExecutor> sExecutors = ConcurrentHashMap.newKeySet();
+	
+	static {
+		registerMetrics();
+	}
+	
+	/** Outcome of {@link AsyncActionExecutor#execute(Priority, String, Runnable)} */
+	public static enum Submission {
+		/** The job has been queued for execution */
+		ACCEPTED,
+		/** The job has been rejected because the queue is full */
+		QUEUE_FULL,
+		/** The job has been rejected because the executor has been shut down */
+		SHUT_DOWN,
+	}
+	
+	private Long iSessionId;
+	private ThreadPoolExecutor iExecutor;
+	private int iQueueSize;
+	private AtomicLong iSequence = new AtomicLong(0);
+	private AtomicInteger[] iQueued = new AtomicInteger[Priority.values().length];
+	private AtomicInteger iQueuedTotal = new AtomicInteger(0);
+	
+	public AsyncActionExecutor(AcademicSessionInfo session, int poolSize, int queueSize, boolean virtualThreads) {
+		iSessionId = session.getUniqueId();
+		iQueueSize = queueSize;
+		for (int i = 0; i < iQueued.length; i++)
+			iQueued[i] = new AtomicInteger(0);
+		ThreadFactory factory = (virtualThreads ? createVirtualThreadFactory("AsyncExecutor[" + session + "-") : null);
+		if (factory == null)
+			factory = createPlatformThreadFactory("AsyncExecutor[" + session + "-");
+		iExecutor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), factory);
+		iExecutor.allowCoreThreadTimeOut(true);
+		sExecutors.add(this);
+	}
+	
+	private static ThreadFactory createPlatformThreadFactory(final String prefix) {
+		return new ThreadFactory() {
+			private AtomicInteger iCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, prefix + iCounter.incrementAndGet() + "]");
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+	
+	/**
+	 * Thread.ofVirtual().name(prefix, 1).factory(), null when not available (Java 20 or older)
+	 */
+	private static ThreadFactory createVirtualThreadFactory(String prefix) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 1l);
+			return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			sLog.warn("Virtual threads are not available, using platform threads instead.");
+			return null;
+		}
+	}
+	
+	private static void registerMetrics() {
+		MetricsRegistry.getInstance().gauge("unitime_sectioning_async_queued_actions", "Asynchronous online sectioning actions waiting for execution", "priority", new MetricsRegistry.LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				Map<String, Integer> ret = new HashMap<String, Integer>();
+				for (Priority priority: Priority.values()) {
+					int queued = 0;
+					for (AsyncActionExecutor executor: sExecutors)
+						queued += executor.getQueueSize(priority);
+					ret.put(priority.name().toLowerCase(), queued);
+				}
+				return ret;
+			}
+		});
+		MetricsRegistry.getInstance().gauge("unitime_sectioning_async_active_actions", "Asynchronous online sectioning actions being executed", new MetricsRegistry.Gauge() {
+			@Override
+			public Number getValue() {
+				int active = 0;
+				for (AsyncActionExecutor executor: sExecutors)
+					active += executor.getActiveCount();
+				return active;
+			}
+		});
+	}
+	
+	/**
+	 * Submit a job for execution
+	 * @param priority job priority
+	 * @param name action name (for statistics)
+	 * @param job job to execute
+	 * @return {@link Submission#ACCEPTED} when queued, otherwise the reason of the rejection (the job is not executed in this case)
+	 */
+	public Submission execute(Priority priority, String name, Runnable job) {
+		// reserve a place in the queue first, so that concurrent submissions cannot exceed the limit
+		if (iQueuedTotal.incrementAndGet() > iQueueSize && iQueueSize > 0) {
+			iQueuedTotal.decrementAndGet();
+			MetricsRegistry.getInstance().counter("unitime_sectioning_async_rejected_total", "Asynchronous online sectioning actions rejected because of a full queue", "action", name).increment();
+			return Submission.QUEUE_FULL;
+		}
+		iQueued[priority.ordinal()].incrementAndGet();
+		try {
+			iExecutor.execute(new Job(priority, name, job));
+		} catch (RejectedExecutionException e) {
+			// the executor has been shut down
+			iQueued[priority.ordinal()].decrementAndGet();
+			iQueuedTotal.decrementAndGet();
+			return Submission.SHUT_DOWN;
+		}
+		return Submission.ACCEPTED;
+	}
+	
+	public int getQueueSize(Priority priority) {
+		return iQueued[priority.ordinal()].get();
+	}
+	
+	public int getQueueSize() {
+		return iQueuedTotal.get();
+	}
+	
+	public int getActiveCount() {
+		return iExecutor.getActiveCount();
+	}
+	
+	public void shutdown() {
+		sExecutors.remove(this);
+		iExecutor.shutdown();
+	}
+	
+	private class Job implements Runnable, Comparable<Job> {
+		private Priority iPriority;
+		private String iName;
+		private Runnable iJob;
+		private long iSequenceId;
+		private long iCreated;
+		
+		Job(Priority priority, String name, Runnable job) {
+			iPriority = priority;
+			iName = name;
+			iJob = job;
+			iSequenceId = iSequence.incrementAndGet();
+			iCreated = System.nanoTime();
+		}
+
+		@Override
+		public void run() {
+			iQueued[iPriority.ordinal()].decrementAndGet();
+			iQueuedTotal.decrementAndGet();
+			MetricsRegistry.getInstance().histogram("unitime_sectioning_async_queue_seconds", "Online student scheduling asynchronous action time spent waiting for execution", "action", iName).recordSince(iCreated);
+			try {
+				ApplicationProperties.setSessionId(iSessionId);
+				iJob.run();
+			} finally {
+				if (HibernateUtil.closeCurrentThreadSessions())
+					sLog.debug("Job " + iName + " did not close current-thread hibernate session.");
+				ApplicationProperties.setSessionId(null);
+				Localization.removeLocale();
+				Formats.removeFormats();
+			}
+		}
+
+		@Override
+		public int compareTo(Job job) {
+			int cmp = iPriority.compareTo(job.iPriority);
+			if (cmp != 0) return cmp;
+			return Long.compare(iSequenceId, job.iSequenceId);
+		}
+		
+		@Override
+		public String toString() {
+			return iName + " (" + iPriority.name().toLowerCase() + ")";
+		}
+	}
+}
@@ -0,0 +1,753 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.CompactStorage.Record;
+import org.unitime.timetable.onlinesectioning.server.ConcurrentServer.StripedLock;
+
+/**
+ * In-memory server with a compact storage: students, offerings, and the course requests of each offering
+ * are kept as binary records (see {@link CompactStorage}) with shared string and week pattern tables, and they are
+ * materialized into the X* objects only when requested. Recently used offerings are kept materialized
+ * in a small cache (parameter CompactServer.OfferingCacheSize, defaults to 500).
+ * Unlike {@link InMemoryServer}, the returned students and course requests are copies, a change must be stored by calling
+ * the appropriate update method. Offerings are shared through the cache (as with {@link InMemoryServer}), so a returned offering
+ * must not be modified unless the change is stored by {@link #update(XOffering)}.<br>
+ * Like {@link ConcurrentServer}, updates only lock the affected student and offerings (striped locks), the global write lock
+ * is only used to clear the server. The shared tables of the storage are append-only; once they grow to twice the number of
+ * entries that were live after the last compaction (and to at least CompactServer.CompactionThreshold entries, defaults to 10000),
+ * the live records are re-encoded into a new storage in the background.
+ * Use unitime.enrollment.server.class=org.unitime.timetable.onlinesectioning.server.CompactServer to enable.
+ * 
+ * @author Tomas Muller
+ */
+public class CompactServer extends AbstractLockingServer {
+	private Map<Long, XCourseId> iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
+	private Map<String, TreeSet<XCourseId>> iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
+	private CourseSearchIndex iCourseIndex = new CourseSearchIndex();
+	
+	private volatile CompactStorage iStorage = new CompactStorage();
+	private Map<Long, Record> iStudentTable = new ConcurrentHashMap<Long, Record>();
+	private Map<Long, Record> iOfferingTable = new ConcurrentHashMap<Long, Record>();
+	private Map<Long, Map<Long, Record>> iOfferingRequests = new ConcurrentHashMap<Long, Map<Long, Record>>();
+	private Map<Long, XExpectations> iExpectations = new ConcurrentHashMap<Long, XExpectations>();
+	private Map<String, Set<Long>> iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
+	private volatile OfferingCache iOfferingCache = null;
+	private volatile StripedLock iStudentLocks, iOfferingLocks;
+	private volatile int iLiveEntries = 0;
+	private AtomicBoolean iCompacting = new AtomicBoolean(false);
+	
+	public CompactServer(OnlineSectioningServerContext context) throws SectioningException {
+		super(context);
+	}
+	
+	protected OfferingCache getOfferingCache() {
+		OfferingCache cache = iOfferingCache;
+		if (cache == null) {
+			synchronized (this) {
+				if (iOfferingCache == null)
+					iOfferingCache = new OfferingCache(getConfig().getPropertyInt("CompactServer.OfferingCacheSize", 500));
+				cache = iOfferingCache;
+			}
+		}
+		return cache;
+	}
+	
+	protected Lock lockStudentStripe(Long studentId) {
+		StripedLock locks = iStudentLocks;
+		if (locks == null) {
+			synchronized (this) {
+				if (iStudentLocks == null)
+					iStudentLocks = new StripedLock(getConfig().getPropertyInt("CompactServer.StudentStripes", 256));
+				locks = iStudentLocks;
+			}
+		}
+		return locks.lock(studentId);
+	}
+
+	protected Lock lockOfferingStripe(Long offeringId) {
+		StripedLock locks = iOfferingLocks;
+		if (locks == null) {
+			synchronized (this) {
+				if (iOfferingLocks == null)
+					iOfferingLocks = new StripedLock(getConfig().getPropertyInt("CompactServer.OfferingStripes", 256));
+				locks = iOfferingLocks;
+			}
+		}
+		return locks.lock(offeringId);
+	}
+	
+	@Override
+	protected boolean isOfferingTemplateCacheEnabled() {
+		// offering templates are not compact, disabled by default
+		return getConfig().getPropertyBoolean("OnlineSectioning.OfferingTemplateCache", false);
+	}
+	
+	@Override
+	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
+		return findCourses(query, limit, matcher, new CourseComparator(query));
+	}
+
+	@Override
+	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher, Comparator<XCourseId> cmp) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			if (iCourseIndex != null && !query.isEmpty() && getConfig().getPropertyBoolean("CourseSearch.UseIndex", true))
+				return iCourseIndex.findCourses(query, limit, matcher, cmp);
+			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
+			String queryInLowerCase = query.toLowerCase();
+			for (XCourseId c : iCourseForId.values()) {
+				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+			}
+			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+				for (XCourseId c : iCourseForId.values()) {
+					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+				}
+			}
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XCourseId> findCourses(CourseMatcher matcher) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			Set<XCourseId> ret = new TreeSet<XCourseId>();
+			for (XCourseId c : iCourseForId.values()) {
+				if (matcher == null || matcher.match(c)) ret.add(c);
+			}
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XStudent> findStudents(StudentMatcher matcher) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			List<XStudent> ret = new ArrayList<XStudent>();
+			for (Record record: iStudentTable.values()) {
+				XStudent s = CompactStorage.decodeStudent(record);
+				if (matcher == null || matcher.match(s)) ret.add(s);
+			}
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XCourseId getCourse(String course) {
+		Lock lock = readLock();
+		try {
+			for (int idx = course.indexOf('-'); idx >= 0; idx = course.indexOf('-', idx + 1)) {
+				String courseName = course.substring(0, idx).trim();
+				String title = course.substring(idx + 1).trim();
+				TreeSet<XCourseId> infos = iCourseForName.get(courseName.toLowerCase());
+				if (infos!= null && !infos.isEmpty())
+					for (XCourseId info: infos)
+						if (title.equalsIgnoreCase(info.getTitle())) return info;
+			}
+			TreeSet<XCourseId> infos = iCourseForName.get(course.toLowerCase());
+			if (infos!= null && !infos.isEmpty()) return infos.first();
+			return null;
+		} finally {
+			lock.release();
+		}
+	}
+	
+	private XCourse toCourse(XCourseId course) {
+		if (course == null) return null;
+		if (course instanceof XCourse)
+			return (XCourse)course;
+		XOffering offering = getOffering(course.getOfferingId());
+		return offering == null ? null : offering.getCourse(course);
+	}
+	
+	@Override
+	public XCourse getCourse(Long courseId) {
+		Lock lock = readLock();
+		try {
+			return toCourse(iCourseForId.get(courseId));
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XStudent getStudent(Long studentId) {
+		Lock lock = readLock();
+		try {
+			return CompactStorage.decodeStudent(iStudentTable.get(studentId));
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XOffering getOffering(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			Record record = iOfferingTable.get(offeringId);
+			if (record == null) return null;
+			// the cache is keyed by the record, a replaced record is never returned from the cache
+			OfferingCache cache = getOfferingCache();
+			XOffering offering = cache.get(record);
+			if (offering == null) {
+				offering = CompactStorage.decodeOffering(record);
+				cache.put(record, offering);
+			}
+			return offering;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XCourseRequest> getRequests(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			Map<Long, Record> requests = iOfferingRequests.get(offeringId);
+			if (requests == null) return null;
+			List<XCourseRequest> ret = new ArrayList<XCourseRequest>(requests.size());
+			for (Record record: requests.values())
+				ret.add(CompactStorage.decodeCourseRequest(record));
+			return ret;
+		} finally {
+			lock.release();
+		}		
+	}
+
+	@Override
+	public XExpectations getExpectations(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			XExpectations expectations = iExpectations.get(offeringId);
+			return expectations == null ? new XExpectations(offeringId) : expectations;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void update(XExpectations expectations) {
+		Lock lock = readLock();
+		try {
+			Lock offeringLock = lockOfferingStripe(expectations.getOfferingId());
+			try {
+				iExpectations.put(expectations.getOfferingId(), expectations);
+				offeringChanged(expectations.getOfferingId());
+			} finally {
+				offeringLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Replace the given course requests of a student with the new ones in the offering requests. The caller must hold the lock of the student.
+	 * The request map of an offering is never modified once published: it is replaced by an updated copy while holding the lock of the offering
+	 * (see {@link ConcurrentServer}).
+	 */
+	private void replaceRequests(Collection<XCourseRequest> oldRequests, Collection<XCourseRequest> newRequests) {
+		Set<Long> offeringIds = new HashSet<Long>();
+		for (XCourseRequest request: oldRequests)
+			for (XCourseId course: request.getCourseIds())
+				offeringIds.add(course.getOfferingId());
+		Map<Long, Record> records = new HashMap<Long, Record>();
+		for (XCourseRequest request: newRequests) {
+			for (XCourseId course: request.getCourseIds())
+				offeringIds.add(course.getOfferingId());
+			records.put(request.getRequestId(), iStorage.encode(request));
+		}
+		for (Long offeringId: offeringIds) {
+			Lock offeringLock = lockOfferingStripe(offeringId);
+			try {
+				Map<Long, Record> requests = iOfferingRequests.get(offeringId);
+				requests = (requests == null ? new HashMap<Long, Record>() : new HashMap<Long, Record>(requests));
+				for (XCourseRequest request: oldRequests)
+					for (XCourseId course: request.getCourseIds())
+						if (offeringId.equals(course.getOfferingId())) requests.remove(request.getRequestId());
+				for (XCourseRequest request: newRequests)
+					for (XCourseId course: request.getCourseIds())
+						if (offeringId.equals(course.getOfferingId()) && !request.isDuplicateOffering(course)) requests.put(request.getRequestId(), records.get(request.getRequestId()));
+				iOfferingRequests.put(offeringId, requests);
+			} finally {
+				offeringLock.release();
+			}
+		}
+		for (XCourseRequest request: oldRequests)
+			requestChanged(request);
+		for (XCourseRequest request: newRequests)
+			requestChanged(request);
+	}
+	
+	/**
+	 * The stored course requests are copies, refresh them with the (possibly changed) requests of the student.
+	 * The caller must hold the lock of the student.
+	 */
+	private void refreshRequests(Collection<XCourseRequest> requests) {
+		for (XCourseRequest request: requests) {
+			Record record = null;
+			for (XCourseId course: request.getCourseIds()) {
+				Lock offeringLock = lockOfferingStripe(course.getOfferingId());
+				try {
+					Map<Long, Record> offeringRequests = iOfferingRequests.get(course.getOfferingId());
+					if (offeringRequests != null && offeringRequests.containsKey(request.getRequestId())) {
+						if (record == null) record = iStorage.encode(request);
+						offeringRequests = new HashMap<Long, Record>(offeringRequests);
+						offeringRequests.put(request.getRequestId(), record);
+						iOfferingRequests.put(course.getOfferingId(), offeringRequests);
+						offeringChanged(course.getOfferingId());
+					}
+				} finally {
+					offeringLock.release();
+				}
+			}
+		}
+	}
+	
+	private static List<XCourseRequest> getCourseRequests(XStudent student) {
+		List<XCourseRequest> requests = new ArrayList<XCourseRequest>();
+		if (student != null)
+			for (XRequest request: student.getRequests())
+				if (request instanceof XCourseRequest)
+					requests.add((XCourseRequest)request);
+		return requests;
+	}
+
+	@Override
+	public void remove(XStudent student) {
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(student.getStudentId());
+			try {
+				XStudent oldStudent = CompactStorage.decodeStudent(iStudentTable.remove(student.getStudentId()));
+				if (oldStudent != null)
+					replaceRequests(getCourseRequests(oldStudent), Collections.<XCourseRequest>emptyList());
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void update(XStudent student, boolean updateRequests) {
+		Record record = iStorage.encode(student);
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(student.getStudentId());
+			try {
+				Record oldRecord = iStudentTable.put(student.getStudentId(), record);
+				if (updateRequests)
+					replaceRequests(getCourseRequests(CompactStorage.decodeStudent(oldRecord)), getCourseRequests(student));
+				else
+					refreshRequests(getCourseRequests(student));
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+		compactIfNeeded();
+	}
+
+	@Override
+	public void remove(XOffering offering) {
+		remove(offering, true);
+	}
+	
+	protected void remove(XOffering offering, boolean removeExpectations) {
+		Lock lock = readLock();
+		try {
+			Lock offeringLock = lockOfferingStripe(offering.getOfferingId());
+			try {
+				removeCourses(offering);
+				Record oldRecord = iOfferingTable.remove(offering.getOfferingId());
+				if (oldRecord != null)
+					getOfferingCache().remove(oldRecord);
+				if (removeExpectations)
+					iExpectations.remove(offering.getOfferingId());
+				offeringChanged(offering.getOfferingId());
+				for (String externalId: offering.getInstructorExternalIds()) {
+					Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+					if (offeringIds != null) offeringIds.remove(offering.getOfferingId());
+				}
+			} finally {
+				offeringLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Course name sets are never modified once published, a changed set is always replaced by a new one (see {@link ConcurrentServer}).
+	 */
+	private void removeCourses(XOffering offering) {
+		synchronized (iCourseForName) {
+			for (XCourse course: offering.getCourses()) {
+				iCourseForId.remove(course.getCourseId());
+				if (iCourseIndex != null) iCourseIndex.remove(course);
+				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+				if (courses != null) {
+					courses = new TreeSet<XCourseId>(courses);
+					courses.remove(course);
+					if (courses.size() == 1)
+						for (XCourseId x: courses) x.setHasUniqueName(true);
+					if (courses.isEmpty())
+						iCourseForName.remove(course.getCourseNameInLowerCase());
+					else
+						iCourseForName.put(course.getCourseNameInLowerCase(), courses);
+				}
+			}
+		}
+	}
+
+	private void addCourses(XOffering offering) {
+		synchronized (iCourseForName) {
+			for (XCourse course: offering.getCourses()) {
+				iCourseForId.put(course.getCourseId(), course);
+				if (iCourseIndex != null) iCourseIndex.add(course);
+				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+				courses = (courses == null ? new TreeSet<XCourseId>() : new TreeSet<XCourseId>(courses));
+				courses.add(course);
+				if (courses.size() == 1)
+					for (XCourseId x: courses) x.setHasUniqueName(true);
+				else if (courses.size() > 1)
+					for (XCourseId x: courses) x.setHasUniqueName(false);
+				iCourseForName.put(course.getCourseNameInLowerCase(), courses);
+			}
+		}
+	}
+
+	@Override
+	public void update(XOffering offering) {
+		Record record = iStorage.encode(offering);
+		Lock lock = readLock();
+		try {
+			Lock offeringLock = lockOfferingStripe(offering.getOfferingId());
+			try {
+				XOffering oldOffering = CompactStorage.decodeOffering(iOfferingTable.get(offering.getOfferingId()));
+				if (oldOffering != null)
+					remove(oldOffering, false);
+				
+				iOfferingTable.put(offering.getOfferingId(), record);
+				offeringChanged(offering.getOfferingId());
+				addCourses(offering);
+				for (String externalId: offering.getInstructorExternalIds()) {
+					Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+					if (offeringIds == null) {
+						offeringIds = ConcurrentHashMap.newKeySet();
+						Set<Long> other = iInstructedOfferings.putIfAbsent(externalId, offeringIds);
+						if (other != null) offeringIds = other;
+					}
+					offeringIds.add(offering.getOfferingId());
+				}
+			} finally {
+				offeringLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+		compactIfNeeded();
+	}
+
+	@Override
+	public void clearAll() {
+		Lock lock = writeLock();
+		try {
+			iStudentTable.clear();
+			iOfferingTable.clear();
+			iOfferingRequests.clear();
+			iExpectations.clear();
+			iCourseForId.clear();
+			iCourseForName.clear();
+			iInstructedOfferings.clear();
+			iCourseIndex.clear();
+			getOfferingCache().clear();
+			iStorage = new CompactStorage();
+			iLiveEntries = 0;
+			allOfferingsChanged();
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void clearAllStudents() {
+		Lock lock = writeLock();
+		try {
+			iStudentTable.clear();
+			iOfferingRequests.clear();
+			allOfferingsChanged();
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XCourseRequest assign(XCourseRequest request, XEnrollment enrollment) {
+		XCourseRequest ret = null;
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(request.getStudentId());
+			try {
+				XStudent student = CompactStorage.decodeStudent(iStudentTable.get(request.getStudentId()));
+				if (student == null) return null;
+				for (XRequest r: student.getRequests()) {
+					if (r.equals(request)) {
+						XCourseRequest cr = (XCourseRequest)r;
+
+						// assign
+						cr.setEnrollment(enrollment);
+						
+						// update offering requests
+						replaceRequests(Collections.singleton(cr), Collections.singleton(cr));
+						iStudentTable.put(student.getStudentId(), iStorage.encode(student));
+						
+						ret = cr;
+						break;
+					}
+				}
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+		if (ret != null) compactIfNeeded();
+		return ret;
+	}
+
+	@Override
+	public XCourseRequest waitlist(XCourseRequest request, boolean waitlist) {
+		XCourseRequest ret = null;
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(request.getStudentId());
+			try {
+				XStudent student = CompactStorage.decodeStudent(iStudentTable.get(request.getStudentId()));
+				if (student == null) return null;
+				for (XRequest r: student.getRequests()) {
+					if (r.equals(request)) {
+						XCourseRequest cr = (XCourseRequest)r;
+
+						// assign
+						cr.setWaitlist(waitlist);
+						cr.setWaitListedTimeStamp(request.getWaitListedTimeStamp());
+						cr.setWaitListSwapWithCourseOffering(request.getWaitListSwapWithCourseOffering());
+						
+						// update offering requests
+						replaceRequests(Collections.singleton(cr), Collections.singleton(cr));
+						iStudentTable.put(student.getStudentId(), iStorage.encode(student));
+						
+						ret = cr;
+						break;
+					}
+				}
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+		if (ret != null) compactIfNeeded();
+		return ret;
+	}
+
+	@Override
+	public Collection<Long> getInstructedOfferings(String instructorExternalId) {
+		Lock lock = readLock();
+		try {
+			return iInstructedOfferings.get(instructorExternalId);
+		} finally {
+			lock.release();
+		}
+	}
+	
+	@Override
+	public Set<Long> getRequestedCourseIds(Long studentId) {
+		Lock lock = readLock();
+		try {
+			XStudent student = CompactStorage.decodeStudent(iStudentTable.get(studentId));
+			return (student == null ? null : student.getRequestedCourseIds());
+		} finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Size of the encoded students, offerings, and offering requests in bytes (not counting the shared tables)
+	 */
+	public long getEncodedSize() {
+		Lock lock = readLock();
+		try {
+			long size = 0;
+			for (Record record: iStudentTable.values()) size += record.size();
+			for (Record record: iOfferingTable.values()) size += record.size();
+			for (Map<Long, Record> requests: iOfferingRequests.values())
+				for (Record record: requests.values()) size += record.size();
+			return size;
+		} finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Start the compaction of the shared tables in the background when they have grown to twice the number of live entries
+	 * (as counted after the previous compaction, or when the server got ready) and to at least CompactServer.CompactionThreshold entries.
+	 */
+	protected void compactIfNeeded() {
+		if (!isReady()) return;
+		int entries = iStorage.getNrEntries();
+		if (iLiveEntries == 0) { iLiveEntries = entries; return; }
+		if (entries <= 2 * iLiveEntries || entries < getConfig().getPropertyInt("CompactServer.CompactionThreshold", 10000)) return;
+		if (!iCompacting.compareAndSet(false, true)) return;
+		Thread thread = new Thread("CompactServer[" + getAcademicSession().toCompactString() + "]") {
+			@Override
+			public void run() {
+				try {
+					compact();
+				} catch (Exception e) {
+					iLog.error("Failed to compact the storage: " + e.getMessage(), e);
+				} finally {
+					iCompacting.set(false);
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+	}
+	
+	/**
+	 * Re-encode all the records into a new storage, dropping the unused entries of the shared tables. The records are
+	 * replaced one by one, a record that is changed in the mean time is kept as it is (it can still be decoded using the
+	 * storage that has encoded it). The read lock is held to prevent the server from being cleared in the mean time.
+	 */
+	protected void compact() {
+		Lock lock = readLock();
+		try {
+			long t0 = System.currentTimeMillis();
+			int before = iStorage.getNrEntries();
+			CompactStorage storage = new CompactStorage();
+			iStorage = storage;
+			for (Map.Entry<Long, Record> e: iStudentTable.entrySet()) {
+				Record record = e.getValue();
+				if (record.getStorage() != storage)
+					iStudentTable.replace(e.getKey(), record, storage.encode(CompactStorage.decodeStudent(record)));
+			}
+			for (Map.Entry<Long, Record> e: iOfferingTable.entrySet()) {
+				Record record = e.getValue();
+				if (record.getStorage() != storage)
+					iOfferingTable.replace(e.getKey(), record, storage.encode(CompactStorage.decodeOffering(record)));
+			}
+			// a course request is shared by the request maps of its offerings
+			Map<Record, Record> encoded = new HashMap<Record, Record>();
+			for (Long offeringId: iOfferingRequests.keySet()) {
+				Lock offeringLock = lockOfferingStripe(offeringId);
+				try {
+					Map<Long, Record> requests = iOfferingRequests.get(offeringId);
+					if (requests == null) continue;
+					Map<Long, Record> compacted = new HashMap<Long, Record>();
+					for (Map.Entry<Long, Record> e: requests.entrySet()) {
+						Record record = e.getValue();
+						if (record.getStorage() != storage) {
+							Record copy = encoded.get(record);
+							if (copy == null) {
+								copy = storage.encode(CompactStorage.decodeCourseRequest(record));
+								encoded.put(record, copy);
+							}
+							record = copy;
+						}
+						compacted.put(e.getKey(), record);
+					}
+					iOfferingRequests.put(offeringId, compacted);
+				} finally {
+					offeringLock.release();
+				}
+			}
+			iLiveEntries = storage.getNrEntries();
+			iLog.info("Storage compacted from " + before + " to " + iLiveEntries + " entries in " + (System.currentTimeMillis() - t0) + " ms.");
+		} finally {
+			lock.release();
+		}
+	}
+	
+	/**
+	 * Least recently used cache of materialized offerings, keyed by the offering record
+	 */
+	protected static class OfferingCache {
+		private Map<Record, XOffering> iCache;
+		
+		public OfferingCache(final int size) {
+			iCache = new LinkedHashMap<Record, XOffering>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Record, XOffering> eldest) {
+					return size() > size;
+				}
+			};
+		}
+		
+		public synchronized XOffering get(Record record) { return iCache.get(record); }
+		
+		public synchronized void put(Record record, XOffering offering) { iCache.put(record, offering); }
+		
+		public synchronized void remove(Record record) { iCache.remove(record); }
+		
+		public synchronized void clear() { iCache.clear(); }
+	}
+}
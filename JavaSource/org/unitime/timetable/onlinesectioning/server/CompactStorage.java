@@ -0,0 +1,256 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * Compact binary encoding of the online sectioning model (see {@link CompactServer}).
+ * The X* classes are written using their {@link Externalizable#writeExternal(ObjectOutput)}
+ * into a byte array, with all the strings and week patterns (bit sets) replaced by an index
+ * into a table shared by all the records of the server (flyweight). The records are decoded
+ * back into the X* objects using {@link Externalizable#readExternal(ObjectInput)} when needed.
+ * The tables are append-only, an entry is kept until the storage is discarded. Each {@link Record} keeps a reference
+ * to the storage that has encoded it, so the server can compact the tables by re-encoding the live records into a new
+ * storage (see {@link CompactServer}) while the records of the old storage can still be decoded.
+ * 
+ * @author Tomas Muller
+ */
+public class CompactStorage {
+	private static final byte TYPE_NULL = 0;
+	private static final byte TYPE_STRING = 1;
+	private static final byte TYPE_TRUE = 2;
+	private static final byte TYPE_FALSE = 3;
+	private static final byte TYPE_INTEGER = 4;
+	private static final byte TYPE_LONG = 5;
+	private static final byte TYPE_BITSET = 6;
+	private static final byte TYPE_DATE = 7;
+	private static final byte TYPE_SERIALIZED = 8;
+	
+	private Table<String> iStrings = new Table<String>();
+	private Table<BitSet> iBitSets = new Table<BitSet>();
+	
+	public Record encode(Externalizable object) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			Output out = new Output(bytes);
+			object.writeExternal(out);
+			out.flush();
+			return new Record(this, bytes.toByteArray());
+		} catch (IOException e) {
+			throw new SectioningException("Failed to encode " + object.getClass().getSimpleName() + ": " + e.getMessage(), e);
+		}
+	}
+	
+	public static XStudent decodeStudent(Record record) {
+		if (record == null) return null;
+		try {
+			return new XStudent(record.getStorage().new Input(record.getData()));
+		} catch (IOException | ClassNotFoundException e) {
+			throw new SectioningException("Failed to decode student: " + e.getMessage(), e);
+		}
+	}
+	
+	public static XOffering decodeOffering(Record record) {
+		if (record == null) return null;
+		try {
+			return new XOffering(record.getStorage().new Input(record.getData()));
+		} catch (IOException | ClassNotFoundException e) {
+			throw new SectioningException("Failed to decode offering: " + e.getMessage(), e);
+		}
+	}
+	
+	public static XCourseRequest decodeCourseRequest(Record record) {
+		if (record == null) return null;
+		try {
+			return new XCourseRequest(record.getStorage().new Input(record.getData()));
+		} catch (IOException | ClassNotFoundException e) {
+			throw new SectioningException("Failed to decode course request: " + e.getMessage(), e);
+		}
+	}
+	
+	/** Number of distinct strings in the string table */
+	public int getNrStrings() { return iStrings.size(); }
+	
+	/** Number of distinct bit sets (typically week patterns) in the bit set table */
+	public int getNrBitSets() { return iBitSets.size(); }
+	
+	/** Number of entries in the shared tables */
+	public int getNrEntries() { return getNrStrings() + getNrBitSets(); }
+	
+	/**
+	 * Encoded record, to be decoded using the tables of the storage that has encoded it
+	 */
+	public static class Record {
+		private final CompactStorage iStorage;
+		private final byte[] iData;
+		
+		private Record(CompactStorage storage, byte[] data) {
+			iStorage = storage; iData = data;
+		}
+		
+		public CompactStorage getStorage() { return iStorage; }
+		public byte[] getData() { return iData; }
+		public int size() { return iData.length; }
+	}
+	
+	/**
+	 * Append-only table of values, each value is given a unique index. Adding a value is synchronized,
+	 * lookups by the index are not (the array is only replaced by a larger copy once the values are in).
+	 */
+	protected static class Table<T> {
+		private Map<T, Integer> iIndex = new HashMap<T, Integer>();
+		private volatile Object[] iValues = new Object[1024];
+		private int iSize = 0;
+		
+		public synchronized int index(T value) {
+			Integer index = iIndex.get(value);
+			if (index == null) {
+				if (iSize == iValues.length) {
+					Object[] values = new Object[2 * iValues.length];
+					System.arraycopy(iValues, 0, values, 0, iSize);
+					iValues = values;
+				}
+				index = iSize++;
+				iValues[index] = value;
+				iIndex.put(value, index);
+			}
+			return index;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public T get(int index) {
+			return (T)iValues[index];
+		}
+		
+		public synchronized int size() {
+			return iSize;
+		}
+	}
+	
+	protected class Output extends DataOutputStream implements ObjectOutput {
+		
+		public Output(ByteArrayOutputStream bytes) {
+			super(bytes);
+		}
+		
+		protected void writeVarInt(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			writeByte(value);
+		}
+
+		@Override
+		public void writeObject(Object obj) throws IOException {
+			if (obj == null) {
+				writeByte(TYPE_NULL);
+			} else if (obj instanceof String) {
+				writeByte(TYPE_STRING);
+				writeVarInt(iStrings.index((String)obj));
+			} else if (obj instanceof Boolean) {
+				writeByte((Boolean)obj ? TYPE_TRUE : TYPE_FALSE);
+			} else if (obj instanceof Integer) {
+				writeByte(TYPE_INTEGER);
+				writeInt((Integer)obj);
+			} else if (obj instanceof Long) {
+				writeByte(TYPE_LONG);
+				writeLong((Long)obj);
+			} else if (obj instanceof BitSet) {
+				writeByte(TYPE_BITSET);
+				writeVarInt(iBitSets.index((BitSet)((BitSet)obj).clone()));
+			} else if (obj instanceof Date) {
+				writeByte(TYPE_DATE);
+				writeLong(((Date)obj).getTime());
+			} else {
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				ObjectOutputStream out = new ObjectOutputStream(bytes);
+				out.writeObject(obj);
+				out.flush();
+				writeByte(TYPE_SERIALIZED);
+				writeVarInt(bytes.size());
+				write(bytes.toByteArray());
+			}
+		}
+	}
+	
+	protected class Input extends DataInputStream implements ObjectInput {
+		
+		public Input(byte[] data) {
+			super(new ByteArrayInputStream(data));
+		}
+		
+		protected int readVarInt() throws IOException {
+			int value = 0, shift = 0;
+			int b;
+			do {
+				b = readUnsignedByte();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		@Override
+		public Object readObject() throws ClassNotFoundException, IOException {
+			byte type = readByte();
+			switch (type) {
+			case TYPE_NULL: return null;
+			case TYPE_STRING: return iStrings.get(readVarInt());
+			case TYPE_TRUE: return Boolean.TRUE;
+			case TYPE_FALSE: return Boolean.FALSE;
+			case TYPE_INTEGER: return readInt();
+			case TYPE_LONG: return readLong();
+			case TYPE_BITSET: return iBitSets.get(readVarInt()).clone();
+			case TYPE_DATE: return new Date(readLong());
+			case TYPE_SERIALIZED:
+				byte[] data = new byte[readVarInt()];
+				readFully(data);
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+				try {
+					return in.readObject();
+				} finally {
+					in.close();
+				}
+			default:
+				throw new IOException("Unknown object type " + type + ".");
+			}
+		}
+	}
+}
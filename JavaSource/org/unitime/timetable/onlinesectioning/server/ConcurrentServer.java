@@ -0,0 +1,583 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.match.StudentMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourse;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollment;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRequest;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+
+/**
+ * In-memory server that keeps its data in concurrent maps. Unlike {@link InMemoryServer},
+ * updates of a student, an offering, or expectations do not take the global write lock;
+ * they only hold the global lock in the shared mode (so that {@link #lockAll()} still excludes them)
+ * and a striped lock of the affected student / offering. Readers are never blocked by such updates.
+ * Use unitime.enrollment.server.class=org.unitime.timetable.onlinesectioning.server.ConcurrentServer to enable.
+ *
+ * @author Tomas Muller
+ */
+public class ConcurrentServer extends AbstractLockingServer {
+	private Map<Long, XCourseId> iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
+	private Map<String, TreeSet<XCourseId>> iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
+	private CourseSearchIndex iCourseIndex = new CourseSearchIndex();
+
+	private Map<Long, XStudent> iStudentTable = new ConcurrentHashMap<Long, XStudent>();
+	private Map<Long, XOffering> iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
+	private Map<Long, List<XCourseRequest>> iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
+	private Map<Long, XExpectations> iExpectations = new ConcurrentHashMap<Long, XExpectations>();
+	private Map<String, Set<Long>> iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
+
+	private volatile StripedLock iStudentLocks, iOfferingLocks;
+
+	public ConcurrentServer(OnlineSectioningServerContext context) throws SectioningException {
+		super(context);
+	}
+
+	protected Lock lockStudentStripe(Long studentId) {
+		StripedLock locks = iStudentLocks;
+		if (locks == null) {
+			synchronized (this) {
+				if (iStudentLocks == null)
+					iStudentLocks = new StripedLock(getConfig().getPropertyInt("ConcurrentServer.StudentStripes", 256));
+				locks = iStudentLocks;
+			}
+		}
+		return locks.lock(studentId);
+	}
+
+	protected Lock lockOfferingStripe(Long offeringId) {
+		StripedLock locks = iOfferingLocks;
+		if (locks == null) {
+			synchronized (this) {
+				if (iOfferingLocks == null)
+					iOfferingLocks = new StripedLock(getConfig().getPropertyInt("ConcurrentServer.OfferingStripes", 256));
+				locks = iOfferingLocks;
+			}
+		}
+		return locks.lock(offeringId);
+	}
+
+	@Override
+	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
+		return findCourses(query, limit, matcher, new CourseComparator(query));
+	}
+
+	@Override
+	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher, Comparator<XCourseId> cmp) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			if (iCourseIndex != null && !query.isEmpty() && getConfig().getPropertyBoolean("CourseSearch.UseIndex", true))
+				return iCourseIndex.findCourses(query, limit, matcher, cmp);
+			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
+			String queryInLowerCase = query.toLowerCase();
+			for (XCourseId c : iCourseForId.values()) {
+				if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+			}
+			if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+				for (XCourseId c : iCourseForId.values()) {
+					if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+				}
+			}
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XCourseId> findCourses(CourseMatcher matcher) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			Set<XCourseId> ret = new TreeSet<XCourseId>();
+			for (XCourseId c : iCourseForId.values()) {
+				if (matcher == null || matcher.match(c)) ret.add(c);
+			}
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XStudent> findStudents(StudentMatcher matcher) {
+		if (matcher != null) matcher.setServer(this);
+		Lock lock = readLock();
+		try {
+			List<XStudent> ret = new ArrayList<XStudent>();
+			for (XStudent s: iStudentTable.values())
+				if (matcher == null || matcher.match(s)) ret.add(s);
+			return ret;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XCourseId getCourse(String course) {
+		Lock lock = readLock();
+		try {
+			for (int idx = course.indexOf('-'); idx >= 0; idx = course.indexOf('-', idx + 1)) {
+				String courseName = course.substring(0, idx).trim();
+				String title = course.substring(idx + 1).trim();
+				TreeSet<XCourseId> infos = iCourseForName.get(courseName.toLowerCase());
+				if (infos!= null && !infos.isEmpty())
+					for (XCourseId info: infos)
+						if (title.equalsIgnoreCase(info.getTitle())) return info;
+			}
+			TreeSet<XCourseId> infos = iCourseForName.get(course.toLowerCase());
+			if (infos!= null && !infos.isEmpty()) return infos.first();
+			return null;
+		} finally {
+			lock.release();
+		}
+	}
+
+	private XCourse toCourse(XCourseId course) {
+		if (course == null) return null;
+		if (course instanceof XCourse)
+			return (XCourse)course;
+		XOffering offering = getOffering(course.getOfferingId());
+		return offering == null ? null : offering.getCourse(course);
+	}
+
+	@Override
+	public XCourse getCourse(Long courseId) {
+		Lock lock = readLock();
+		try {
+			return toCourse(iCourseForId.get(courseId));
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XStudent getStudent(Long studentId) {
+		Lock lock = readLock();
+		try {
+			return iStudentTable.get(studentId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XOffering getOffering(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			return iOfferingTable.get(offeringId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<XCourseRequest> getRequests(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			Collection<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+			return requests == null ? null : new ArrayList<XCourseRequest>(requests);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XExpectations getExpectations(Long offeringId) {
+		Lock lock = readLock();
+		try {
+			XExpectations expectations = iExpectations.get(offeringId);
+			return expectations == null ? new XExpectations(offeringId) : expectations;
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void update(XExpectations expectations) {
+		Lock lock = readLock();
+		try {
+			iExpectations.put(expectations.getOfferingId(), expectations);
+			offeringChanged(expectations.getOfferingId());
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Replace the given course requests of a student with the new ones in the offering requests. The caller must hold the lock of the student.
+	 * A request list of an offering is never modified once published: it is replaced by an updated copy while holding the lock of the offering,
+	 * so that a reader never sees a request missing (removed, but not yet added back) from an offering that is being updated.
+	 */
+	private void replaceRequests(Collection<XCourseRequest> oldRequests, Collection<XCourseRequest> newRequests) {
+		Set<Long> offeringIds = new HashSet<Long>();
+		for (XCourseRequest request: oldRequests)
+			for (XCourseId course: request.getCourseIds())
+				offeringIds.add(course.getOfferingId());
+		for (XCourseRequest request: newRequests)
+			for (XCourseId course: request.getCourseIds())
+				offeringIds.add(course.getOfferingId());
+		for (Long offeringId: offeringIds) {
+			Lock offeringLock = lockOfferingStripe(offeringId);
+			try {
+				List<XCourseRequest> requests = iOfferingRequests.get(offeringId);
+				requests = (requests == null ? new ArrayList<XCourseRequest>() : new ArrayList<XCourseRequest>(requests));
+				for (XCourseRequest request: oldRequests)
+					for (XCourseId course: request.getCourseIds())
+						if (offeringId.equals(course.getOfferingId())) requests.remove(request);
+				for (XCourseRequest request: newRequests)
+					for (XCourseId course: request.getCourseIds())
+						if (offeringId.equals(course.getOfferingId()) && !request.isDuplicateOffering(course)) requests.add(request);
+				iOfferingRequests.put(offeringId, requests);
+			} finally {
+				offeringLock.release();
+			}
+		}
+		for (XCourseRequest request: oldRequests)
+			requestChanged(request);
+		for (XCourseRequest request: newRequests)
+			requestChanged(request);
+	}
+	
+	private static List<XCourseRequest> getCourseRequests(XStudent student) {
+		List<XCourseRequest> requests = new ArrayList<XCourseRequest>();
+		if (student != null)
+			for (XRequest request: student.getRequests())
+				if (request instanceof XCourseRequest)
+					requests.add((XCourseRequest)request);
+		return requests;
+	}
+
+	@Override
+	public void remove(XStudent student) {
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(student.getStudentId());
+			try {
+				XStudent oldStudent = iStudentTable.remove(student.getStudentId());
+				if (oldStudent != null)
+					replaceRequests(getCourseRequests(oldStudent), Collections.<XCourseRequest>emptyList());
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void update(XStudent student, boolean updateRequests) {
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(student.getStudentId());
+			try {
+				XStudent oldStudent = iStudentTable.put(student.getStudentId(), student);
+				if (updateRequests)
+					replaceRequests(getCourseRequests(oldStudent), getCourseRequests(student));
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void remove(XOffering offering) {
+		remove(offering, true);
+	}
+
+	protected void remove(XOffering offering, boolean removeExpectations) {
+		Lock lock = readLock();
+		try {
+			Lock offeringLock = lockOfferingStripe(offering.getOfferingId());
+			try {
+				removeCourses(offering);
+				iOfferingTable.remove(offering.getOfferingId());
+				if (removeExpectations)
+					iExpectations.remove(offering.getOfferingId());
+				offeringChanged(offering.getOfferingId());
+				for (String externalId: offering.getInstructorExternalIds()) {
+					Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+					if (offeringIds != null) offeringIds.remove(offering.getOfferingId());
+				}
+			} finally {
+				offeringLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Course name sets are never modified once published, a changed set is always replaced by a new one.
+	 * This way {@link #getCourse(String)} can iterate them without any locking.
+	 */
+	private void removeCourses(XOffering offering) {
+		synchronized (iCourseForName) {
+			for (XCourse course: offering.getCourses()) {
+				iCourseForId.remove(course.getCourseId());
+				if (iCourseIndex != null) iCourseIndex.remove(course);
+				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+				if (courses != null) {
+					courses = new TreeSet<XCourseId>(courses);
+					courses.remove(course);
+					if (courses.size() == 1)
+						for (XCourseId x: courses) x.setHasUniqueName(true);
+					if (courses.isEmpty())
+						iCourseForName.remove(course.getCourseNameInLowerCase());
+					else
+						iCourseForName.put(course.getCourseNameInLowerCase(), courses);
+				}
+			}
+		}
+	}
+
+	private void addCourses(XOffering offering) {
+		synchronized (iCourseForName) {
+			for (XCourse course: offering.getCourses()) {
+				iCourseForId.put(course.getCourseId(), course);
+				if (iCourseIndex != null) iCourseIndex.add(course);
+				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
+				courses = (courses == null ? new TreeSet<XCourseId>() : new TreeSet<XCourseId>(courses));
+				courses.add(course);
+				if (courses.size() == 1)
+					for (XCourseId x: courses) x.setHasUniqueName(true);
+				else if (courses.size() > 1)
+					for (XCourseId x: courses) x.setHasUniqueName(false);
+				iCourseForName.put(course.getCourseNameInLowerCase(), courses);
+			}
+		}
+	}
+
+	@Override
+	public void update(XOffering offering) {
+		Lock lock = readLock();
+		try {
+			Lock offeringLock = lockOfferingStripe(offering.getOfferingId());
+			try {
+				XOffering oldOffering = iOfferingTable.get(offering.getOfferingId());
+				if (oldOffering != null)
+					remove(oldOffering, false);
+
+				iOfferingTable.put(offering.getOfferingId(), offering);
+				offeringChanged(offering.getOfferingId());
+				addCourses(offering);
+				for (String externalId: offering.getInstructorExternalIds()) {
+					Set<Long> offeringIds = iInstructedOfferings.get(externalId);
+					if (offeringIds == null) {
+						offeringIds = ConcurrentHashMap.newKeySet();
+						Set<Long> other = iInstructedOfferings.putIfAbsent(externalId, offeringIds);
+						if (other != null) offeringIds = other;
+					}
+					offeringIds.add(offering.getOfferingId());
+				}
+			} finally {
+				offeringLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void clearAll() {
+		Lock lock = writeLock();
+		try {
+			if (iStudentTable == null)
+				iStudentTable = new ConcurrentHashMap<Long, XStudent>();
+			else
+				iStudentTable.clear();
+			if (iOfferingTable == null)
+				iOfferingTable = new ConcurrentHashMap<Long, XOffering>();
+			else
+				iOfferingTable.clear();
+			if (iOfferingRequests == null)
+				iOfferingRequests = new ConcurrentHashMap<Long, List<XCourseRequest>>();
+			else
+				iOfferingRequests.clear();
+			if (iExpectations == null)
+				iExpectations = new ConcurrentHashMap<Long, XExpectations>();
+			else
+				iExpectations.clear();
+			if (iCourseForId == null)
+				iCourseForId = new ConcurrentHashMap<Long, XCourseId>();
+			else
+				iCourseForId.clear();
+			if (iCourseForName == null)
+				iCourseForName = new ConcurrentHashMap<String, TreeSet<XCourseId>>();
+			else
+				iCourseForName.clear();
+			if (iInstructedOfferings == null)
+				iInstructedOfferings = new ConcurrentHashMap<String, Set<Long>>();
+			else
+				iInstructedOfferings.clear();
+			if (iCourseIndex == null)
+				iCourseIndex = new CourseSearchIndex();
+			else
+				iCourseIndex.clear();
+			allOfferingsChanged();
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public void clearAllStudents() {
+		Lock lock = writeLock();
+		try {
+			iStudentTable.clear();
+			iOfferingRequests.clear();
+			allOfferingsChanged();
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XCourseRequest assign(XCourseRequest request, XEnrollment enrollment) {
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(request.getStudentId());
+			try {
+				XStudent student = iStudentTable.get(request.getStudentId());
+				for (XRequest r: student.getRequests()) {
+					if (r.equals(request)) {
+						XCourseRequest cr = (XCourseRequest)r;
+
+						// assign
+						cr.setEnrollment(enrollment);
+
+						// update offering requests
+						replaceRequests(Collections.singleton(cr), Collections.singleton(cr));
+
+						return cr;
+					}
+				}
+				return null;
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public XCourseRequest waitlist(XCourseRequest request, boolean waitlist) {
+		Lock lock = readLock();
+		try {
+			Lock studentLock = lockStudentStripe(request.getStudentId());
+			try {
+				XStudent student = iStudentTable.get(request.getStudentId());
+				for (XRequest r: student.getRequests()) {
+					if (r.equals(request)) {
+						XCourseRequest cr = (XCourseRequest)r;
+
+						// assign
+						cr.setWaitlist(waitlist);
+						cr.setWaitListedTimeStamp(request.getWaitListedTimeStamp());
+						cr.setWaitListSwapWithCourseOffering(request.getWaitListSwapWithCourseOffering());
+
+						// update offering requests
+						replaceRequests(Collections.singleton(cr), Collections.singleton(cr));
+
+						return cr;
+					}
+				}
+				return null;
+			} finally {
+				studentLock.release();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Collection<Long> getInstructedOfferings(String instructorExternalId) {
+		Lock lock = readLock();
+		try {
+			return iInstructedOfferings.get(instructorExternalId);
+		} finally {
+			lock.release();
+		}
+	}
+
+	@Override
+	public Set<Long> getRequestedCourseIds(Long studentId) {
+		Lock lock = readLock();
+		try {
+			XStudent student = iStudentTable.get(studentId);
+			return (student == null ? null : student.getRequestedCourseIds());
+		} finally {
+			lock.release();
+		}
+	}
+
+	/**
+	 * Fixed number of re-entrant locks, an id is mapped to one of them by its hash code.
+	 * Two different ids may share the same lock, so a thread must never hold two locks of the same
+	 * stripe set at the same time (the server only nests an offering lock inside of a student lock).
+	 */
+	protected static class StripedLock {
+		private ReentrantLock[] iLocks;
+
+		public StripedLock(int size) {
+			iLocks = new ReentrantLock[Math.max(1, size)];
+			for (int i = 0; i < iLocks.length; i++)
+				iLocks[i] = new ReentrantLock();
+		}
+
+		public Lock lock(Long id) {
+			int hash = (id == null ? 0 : id.hashCode());
+			hash ^= (hash >>> 16);
+			final ReentrantLock lock = iLocks[(hash & 0x7fffffff) % iLocks.length];
+			lock.lock();
+			return new Lock() {
+				@Override
+				public void release() {
+					lock.unlock();
+				}
+			};
+		}
+	}
+}
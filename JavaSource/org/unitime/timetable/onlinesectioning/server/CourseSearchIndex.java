@@ -0,0 +1,172 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+
+/**
+ * Inverted index of courses used by the course search (see {@link InMemoryServer#findCourses(String, Integer, CourseMatcher, Comparator)}).
+ * <ul>
+ * <li>Name index contains all the strings that are tested by {@link XCourseId#matchCourseName(String)} to start with the query
+ * (course name, course number, part of the course name after the last dash, and course name followed by the title).</li>
+ * <li>Title index contains the title and all its suffixes that follow a space, which covers both conditions
+ * of {@link XCourseId#matchTitle(String)} (title starts with the query or contains a space followed by the query).</li>
+ * </ul>
+ * Both indexes are sorted maps, so all courses with a key starting with the query are found by a single range lookup.
+ * The candidates are always checked using the original match methods, the index only limits the number of courses
+ * that need to be considered. Reads do not need any locking, updates are synchronized.
+ * 
+ * @author Tomas Muller
+ */
+public class CourseSearchIndex {
+	private static final String sMaxChar = String.valueOf(Character.MAX_VALUE);
+	private NavigableMap<String, Set<XCourseId>> iNameIndex = new ConcurrentSkipListMap<String, Set<XCourseId>>();
+	private NavigableMap<String, Set<XCourseId>> iTitleIndex = new ConcurrentSkipListMap<String, Set<XCourseId>>();
+	private Map<Long, XCourseId> iCourses = new HashMap<Long, XCourseId>();
+	
+	protected static Set<String> getNameKeys(XCourseId course) {
+		Set<String> keys = new HashSet<String>();
+		String courseName = course.getCourseName();
+		keys.add(courseName.toLowerCase());
+		keys.add(course.getCourseNumber().toLowerCase());
+		if (courseName.indexOf('-') >= 0)
+			keys.add(courseName.substring(courseName.lastIndexOf('-') + 1).trim().toLowerCase());
+		if (course.getTitle() != null) {
+			keys.add((courseName + " " + course.getTitle()).toLowerCase());
+			keys.add((courseName + " - " + course.getTitle()).toLowerCase());
+		}
+		return keys;
+	}
+	
+	protected static Set<String> getTitleKeys(XCourseId course) {
+		Set<String> keys = new HashSet<String>();
+		if (course.getTitle() == null) return keys;
+		String title = course.getTitle().toLowerCase();
+		keys.add(title);
+		for (int idx = title.indexOf(' '); idx >= 0; idx = title.indexOf(' ', idx + 1))
+			keys.add(title.substring(idx + 1));
+		return keys;
+	}
+	
+	private static void add(NavigableMap<String, Set<XCourseId>> index, String key, XCourseId course) {
+		Set<XCourseId> courses = index.get(key);
+		Set<XCourseId> updated = (courses == null ? new HashSet<XCourseId>(2) : new HashSet<XCourseId>(courses));
+		updated.add(course);
+		index.put(key, updated);
+	}
+	
+	private static void remove(NavigableMap<String, Set<XCourseId>> index, String key, XCourseId course) {
+		Set<XCourseId> courses = index.get(key);
+		if (courses == null || !courses.contains(course)) return;
+		if (courses.size() == 1) {
+			index.remove(key);
+		} else {
+			Set<XCourseId> updated = new HashSet<XCourseId>(courses);
+			updated.remove(course);
+			index.put(key, updated);
+		}
+	}
+	
+	/**
+	 * Add or replace a course in the index
+	 */
+	public synchronized void add(XCourseId course) {
+		XCourseId old = iCourses.put(course.getCourseId(), course);
+		if (old != null) {
+			for (String key: getNameKeys(old)) remove(iNameIndex, key, old);
+			for (String key: getTitleKeys(old)) remove(iTitleIndex, key, old);
+		}
+		for (String key: getNameKeys(course)) add(iNameIndex, key, course);
+		for (String key: getTitleKeys(course)) add(iTitleIndex, key, course);
+	}
+	
+	/**
+	 * Remove a course from the index
+	 */
+	public synchronized void remove(XCourseId course) {
+		XCourseId old = iCourses.remove(course.getCourseId());
+		if (old != null) {
+			for (String key: getNameKeys(old)) remove(iNameIndex, key, old);
+			for (String key: getTitleKeys(old)) remove(iTitleIndex, key, old);
+		}
+	}
+	
+	/**
+	 * Remove all courses from the index
+	 */
+	public synchronized void clear() {
+		iCourses.clear();
+		iNameIndex.clear();
+		iTitleIndex.clear();
+	}
+	
+	public synchronized int size() {
+		return iCourses.size();
+	}
+	
+	private static Collection<XCourseId> lookup(NavigableMap<String, Set<XCourseId>> index, String prefix) {
+		Map<Long, XCourseId> ret = new HashMap<Long, XCourseId>();
+		for (Set<XCourseId> courses: index.subMap(prefix, true, prefix + sMaxChar, true).values())
+			for (XCourseId course: courses)
+				ret.put(course.getCourseId(), course);
+		return ret.values();
+	}
+	
+	/**
+	 * Courses that may match the given query by name, a superset of courses for which {@link XCourseId#matchCourseName(String)} is true
+	 */
+	public Collection<XCourseId> getCourseNameCandidates(String queryInLowerCase) {
+		return lookup(iNameIndex, queryInLowerCase);
+	}
+	
+	/**
+	 * Courses that may match the given query by title, a superset of courses for which {@link XCourseId#matchTitle(String)} is true
+	 */
+	public Collection<XCourseId> getTitleCandidates(String queryInLowerCase) {
+		return lookup(iTitleIndex, queryInLowerCase);
+	}
+	
+	/**
+	 * Same as the course lookup in {@link InMemoryServer#findCourses(String, Integer, CourseMatcher, Comparator)}, but using the index
+	 */
+	public SubSet<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher, Comparator<XCourseId> cmp) {
+		SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
+		String queryInLowerCase = query.toLowerCase();
+		for (XCourseId c : getCourseNameCandidates(queryInLowerCase)) {
+			if (c.matchCourseName(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+		}
+		if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+			for (XCourseId c : getTitleCandidates(queryInLowerCase)) {
+				if (c.matchTitle(queryInLowerCase) && (matcher == null || matcher.match(c))) ret.add(c);
+			}
+		}
+		return ret;
+	}
+}
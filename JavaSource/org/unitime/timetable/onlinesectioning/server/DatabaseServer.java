@@ -77,6 +77,12 @@ public class DatabaseServer extends AbstractLockingServer {
 	protected void loadOnMaster(OnlineSectioningServerContext context) throws SectioningException {
 		setReady(true);
 	}
+	
+	@Override
+	protected boolean isOfferingTemplateCacheEnabled() {
+		// offerings and enrollments are changed directly in the database
+		return false;
+	}
 
 	@Override
 	public Collection<XCourseId> findCourses(String query, Integer limit, CourseMatcher matcher) {
@@ -47,6 +47,7 @@ import org.unitime.timetable.onlinesectioning.model.XStudent;
 public class InMemoryServer extends AbstractLockingServer {
 	private Hashtable<Long, XCourseId> iCourseForId = new Hashtable<Long, XCourseId>();
 	private Hashtable<String, TreeSet<XCourseId>> iCourseForName = new Hashtable<String, TreeSet<XCourseId>>();
+	private CourseSearchIndex iCourseIndex = new CourseSearchIndex();
 	
 	private Hashtable<Long, XStudent> iStudentTable = new Hashtable<Long, XStudent>();
 	private Hashtable<Long, XOffering> iOfferingTable = new Hashtable<Long, XOffering>();
@@ -68,6 +69,8 @@ public class InMemoryServer extends AbstractLockingServer {
 		if (matcher != null) matcher.setServer(this);
 		Lock lock = readLock();
 		try {
+			if (iCourseIndex != null && !query.isEmpty() && getConfig().getPropertyBoolean("CourseSearch.UseIndex", true))
+				return iCourseIndex.findCourses(query, limit, matcher, cmp);
 			SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
 			String queryInLowerCase = query.toLowerCase();
 			for (XCourseId c : iCourseForId.values()) {
@@ -198,6 +201,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		Lock lock = writeLock();
 		try {
 			iExpectations.put(expectations.getOfferingId(), expectations);
+			offeringChanged(expectations.getOfferingId());
 		} finally {
 			lock.release();
 		}
@@ -210,11 +214,13 @@ public class InMemoryServer extends AbstractLockingServer {
 			XStudent oldStudent = iStudentTable.remove(student.getStudentId());
 			if (oldStudent != null) {
 				for (XRequest request: oldStudent.getRequests())
-					if (request instanceof XCourseRequest)
+					if (request instanceof XCourseRequest) {
 						for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
 							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 							if (requests != null) requests.remove(request);
 						}
+						requestChanged(request);
+					}
 			}
 		} finally {
 			lock.release();
@@ -229,15 +235,18 @@ public class InMemoryServer extends AbstractLockingServer {
 			if (updateRequests) {
 				if (oldStudent != null) {
 					for (XRequest request: oldStudent.getRequests())
-						if (request instanceof XCourseRequest)
+						if (request instanceof XCourseRequest) {
 							for (XCourseId course: ((XCourseRequest)request).getCourseIds()) {
 								List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 								if (requests != null) requests.remove(request);
 							}
+							requestChanged(request);
+						}
 				}
 				for (XRequest request: student.getRequests())
 					if (request instanceof XCourseRequest) {
 						XCourseRequest cr = (XCourseRequest)request;
+						requestChanged(cr);
 						for (XCourseId course: cr.getCourseIds()) {
 							if (cr.isDuplicateOffering(course)) continue;
 							List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
@@ -264,6 +273,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			for (XCourse course: offering.getCourses()) {
 				iCourseForId.remove(course.getCourseId());
+				if (iCourseIndex != null) iCourseIndex.remove(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses != null) {
 					courses.remove(course);
@@ -276,6 +286,7 @@ public class InMemoryServer extends AbstractLockingServer {
 			iOfferingTable.remove(offering.getOfferingId());
 			if (removeExpectations)
 				iExpectations.remove(offering.getOfferingId());
+			offeringChanged(offering.getOfferingId());
 			for (String externalId: offering.getInstructorExternalIds()) {
 				Set<Long> offeringIds = iInstructedOfferings.get(externalId);
 				if (offeringIds != null) offeringIds.remove(offering.getOfferingId());
@@ -294,8 +305,10 @@ public class InMemoryServer extends AbstractLockingServer {
 				remove(oldOffering, false);
 			
 			iOfferingTable.put(offering.getOfferingId(), offering);
+			offeringChanged(offering.getOfferingId());
 			for (XCourse course: offering.getCourses()) {
 				iCourseForId.put(course.getCourseId(), course);
+				if (iCourseIndex != null) iCourseIndex.add(course);
 				TreeSet<XCourseId> courses = iCourseForName.get(course.getCourseNameInLowerCase());
 				if (courses == null) {
 					courses = new TreeSet<XCourseId>();
@@ -352,6 +365,11 @@ public class InMemoryServer extends AbstractLockingServer {
 				iInstructedOfferings = new Hashtable<String, Set<Long>>();
 			else
 				iInstructedOfferings.clear();
+			if (iCourseIndex == null)
+				iCourseIndex = new CourseSearchIndex();
+			else
+				iCourseIndex.clear();
+			allOfferingsChanged();
 		} finally {
 			lock.release();
 		}
@@ -363,6 +381,7 @@ public class InMemoryServer extends AbstractLockingServer {
 		try {
 			iStudentTable.clear();
 			iOfferingRequests.clear();
+			allOfferingsChanged();
 		} finally {
 			lock.release();
 		}
@@ -382,9 +401,11 @@ public class InMemoryServer extends AbstractLockingServer {
 						List<XCourseRequest> requests = iOfferingRequests.get(course.getOfferingId());
 						if (requests != null) requests.remove(cr);
 					}
+					requestChanged(cr);
 
 					// assign
 					cr.setEnrollment(enrollment);
+					requestChanged(cr);
 					
 					// put new requests
 					for (XCourseId course: cr.getCourseIds()) {
@@ -0,0 +1,308 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.model.XStudentId;
+import org.unitime.timetable.util.Constants;
+
+/**
+ * Snapshot of the complete state of an online sectioning server (all offerings, expectations, and students)
+ * stored in a local file, so that a restarted server can be brought back without reloading everything
+ * from the database. The file starts with a header containing the format version, the UniTime version,
+ * the academic session, the time the snapshot was taken, and the time stamp of the last processed
+ * student sectioning queue item. A snapshot made by a different format or UniTime version is ignored.
+ * The snapshot is written into a temporary file first, which is then moved over the previous snapshot.
+ * Each offering (with its expectations) and each student is serialized into its own block, prefixed by its length.
+ * 
+ * @author Tomas Muller
+ */
+public class ServerSnapshot {
+	private static Log sLog = LogFactory.getLog(ServerSnapshot.class);
+	private static final int MAGIC = 0x55534e50;
+	private static final int FORMAT_VERSION = 2;
+	
+	private Long iSessionId;
+	private Date iCreated;
+	private Date iQueueTimeStamp;
+	private int iNrOfferings = 0, iNrStudents = 0;
+	
+	private ServerSnapshot(Long sessionId, Date created, Date queueTimeStamp) {
+		iSessionId = sessionId;
+		iCreated = created;
+		iQueueTimeStamp = queueTimeStamp;
+	}
+	
+	/** Academic session of the snapshot */
+	public Long getSessionId() { return iSessionId; }
+	/** Time when the snapshot was taken */
+	public Date getCreated() { return iCreated; }
+	/** Time stamp of the last student sectioning queue item that is included in the snapshot, null if not known */
+	public Date getQueueTimeStamp() { return iQueueTimeStamp; }
+	/** Number of offerings in the snapshot */
+	public int getNrOfferings() { return iNrOfferings; }
+	/** Number of students in the snapshot */
+	public int getNrStudents() { return iNrStudents; }
+	
+	@Override
+	public String toString() {
+		return "Snapshot{session=" + iSessionId + ", created=" + iCreated + ", queue=" + iQueueTimeStamp + ", offerings=" + iNrOfferings + ", students=" + iNrStudents + "}";
+	}
+	
+	public static File getSnapshotFile(Long sessionId) {
+		return new File(ApplicationProperties.getSnapshotFolder(), "sectioning-" + sessionId + ".snapshot");
+	}
+	
+	/**
+	 * Write the current state of the server into its snapshot file. The server is not locked as a whole: each offering
+	 * and each student is serialized into a buffer while holding its lock (see {@link OnlineSectioningServer#lockOffering(Long, java.util.Collection, String)}
+	 * and {@link OnlineSectioningServer#lockStudent(Long, java.util.Collection, String)}), the buffer is written into the file after the lock is released.
+	 * Changes made while the snapshot is being taken are not lost, since they are newer than the given queue time stamp
+	 * and they are processed again when the snapshot is restored.
+	 * @param queueTimeStamp time stamp of the last processed student sectioning queue item
+	 */
+	public static ServerSnapshot write(OnlineSectioningServer server, Date queueTimeStamp) throws IOException {
+		Long sessionId = server.getAcademicSession().getUniqueId();
+		File file = getSnapshotFile(sessionId);
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		ServerSnapshot snapshot = new ServerSnapshot(sessionId, new Date(), queueTimeStamp);
+		List<Long> noIds = new ArrayList<Long>();
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 65536));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeUTF(Constants.getVersion());
+				out.writeLong(sessionId);
+				out.writeLong(snapshot.getCreated().getTime());
+				out.writeLong(queueTimeStamp == null ? -1l : queueTimeStamp.getTime());
+				
+				Set<Long> offeringIds = new HashSet<Long>();
+				for (XCourseId course: server.findCourses((CourseMatcher)null))
+					offeringIds.add(course.getOfferingId());
+				for (Long offeringId: offeringIds) {
+					byte[] data = null;
+					Lock lock = server.lockOffering(offeringId, noIds, "snapshot");
+					try {
+						XOffering offering = server.getOffering(offeringId);
+						if (offering == null) continue;
+						XExpectations expectations = server.getExpectations(offeringId);
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+						ObjectOutputStream block = new ObjectOutputStream(buffer);
+						offering.writeExternal(block);
+						block.writeBoolean(expectations != null);
+						if (expectations != null) expectations.writeExternal(block);
+						block.close();
+						data = buffer.toByteArray();
+					} finally {
+						lock.release();
+					}
+					out.writeBoolean(true);
+					out.writeInt(data.length);
+					out.write(data);
+					snapshot.iNrOfferings ++;
+				}
+				
+				out.writeBoolean(false);
+				for (XStudentId id: server.findStudents(null)) {
+					byte[] data = null;
+					Lock lock = server.lockStudent(id.getStudentId(), noIds, "snapshot");
+					try {
+						XStudent student = server.getStudent(id.getStudentId());
+						if (student == null) continue;
+						ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+						ObjectOutputStream block = new ObjectOutputStream(buffer);
+						student.writeExternal(block);
+						block.close();
+						data = buffer.toByteArray();
+					} finally {
+						lock.release();
+					}
+					out.writeBoolean(true);
+					out.writeInt(data.length);
+					out.write(data);
+					snapshot.iNrStudents ++;
+				}
+				out.writeBoolean(false);
+				out.writeInt(MAGIC);
+				out.flush();
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return snapshot;
+	}
+	
+	/**
+	 * Next block of the snapshot
+	 */
+	private static ObjectInputStream readBlock(DataInputStream in) throws IOException {
+		byte[] data = new byte[in.readInt()];
+		in.readFully(data);
+		return new ObjectInputStream(new ByteArrayInputStream(data));
+	}
+	
+	/**
+	 * Replace the content of the server with the snapshot. The server is locked (see {@link OnlineSectioningServer#lockAll()})
+	 * while the snapshot is being loaded.
+	 * @param maxAge maximal age of the snapshot in milliseconds (the sectioning queue is not kept forever), no limit when not positive
+	 * @return the restored snapshot, null if there is no usable snapshot
+	 */
+	public static ServerSnapshot restore(OnlineSectioningServer server, long maxAge) throws IOException, ClassNotFoundException {
+		Long sessionId = server.getAcademicSession().getUniqueId();
+		File file = getSnapshotFile(sessionId);
+		if (!file.exists()) return null;
+		DataInputStream in = new DataInputStream(openStream(file));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				sLog.info("Snapshot " + file + " is not valid or it has a different format.");
+				return null;
+			}
+			String version = in.readUTF();
+			if (!Constants.getVersion().equals(version)) {
+				sLog.info("Snapshot " + file + " was created by a different version (" + version + ").");
+				return null;
+			}
+			if (in.readLong() != sessionId) {
+				sLog.info("Snapshot " + file + " is for a different academic session.");
+				return null;
+			}
+			Date created = new Date(in.readLong());
+			long queueTimeStamp = in.readLong();
+			if (maxAge > 0 && created.getTime() + maxAge < System.currentTimeMillis()) {
+				sLog.info("Snapshot " + file + " is too old (created on " + created + ").");
+				return null;
+			}
+			ServerSnapshot snapshot = new ServerSnapshot(sessionId, created, queueTimeStamp < 0 ? null : new Date(queueTimeStamp));
+			
+			Lock lock = server.lockAll();
+			try {
+				server.clearAll();
+				while (in.readBoolean()) {
+					ObjectInputStream block = readBlock(in);
+					server.update(new XOffering(block));
+					if (block.readBoolean())
+						server.update(new XExpectations(block));
+					snapshot.iNrOfferings ++;
+				}
+				while (in.readBoolean()) {
+					server.update(new XStudent(readBlock(in)), true);
+					snapshot.iNrStudents ++;
+				}
+				if (in.readInt() != MAGIC)
+					throw new IOException("Snapshot is corrupted: end of file marker expected.");
+			} catch (IOException | ClassNotFoundException | RuntimeException e) {
+				server.clearAll();
+				throw e;
+			} finally {
+				lock.release();
+			}
+			return snapshot;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Memory mapped input stream of the snapshot file (when the file is small enough to be mapped at once)
+	 */
+	private static InputStream openStream(File file) throws IOException {
+		if (file.length() >= Integer.MAX_VALUE)
+			return new BufferedInputStream(new FileInputStream(file), 65536);
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new ByteBufferInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	private static class ByteBufferInputStream extends InputStream {
+		private ByteBuffer iBuffer;
+		
+		ByteBufferInputStream(MappedByteBuffer buffer) {
+			iBuffer = buffer;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return iBuffer.hasRemaining() ? iBuffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (!iBuffer.hasRemaining()) return -1;
+			len = Math.min(len, iBuffer.remaining());
+			iBuffer.get(b, off, len);
+			return len;
+		}
+		
+		@Override
+		public int available() {
+			return iBuffer.remaining();
+		}
+		
+		@Override
+		public long skip(long n) {
+			int skip = (int)Math.max(0, Math.min(n, iBuffer.remaining()));
+			iBuffer.position(iBuffer.position() + skip);
+			return skip;
+		}
+	}
+}
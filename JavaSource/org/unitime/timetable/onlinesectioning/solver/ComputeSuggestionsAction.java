@@ -221,7 +221,7 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter));
+										cr.getCourses().add(clone(getOfferingTemplate(server, x), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -427,7 +427,15 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 		if (maxOverExpected >= 0.0)
 			model.addGlobalConstraint(new MaxOverExpectedConstraint(maxOverExpected));
 		
-		if (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true)) {
+		if (ParallelSuggestionsBranchAndBound.getNrThreads(server.getConfig()) > 1) {
+			suggestionBaB = new ParallelSuggestionsBranchAndBound(
+					model.getProperties(), student, assignment,
+					requiredSectionsForCourse, requiredFreeTimes, preferredSectionsForCourse,
+					selectedRequest, selectedSection,
+					filter, maxOverExpected,
+					server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true),
+					server.getConfig().getPropertyBoolean("StudentWeights.PriorityWeighting", true));
+		} else if (server.getConfig().getPropertyBoolean("StudentWeights.MultiCriteria", true)) {
 			suggestionBaB = new MultiCriteriaBranchAndBoundSuggestions(
 					model.getProperties(), student, assignment,
 					requiredSectionsForCourse, requiredFreeTimes, preferredSectionsForCourse,
@@ -443,7 +451,8 @@ public class ComputeSuggestionsAction extends FindAssignmentAction {
 				(server.getConfig().getPropertyBoolean("StudentWeights.PriorityWeighting", true) ? "priority" : "equal") + " weighting model" +
 				" with " + server.getConfig().getPropertyInt("Suggestions.Timeout", 5000) +" ms time limit" +
 				(maxOverExpected < 0 ? "" : ", maximal over-expected of " + maxOverExpected) +
-				" and maximal depth of " + server.getConfig().getPropertyInt("Suggestions.MaxDepth", 4) + ".");
+				" and maximal depth of " + server.getConfig().getPropertyInt("Suggestions.MaxDepth", 4) +
+				(suggestionBaB instanceof ParallelSuggestionsBranchAndBound ? " (using " + ParallelSuggestionsBranchAndBound.getNrThreads(server.getConfig()) + " threads)" : "") + ".");
 
 		TreeSet<SuggestionsBranchAndBound.Suggestion> suggestions = suggestionBaB.computeSuggestions();
 		iValue = (suggestions.isEmpty() ? 0.0 : - suggestions.first().getValue());
@@ -115,6 +115,7 @@ import org.unitime.timetable.onlinesectioning.model.XRoom;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
 import org.unitime.timetable.onlinesectioning.model.XSubpart;
+import org.unitime.timetable.onlinesectioning.server.AbstractServer;
 import org.unitime.timetable.onlinesectioning.status.StatusPageSuggestionsAction.StudentMatcher;
 import org.unitime.timetable.solver.studentsct.StudentSolver;
 
@@ -260,7 +261,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 								if (ci != null) {
 									XOffering x = server.getOffering(ci.getOfferingId());
 									if (x != null) {
-										cr.getCourses().add(clone(x, server.getEnrollments(x.getOfferingId()), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter));
+										cr.getCourses().add(clone(getOfferingTemplate(server, x), ci.getCourseId(), student.getId(), original, classTable, server, model, getAssignment() != null, checkDeadlines, currentDateIndex, onlineOnlyFilter));
 										distributions.addAll(x.getDistributions());
 									}
 								}
@@ -604,11 +605,29 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 		return rets;
 	}
 	
-	@SuppressWarnings("unchecked")
 	public static Course clone(XOffering offering, XEnrollments enrollments, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model, boolean hasAssignment, boolean checkDeadlines, Integer currentDateIndex, boolean onlineOnlyFilter) {
+		return clone(new OfferingTemplate(-1l, offering, enrollments, server.getExpectations(offering.getOfferingId())), courseId, studentId, originalStudent, sections, server, model, hasAssignment, checkDeadlines, currentDateIndex, onlineOnlyFilter);
+	}
+	
+	/**
+	 * Offering template for the given offering: a cached one when the server supports it (see {@link AbstractServer#getOfferingTemplate(Long)}),
+	 * a new one otherwise.
+	 */
+	public static OfferingTemplate getOfferingTemplate(OnlineSectioningServer server, XOffering offering) {
+		if (server instanceof AbstractServer) {
+			OfferingTemplate template = ((AbstractServer)server).getOfferingTemplate(offering.getOfferingId());
+			if (template != null) return template;
+		}
+		return new OfferingTemplate(-1l, offering, server.getEnrollments(offering.getOfferingId()), server.getExpectations(offering.getOfferingId()));
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static Course clone(OfferingTemplate template, Long courseId, long studentId, XStudent originalStudent, Map<Long, Section> sections, OnlineSectioningServer server, StudentSectioningModel model, boolean hasAssignment, boolean checkDeadlines, Integer currentDateIndex, boolean onlineOnlyFilter) {
+		XOffering offering = template.getOffering();
+		XEnrollments enrollments = template.getEnrollments();
 		Offering clonedOffering = new Offering(offering.getOfferingId(), offering.getName());
 		clonedOffering.setModel(model);
-		XExpectations expectations = server.getExpectations(offering.getOfferingId());
+		XExpectations expectations = template.getExpectations();
 		XCourse course = offering.getCourse(courseId);
 		int courseLimit = course.getLimit();
 		boolean courseEnrolled = false;
@@ -667,15 +686,10 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 						if (limit < 0) limit = 0; // over-enrolled, but not unlimited
 						if (student && limit == 0) limit = 1; // allow enrolled student in
 					}
-                    List<RoomLocation> rooms = new ArrayList<RoomLocation>();
-                    for (XRoom r: section.getRooms())
-                    	rooms.add(new RoomLocation(r.getUniqueId(), r.getName(), null, 0, 0, r.getX(), r.getY(), r.getIgnoreTooFar(), null));
                     Placement placement = section.getTime() == null ? null : new Placement(
                     		new Lecture(section.getSectionId(), null, section.getSubpartId(), section.getName(), new ArrayList<TimeLocation>(), new ArrayList<RoomLocation>(), section.getNrRooms(), null, section.getLimit(), section.getLimit(), 1.0),
-                    		new TimeLocation(section.getTime().getDays(), section.getTime().getSlot(), section.getTime().getLength(), 0, 0.0,
-                    				section.getTime().getDatePatternId(), section.getTime().getDatePatternName(), section.getTime().getWeeks(),
-                    				section.getTime().getBreakTime()),
-                    		rooms);
+                    		template.getTime(section.getSectionId()),
+                    		new ArrayList<RoomLocation>(template.getRooms(section.getSectionId())));
 					OnlineSection clonedSection = new OnlineSection(section.getSectionId(), limit,
 							section.getName(course.getCourseId()), clonedSubpart, placement, section.toInstructors(),
 							(section.getParentId() == null ? null : sections.get(section.getParentId())));
@@ -692,11 +706,8 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 						clonedSection.setEnabled(false);
 					if (section.getTime() != null && currentDateIndex != null && !(server instanceof StudentSolver))
 						clonedSection.setPast(section.getTime().isPast(currentDateIndex, server.getAcademicSession()));
-					for (XDistribution distribution: offering.getDistributions())
-						if (distribution.getDistributionType() == XDistributionType.IngoreConflicts && distribution.hasSection(section.getSectionId()))
-							for (Long id: distribution.getSectionIds())
-								if (!id.equals(section.getSectionId()))
-									clonedSection.addIgnoreConflictWith(id);
+					for (Long id: template.getIgnoreConflictWith(section.getSectionId()))
+						clonedSection.addIgnoreConflictWith(id);
 			        if (limit > 0) {
 			        	double available = Math.round(clonedSection.getSpaceExpected() - limit);
 						clonedSection.setPenalty(available / section.getLimit());
@@ -862,7 +873,7 @@ public class FindAssignmentAction implements OnlineSectioningAction<List<ClassAs
 					XOffering offering = null;
 					if (courseInfo != null) offering = server.getOffering(courseInfo.getOfferingId());
 					if (offering != null) {
-						Course course = clone(offering, server.getEnrollments(offering.getOfferingId()), courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model, hasAssignment, checkDeadline, currentDateIndex, onlineOnlyFilter);
+						Course course = clone(getOfferingTemplate(server, offering), courseInfo.getCourseId(), student.getId(), originalStudent, classTable, server, model, hasAssignment, checkDeadline, currentDateIndex, onlineOnlyFilter);
 						cr.add(course);
 						if (rc.hasSelectedIntructionalMethods()) {
 							for (Config config: course.getOffering().getConfigs()) {
@@ -0,0 +1,115 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.cpsolver.coursett.model.RoomLocation;
+import org.cpsolver.coursett.model.TimeLocation;
+import org.unitime.timetable.onlinesectioning.model.XConfig;
+import org.unitime.timetable.onlinesectioning.model.XDistribution;
+import org.unitime.timetable.onlinesectioning.model.XDistributionType;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.model.XRoom;
+import org.unitime.timetable.onlinesectioning.model.XSection;
+import org.unitime.timetable.onlinesectioning.model.XSubpart;
+
+/**
+ * Pre-computed, read-only data of an offering that are needed to create its solver copy in {@link FindAssignmentAction}:
+ * the offering, its enrollments and expectations, section times and rooms, and the sections with which
+ * a section can overlap. A template is created for a particular version of the offering and it is
+ * shared between requests until the offering or any of its enrollments change.
+ * 
+ * @author Tomas Muller
+ */
+public class OfferingTemplate {
+	private long iVersion;
+	private XOffering iOffering;
+	private XEnrollments iEnrollments;
+	private XExpectations iExpectations;
+	private Map<Long, TimeLocation> iTimes = new HashMap<Long, TimeLocation>();
+	private Map<Long, List<RoomLocation>> iRooms = new HashMap<Long, List<RoomLocation>>();
+	private Map<Long, Set<Long>> iIgnoreConflictWith = new HashMap<Long, Set<Long>>();
+	
+	public OfferingTemplate(long version, XOffering offering, XEnrollments enrollments, XExpectations expectations) {
+		iVersion = version;
+		iOffering = offering;
+		iEnrollments = enrollments;
+		iExpectations = (expectations == null ? new XExpectations(offering.getOfferingId()) : expectations);
+		for (XConfig config: offering.getConfigs())
+			for (XSubpart subpart: config.getSubparts())
+				for (XSection section: subpart.getSections()) {
+					if (section.getTime() != null)
+						iTimes.put(section.getSectionId(), new TimeLocation(section.getTime().getDays(), section.getTime().getSlot(), section.getTime().getLength(), 0, 0.0,
+								section.getTime().getDatePatternId(), section.getTime().getDatePatternName(), section.getTime().getWeeks(),
+								section.getTime().getBreakTime()));
+					List<RoomLocation> rooms = new ArrayList<RoomLocation>();
+					for (XRoom r: section.getRooms())
+						rooms.add(new RoomLocation(r.getUniqueId(), r.getName(), null, 0, 0, r.getX(), r.getY(), r.getIgnoreTooFar(), null));
+					iRooms.put(section.getSectionId(), rooms);
+				}
+		for (XDistribution distribution: offering.getDistributions())
+			if (distribution.getDistributionType() == XDistributionType.IngoreConflicts)
+				for (Long sectionId: distribution.getSectionIds()) {
+					Set<Long> ignore = iIgnoreConflictWith.get(sectionId);
+					if (ignore == null) {
+						ignore = new HashSet<Long>();
+						iIgnoreConflictWith.put(sectionId, ignore);
+					}
+					for (Long id: distribution.getSectionIds())
+						if (!id.equals(sectionId)) ignore.add(id);
+				}
+	}
+	
+	/** Version of the offering for which the template was created */
+	public long getVersion() { return iVersion; }
+	
+	/** Offering */
+	public XOffering getOffering() { return iOffering; }
+	
+	/** Offering enrollments (must not be modified) */
+	public XEnrollments getEnrollments() { return iEnrollments; }
+	
+	/** Offering expectations */
+	public XExpectations getExpectations() { return iExpectations; }
+	
+	/** Section time, null if the section is arranged hours */
+	public TimeLocation getTime(Long sectionId) { return iTimes.get(sectionId); }
+	
+	/** Section rooms (must not be modified) */
+	public List<RoomLocation> getRooms(Long sectionId) {
+		List<RoomLocation> rooms = iRooms.get(sectionId);
+		return rooms == null ? Collections.<RoomLocation>emptyList() : rooms;
+	}
+	
+	/** Sections with which the given section can overlap (ignore student conflicts distribution) */
+	public Set<Long> getIgnoreConflictWith(Long sectionId) {
+		Set<Long> ignore = iIgnoreConflictWith.get(sectionId);
+		return ignore == null ? Collections.<Long>emptySet() : ignore;
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.solver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cpsolver.ifs.assignment.Assignment;
+import org.cpsolver.ifs.assignment.AssignmentMap;
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.ifs.util.ToolBox;
+import org.cpsolver.studentsct.model.CourseRequest;
+import org.cpsolver.studentsct.model.Enrollment;
+import org.cpsolver.studentsct.model.FreeTimeRequest;
+import org.cpsolver.studentsct.model.Request;
+import org.cpsolver.studentsct.model.Section;
+import org.cpsolver.studentsct.model.Student;
+import org.cpsolver.studentsct.online.selection.MultiCriteriaBranchAndBoundSuggestions;
+import org.cpsolver.studentsct.online.selection.SuggestionsBranchAndBound;
+
+/**
+ * Suggestions branch and bound that splits the search among multiple threads. The possible enrollments
+ * of the selected request (the root of the search tree) are split into consecutive chunks, each chunk is
+ * searched by its own {@link SuggestionsBranchAndBound} (with its own copy of the assignment) in a shared
+ * fork-join pool, and all the searches are stopped at the same wall-clock deadline (Suggestions.Timeout).
+ * The best suggestions of each chunk are merged the same way the sequential search does it (at most
+ * Suggestions.MaxSuggestions suggestions, only the best one for each selected section), so when the search
+ * is not cut by the deadline, the result is the same as of the sequential search.
+ * Each chunk is started on the calling thread (this sets up the chunk's assignment and the initial assignments
+ * of the student's requests, which are shared by all the chunks), only the branch and bound itself is run in the pool.
+ * The number of threads is given by the Suggestions.Threads parameter of the online student scheduling server.
+ * 
+ * @author Tomas Muller
+ */
+public class ParallelSuggestionsBranchAndBound extends SuggestionsBranchAndBound {
+	private static Log sLog = LogFactory.getLog(ParallelSuggestionsBranchAndBound.class);
+	private static ForkJoinPool sPool = null;
+	
+	private DataProperties iProperties;
+	private Student iStudent;
+	private Assignment<Request, Enrollment> iAssignment;
+	private Hashtable<CourseRequest, Set<Section>> iRequiredSections;
+	private Set<FreeTimeRequest> iRequiredFreeTimes;
+	private Hashtable<CourseRequest, Set<Section>> iPreferredSections;
+	private Request iSelectedRequest;
+	private Section iSelectedSection;
+	private SuggestionFilter iFilter;
+	private double iMaxSectionsWithPenalty;
+	private boolean iMultiCriteria, iPriorityWeighting;
+	private int iMaxSuggestions;
+	private int iNrThreads;
+	private long iTimeout;
+	private long iT0, iT1;
+	private volatile long iDeadline;
+	private volatile boolean iTimeoutReached = false;
+	private int iNrMatched = 0;
+
+	public ParallelSuggestionsBranchAndBound(DataProperties properties, Student student, Assignment<Request, Enrollment> assignment,
+			Hashtable<CourseRequest, Set<Section>> requiredSections, Set<FreeTimeRequest> requiredFreeTimes, Hashtable<CourseRequest, Set<Section>> preferredSections,
+			Request selectedRequest, Section selectedSection, SuggestionFilter filter, double maxSectionsWithPenalty, boolean multiCriteria, boolean priorityWeighting) {
+		super(properties, student, assignment, requiredSections, requiredFreeTimes, preferredSections, selectedRequest, selectedSection, filter, maxSectionsWithPenalty);
+		iProperties = properties;
+		iStudent = student;
+		iAssignment = assignment;
+		iRequiredSections = requiredSections;
+		iRequiredFreeTimes = requiredFreeTimes;
+		iPreferredSections = preferredSections;
+		iSelectedRequest = selectedRequest;
+		iSelectedSection = selectedSection;
+		iFilter = filter;
+		iMaxSectionsWithPenalty = maxSectionsWithPenalty;
+		iMultiCriteria = multiCriteria;
+		iPriorityWeighting = priorityWeighting;
+		iMaxSuggestions = properties.getPropertyInt("Suggestions.MaxSuggestions", 20);
+		iTimeout = properties.getPropertyLong("Suggestions.Timeout", 5000);
+		iNrThreads = Math.max(1, getNrThreads(properties));
+	}
+	
+	/**
+	 * Number of threads used to compute suggestions (parameter Suggestions.Threads, defaults to 1, -1 for the number of available processors),
+	 * parallel search is only used when greater than one
+	 */
+	public static int getNrThreads(DataProperties config) {
+		int threads = config.getPropertyInt("Suggestions.Threads", 1);
+		return (threads < 0 ? Runtime.getRuntime().availableProcessors() : threads);
+	}
+	
+	/**
+	 * Shared pool with the given number of threads. The pool is replaced when the number of threads changes,
+	 * the old pool is left to finish its tasks (its idle worker threads terminate on their own).
+	 */
+	protected static synchronized ForkJoinPool getPool(int nrThreads) {
+		if (sPool == null || sPool.getParallelism() != nrThreads)
+			sPool = new ForkJoinPool(nrThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("Suggestions-" + thread.getPoolIndex());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, null, false);
+		return sPool;
+	}
+	
+	/**
+	 * Copy of the initial assignment, each search needs its own
+	 */
+	protected Assignment<Request, Enrollment> copyAssignment() {
+		Assignment<Request, Enrollment> assignment = new AssignmentMap<Request, Enrollment>();
+		for (Request request: iStudent.getRequests()) {
+			Enrollment enrollment = iAssignment.getValue(request);
+			if (enrollment != null) assignment.assign(0, enrollment);
+		}
+		return assignment;
+	}
+	
+	/**
+	 * One chunk of the search. The root of the search tree is not searched when the chunk's search is started,
+	 * it is kept (see {@link #setRoot(Runnable)}) and searched later by {@link #search()}.
+	 */
+	protected static class Chunk {
+		private SuggestionsBranchAndBound iSearch;
+		private TreeSet<Suggestion> iSuggestions;
+		private Runnable iRoot = null;
+		
+		protected boolean isStarted() { return iSuggestions != null; }
+		
+		protected void setRoot(Runnable root) { iRoot = root; }
+		
+		/**
+		 * Set up the search (to be called on the calling thread), returns the (yet empty) set of suggestions of the chunk
+		 */
+		protected TreeSet<Suggestion> start() {
+			iSuggestions = iSearch.computeSuggestions();
+			return iSuggestions;
+		}
+		
+		/**
+		 * Search the chunk (in the pool), the suggestions are added to the set returned by {@link #start()}
+		 */
+		protected TreeSet<Suggestion> search() {
+			if (iRoot != null) iRoot.run();
+			return iSuggestions;
+		}
+		
+		public SuggestionsBranchAndBound getSearch() { return iSearch; }
+	}
+	
+	protected Chunk createChunk(final int chunk, final int nrChunks) {
+		final Chunk ret = new Chunk();
+		final Assignment<Request, Enrollment> assignment = copyAssignment();
+		if (iMultiCriteria)
+			ret.iSearch = new MultiCriteriaBranchAndBoundSuggestions(iProperties, iStudent, assignment, iRequiredSections, iRequiredFreeTimes, iPreferredSections,
+					iSelectedRequest, iSelectedSection, iFilter, iMaxSectionsWithPenalty, iPriorityWeighting) {
+				private boolean iRoot = false;
+				@Override
+				protected void backtrack(ArrayList<Request> requests2resolve, TreeSet<Request> altRequests2resolve, int idx, int depth, boolean alt) {
+					if (idx == 0 && !ret.isStarted()) {
+						ret.setRoot(() -> {
+							iRoot = true;
+							super.backtrack(requests2resolve, altRequests2resolve, idx, depth, alt);
+						});
+						return;
+					}
+					iRoot = (idx == 0);
+					super.backtrack(requests2resolve, altRequests2resolve, idx, depth, alt);
+				}
+				@Override
+				protected List<Enrollment> values(Request request) {
+					List<Enrollment> values = super.values(request);
+					if (iRoot && request.equals(iSelectedRequest)) {
+						iRoot = false;
+						return chunk(values, chunk, nrChunks);
+					}
+					return values;
+				}
+				@Override
+				protected boolean canContinue(ArrayList<Request> requests2resolve, int idx, int depth) {
+					return !isDeadlineReached() && super.canContinue(requests2resolve, idx, depth);
+				}
+				@Override
+				protected boolean canContinueEvaluation() {
+					return !isDeadlineReached() && super.canContinueEvaluation();
+				}
+			};
+		else
+			ret.iSearch = new SuggestionsBranchAndBound(iProperties, iStudent, assignment, iRequiredSections, iRequiredFreeTimes, iPreferredSections,
+					iSelectedRequest, iSelectedSection, iFilter, iMaxSectionsWithPenalty) {
+				private boolean iRoot = false;
+				@Override
+				protected void backtrack(ArrayList<Request> requests2resolve, TreeSet<Request> altRequests2resolve, int idx, int depth, boolean alt) {
+					if (idx == 0 && !ret.isStarted()) {
+						ret.setRoot(() -> {
+							iRoot = true;
+							super.backtrack(requests2resolve, altRequests2resolve, idx, depth, alt);
+						});
+						return;
+					}
+					iRoot = (idx == 0);
+					super.backtrack(requests2resolve, altRequests2resolve, idx, depth, alt);
+				}
+				@Override
+				protected List<Enrollment> values(Request request) {
+					List<Enrollment> values = super.values(request);
+					if (iRoot && request.equals(iSelectedRequest)) {
+						iRoot = false;
+						return chunk(values, chunk, nrChunks);
+					}
+					return values;
+				}
+				@Override
+				protected boolean canContinue(ArrayList<Request> requests2resolve, int idx, int depth) {
+					return !isDeadlineReached() && super.canContinue(requests2resolve, idx, depth);
+				}
+				@Override
+				protected boolean canContinueEvaluation() {
+					return !isDeadlineReached() && super.canContinueEvaluation();
+				}
+			};
+		return ret;
+	}
+	
+	/**
+	 * All searches compute the same (deterministically ordered) list of enrollments of the selected request,
+	 * each search only takes its chunk of it
+	 */
+	protected static List<Enrollment> chunk(List<Enrollment> values, int chunk, int nrChunks) {
+		int from = (int)(((long)values.size()) * chunk / nrChunks);
+		int to = (int)(((long)values.size()) * (chunk + 1) / nrChunks);
+		return (from >= to ? Collections.<Enrollment>emptyList() : values.subList(from, to));
+	}
+	
+	protected boolean isDeadlineReached() {
+		if (iTimeoutReached) return true;
+		if (iTimeout > 0 && System.currentTimeMillis() > iDeadline) {
+			iTimeoutReached = true;
+			return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public TreeSet<Suggestion> computeSuggestions() {
+		iT0 = System.currentTimeMillis();
+		iDeadline = iT0 + iTimeout;
+		iTimeoutReached = false;
+		int nrChunks = iNrThreads;
+		List<Chunk> chunks = new ArrayList<Chunk>(nrChunks);
+		for (int i = 0; i < nrChunks; i++) {
+			Chunk chunk = createChunk(i, nrChunks);
+			// the chunk's search sets the initial assignments of the student's requests, do it here rather than in the pool
+			chunk.start();
+			chunks.add(chunk);
+		}
+		ForkJoinPool pool = getPool(nrChunks);
+		List<Future<TreeSet<Suggestion>>> results = new ArrayList<Future<TreeSet<Suggestion>>>(nrChunks);
+		for (final Chunk chunk: chunks)
+			results.add(pool.submit(new Callable<TreeSet<Suggestion>>() {
+				@Override
+				public TreeSet<Suggestion> call() throws Exception {
+					// chunk was not started before the deadline
+					if (isDeadlineReached()) return new TreeSet<Suggestion>();
+					return chunk.search();
+				}
+			}));
+		List<Suggestion> suggestions = new ArrayList<Suggestion>();
+		for (int i = 0; i < nrChunks; i++) {
+			try {
+				long wait = (iTimeout > 0 ? Math.max(0l, iDeadline - System.currentTimeMillis()) + iTimeout : Long.MAX_VALUE);
+				suggestions.addAll(results.get(i).get(wait, TimeUnit.MILLISECONDS));
+				iNrMatched = Math.max(iNrMatched, chunks.get(i).getSearch().getNrMatched());
+				if (chunks.get(i).getSearch().isTimeoutReached()) iTimeoutReached = true;
+			} catch (Exception e) {
+				sLog.warn("Failed to compute suggestions: " + e.getMessage(), e);
+				iTimeoutReached = true;
+				results.get(i).cancel(true);
+			}
+		}
+		TreeSet<Suggestion> ret = merge(suggestions);
+		iT1 = System.currentTimeMillis();
+		return ret;
+	}
+	
+	/**
+	 * Best suggestions, only the best one for each selected section (when there are multiple enrollments of the selected request)
+	 */
+	protected TreeSet<Suggestion> merge(List<Suggestion> suggestions) {
+		Collections.sort(suggestions);
+		TreeSet<Suggestion> ret = new TreeSet<Suggestion>();
+		int index = iStudent.getRequests().indexOf(iSelectedRequest);
+		s: for (Suggestion s: suggestions) {
+			if (ret.size() >= iMaxSuggestions) break;
+			if (iNrMatched != 1)
+				for (Suggestion x: ret)
+					if (sameSelectedSection(x, s, index)) continue s;
+			ret.add(s);
+		}
+		return ret;
+	}
+	
+	/**
+	 * Section of the enrollment of the selected request that corresponds with the selected section
+	 */
+	protected Section getSelectedEnrollment(Enrollment enrollment) {
+		if (enrollment == null || enrollment.getAssignments() == null || enrollment.getAssignments().isEmpty()) return null;
+		for (Section section: enrollment.getSections()) {
+			if (section.getSubpart().getId() == iSelectedSection.getSubpart().getId()) return section;
+			if (section.getSubpart().getConfig().getId() != iSelectedSection.getSubpart().getConfig().getId() &&
+					section.getSubpart().getInstructionalType().equals(iSelectedSection.getSubpart().getInstructionalType()))
+				return section;
+		}
+		return null;
+	}
+	
+	/**
+	 * Same as {@link Suggestion#sameSelectedSection()} with the assignment of the suggestion s
+	 */
+	protected boolean sameSelectedSection(Suggestion x, Suggestion s, int index) {
+		if (iSelectedSection == null || index < 0) return false;
+		Section selected = getSelectedEnrollment(x.getEnrollments()[index]);
+		if (selected == null) return false;
+		Enrollment enrollment = s.getEnrollments()[index];
+		if (enrollment != null && enrollment.getAssignments() != null && enrollment.getAssignments().contains(selected)) return true;
+		if (!ToolBox.equals(selected.getTime(), iSelectedSection.getTime()) && iSelectedSection.getSubpart().getSections().size() > iMaxSuggestions) {
+			Section other = getSelectedEnrollment(enrollment);
+			if (other != null && ToolBox.equals(other.getTime(), selected.getTime())) return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public long getTime() { return iT1 - iT0; }
+	
+	@Override
+	public boolean isTimeoutReached() { return iTimeoutReached; }
+	
+	@Override
+	public int getNrMatched() { return iNrMatched; }
+}
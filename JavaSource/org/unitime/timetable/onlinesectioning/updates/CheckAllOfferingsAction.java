@@ -19,14 +19,28 @@
 */
 package org.unitime.timetable.onlinesectioning.updates;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.logging.LogFactory;
+import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
 import org.unitime.timetable.gwt.shared.SectioningException;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
 import org.unitime.timetable.onlinesectioning.model.XConfig;
@@ -36,6 +50,8 @@ import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest.ReschedulingReason;
@@ -44,6 +60,7 @@ import org.unitime.timetable.onlinesectioning.solver.SectioningRequest.Reschedul
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AsyncPriority(Priority.BULK)
 public class CheckAllOfferingsAction extends CheckOfferingAction{
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
@@ -67,13 +84,17 @@ public class CheckAllOfferingsAction extends CheckOfferingAction{
 		
 		helper.info("Checking all offerings for " + server.getAcademicSession() + "...");
 		Set<Long> recheck = new HashSet<Long>();
-		Lock lock = server.lockAll();
-		try {
-			for (Long offeringId: offeringIds) {
-				checkOffering(server, helper, server.getOffering(offeringId), recheck);
+		if (server.getConfig().getPropertyBoolean("CheckAllOfferings.LockAll", true)) {
+			Lock lock = server.lockAll();
+			try {
+				for (Long offeringId: offeringIds) {
+					checkOffering(server, helper, server.getOffering(offeringId), recheck);
+				}
+			} finally {
+				lock.release();
 			}
-		} finally {
-			lock.release();
+		} else if (!checkOfferingsInParallel(server, helper, offeringIds, recheck)) {
+			return false;
 		}
 		
 		if (!recheck.isEmpty()) {
@@ -85,6 +106,97 @@ public class CheckAllOfferingsAction extends CheckOfferingAction{
 		return true;
 	}
 	
+	/**
+	 * Check the given offerings using multiple threads (CheckAllOfferings.NrThreads), each offering is locked only while it is being checked.
+	 * Offerings that need to be re-checked (including the offerings that are locked by some other action) are added into the recheck set.
+	 * @return false if the check was interrupted before all the offerings were checked
+	 */
+	protected boolean checkOfferingsInParallel(final OnlineSectioningServer server, final OnlineSectioningHelper helper, List<Long> offeringIds, Set<Long> recheck) {
+		int nrThreads = Math.max(1, server.getConfig().getPropertyInt("CheckAllOfferings.NrThreads", 4));
+		final Set<Long> recheckOfferingIds = Collections.synchronizedSet(recheck);
+		final Iterator<Long> iterator = offeringIds.iterator();
+		final int total = offeringIds.size();
+		final int step = Math.max(1, total / 20);
+		final AtomicInteger done = new AtomicInteger(0);
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		final long t0 = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(nrThreads, new ThreadFactory() {
+			private AtomicInteger iCounter = new AtomicInteger(0);
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "CheckAllOfferings-" + iCounter.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (int i = 0; i < nrThreads; i++) {
+			workers.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					ApplicationProperties.setSessionId(server.getAcademicSession().getUniqueId());
+					try {
+						while (!stop.get() && !Thread.currentThread().isInterrupted()) {
+							Long offeringId = null;
+							synchronized (iterator) {
+								if (!iterator.hasNext()) break;
+								offeringId = iterator.next();
+							}
+							OnlineSectioningHelper h = new OnlineSectioningHelper(helper.getUser(), getCacheMode());
+							h.addMessageHandler(new OnlineSectioningHelper.DefaultMessageLogger(LogFactory.getLog(CheckAllOfferingsAction.class.getName() + "." + name() + "[" + server.getAcademicSession().toCompactString() + "]")));
+							try {
+								// offering is locked -> check it again when this action is done
+								if (server.isOfferingLocked(offeringId)) {
+									recheckOfferingIds.add(offeringId);
+								} else {
+									XOffering offering = server.getOffering(offeringId);
+									if (offering != null && offering.isReSchedule()) {
+										Lock lock = server.lockOffering(offeringId, null, name());
+										try {
+											checkOffering(server, h, server.getOffering(offeringId), recheckOfferingIds);
+										} finally {
+											lock.release();
+										}
+									}
+								}
+							} catch (Exception e) {
+								h.rollbackTransaction();
+								h.error("Unable to check offering " + offeringId + ", reason: " + e.getMessage(), e);
+							}
+							int count = done.incrementAndGet();
+							synchronized (helper) {
+								for (OnlineSectioningLog.Action action: h.getLog().getActionList())
+									helper.addAction(CheckAllOfferingsAction.this, server.getAcademicSession()).mergeFrom(action);
+								if (count % step == 0 || count == total)
+									helper.info("Checked " + count + " of " + total + " offerings (" + (100 * count / total) + "%, " + ((System.currentTimeMillis() - t0) / 1000) + " s).");
+							}
+						}
+					} finally {
+						ApplicationProperties.setSessionId(null);
+						HibernateUtil.closeCurrentThreadSessions();
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+		try {
+			for (Future<?> worker: workers) {
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					helper.error("Unable to check offerings, reason: " + e.getCause().getMessage(), e.getCause());
+				}
+			}
+			return true;
+		} catch (InterruptedException e) {
+			stop.set(true);
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			helper.warn("Check interrupted after " + done.get() + " of " + total + " offerings.");
+			return false;
+		}
+	}
+	
 	@Override
 	public ReschedulingReason check(OnlineSectioningServer server, XStudent student, XOffering offering, XCourseRequest request) {
 		if (request.getEnrollment() == null) return null;
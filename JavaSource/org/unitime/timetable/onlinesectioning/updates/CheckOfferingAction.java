@@ -67,6 +67,8 @@ import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XReservation;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
@@ -77,6 +79,7 @@ import org.unitime.timetable.onlinesectioning.solver.SectioningRequestComparator
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AsyncPriority(Priority.WAITLIST)
 public class CheckOfferingAction extends WaitlistedOnlineSectioningAction<Boolean> implements HasCacheMode {
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
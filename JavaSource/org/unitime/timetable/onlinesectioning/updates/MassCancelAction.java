@@ -55,6 +55,8 @@ import org.unitime.timetable.onlinesectioning.model.XOffering;
 import org.unitime.timetable.onlinesectioning.model.XRequest;
 import org.unitime.timetable.onlinesectioning.model.XSection;
 import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
@@ -63,6 +65,7 @@ import org.unitime.timetable.onlinesectioning.solver.SectioningRequest;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AsyncPriority(Priority.BULK)
 public class MassCancelAction implements OnlineSectioningAction<Boolean>{
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
@@ -32,6 +32,8 @@ import org.unitime.timetable.model.SectioningInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster;
 import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
 
@@ -39,6 +41,7 @@ import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
  * @author Tomas Muller
  */
 @CheckMaster(Master.REQUIRED)
+@AsyncPriority(Priority.BULK)
 public class PersistExpectedSpacesAction implements OnlineSectioningAction<Boolean>{
 	private static final long serialVersionUID = 1L;
 	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
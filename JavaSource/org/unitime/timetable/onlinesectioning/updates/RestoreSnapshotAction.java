@@ -0,0 +1,124 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.onlinesectioning.updates;
+
+import java.text.DecimalFormat;
+import java.util.Date;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.unitime.localization.impl.Localization;
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.gwt.resources.StudentSectioningMessages;
+import org.unitime.timetable.gwt.shared.SectioningException;
+import org.unitime.timetable.model.WaitList;
+import org.unitime.timetable.model.dao.StudentDAO;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningAction;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningHelper;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.Lock;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority;
+import org.unitime.timetable.onlinesectioning.server.AsyncPriority.Priority;
+import org.unitime.timetable.onlinesectioning.server.CheckMaster;
+import org.unitime.timetable.onlinesectioning.server.CheckMaster.Master;
+import org.unitime.timetable.onlinesectioning.server.ServerSnapshot;
+
+/**
+ * Load the server from its last snapshot (see {@link ServerSnapshot}) instead of reloading all the data from the database.
+ * Students that have been changed since the snapshot was taken (including a safety margin) are reloaded, and the student
+ * sectioning queue is replayed by the updater from the time stamp stored in the snapshot.
+ * Returns false when there is no usable snapshot, in which case the server needs to be loaded using {@link ReloadAllData}.
+ * 
+ * @author Tomas Muller
+ */
+@CheckMaster(Master.REQUIRED)
+@AsyncPriority(Priority.BULK)
+public class RestoreSnapshotAction implements OnlineSectioningAction<Boolean> {
+	private static final long serialVersionUID = 1L;
+	private static StudentSectioningMessages MSG = Localization.create(StudentSectioningMessages.class);
+
+	@Override
+	public Boolean execute(OnlineSectioningServer server, OnlineSectioningHelper helper) {
+		long t0 = System.currentTimeMillis();
+		ServerSnapshot snapshot = null;
+		try {
+			// the student sectioning queue is not kept forever
+			snapshot = ServerSnapshot.restore(server, 24l * 3600000l * ApplicationProperty.LogCleanupOnlineSchedulingQueue.intValue());
+		} catch (Exception e) {
+			helper.warn("Failed to restore snapshot: " + e.getMessage(), e);
+			return false;
+		}
+		if (snapshot == null) return false;
+		helper.info("Restored " + snapshot + " in " + new DecimalFormat("0.0").format((System.currentTimeMillis() - t0) / 1000.0) + " seconds.");
+		if (snapshot.getQueueTimeStamp() != null)
+			server.setProperty("Updater.LastTimeStamp", snapshot.getQueueTimeStamp());
+		
+		Lock lock = server.lockAll();
+		try {
+			helper.beginTransaction();
+			try {
+				Date since = new Date(snapshot.getCreated().getTime() - 60000l * ApplicationProperty.OnlineSchedulingSnapshotMargin.intValue());
+				Set<Long> studentIds = new TreeSet<Long>();
+				studentIds.addAll(helper.getHibSession().createQuery(
+						"select distinct s.uniqueId from Student s, OnlineSectioningLog l where s.session.uniqueId = :sessionId and " +
+						"l.session.uniqueId = :sessionId and l.student = s.externalUniqueId and l.timeStamp >= :since", Long.class)
+						.setParameter("sessionId", server.getAcademicSession().getUniqueId()).setParameter("since", since).list());
+				studentIds.addAll(helper.getHibSession().createQuery(
+						"select distinct d.student.uniqueId from CourseDemand d where d.student.session.uniqueId = :sessionId and d.timestamp >= :since", Long.class)
+						.setParameter("sessionId", server.getAcademicSession().getUniqueId()).setParameter("since", since).list());
+				studentIds.addAll(helper.getHibSession().createQuery(
+						"select distinct e.student.uniqueId from StudentClassEnrollment e where e.student.session.uniqueId = :sessionId and e.timestamp >= :since", Long.class)
+						.setParameter("sessionId", server.getAcademicSession().getUniqueId()).setParameter("since", since).list());
+				helper.info(studentIds.size() + " students changed since " + since + ".");
+				
+				for (Long studentId: studentIds) {
+					XStudent oldStudent = server.getStudent(studentId);
+					if (oldStudent != null)
+						server.remove(oldStudent);
+					org.unitime.timetable.model.Student student = StudentDAO.getInstance().get(studentId, helper.getHibSession());
+					if (student != null) {
+						XStudent newStudent = ReloadAllData.loadStudent(student, null, server, helper, WaitList.WaitListType.RELOAD);
+						if (newStudent != null)
+							server.update(newStudent, true);
+					}
+				}
+				
+				helper.commitTransaction();
+			} catch (Exception e) {
+				helper.rollbackTransaction();
+				server.clearAll();
+				if (e instanceof SectioningException)
+					throw (SectioningException)e;
+				throw new SectioningException(MSG.exceptionUnknown(e.getMessage()), e);
+			}
+		} finally {
+			lock.release();
+		}
+		
+		helper.info("Server restored in " + new DecimalFormat("0.0").format((System.currentTimeMillis() - t0) / 1000.0) + " seconds.");
+		return true;
+	}
+
+	@Override
+	public String name() {
+		return "restore-snapshot";
+	}
+}
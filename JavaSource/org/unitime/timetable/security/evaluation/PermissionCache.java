@@ -0,0 +1,179 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.security.evaluation;
+
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.security.UserContext;
+import org.unitime.timetable.security.rights.Right;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
+
+/**
+ * Remembers the outcome of {@link UniTimePermissionCheck#hasPermission(UserContext, Object, Right)} for
+ * the duration of a request (see {@link #beginRequest()} and {@link #endRequest()}) and for a few seconds
+ * per user (see {@link ApplicationProperty#PermissionCacheTimeToLive}). Only rights on persistent model
+ * objects are remembered, keyed by the user, the current authority and academic session, the right, and
+ * the unique id of the object. Everything is forgotten on {@link #invalidate()}, which is called whenever
+ * a change is logged (e.g., a role or a status has been changed).<br>
+ * The cache is only used for the has-permission checks; check-permission always evaluates the permission.
+ * 
+ * @author Tomas Muller
+ */
+public class PermissionCache {
+	private static ThreadLocal<Map<String, Boolean>> sRequestCache = new ThreadLocal<Map<String, Boolean>>();
+	private static Map<String, UserCache> sUserCache = new ConcurrentHashMap<String, UserCache>();
+	private static Map<Class<?>, Method> sUniqueIdMethods = new ConcurrentHashMap<Class<?>, Method>();
+	private static AtomicLong sGeneration = new AtomicLong(0);
+	private static MetricsRegistry.Counter sHits = MetricsRegistry.getInstance().counter("unitime_permission_cache_lookups_total", "Permission checks looked up in the permission cache", "result", "hit");
+	private static MetricsRegistry.Counter sMisses = MetricsRegistry.getInstance().counter("unitime_permission_cache_lookups_total", "Permission checks looked up in the permission cache", "result", "miss");
+	
+	/** Start remembering permission checks for the current thread */
+	public static void beginRequest() {
+		sRequestCache.set(new HashMap<String, Boolean>());
+	}
+	
+	/** Forget permission checks of the current thread */
+	public static void endRequest() {
+		sRequestCache.remove();
+	}
+	
+	/** Forget all permission checks (of all users) */
+	public static void invalidate() {
+		sGeneration.incrementAndGet();
+		sUserCache.clear();
+		Map<String, Boolean> cache = sRequestCache.get();
+		if (cache != null) cache.clear();
+	}
+	
+	/** Number of permission checks answered from the cache, also exported as the unitime_permission_cache_lookups_total metric */
+	public static long getHits() { return sHits.get(); }
+	
+	public static long getMisses() { return sMisses.get(); }
+	
+	/**
+	 * Cache key of the given permission check, null if the check cannot be remembered
+	 */
+	static String getKey(UserContext user, Object domainObject, Right right) {
+		if (!right.hasType() || !right.type().getName().startsWith("org.unitime.timetable.model.")) return null;
+		return getKey(user, getUniqueId(right.type(), domainObject), right);
+	}
+	
+	/**
+	 * Cache key of the given permission check, the id being the unique id of an object of the right's type
+	 */
+	static String getKey(UserContext user, Serializable id, Right right) {
+		if (id == null || !right.hasType() || !right.type().getName().startsWith("org.unitime.timetable.model.")) return null;
+		return user.getCurrentAuthority().getAuthority() + "|" + user.getCurrentAcademicSessionId() + "|" + right.name() + "|" + id;
+	}
+	
+	private static Serializable getUniqueId(Class<?> type, Object domainObject) {
+		Method method = sUniqueIdMethods.get(type);
+		if (method == null) {
+			try {
+				method = type.getMethod("getUniqueId");
+			} catch (NoSuchMethodException e) {
+				return null;
+			}
+			sUniqueIdMethods.put(type, method);
+		}
+		try {
+			return (Serializable)method.invoke(domainObject);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	private static String getUserId(UserContext user) {
+		return user.getExternalUserId() == null ? user.getUsername() : user.getExternalUserId();
+	}
+	
+	/**
+	 * Remembered outcome of the permission check, null if not known
+	 */
+	static Boolean get(UserContext user, String key) {
+		Boolean ret = null;
+		Map<String, Boolean> cache = sRequestCache.get();
+		if (cache != null)
+			ret = cache.get(key);
+		if (ret == null) {
+			String userId = getUserId(user);
+			UserCache userCache = (userId == null ? null : sUserCache.get(userId));
+			if (userCache != null) {
+				if (userCache.isValid())
+					ret = userCache.get(key);
+				else
+					sUserCache.remove(userId, userCache);
+			}
+			if (ret != null && cache != null)
+				cache.put(key, ret);
+		}
+		if (ret == null)
+			sMisses.increment();
+		else
+			sHits.increment();
+		return ret;
+	}
+	
+	/**
+	 * Remember outcome of the permission check
+	 */
+	static void put(UserContext user, String key, boolean value) {
+		Map<String, Boolean> cache = sRequestCache.get();
+		if (cache != null)
+			cache.put(key, value);
+		int ttl = ApplicationProperty.PermissionCacheTimeToLive.intValue();
+		String userId = getUserId(user);
+		if (ttl <= 0 || userId == null) return;
+		UserCache userCache = sUserCache.get(userId);
+		if (userCache == null || !userCache.isValid()) {
+			for (Iterator<UserCache> i = sUserCache.values().iterator(); i.hasNext(); )
+				if (!i.next().isValid()) i.remove();
+			userCache = new UserCache(1000l * ttl);
+			sUserCache.put(userId, userCache);
+		}
+		userCache.put(key, value);
+	}
+	
+	private static class UserCache {
+		private long iExpiration;
+		private long iGeneration;
+		private Map<String, Boolean> iCache = new ConcurrentHashMap<String, Boolean>();
+		
+		private UserCache(long timeToLive) {
+			iExpiration = System.currentTimeMillis() + timeToLive;
+			iGeneration = sGeneration.get();
+		}
+		
+		private boolean isValid() {
+			return iGeneration == sGeneration.get() && System.currentTimeMillis() < iExpiration;
+		}
+		
+		private Boolean get(String key) { return iCache.get(key); }
+		
+		private void put(String key, boolean value) { iCache.put(key, value); }
+	}
+}
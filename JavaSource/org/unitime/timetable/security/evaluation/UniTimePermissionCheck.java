@@ -474,6 +474,12 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 				} catch (Exception e) {}
 			}
 			
+			if (right.hasType() && right.type().getName().equals(className)) {
+				String key = PermissionCache.getKey(user, targetId, right);
+				Boolean cached = (key == null ? null : PermissionCache.get(user, key));
+				if (cached != null) return cached;
+			}
+			
 			Object domainObject = new _RootDAO().getSession().get(Class.forName(className), targetId);
 			if (domainObject == null)
 				return false;
@@ -513,6 +519,17 @@ public class UniTimePermissionCheck implements PermissionCheck, InitializingBean
 			return false;
 		}
 		
+		String key = PermissionCache.getKey(user, domainObject, right);
+		if (key == null) return evaluatePermission(user, domainObject, right);
+		
+		Boolean cached = PermissionCache.get(user, key);
+		if (cached != null) return cached;
+		boolean ret = evaluatePermission(user, domainObject, right);
+		PermissionCache.put(user, key, ret);
+		return ret;
+	}
+	
+	private boolean evaluatePermission(UserContext user, Object domainObject, Right right) {
 		try {
 			Permission<?> perm = (Permission<?>)applicationContext.getBean("permission" + right.name(), Permission.class);
 			if (perm != null && perm.type().isInstance(domainObject))
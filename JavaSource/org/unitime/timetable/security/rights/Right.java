@@ -632,6 +632,8 @@ public enum Right {
 
     HibernateStatistics,
     
+    PerformanceMetrics,
+    
     TestHQL,
     ClearHibernateCache,
     
@@ -28,6 +28,8 @@ import org.unitime.timetable.gwt.client.widgets.CourseNumbersSuggestBox.Suggesti
 import org.unitime.timetable.gwt.command.client.GwtRpcResponseList;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.model.CourseOffering;
 import org.unitime.timetable.model.InstructionalOffering;
 import org.unitime.timetable.model.InstructionalOffering.OfferingWaitListMode;
@@ -38,6 +40,7 @@ import org.unitime.timetable.security.SessionContext;
  * @author Tomas Muller
  */
 @GwtRpcImplements(SuggestionRpcRequest.class)
+@GwtRpcPool(Pool.INTERACTIVE)
 public class CourseNumbersSuggestionsBackend implements GwtRpcImplementation<SuggestionRpcRequest, GwtRpcResponseList<SuggestionInterface>> {
 
 	@Override
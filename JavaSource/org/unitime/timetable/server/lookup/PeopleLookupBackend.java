@@ -47,6 +47,8 @@ import org.unitime.timetable.gwt.command.client.GwtRpcException;
 import org.unitime.timetable.gwt.command.client.GwtRpcResponseList;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.shared.PersonInterface;
 import org.unitime.timetable.gwt.shared.PersonInterface.LookupRequest;
 import org.unitime.timetable.interfaces.ExternalUidLookup;
@@ -77,6 +79,7 @@ import org.unitime.timetable.util.NameInterface;
  * @author Tomas Muller
  */
 @GwtRpcImplements(PersonInterface.LookupRequest.class)
+@GwtRpcPool(Pool.INTERACTIVE)
 public class PeopleLookupBackend implements GwtRpcImplementation<PersonInterface.LookupRequest, GwtRpcResponseList<PersonInterface>>, ExternalUidLookup {
 	private static Log sLog = LogFactory.getLog(PeopleLookupBackend.class);
 	private ExternalUidTranslation iTranslation;
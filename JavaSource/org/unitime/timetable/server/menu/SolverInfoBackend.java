@@ -32,6 +32,8 @@ import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
 import org.unitime.timetable.gwt.command.server.GwtRpcLogging;
 import org.unitime.timetable.gwt.command.server.GwtRpcLogging.Level;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
 import org.unitime.timetable.gwt.resources.GwtMessages;
 import org.unitime.timetable.gwt.shared.MenuInterface.InfoPairInterface;
@@ -52,6 +54,7 @@ import org.unitime.timetable.solver.service.StudentSectioningSolverService;
  * @author Tomas Muller
  */
 @GwtRpcImplements(SolverInfoRpcRequest.class)
+@GwtRpcPool(Pool.INTERACTIVE)
 @GwtRpcLogging(Level.DISABLED)
 public class SolverInfoBackend implements GwtRpcImplementation<SolverInfoRpcRequest, SolverInfoInterface> {
 	protected static GwtMessages MESSAGES = Localization.create(GwtMessages.class);
@@ -147,6 +147,10 @@ public class SolverPageBackend implements GwtRpcImplementation<SolverPageRequest
 		SolverService<? extends CommonSolverInterface> service = getSolverService(request.getType());
 		CommonSolverInterface solver = executeOperation(context, service, request, response);
 		
+		// start activating a passivated solver, so that it is ready by the time it is needed
+		if (solver != null && solver.isPassivated())
+			solver.activateInBackground();
+		
 		fillHosts(context, solver, request, response);
 		fillOwners(context, request, response);
 		fillParameters(context, request, response);
@@ -37,6 +37,8 @@ import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.command.client.GwtRpcException;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplementation;
 import org.unitime.timetable.gwt.command.server.GwtRpcImplements;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool;
+import org.unitime.timetable.gwt.command.server.GwtRpcPool.Pool;
 import org.unitime.timetable.gwt.resources.GwtMessages;
 import org.unitime.timetable.gwt.shared.TableInterface;
 import org.unitime.timetable.gwt.shared.CourseTimetablingSolverInterface.SolverReportsRequest;
@@ -78,6 +80,7 @@ import org.unitime.timetable.util.Formats;
  * @author Tomas Muller
  */
 @GwtRpcImplements(SolverReportsRequest.class)
+@GwtRpcPool(Pool.REPORT)
 public class SolverReportsBackend implements GwtRpcImplementation<SolverReportsRequest, SolverReportsResponse>{
 	protected static GwtMessages MESSAGES = Localization.create(GwtMessages.class);
 	private static Formats.Format<Number> sDoubleFormat = Formats.getNumberFormat("0.00");
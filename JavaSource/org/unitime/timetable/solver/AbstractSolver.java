@@ -24,6 +24,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.Date;
@@ -32,6 +33,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.logging.Log;
@@ -61,6 +63,7 @@ import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
 import org.unitime.timetable.solver.remote.BackupFileFilter;
+import org.unitime.timetable.solver.remote.BinaryBackup;
 import org.unitime.timetable.util.Constants;
 
 /**
@@ -74,12 +77,16 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     private SolverDisposeListener iDisposeListener = null;
     
     private long iLastTimeStamp = System.currentTimeMillis();
-    private boolean iIsPassivated = false;
+    private volatile boolean iIsPassivated = false;
+    private volatile Thread iActivationThread = null;
+    private AtomicBoolean iBackgroundActivation = new AtomicBoolean(false);
     private Map iProgressBeforePassivation = null;
+    private List<Progress.Message> iProgressLogBeforePassivation = null;
     private Map<String,String> iCurrentSolutionInfoBeforePassivation = null;
     private Map<String,String> iBestSolutionInfoBeforePassivation = null;
     private File iPassivationFolder = null;
     private String iPassivationPuid = null;
+    private long iPassivationTime = 0;
     protected Thread iWorkThread = null;
     
     public AbstractSolver(DataProperties properties, SolverDisposeListener disposeListener) {
@@ -101,19 +108,25 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     
     @Override
     public List<Progress.Message> getProgressLog(Integer level, String fromStage, Date since) {
+    	if (isPassivated() && iProgressLogBeforePassivation != null)
+    		return filterProgressLog(iProgressLogBeforePassivation, level, fromStage, since);
     	Progress p = Progress.getInstance(currentSolution().getModel());
     	synchronized (p.getLog()) {
-			ArrayList<Progress.Message> log = new ArrayList<Progress.Message>();
-			for (Progress.Message m: p.getLog()) {
-				if (fromStage != null && m.getLevel() == Progress.MSGLEVEL_STAGE && m.getMessage().equals(fromStage)) {
-					log.clear();
-				}
-				if (level != null && m.getLevel() < level) continue;
-				if (since != null && !m.getDate().after(since)) continue;
-				log.add(m);
+    		return filterProgressLog(p.getLog(), level, fromStage, since);
+		}
+    }
+    
+    private static List<Progress.Message> filterProgressLog(List<Progress.Message> messages, Integer level, String fromStage, Date since) {
+		ArrayList<Progress.Message> log = new ArrayList<Progress.Message>();
+		for (Progress.Message m: messages) {
+			if (fromStage != null && m.getLevel() == Progress.MSGLEVEL_STAGE && m.getMessage().equals(fromStage)) {
+				log.clear();
 			}
-			return log;
+			if (level != null && m.getLevel() < level) continue;
+			if (since != null && !m.getDate().after(since)) continue;
+			log.add(m);
 		}
+		return log;
     }
     
     @Override
@@ -415,29 +428,41 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     
     @Override
     public boolean backup(File folder, String puid) {
+    	return backup(folder, puid, false);
+    }
+    
+    /**
+     * Backup the current solution. The binary backup (see {@link BinaryBackup}) is used for passivation,
+     * it is smaller and much faster to read than the XML.
+     */
+    protected boolean backup(File folder, String puid, boolean binary) {
         folder.mkdirs();
         if (currentSolution()==null) return false;
         Lock lock = currentSolution().getLock().readLock();
         lock.lock();
         try {
-            File outXmlFile = new File(folder, getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+            File outFile = new File(folder, getType().getPrefix() + puid + (binary ? BackupFileFilter.sBinaryExtension : BackupFileFilter.sXmlExtension));
             try {
-                FileOutputStream fos = null;
-                try {
-                    fos = new FileOutputStream(outXmlFile);
-                    Document document = createCurrentSolutionBackup(false, false);
-                    saveProperties(document);
-                    (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
-                    fos.flush(); fos.close(); fos=null;
-                } finally {
+                Document document = createCurrentSolutionBackup(false, false);
+                saveProperties(document);
+                if (binary) {
+                	BinaryBackup.write(document, outFile, ApplicationProperty.SolverPassivationCompress.isTrue());
+                } else {
+                    FileOutputStream fos = null;
                     try {
-                        if (fos!=null) fos.close();
-                    } catch (IOException e) {}
+                        fos = new FileOutputStream(outFile);
+                        (new XMLWriter(fos,OutputFormat.createPrettyPrint())).write(document);
+                        fos.flush(); fos.close(); fos=null;
+                    } finally {
+                        try {
+                            if (fos!=null) fos.close();
+                        } catch (IOException e) {}
+                    }
                 }
                 return true;
             } catch (Exception e) {
                 sLog.error(e.getMessage(),e);
-                if (outXmlFile.exists()) outXmlFile.delete();
+                if (outFile.exists()) outFile.delete();
             }
         } finally {
         	lock.unlock();
@@ -456,13 +481,14 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     public boolean restore(File folder, String puid, boolean removeFiles) {
         sLog.debug("restore(folder="+folder+","+puid+")");
         File inXmlFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sXmlExtension);
+        File inBinFile = new File(folder,getType().getPrefix() + puid + BackupFileFilter.sBinaryExtension);
         
         M model = null;
         try {
             if (isRunning()) stopSolver();
             disposeNoInherit(false);
 
-            Document document = (new SAXReader()).read(inXmlFile);
+            Document document = (inBinFile.exists() ? BinaryBackup.read(inBinFile) : (new SAXReader()).read(inXmlFile));
             readProperties(document);
             
             model = createModel(getProperties());
@@ -474,7 +500,8 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
             Progress.getInstance(model).setStatus(MSG.statusReady());
             
             if (removeFiles) {
-                inXmlFile.delete();
+                if (inXmlFile.exists()) inXmlFile.delete();
+                if (inBinFile.exists()) inBinFile.delete();
             }
             
             return true;
@@ -521,8 +548,9 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     }
     
     @Override
-    public synchronized boolean isPassivated() {
-        return iIsPassivated;
+    public boolean isPassivated() {
+    	// a solver that is being activated is still passivated for everybody but the activating thread
+        return iIsPassivated || (iActivationThread != null && iActivationThread != Thread.currentThread());
     }
     
     @Override
@@ -533,20 +561,48 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     @Override
     public synchronized boolean activateIfNeeded() {
         iLastTimeStamp = System.currentTimeMillis();
-        if (!isPassivated()) return false;
+        if (!iIsPassivated) return false;
         sLog.debug("<activate "+iPassivationPuid+">");
+        long t0 = System.currentTimeMillis();
+        long size = new File(iPassivationFolder, getType().getPrefix() + iPassivationPuid + BackupFileFilter.sBinaryExtension).length();
 
+        iActivationThread = Thread.currentThread();
         iIsPassivated = false;
-
-        System.gc();
-        sLog.debug(" -- memory usage before activation:"+org.unitime.commons.Debug.getMem());
-        restore(iPassivationFolder, iPassivationPuid, true);
-        System.gc();
-        sLog.debug(" -- memory usage after activation:"+org.unitime.commons.Debug.getMem());
+        try {
+            sLog.debug(" -- memory usage before activation:"+org.unitime.commons.Debug.getMem());
+            if (restore(iPassivationFolder, iPassivationPuid, true)) {
+            	iProgressLogBeforePassivation = null;
+            	DecimalFormat df = new DecimalFormat("0.00");
+            	Progress.getInstance(super.currentSolution().getModel()).info(MSG.infoSolverActivated(
+            			df.format(iPassivationTime / 1000.0), String.valueOf(size / 1024), df.format((System.currentTimeMillis() - t0) / 1000.0)));
+            }
+            sLog.debug(" -- memory usage after activation:"+org.unitime.commons.Debug.getMem());
+        } finally {
+        	iActivationThread = null;
+        }
         
         return true;
     }
     
+    @Override
+    public boolean activateInBackground() {
+    	if (!iIsPassivated || !iBackgroundActivation.compareAndSet(false, true)) return false;
+    	Thread thread = new Thread() {
+    		@Override
+    		public void run() {
+    			try {
+    				activateIfNeeded();
+    			} finally {
+    				iBackgroundActivation.set(false);
+    			}
+    		}
+    	};
+    	thread.setName("SolverActivation-" + iPassivationPuid);
+    	thread.setDaemon(true);
+    	thread.start();
+    	return true;
+    }
+    
     public boolean canPassivate() { return true; }
     
     @Override
@@ -554,21 +610,22 @@ public abstract class AbstractSolver<V extends Variable<V, T>, T extends Value<V
     	if (!canPassivate()) return false;
         if (isPassivated() || super.currentSolution()==null || super.currentSolution().getModel()==null) return false;
         sLog.debug("<passivate "+puid+">");
-        System.gc();
+        long t0 = System.currentTimeMillis();
         sLog.debug(" -- memory usage before passivation:"+org.unitime.commons.Debug.getMem());
         iProgressBeforePassivation = getProgress();
         if (iProgressBeforePassivation!=null)
             iProgressBeforePassivation.put("STATUS","Pasivated");
         iCurrentSolutionInfoBeforePassivation = currentSolutionInfo();
         iBestSolutionInfoBeforePassivation = bestSolutionInfo();
+        iProgressLogBeforePassivation = getProgressLog(null, null, null);
         
         iPassivationFolder = folder;
         iPassivationPuid = puid;
-        backup(iPassivationFolder, iPassivationPuid);
+        backup(iPassivationFolder, iPassivationPuid, true);
 
         disposeNoInherit(false);
         
-        System.gc();
+        iPassivationTime = System.currentTimeMillis() - t0;
         sLog.debug(" -- memory usage after passivation:"+org.unitime.commons.Debug.getMem());
         
         iIsPassivated = true;
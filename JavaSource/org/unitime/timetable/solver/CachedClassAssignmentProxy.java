@@ -19,20 +19,42 @@
 */
 package org.unitime.timetable.solver;
 
+import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.interfaces.RoomAvailabilityInterface.TimeBlock;
 import org.unitime.timetable.model.Assignment;
 import org.unitime.timetable.model.Class_;
+import org.unitime.timetable.model.DatePattern;
+import org.unitime.timetable.model.Department;
+import org.unitime.timetable.model.DepartmentalInstructor;
+import org.unitime.timetable.model.Location;
+import org.unitime.timetable.model.dao.DatePatternDAO;
+import org.unitime.timetable.model.dao.DepartmentalInstructorDAO;
+import org.unitime.timetable.model.dao.LocationDAO;
+import org.unitime.timetable.model.dao.TimePatternDAO;
 import org.unitime.timetable.solver.ui.AssignmentPreferenceInfo;
 
 
 /**
+ * Class assignment proxy that caches the returned assignments for the duration of the request.
+ * When the underlying proxy is a course timetabling solver, assignments of the classes that are
+ * managed by the solver are also kept in a cache that is shared between requests and that is
+ * dropped whenever the solver's assignment version changes (see {@link SolverProxy#getAssignmentVersion()}).
+ * The shared cache only holds identifiers (and assignment infos), the assignments are re-created
+ * in the Hibernate session of the calling thread.
+ * 
  * @author Tomas Muller
  */
 public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
@@ -40,18 +62,36 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 	private ClassAssignmentProxy iProxy;
 	private Hashtable iAssignmentTable = new Hashtable();
 	private Hashtable iAssignmentInfoTable = new Hashtable();
+	private SolverAssignments iShared = null;
+	private CommitedClassAssignmentProxy iCommitedProxy = null;
 	
 	public CachedClassAssignmentProxy(ClassAssignmentProxy proxy) {
 		iProxy = proxy;
+		if (proxy instanceof SolverProxy)
+			iShared = SolverAssignments.getInstance((SolverProxy)proxy);
+	}
+	
+	private ClassAssignmentProxy getCommitedProxy() {
+		if (iCommitedProxy == null) iCommitedProxy = new CommitedClassAssignmentProxy();
+		return iCommitedProxy;
 	}
 	
 	public Assignment getAssignment(Long classId) {
 		Object cached = iAssignmentTable.get(classId);
+		if (cached==null && iShared!=null) {
+			CachedAssignment shared = iShared.getAssignment(classId);
+			if (shared != null) {
+				Assignment assignment = shared.toAssignment();
+				iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
+				return assignment;
+			}
+		}
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(Assignment)cached);
 		}
 		Assignment assignment = iProxy.getAssignment(classId);
 		iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
+		if (iShared!=null) iShared.setAssignment(classId, assignment);
 		return assignment;
 	}
 	
@@ -60,18 +100,26 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(Assignment)cached);
 		}
-		Assignment assignment = iProxy.getAssignment(clazz);
-		iAssignmentTable.put(clazz.getUniqueId(), (assignment==null?sNULL:assignment));
+		Assignment assignment = null;
+		if (iShared != null && iShared.isSolverClass(clazz)) {
+			assignment = getAssignment(clazz.getUniqueId());
+		} else {
+			assignment = (iShared == null ? iProxy : getCommitedProxy()).getAssignment(clazz);
+			iAssignmentTable.put(clazz.getUniqueId(), (assignment==null?sNULL:assignment));
+		}
 		return assignment;
 	}
 	
 	public AssignmentPreferenceInfo getAssignmentInfo(Long classId) {
 		Object cached = iAssignmentInfoTable.get(classId);
+		if (cached==null && iShared!=null)
+			cached = iShared.getAssignmentInfo(classId);
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(AssignmentPreferenceInfo)cached);
 		}
 		AssignmentPreferenceInfo info = iProxy.getAssignmentInfo(classId);
 		iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
+		if (iShared!=null) iShared.setAssignmentInfo(classId, info);
 		return info;
 	}
 	
@@ -80,78 +128,94 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 		if (cached!=null) {
 			return (sNULL.equals(cached)?null:(AssignmentPreferenceInfo)cached);
 		}
-		AssignmentPreferenceInfo info = iProxy.getAssignmentInfo(clazz);
-		iAssignmentInfoTable.put(clazz.getUniqueId(), (info==null?sNULL:info));
+		AssignmentPreferenceInfo info = null;
+		if (iShared != null && iShared.isSolverClass(clazz)) {
+			info = getAssignmentInfo(clazz.getUniqueId());
+		} else {
+			info = (iShared == null ? iProxy : getCommitedProxy()).getAssignmentInfo(clazz);
+			iAssignmentInfoTable.put(clazz.getUniqueId(), (info==null?sNULL:info));
+		}
 		return info;
 	}
 	
 	public Hashtable getAssignmentTable(Collection classesOrClassIds) {
-		Hashtable assignments = new Hashtable();
-		Vector unknown = new Vector();
-		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
-			Object classOrClassId = i.next();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			Object cached = iAssignmentTable.get(classId);
-			if (cached!=null) {
-				if (!sNULL.equals(cached)) assignments.put(classId, cached);
-			} else {
-				unknown.add(classOrClassId);
-			}
-		}
-		Hashtable newAssignments = iProxy.getAssignmentTable(unknown);
-		for (Enumeration e=unknown.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			Assignment assignment = (Assignment) newAssignments.get(classId);
-			iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
-			if (assignment!=null)
-				assignments.put(classId, assignment);
-		}
-		return assignments;
+		return getTable(classesOrClassIds, false);
 	}
 	
 	public Hashtable getAssignmentInfoTable(Collection classesOrClassIds) {
-		Hashtable infos = new Hashtable();
+		return getTable(classesOrClassIds, true);
+	}
+	
+	/**
+	 * Returns assignments (or assignment infos) of the given classes. Classes that are not cached are
+	 * looked up using at most two calls: one to the solver for the classes that are managed by the solver,
+	 * and one for the remaining classes. Same as {@link #getAssignment(Long)}, classes given by their ids
+	 * are always looked up in the solver, which only returns the classes it manages.
+	 */
+	private Hashtable getTable(Collection classesOrClassIds, boolean info) {
+		Hashtable table = (info ? iAssignmentInfoTable : iAssignmentTable);
+		Hashtable ret = new Hashtable();
 		Vector unknown = new Vector();
+		List<Long> unknownSolverClassIds = new ArrayList<Long>();
 		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
 			Object classOrClassId = i.next();
 			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
 			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			Object cached = iAssignmentInfoTable.get(classId);
+			Object cached = table.get(classId);
 			if (cached!=null) {
-				if (!sNULL.equals(cached)) infos.put(classId, cached);
+				if (!sNULL.equals(cached)) ret.put(classId, cached);
+			} else if (iShared != null && (classOrClassId instanceof Long || iShared.isSolverClass((Class_)classOrClassId))) {
+				if (info) {
+					cached = iShared.getAssignmentInfo(classId);
+				} else {
+					CachedAssignment shared = iShared.getAssignment(classId);
+					if (shared != null) {
+						cached = shared.toAssignment();
+						if (cached == null) cached = sNULL;
+					}
+				}
+				if (cached!=null) {
+					table.put(classId, cached);
+					if (!sNULL.equals(cached)) ret.put(classId, cached);
+				} else {
+					unknownSolverClassIds.add(classId);
+				}
 			} else {
 				unknown.add(classOrClassId);
 			}
 		}
-		Hashtable newInfos = iProxy.getAssignmentInfoTable(unknown);
-		for (Enumeration e=unknown.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			AssignmentPreferenceInfo info = (AssignmentPreferenceInfo) newInfos.get(classId);
-			iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
-			if (info!=null)
-				infos.put(classId, info);
+		if (!unknownSolverClassIds.isEmpty()) {
+			SolverProxy solver = (SolverProxy)iProxy;
+			Hashtable newValues = (info ? solver.getAssignmentInfoTable2(unknownSolverClassIds) : solver.getAssignmentTable2(unknownSolverClassIds));
+			for (Long classId: unknownSolverClassIds) {
+				Object value = newValues.get(classId);
+				table.put(classId, (value==null?sNULL:value));
+				if (info)
+					iShared.setAssignmentInfo(classId, (AssignmentPreferenceInfo)value);
+				else
+					iShared.setAssignment(classId, (Assignment)value);
+				if (value!=null)
+					ret.put(classId, value);
+			}
+		}
+		if (!unknown.isEmpty()) {
+			ClassAssignmentProxy proxy = (iShared == null ? iProxy : getCommitedProxy());
+			Hashtable newValues = (info ? proxy.getAssignmentInfoTable(unknown) : proxy.getAssignmentTable(unknown));
+			for (Enumeration e=unknown.elements();e.hasMoreElements();) {
+				Object classOrClassId = e.nextElement();
+				Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
+				Object value = newValues.get(classId);
+				table.put(classId, (value==null?sNULL:value));
+				if (value!=null)
+					ret.put(classId, value);
+			}
 		}
-		return infos;
+		return ret;
 	}
 	
 	public void setCache(Collection classesOrClassIds) {
-		Vector classesOrClassIdsVect = (classesOrClassIds instanceof Vector ? (Vector)classesOrClassIds : new Vector(classesOrClassIds));
-		Hashtable newAssignments = iProxy.getAssignmentTable(classesOrClassIdsVect);
-		Hashtable newInfos = iProxy.getAssignmentInfoTable(classesOrClassIdsVect);
-		for (Enumeration e=classesOrClassIdsVect.elements();e.hasMoreElements();) {
-			Object classOrClassId = e.nextElement();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Long classId = (classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId);
-			Assignment assignment = (Assignment) newAssignments.get(classId);
-			iAssignmentTable.put(classId, (assignment==null?sNULL:assignment));
-			AssignmentPreferenceInfo info = (AssignmentPreferenceInfo) newInfos.get(classId);
-			iAssignmentInfoTable.put(classId, (info==null?sNULL:info));
-		}
+		getAssignmentTable(classesOrClassIds);
+		getAssignmentInfoTable(classesOrClassIds);
 	}
 	
 	@Override
@@ -168,4 +232,133 @@ public class CachedClassAssignmentProxy implements ClassAssignmentProxy {
 	public Set<TimeBlock> getConflictingTimeBlocks(Long classId) {
 		return iProxy.getConflictingTimeBlocks(classId);
 	}
+	
+	/**
+	 * Solver assignment of a class that does not depend on any Hibernate session: the referenced
+	 * time pattern, date pattern, rooms, and instructors are kept by their unique ids.
+	 */
+	protected static class CachedAssignment {
+		private static CachedAssignment sNotAssigned = new CachedAssignment();
+		private String iClassName;
+		private Integer iDays, iStartSlot;
+		private int iSlotsPerMtg, iBreakTime;
+		private Long iTimePatternId, iDatePatternId;
+		private List<Long> iRoomIds = new ArrayList<Long>();
+		private List<Long> iInstructorIds = new ArrayList<Long>();
+		
+		private CachedAssignment() {}
+		
+		public static CachedAssignment create(Assignment assignment) {
+			if (assignment == null) return sNotAssigned;
+			CachedAssignment ret = new CachedAssignment();
+			ret.iClassName = assignment.getClassName();
+			ret.iDays = assignment.getDays();
+			ret.iStartSlot = assignment.getStartSlot();
+			ret.iSlotsPerMtg = assignment.getSlotPerMtg();
+			ret.iBreakTime = assignment.getBreakTime();
+			ret.iTimePatternId = (assignment.getTimePattern() == null ? null : assignment.getTimePattern().getUniqueId());
+			ret.iDatePatternId = (assignment.getDatePattern() == null ? null : assignment.getDatePattern().getUniqueId());
+			if (assignment.getRooms() != null)
+				for (Location room: assignment.getRooms())
+					ret.iRoomIds.add(room.getUniqueId());
+			if (assignment.getInstructors() != null)
+				for (DepartmentalInstructor instructor: assignment.getInstructors())
+					ret.iInstructorIds.add(instructor.getUniqueId());
+			return ret;
+		}
+		
+		/**
+		 * Re-create the assignment using the Hibernate session of the current thread (null if the class is not assigned)
+		 */
+		public Assignment toAssignment() {
+			if (this == sNotAssigned) return null;
+			Assignment assignment = new Assignment();
+			assignment.setClassName(iClassName);
+			assignment.setDays(iDays);
+			assignment.setStartSlot(iStartSlot);
+			assignment.setSlotsPerMtg(iSlotsPerMtg);
+			assignment.setBreakTime(iBreakTime);
+			if (iDatePatternId != null) {
+				DatePattern datePattern = DatePatternDAO.getInstance().get(iDatePatternId);
+				assignment.setDatePattern(datePattern);
+			}
+			if (iTimePatternId != null)
+				assignment.setTimePattern(TimePatternDAO.getInstance().get(iTimePatternId));
+			HashSet<Location> rooms = new HashSet<Location>();
+			for (Long roomId: iRoomIds) {
+				Location room = LocationDAO.getInstance().get(roomId);
+				if (room != null) rooms.add(room);
+			}
+			assignment.setRooms(rooms);
+			HashSet<DepartmentalInstructor> instructors = new HashSet<DepartmentalInstructor>();
+			for (Long instructorId: iInstructorIds) {
+				DepartmentalInstructor instructor = DepartmentalInstructorDAO.getInstance().get(instructorId);
+				if (instructor != null) instructors.add(instructor);
+			}
+			assignment.setInstructors(instructors);
+			return assignment;
+		}
+	}
+	
+	/**
+	 * Assignments of the classes managed by a course timetabling solver, valid for one assignment version of the solver.
+	 * The most recently used solvers are kept (see {@link ApplicationProperty#SolverAssignmentCacheSize}).
+	 */
+	protected static class SolverAssignments {
+		private static Map<String, SolverAssignments> sCache = new LinkedHashMap<String, SolverAssignments>(16, 0.75f, true);
+		private String iVersion;
+		private Set<Long> iDepartmentIds;
+		private Map<Long, CachedAssignment> iAssignments = new ConcurrentHashMap<Long, CachedAssignment>();
+		private Map<Long, Object> iAssignmentInfos = new ConcurrentHashMap<Long, Object>();
+		
+		private SolverAssignments(String version, Set<Long> departmentIds) {
+			iVersion = version;
+			iDepartmentIds = departmentIds;
+		}
+		
+		public static SolverAssignments getInstance(SolverProxy solver) {
+			int limit = ApplicationProperty.SolverAssignmentCacheSize.intValue();
+			if (limit <= 0) return null;
+			String key = solver.getHost() + ":" + solver.getUser();
+			String version = solver.getAssignmentVersion();
+			if (version == null) return null;
+			SolverAssignments cached = null;
+			synchronized (sCache) {
+				cached = sCache.get(key);
+			}
+			if (cached != null && cached.iVersion.equals(version)) return cached;
+			// department ids do not change as long as it is the same solver instance (the part of the version before the colon)
+			String instance = version.substring(0, version.lastIndexOf(':') + 1);
+			SolverAssignments assignments = new SolverAssignments(version,
+					cached != null && cached.iVersion.startsWith(instance) ? cached.iDepartmentIds : new HashSet<Long>(solver.getDepartmentIds()));
+			synchronized (sCache) {
+				sCache.put(key, assignments);
+				for (Iterator<String> i = sCache.keySet().iterator(); sCache.size() > limit && i.hasNext(); ) {
+					i.next(); i.remove();
+				}
+			}
+			return assignments;
+		}
+		
+		public boolean isSolverClass(Class_ clazz) {
+			Department dept = clazz.getManagingDept();
+			return dept != null && iDepartmentIds.contains(dept.getUniqueId());
+		}
+		
+		public CachedAssignment getAssignment(Long classId) {
+			return iAssignments.get(classId);
+		}
+		
+		public void setAssignment(Long classId, Assignment assignment) {
+			iAssignments.put(classId, CachedAssignment.create(assignment));
+		}
+		
+		public Object getAssignmentInfo(Long classId) {
+			return iAssignmentInfos.get(classId);
+		}
+		
+		public void setAssignmentInfo(Long classId, AssignmentPreferenceInfo info) {
+			iAssignmentInfos.put(classId, (info==null?sNULL:info));
+		}
+	}
 }
@@ -73,6 +73,7 @@ public interface CommonSolverInterface {
     public long timeFromLastUsed();
     public boolean isPassivated();
     public boolean activateIfNeeded();
+    public boolean activateInBackground();
     public boolean passivate(File folder, String puid);
     public boolean passivateIfNeeded(File folder, String puid);
     public Date getLastUsed();
@@ -85,6 +85,12 @@ public interface SolverProxy extends ClassAssignmentProxy, CommonSolverInterface
 	public CSVFile export(boolean useAmPm);
 	
 	public Set getDepartmentIds();
+	
+	/**
+	 * Version of the current assignment, it changes whenever a class is assigned or unassigned (or a new problem is loaded).
+	 * Used to invalidate class assignments that are cached between requests.
+	 */
+	public String getAssignmentVersion();
 
     public Hashtable getAssignmentTable2(Collection classesOrClassIds);
     public Hashtable getAssignmentInfoTable2(Collection classesOrClassIds);
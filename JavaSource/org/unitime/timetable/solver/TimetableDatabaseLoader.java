@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver;
 
+import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Calendar;
@@ -74,6 +75,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.LazyInitializationException;
 import org.hibernate.query.Query;
 import org.hibernate.Transaction;
+import org.unitime.commons.hibernate.util.HibernateUtil;
 import org.unitime.localization.impl.Localization;
 import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.gwt.resources.CPSolverMessages;
@@ -134,6 +136,7 @@ import org.unitime.timetable.onlinesectioning.status.db.DbFindEnrollmentInfoActi
 import org.unitime.timetable.solver.course.weights.ClassWeightProvider;
 import org.unitime.timetable.solver.course.weights.DefaultClassWeights;
 import org.unitime.timetable.solver.curricula.LastLikeStudentCourseDemands;
+import org.unitime.timetable.solver.curricula.ParallelInitialization;
 import org.unitime.timetable.solver.curricula.StudentCourseDemands;
 import org.unitime.timetable.solver.curricula.StudentCourseDemands.AreaClasfMajor;
 import org.unitime.timetable.solver.curricula.StudentCourseDemands.Group;
@@ -212,7 +215,11 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     private String iAutoSameStudentsConstraint = "SAME_STUDENTS";
     private String iInstructorFormat = null;
     
-    private boolean iRoomAvailabilityTimeStampIsSet = false;
+    private volatile boolean iRoomAvailabilityTimeStampIsSet = false;
+    
+    private int iNrThreads = 1;
+    private String iPhase = null;
+    private long iPhaseStart = 0;
     
     private CommittedStudentConflictsMode iCommittedStudentConflictsMode = CommittedStudentConflictsMode.Load;
     
@@ -349,6 +356,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         iOnlineOnlyInstructionalModeRegExp = model.getProperties().getProperty("Load.OnlineOnlyInstructionalModeRegExp");
         iResidentialInstructionalModeRegExp = model.getProperties().getProperty("Load.ResidentialInstructionalModeRegExp");
         iOnlineOnlyStudentSuffix = model.getProperties().getProperty("Load.OnlineOnlyStudentSuffix", "OL");
+        iNrThreads = model.getProperties().getPropertyInt("Load.NrThreads", iNrThreads);
         if (onlineOnlyStudentFilter != null && !onlineOnlyStudentFilter.isEmpty()) {
         	iOnlineOnlyStudentQuery = new org.unitime.timetable.gwt.server.Query(onlineOnlyStudentFilter);
         	iProgress.info("Online-only student filter: " + iOnlineOnlyStudentQuery); 
@@ -1479,26 +1487,45 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	return ic;
     }
     
-    private void loadInstructorAvailabilities(org.hibernate.Session hibSession, Set<String> puids) {
+    private List<Object[]> findInstructorAvailabilities(org.hibernate.Session hibSession, Set<String> puids) {
     	Query<Object[]> q = hibSession.createQuery("select distinct i.externalUniqueId, a from ClassInstructor ci inner join ci.instructor i inner join ci.classInstructing.assignments a " +
     			"where ci.lead = true and i.externalUniqueId in :puids and a.solution.owner.session.uniqueId=:sessionId and a.solution.commited=true and a.solution.owner.uniqueId not in ("+iSolverGroupIds+")",
     			Object[].class);
     	q.setParameter("sessionId", iSessionId.longValue());
     	q.setParameterList("puids", puids, String.class);
-		for (Object[] x: q.list()) {
+    	return q.list();
+    }
+    
+    private void addInstructorAvailabilities(List<Object[]> availabilities) {
+		for (Object[] x: availabilities) {
 			String puid = (String)x[0];
 			Assignment a = (Assignment)x[1];
 			InstructorConstraint ic = (InstructorConstraint)iInstructors.get(puid);
-			Placement p = a.getPlacement();
-			ic.setNotAvailable(p);
-			if (!iLectures.containsKey(a.getClassId())) {
-				iLectures.put(a.getClassId(), p.variable());
-				getModel().addVariable(p.variable());
-			}
-			
+			ic.setNotAvailable(getCommittedPlacement(a));
 		}
     }
     
+    /**
+     * Placement of a committed assignment of some other problem. The same assignment may have been loaded
+     * before (for a different instructor or room, possibly in a different Hibernate session): in this case the
+     * placement of the lecture that is already in the model is used, so that there is only one lecture per class.
+     */
+    private Placement getCommittedPlacement(Assignment a) {
+    	Lecture lecture = iLectures.get(a.getClassId());
+    	if (lecture != null && lecture.isCommitted() && lecture.getInitialAssignment() != null)
+    		return lecture.getInitialAssignment();
+    	Placement p = a.getPlacement();
+    	if (lecture == null) {
+    		iLectures.put(a.getClassId(), p.variable());
+    		getModel().addVariable(p.variable());
+    	}
+    	return p;
+    }
+    
+    private void loadInstructorAvailabilities(org.hibernate.Session hibSession, Set<String> puids) {
+    	addInstructorAvailabilities(findInstructorAvailabilities(hibSession, puids));
+    }
+    
     private void loadInstructorAvailabilities(org.hibernate.Session hibSession) {
     	setPhase(MSG.phaseLoadInstructorAvailabilities(), 1);
     	Set<String> puids = new HashSet<String>();
@@ -1551,24 +1578,27 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	incProgress();
     }
     
-    private void loadRoomAvailabilities(org.hibernate.Session hibSession, String roomids) {
+    private List<Object[]> findRoomAvailabilities(org.hibernate.Session hibSession, String roomids) {
 		Query<Object[]> q = hibSession.createQuery("select distinct r.uniqueId, a from Location r inner join r.assignments as a "+
 				"where r.uniqueId in ("+roomids+") and a.solution.owner.session.uniqueId=:sessionId and a.solution.commited=true and " +
 				"a.solution.owner.uniqueId not in ("+iSolverGroupIds+") and r.ignoreRoomCheck = false", Object[].class);
 		q.setParameter("sessionId", iSessionId.longValue());
-		for (Object[] x: q.list()) {
+		return q.list();
+    }
+    
+    private void addRoomAvailabilities(List<Object[]> availabilities) {
+		for (Object[] x: availabilities) {
 			Long roomId = (Long)x[0];
 			Assignment a = (Assignment)x[1];
-			Placement p = a.getPlacement();
 			RoomConstraint rc = (RoomConstraint)iRooms.get(roomId);
-			rc.setNotAvailable(p);
-			if (!iLectures.containsKey(a.getClassId())) {
-				iLectures.put(a.getClassId(), p.variable());
-				getModel().addVariable(p.variable());
-			}
+			rc.setNotAvailable(getCommittedPlacement(a));
 		}
     }
     
+    private void loadRoomAvailabilities(org.hibernate.Session hibSession, String roomids) {
+    	addRoomAvailabilities(findRoomAvailabilities(hibSession, roomids));
+    }
+    
     private void loadRoomAvailabilities(org.hibernate.Session hibSession) {
     	setPhase(MSG.phaseLoadRoomAvailabilities(), 1);
     	StringBuffer roomids = new StringBuffer();
@@ -1587,6 +1617,74 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     	incProgress();
     }
     
+    /**
+     * Load instructor and room availabilities (committed assignments of other problems) in parallel.
+     * The queries are made on separate Hibernate sessions, the model is only updated one task at a time.
+     */
+    private void loadCommittedAvailabilities(org.hibernate.Session hibSession) {
+    	List<CommittedAvailabilities> tasks = new ArrayList<CommittedAvailabilities>();
+    	Set<String> puids = new HashSet<String>();
+    	for (InstructorConstraint ic: iInstructors.values()) {
+    		if (ic.getPuid() == null || !puids.add(ic.getPuid())) continue;
+    		if (puids.size() == 100) {
+    			tasks.add(new CommittedAvailabilities(puids, null));
+    			puids = new HashSet<String>();
+    		}
+    	}
+    	if (!puids.isEmpty()) tasks.add(new CommittedAvailabilities(puids, null));
+    	StringBuffer roomids = new StringBuffer();
+    	int idx = 0;
+    	for (RoomConstraint rc: iRooms.values()) {
+    		if (roomids.length()>0) roomids.append(",");
+    		roomids.append(rc.getResourceId()); idx++;
+    		if (idx==100) {
+    			tasks.add(new CommittedAvailabilities(null, roomids.toString()));
+    			roomids = new StringBuffer();
+    			idx = 0;
+    		}
+    	}
+    	if (roomids.length()>0) tasks.add(new CommittedAvailabilities(null, roomids.toString()));
+    	startPhase(MSG.phaseLoadCommittedAvailabilities());
+    	new ParallelInitialization(MSG.phaseLoadCommittedAvailabilities(), iNrThreads, tasks).execute(hibSession, iProgress);
+    }
+    
+    private class CommittedAvailabilities implements ParallelInitialization.Task {
+    	private Set<String> iPuids;
+    	private String iRoomIds;
+    	private List<Object[]> iAvailabilities;
+    
+    	CommittedAvailabilities(Set<String> puids, String roomIds) {
+    		iPuids = puids; iRoomIds = roomIds;
+    	}
+    
+		@Override
+		public void setup(org.hibernate.Session hibSession) {}
+    
+		@Override
+		public void execute() {
+			ApplicationProperties.setSessionId(iSessionId);
+			org.hibernate.Session hibSession = TimetableManagerDAO.getInstance().createNewSession();
+			try {
+				hibSession.setCacheMode(CacheMode.IGNORE);
+				iAvailabilities = (iPuids != null ? findInstructorAvailabilities(hibSession, iPuids) : findRoomAvailabilities(hibSession, iRoomIds));
+				// create placements while the session is still open
+				for (Object[] x: iAvailabilities)
+					((Assignment)x[1]).getPlacement();
+			} finally {
+				hibSession.close();
+				HibernateUtil.closeCurrentThreadSessions();
+			}
+		}
+    
+		@Override
+		public void teardown(org.hibernate.Session hibSession) {
+			if (iPuids != null)
+				addInstructorAvailabilities(iAvailabilities);
+			else
+				addRoomAvailabilities(iAvailabilities);
+		}
+    }
+    
     private Constraint createGroupConstraint(DistributionPref pref) {
     	return createGroupConstraint(pref.getUniqueId(), pref.getDistributionType(), pref.getPrefLevel(), pref.getOwner());
     }
@@ -2873,9 +2971,12 @@ public class TimetableDatabaseLoader extends TimetableLoader {
 			incProgress();
 		}
 		
-		loadInstructorAvailabilities(hibSession);
-		
-		loadRoomAvailabilities(hibSession);
+		if (iNrThreads > 1) {
+			loadCommittedAvailabilities(hibSession);
+		} else {
+			loadInstructorAvailabilities(hibSession);
+			loadRoomAvailabilities(hibSession);
+		}
 		
 		setPhase(MSG.phaseLoadingOfferings(), iAllClasses.size());
     	Set<Long> loadedOfferings = new HashSet<Long>();
@@ -3517,8 +3618,12 @@ public class TimetableDatabaseLoader extends TimetableLoader {
         if (availability != null) {
         	Date[] startEnd = initializeRoomAvailability(availability);
         	if (startEnd != null) {
-        		loadRoomAvailability(availability, startEnd);
-        		loadInstructorAvailability(availability, startEnd);
+        		if (iNrThreads > 1) {
+        			loadAvailability(availability, startEnd, hibSession);
+        		} else {
+        			loadRoomAvailability(availability, startEnd);
+        			loadInstructorAvailability(availability, startEnd);
+        		}
         	}
         }
 
@@ -3863,61 +3968,127 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     
     public void loadRoomAvailability(RoomAvailabilityInterface availability, Date[] startEnd) {
         setPhase(MSG.phaseLoadingRoomAvailability(), iRooms.size());
-        int firstDOY = iSession.getDayOfYear(1,iSession.getPatternStartMonth());
-        int lastDOY = iSession.getDayOfYear(0,iSession.getPatternEndMonth()+1);
-        int size = lastDOY - firstDOY;
-        Calendar c = Calendar.getInstance(Locale.US);
-        Formats.Format<Date> df = Formats.getDateFormat(Formats.Pattern.DATE_PATTERN);
-        int sessionYear = iSession.getSessionStartYear();
         for (Enumeration e=iRooms.elements();e.hasMoreElements();) {
             RoomConstraint room = (RoomConstraint)e.nextElement();
             incProgress();
             if (!room.getConstraint()) continue;
             Collection<TimeBlock> times = getRoomAvailability(availability, room, startEnd[0], startEnd[1]);
             if (times==null) continue;
-            for (TimeBlock time : times) {
-                iProgress.debug(room.getName()+" not available due to "+time);
-                int dayCode = 0;
-                c.setTime(time.getStartTime());
-                int m = c.get(Calendar.MONTH);
-                int d = c.get(Calendar.DAY_OF_MONTH);
-                if (c.get(Calendar.YEAR)<sessionYear) m-=(12 * (sessionYear - c.get(Calendar.YEAR)));
-                if (c.get(Calendar.YEAR)>sessionYear) m+=(12 * (c.get(Calendar.YEAR) - sessionYear));
-                BitSet weekCode = new BitSet(size);
-                int offset = iSession.getDayOfYear(d,m) - firstDOY;
-                if (offset < 0 || offset >= size) continue;
-                weekCode.set(offset);
-                switch (c.get(Calendar.DAY_OF_WEEK)) {
-                    case Calendar.MONDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_MON]; break;
-                    case Calendar.TUESDAY   : dayCode = Constants.DAY_CODES[Constants.DAY_TUE]; break;
-                    case Calendar.WEDNESDAY : dayCode = Constants.DAY_CODES[Constants.DAY_WED]; break;
-                    case Calendar.THURSDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_THU]; break;
-                    case Calendar.FRIDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_FRI]; break;
-                    case Calendar.SATURDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_SAT]; break;
-                    case Calendar.SUNDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_SUN]; break;
-                }
-                int startSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
-                c.setTime(time.getEndTime());
-                int endSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
-                if (endSlot == 0 && c.get(Calendar.DAY_OF_MONTH) != d) endSlot = 288; // next day midnight
-                int length = endSlot - startSlot;
-                if (length<=0) continue;
-                TimeLocation timeLocation = new TimeLocation(dayCode, startSlot, length, 0, 0, null, df.format(time.getStartTime()), weekCode, 0);
-                List<TimeLocation> timeLocations = new ArrayList<TimeLocation>(1); timeLocations.add(timeLocation);
-                RoomLocation roomLocation = new RoomLocation(room.getResourceId(), room.getName(), room.getBuildingId(), 0, room.getCapacity(), room.getPosX(), room.getPosY(),
-                        room.getIgnoreTooFar(), room);
-                List<RoomLocation> roomLocations = new ArrayList<RoomLocation>(1); roomLocations.add(roomLocation);
-                Lecture lecture = new Lecture(
-                        Long.valueOf(--iFakeLectureId), null, null, time.getEventName(), 
-                        timeLocations, roomLocations, 1, 
-                        new Placement(null,timeLocation,roomLocations), 0, 0, 1.0);
-                lecture.setNote(time.getEventType());
-                Placement p = (Placement)lecture.getInitialAssignment();
-                lecture.setBestAssignment(p, 0);
-                lecture.setCommitted(true);
-                room.setNotAvailable(p);
-                getModel().addVariable(p.variable());
+            loadRoomAvailability(room, times);
+        }
+    }
+    
+    private void loadRoomAvailability(RoomConstraint room, Collection<TimeBlock> times) {
+        int firstDOY = iSession.getDayOfYear(1,iSession.getPatternStartMonth());
+        int lastDOY = iSession.getDayOfYear(0,iSession.getPatternEndMonth()+1);
+        int size = lastDOY - firstDOY;
+        Calendar c = Calendar.getInstance(Locale.US);
+        Formats.Format<Date> df = Formats.getDateFormat(Formats.Pattern.DATE_PATTERN);
+        int sessionYear = iSession.getSessionStartYear();
+        for (TimeBlock time : times) {
+            iProgress.debug(room.getName()+" not available due to "+time);
+            int dayCode = 0;
+            c.setTime(time.getStartTime());
+            int m = c.get(Calendar.MONTH);
+            int d = c.get(Calendar.DAY_OF_MONTH);
+            if (c.get(Calendar.YEAR)<sessionYear) m-=(12 * (sessionYear - c.get(Calendar.YEAR)));
+            if (c.get(Calendar.YEAR)>sessionYear) m+=(12 * (c.get(Calendar.YEAR) - sessionYear));
+            BitSet weekCode = new BitSet(size);
+            int offset = iSession.getDayOfYear(d,m) - firstDOY;
+            if (offset < 0 || offset >= size) continue;
+            weekCode.set(offset);
+            switch (c.get(Calendar.DAY_OF_WEEK)) {
+                case Calendar.MONDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_MON]; break;
+                case Calendar.TUESDAY   : dayCode = Constants.DAY_CODES[Constants.DAY_TUE]; break;
+                case Calendar.WEDNESDAY : dayCode = Constants.DAY_CODES[Constants.DAY_WED]; break;
+                case Calendar.THURSDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_THU]; break;
+                case Calendar.FRIDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_FRI]; break;
+                case Calendar.SATURDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_SAT]; break;
+                case Calendar.SUNDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_SUN]; break;
             }
+            int startSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
+            c.setTime(time.getEndTime());
+            int endSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
+            if (endSlot == 0 && c.get(Calendar.DAY_OF_MONTH) != d) endSlot = 288; // next day midnight
+            int length = endSlot - startSlot;
+            if (length<=0) continue;
+            TimeLocation timeLocation = new TimeLocation(dayCode, startSlot, length, 0, 0, null, df.format(time.getStartTime()), weekCode, 0);
+            List<TimeLocation> timeLocations = new ArrayList<TimeLocation>(1); timeLocations.add(timeLocation);
+            RoomLocation roomLocation = new RoomLocation(room.getResourceId(), room.getName(), room.getBuildingId(), 0, room.getCapacity(), room.getPosX(), room.getPosY(),
+                    room.getIgnoreTooFar(), room);
+            List<RoomLocation> roomLocations = new ArrayList<RoomLocation>(1); roomLocations.add(roomLocation);
+            Lecture lecture = new Lecture(
+                    Long.valueOf(--iFakeLectureId), null, null, time.getEventName(), 
+                    timeLocations, roomLocations, 1, 
+                    new Placement(null,timeLocation,roomLocations), 0, 0, 1.0);
+            lecture.setNote(time.getEventType());
+            Placement p = (Placement)lecture.getInitialAssignment();
+            lecture.setBestAssignment(p, 0);
+            lecture.setCommitted(true);
+            room.setNotAvailable(p);
+            getModel().addVariable(p.variable());
+        }
+    }
+    
+    /**
+     * Room and instructor availability lookups done in parallel, each worker using its own Hibernate session.
+     * The returned time blocks are turned into committed placements one task at a time.
+     */
+    private void loadAvailability(RoomAvailabilityInterface availability, Date[] startEnd, org.hibernate.Session hibSession) {
+    	List<ResourceAvailability> tasks = new ArrayList<ResourceAvailability>();
+    	for (RoomConstraint room: iRooms.values())
+    		if (room.getConstraint()) tasks.add(new ResourceAvailability(availability, startEnd, room, null));
+    	for (InstructorConstraint instructor: getModel().getInstructorConstraints())
+    		tasks.add(new ResourceAvailability(availability, startEnd, null, instructor));
+    	startPhase(MSG.phaseLoadingAvailability());
+    	new ParallelInitialization(MSG.phaseLoadingAvailability(), iNrThreads, tasks).execute(hibSession, iProgress);
+    }
+    
+    private class ResourceAvailability implements ParallelInitialization.Task {
+    	private RoomAvailabilityInterface iAvailability;
+    	private Date[] iStartEnd;
+    	private RoomConstraint iRoom;
+    	private InstructorConstraint iInstructor;
+    	private Collection<TimeBlock> iTimes;
+    	
+    	ResourceAvailability(RoomAvailabilityInterface availability, Date[] startEnd, RoomConstraint room, InstructorConstraint instructor) {
+    		iAvailability = availability; iStartEnd = startEnd; iRoom = room; iInstructor = instructor;
+    	}
+    
+		@Override
+		public void setup(org.hibernate.Session hibSession) {}
+    
+		@Override
+		public void execute() {
+			ApplicationProperties.setSessionId(iSessionId);
+			try {
+				if (iRoom != null)
+					iTimes = getRoomAvailability(iAvailability, iRoom, iStartEnd[0], iStartEnd[1]);
+				else
+					iTimes = getInstructorAvailability(iAvailability, iInstructor, iStartEnd[0], iStartEnd[1]);
+			} finally {
+				HibernateUtil.closeCurrentThreadSessions();
+			}
+		}
+    
+		@Override
+		public void teardown(org.hibernate.Session hibSession) {
+			if (iTimes == null) return;
+			if (iRoom != null)
+				loadRoomAvailability(iRoom, iTimes);
+			else
+				loadInstructorAvailability(iInstructor, iTimes);
+		}
+    }
+    
+    private synchronized void setRoomAvailabilityTimeStamp(String ts) {
+        if (iRoomAvailabilityTimeStampIsSet) return;
+        iRoomAvailabilityTimeStampIsSet = true;
+        if (ts!=null) {
+            getModel().getProperties().setProperty("RoomAvailability.TimeStamp", ts);
+            iProgress.message(msglevel("roomAvailabilityUpdated", Progress.MSGLEVEL_INFO), MSG.infoUsingRoomAvailability(ts));
+        } else {
+            iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_ERROR), MSG.warnRoomAvailableServiceNotAvailable());
         }
     }
     
@@ -3931,89 +4102,85 @@ public class TimetableDatabaseLoader extends TimetableLoader {
             sLog.error(e.getMessage(),e);
             iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_WARN), MSG.warnRoomAvailableServiceFailed(e.getMessage()));
         } 
-        if (!iRoomAvailabilityTimeStampIsSet) {
-            iRoomAvailabilityTimeStampIsSet = true;
-            if (ts!=null) {
-                getModel().getProperties().setProperty("RoomAvailability.TimeStamp", ts);
-                iProgress.message(msglevel("roomAvailabilityUpdated", Progress.MSGLEVEL_INFO), MSG.infoUsingRoomAvailability(ts));
-            } else {
-                iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_ERROR), MSG.warnRoomAvailableServiceNotAvailable());
-            }
-        }
+        if (!iRoomAvailabilityTimeStampIsSet) setRoomAvailabilityTimeStamp(ts);
         return ret;
     }
     
     public void loadInstructorAvailability(RoomAvailabilityInterface availability, Date[] startEnd) {
         setPhase(MSG.phaseLoadingInstructorAvailability(), getModel().getInstructorConstraints().size());
+        for (InstructorConstraint instructor: getModel().getInstructorConstraints()) {
+            incProgress();
+            Collection<TimeBlock> times = getInstructorAvailability(availability, instructor, startEnd[0], startEnd[1]);
+            if (times==null) continue;
+            loadInstructorAvailability(instructor, times);
+        }
+    }
+    
+    private void loadInstructorAvailability(InstructorConstraint instructor, Collection<TimeBlock> times) {
         int firstDOY = iSession.getDayOfYear(1,iSession.getPatternStartMonth());
         int lastDOY = iSession.getDayOfYear(0,iSession.getPatternEndMonth()+1);
         int size = lastDOY - firstDOY;
         Calendar c = Calendar.getInstance(Locale.US);
         Formats.Format<Date> df = Formats.getDateFormat(Formats.Pattern.DATE_PATTERN);
         int sessionYear = iSession.getSessionStartYear();
-        for (InstructorConstraint instructor: getModel().getInstructorConstraints()) {
-            incProgress();
-            Collection<TimeBlock> times = getInstructorAvailability(availability, instructor, startEnd[0], startEnd[1]);
-            if (times==null) continue;
-            for (TimeBlock time : times) {
-                iProgress.debug(instructor.getName() + " not available due to " + time);
-                int dayCode = 0;
-                c.setTime(time.getStartTime());
-                int m = c.get(Calendar.MONTH);
-                int d = c.get(Calendar.DAY_OF_MONTH);
-                if (c.get(Calendar.YEAR)<sessionYear) m-=(12 * (sessionYear - c.get(Calendar.YEAR)));
-                if (c.get(Calendar.YEAR)>sessionYear) m+=(12 * (c.get(Calendar.YEAR) - sessionYear));
-                BitSet weekCode = new BitSet(size);
-                int offset = iSession.getDayOfYear(d,m) - firstDOY;
-                if (offset < 0 || offset >= size) continue;
-                weekCode.set(offset);
-                switch (c.get(Calendar.DAY_OF_WEEK)) {
-                    case Calendar.MONDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_MON]; break;
-                    case Calendar.TUESDAY   : dayCode = Constants.DAY_CODES[Constants.DAY_TUE]; break;
-                    case Calendar.WEDNESDAY : dayCode = Constants.DAY_CODES[Constants.DAY_WED]; break;
-                    case Calendar.THURSDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_THU]; break;
-                    case Calendar.FRIDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_FRI]; break;
-                    case Calendar.SATURDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_SAT]; break;
-                    case Calendar.SUNDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_SUN]; break;
-                }
-                int startSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
-                c.setTime(time.getEndTime());
-                int endSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
-                if (endSlot == 0 && c.get(Calendar.DAY_OF_MONTH) != d) endSlot = 288; // next day midnight
-                int length = endSlot - startSlot;
-                if (length<=0) continue;
-                TimeLocation timeLocation = new TimeLocation(dayCode, startSlot, length, 0, 0, null, df.format(time.getStartTime()), weekCode, 0);
-                List<TimeLocation> timeLocations = new ArrayList<TimeLocation>(1); timeLocations.add(timeLocation);
-                Placement placement = null;
-                List<RoomLocation> roomLocations = new ArrayList<RoomLocation>(1);
-                if (time instanceof HasRoom && ((HasRoom)time).getLocationId() != null) {
-                	HasRoom r = (HasRoom) time;
-                	RoomConstraint room = iRooms.get(r.getLocationId());
-                	if (room == null && r.getPermanentId() != null)
-                		room = iRoomsByPermId.get(r.getPermanentId());
-                	RoomLocation roomLocation = null;
-                	if (room != null) {
-                		roomLocation = new RoomLocation(room.getResourceId(), room.getName(), room.getBuildingId(), 0, room.getCapacity(), room.getPosX(), room.getPosY(),
-                                room.getIgnoreTooFar(), room);
-                	} else {
-                		roomLocation = new RoomLocation(r.getLocationId(), r.getLabel(), null, 0, 0, r.getCoordinateX(), r.getCoordinateY(), r.isIgnoreTooFar(), null);
-                	}
-                	roomLocations.add(roomLocation);
-                	placement = new Placement(null,timeLocation, roomLocation);
-                } else {
-                	placement = new Placement(null,timeLocation,(RoomLocation)null);
-                }
-                Lecture lecture = new Lecture(
-                        Long.valueOf(--iFakeLectureId), null, null, time.getEventName(), 
-                        timeLocations, roomLocations, placement.getNrRooms(), 
-                        placement, 0, 0, 1.0);
-                lecture.setNote(time.getEventType());
-                Placement p = (Placement)lecture.getInitialAssignment();
-                lecture.setBestAssignment(p, 0);
-                lecture.setCommitted(true);
-                instructor.setNotAvailable(p);
-                getModel().addVariable(p.variable());
+        for (TimeBlock time : times) {
+            iProgress.debug(instructor.getName() + " not available due to " + time);
+            int dayCode = 0;
+            c.setTime(time.getStartTime());
+            int m = c.get(Calendar.MONTH);
+            int d = c.get(Calendar.DAY_OF_MONTH);
+            if (c.get(Calendar.YEAR)<sessionYear) m-=(12 * (sessionYear - c.get(Calendar.YEAR)));
+            if (c.get(Calendar.YEAR)>sessionYear) m+=(12 * (c.get(Calendar.YEAR) - sessionYear));
+            BitSet weekCode = new BitSet(size);
+            int offset = iSession.getDayOfYear(d,m) - firstDOY;
+            if (offset < 0 || offset >= size) continue;
+            weekCode.set(offset);
+            switch (c.get(Calendar.DAY_OF_WEEK)) {
+                case Calendar.MONDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_MON]; break;
+                case Calendar.TUESDAY   : dayCode = Constants.DAY_CODES[Constants.DAY_TUE]; break;
+                case Calendar.WEDNESDAY : dayCode = Constants.DAY_CODES[Constants.DAY_WED]; break;
+                case Calendar.THURSDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_THU]; break;
+                case Calendar.FRIDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_FRI]; break;
+                case Calendar.SATURDAY  : dayCode = Constants.DAY_CODES[Constants.DAY_SAT]; break;
+                case Calendar.SUNDAY    : dayCode = Constants.DAY_CODES[Constants.DAY_SUN]; break;
             }
+            int startSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
+            c.setTime(time.getEndTime());
+            int endSlot = (c.get(Calendar.HOUR_OF_DAY)*60 + c.get(Calendar.MINUTE) - Constants.FIRST_SLOT_TIME_MIN) / Constants.SLOT_LENGTH_MIN;
+            if (endSlot == 0 && c.get(Calendar.DAY_OF_MONTH) != d) endSlot = 288; // next day midnight
+            int length = endSlot - startSlot;
+            if (length<=0) continue;
+            TimeLocation timeLocation = new TimeLocation(dayCode, startSlot, length, 0, 0, null, df.format(time.getStartTime()), weekCode, 0);
+            List<TimeLocation> timeLocations = new ArrayList<TimeLocation>(1); timeLocations.add(timeLocation);
+            Placement placement = null;
+            List<RoomLocation> roomLocations = new ArrayList<RoomLocation>(1);
+            if (time instanceof HasRoom && ((HasRoom)time).getLocationId() != null) {
+            	HasRoom r = (HasRoom) time;
+            	RoomConstraint room = iRooms.get(r.getLocationId());
+            	if (room == null && r.getPermanentId() != null)
+            		room = iRoomsByPermId.get(r.getPermanentId());
+            	RoomLocation roomLocation = null;
+            	if (room != null) {
+            		roomLocation = new RoomLocation(room.getResourceId(), room.getName(), room.getBuildingId(), 0, room.getCapacity(), room.getPosX(), room.getPosY(),
+                            room.getIgnoreTooFar(), room);
+            	} else {
+            		roomLocation = new RoomLocation(r.getLocationId(), r.getLabel(), null, 0, 0, r.getCoordinateX(), r.getCoordinateY(), r.isIgnoreTooFar(), null);
+            	}
+            	roomLocations.add(roomLocation);
+            	placement = new Placement(null,timeLocation, roomLocation);
+            } else {
+            	placement = new Placement(null,timeLocation,(RoomLocation)null);
+            }
+            Lecture lecture = new Lecture(
+                    Long.valueOf(--iFakeLectureId), null, null, time.getEventName(), 
+                    timeLocations, roomLocations, placement.getNrRooms(), 
+                    placement, 0, 0, 1.0);
+            lecture.setNote(time.getEventType());
+            Placement p = (Placement)lecture.getInitialAssignment();
+            lecture.setBestAssignment(p, 0);
+            lecture.setCommitted(true);
+            instructor.setNotAvailable(p);
+            getModel().addVariable(p.variable());
         }
     }
     
@@ -4027,15 +4194,7 @@ public class TimetableDatabaseLoader extends TimetableLoader {
             sLog.error(e.getMessage(),e);
             iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_WARN), MSG.warnRoomAvailableServiceFailed(e.getMessage()));
         } 
-        if (!iRoomAvailabilityTimeStampIsSet) {
-            iRoomAvailabilityTimeStampIsSet = true;
-            if (ts!=null) {
-                getModel().getProperties().setProperty("RoomAvailability.TimeStamp", ts);
-                iProgress.message(msglevel("roomAvailabilityUpdated", Progress.MSGLEVEL_INFO), MSG.infoUsingRoomAvailability(ts));
-            } else {
-                iProgress.message(msglevel("roomAvailabilityFailure", Progress.MSGLEVEL_ERROR), MSG.warnRoomAvailableServiceNotAvailable());
-            }
-        }
+        if (!iRoomAvailabilityTimeStampIsSet) setRoomAvailabilityTimeStamp(ts);
         return ret;
     }
     
@@ -4293,10 +4452,22 @@ public class TimetableDatabaseLoader extends TimetableLoader {
     }
     
     protected void setPhase(String phase, long progressMax) {
-    	checkTermination();
+    	startPhase(phase);
     	iProgress.setPhase(phase, progressMax);
     }
     
+    /**
+     * Check for termination and report how long the previous phase took.
+     */
+    protected void startPhase(String phase) {
+    	checkTermination();
+    	long now = System.currentTimeMillis();
+    	if (iPhase != null)
+    		iProgress.info(MSG.infoPhaseTime(iPhase, new DecimalFormat("0.00").format((now - iPhaseStart) / 1000.0)));
+    	iPhase = phase;
+    	iPhaseStart = now;
+    }
+    
     protected void incProgress() {
     	checkTermination();
     	iProgress.incProgress();
@@ -35,7 +35,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.UUID;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import org.cpsolver.coursett.TimetableXMLLoader;
@@ -58,6 +60,7 @@ import org.cpsolver.coursett.model.TimetableModel;
 import org.cpsolver.ifs.extension.ConflictStatistics;
 import org.cpsolver.ifs.extension.Extension;
 import org.cpsolver.ifs.model.Constraint;
+import org.cpsolver.ifs.model.ModelListener;
 import org.cpsolver.ifs.solver.Solver;
 import org.cpsolver.ifs.termination.TerminationCondition;
 import org.cpsolver.ifs.util.CSVFile;
@@ -129,6 +132,11 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
 	private Vector<AssignmentRecord> iBestAssignmentRecords = new Vector<AssignmentRecord>();
 	private ConflictStatisticsInfo iCbsInfo = null;
 	private CommitedClassAssignmentProxy iCommitedClassAssignmentProxy;
+	private String iAssignmentVersionId = UUID.randomUUID().toString();
+	private AtomicLong iAssignmentVersion = new AtomicLong(0);
+	private AssignmentVersionListener iAssignmentVersionListener = new AssignmentVersionListener();
+	private Map<Long, Lecture> iLectures = null;
+	private Object iLecturesLock = new Object();
 
 	public TimetableSolver(DataProperties properties, SolverDisposeListener solverDisposeListener) {
 		super(properties, solverDisposeListener);
@@ -746,6 +754,89 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
     	return iDepartmentIds;
     }
     
+    @Override
+    public void setInitalSolution(org.cpsolver.ifs.solution.Solution<Lecture, Placement> solution) {
+    	super.setInitalSolution(solution);
+    	clearLectures();
+    	iAssignmentVersion.incrementAndGet();
+    	if (solution != null && !solution.getModel().getModelListeners().contains(iAssignmentVersionListener))
+    		solution.getModel().addModelListener(iAssignmentVersionListener);
+    }
+    
+    @Override
+    public String getAssignmentVersion() {
+    	return iAssignmentVersionId + ":" + iAssignmentVersion.get();
+    }
+    
+    /**
+     * Class id to lecture lookup table, it is recomputed when a lecture is added or removed
+     */
+    private Map<Long, Lecture> getLectures() {
+    	synchronized (iLecturesLock) {
+    		if (iLectures == null) {
+    			iLectures = new HashMap<Long, Lecture>();
+    			for (Lecture lecture: currentSolution().getModel().variables())
+    				iLectures.put(lecture.getClassId(), lecture);
+    		}
+    		return iLectures;
+    	}
+    }
+    
+    private void clearLectures() {
+    	synchronized (iLecturesLock) {
+    		iLectures = null;
+    	}
+    }
+    
+    /**
+     * Increments the assignment version on every change of the model, so that the
+     * class assignments cached outside of the solver can be invalidated.
+     */
+    private class AssignmentVersionListener implements ModelListener<Lecture, Placement> {
+		@Override
+		public void variableAdded(Lecture variable) {
+			clearLectures();
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public void variableRemoved(Lecture variable) {
+			clearLectures();
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public void constraintAdded(Constraint<Lecture, Placement> constraint) {
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public void constraintRemoved(Constraint<Lecture, Placement> constraint) {
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public void beforeAssigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {}
+
+		@Override
+		public void beforeUnassigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {}
+
+		@Override
+		public void afterAssigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public void afterUnassigned(org.cpsolver.ifs.assignment.Assignment<Lecture, Placement> assignment, long iteration, Placement value) {
+			iAssignmentVersion.incrementAndGet();
+		}
+
+		@Override
+		public boolean init(Solver<Lecture, Placement> solver) {
+			return true;
+		}
+    }
+    
     @Override
 	public Assignment getAssignment(Class_ clazz) {
 		Department dept = clazz.getManagingDept();
@@ -759,52 +850,50 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
     	Lock lock = currentSolution().getLock().readLock();
 		lock.lock();
 		try {
-    		Lecture lecture = null;
-    		for (Lecture l: currentSolution().getModel().variables()) {
-    			if (l.getClassId().equals(classId)) {
-    				lecture = l; break;
-    			}
-    		}
-    		if (lecture==null) return null;
-    		Placement placement = (Placement)currentSolution().getAssignment().getValue(lecture);
-    		if (placement==null) return null;
-        	Assignment assignment = new Assignment();
-        	assignment.setClassName(lecture.getName());
-    		assignment.setDays(Integer.valueOf(placement.getTimeLocation().getDayCode()));
-    		assignment.setStartSlot(Integer.valueOf(placement.getTimeLocation().getStartSlot()));
-    		if (placement.getTimeLocation().getDatePatternId()!=null) {
-    			assignment.setDatePattern(DatePatternDAO.getInstance().get(placement.getTimeLocation().getDatePatternId()));
-    		}
-    		assignment.setSlotsPerMtg(placement.getTimeLocation().getLength());
-    		assignment.setBreakTime(placement.getTimeLocation().getBreakTime());
-    		HashSet rooms = new HashSet();
-    		if (placement.isMultiRoom()) {
-    			for (RoomLocation r: placement.getRoomLocations()) {
-    				Location room = (LocationDAO.getInstance()).get(r.getId());
-    				if (room!=null) rooms.add(room);
-    			}
-    		} else {
-    			Location room = (LocationDAO.getInstance()).get(placement.getRoomLocation().getId());
-    			if (room!=null) rooms.add(room);
-    		}
-    		assignment.setRooms(rooms);
-    		TimePattern pattern = (TimePatternDAO.getInstance()).get(placement.getTimeLocation().getTimePatternId());
-    		assignment.setTimePattern(pattern);
-    		HashSet instructors = new HashSet();
-    		for (InstructorConstraint ic: lecture.getInstructorConstraints()) {
-    			DepartmentalInstructor instructor = null;
-    			if (ic.getResourceId()!=null) {
-					instructor = (DepartmentalInstructorDAO.getInstance()).get(ic.getResourceId());
-				}
-    			if (instructor!=null) instructors.add(instructor);
-    			
-    		}
-    		assignment.setInstructors(instructors);
-    		return assignment;
+			return createAssignment(getLectures().get(classId));
     	} finally {
     		lock.unlock();
     	}
     }
+    
+    private Assignment createAssignment(Lecture lecture) {
+		if (lecture==null) return null;
+		Placement placement = (Placement)currentSolution().getAssignment().getValue(lecture);
+		if (placement==null) return null;
+    	Assignment assignment = new Assignment();
+    	assignment.setClassName(lecture.getName());
+		assignment.setDays(Integer.valueOf(placement.getTimeLocation().getDayCode()));
+		assignment.setStartSlot(Integer.valueOf(placement.getTimeLocation().getStartSlot()));
+		if (placement.getTimeLocation().getDatePatternId()!=null) {
+			assignment.setDatePattern(DatePatternDAO.getInstance().get(placement.getTimeLocation().getDatePatternId()));
+		}
+		assignment.setSlotsPerMtg(placement.getTimeLocation().getLength());
+		assignment.setBreakTime(placement.getTimeLocation().getBreakTime());
+		HashSet rooms = new HashSet();
+		if (placement.isMultiRoom()) {
+			for (RoomLocation r: placement.getRoomLocations()) {
+				Location room = (LocationDAO.getInstance()).get(r.getId());
+				if (room!=null) rooms.add(room);
+			}
+		} else {
+			Location room = (LocationDAO.getInstance()).get(placement.getRoomLocation().getId());
+			if (room!=null) rooms.add(room);
+		}
+		assignment.setRooms(rooms);
+		TimePattern pattern = (TimePatternDAO.getInstance()).get(placement.getTimeLocation().getTimePatternId());
+		assignment.setTimePattern(pattern);
+		HashSet instructors = new HashSet();
+		for (InstructorConstraint ic: lecture.getInstructorConstraints()) {
+			DepartmentalInstructor instructor = null;
+			if (ic.getResourceId()!=null) {
+				instructor = (DepartmentalInstructorDAO.getInstance()).get(ic.getResourceId());
+			}
+			if (instructor!=null) instructors.add(instructor);
+			
+		}
+		assignment.setInstructors(instructors);
+		return assignment;
+    }
 
     @Override
     public AssignmentPreferenceInfo getAssignmentInfo(Class_ clazz) {
@@ -819,30 +908,64 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
     	Lock lock = currentSolution().getLock().readLock();
 		lock.lock();
 		try {
-    		Lecture lecture = null;
-    		for (Lecture l: currentSolution().getModel().variables()) {
-    			if (l.getClassId().equals(classId)) {
-    				lecture = l; break;
-    			}
-    		}
-    		if (lecture==null) return null;
-    		Placement placement = (Placement)currentSolution().getAssignment().getValue(lecture);
-    		if (placement==null) return null;
-    		return new AssignmentPreferenceInfo(this,placement);
+			return createAssignmentInfo(getLectures().get(classId));
     	} finally {
     		lock.unlock();
     	}
     }
+    
+    private AssignmentPreferenceInfo createAssignmentInfo(Lecture lecture) {
+		if (lecture==null) return null;
+		Placement placement = (Placement)currentSolution().getAssignment().getValue(lecture);
+		if (placement==null) return null;
+		return new AssignmentPreferenceInfo(this,placement);
+    }
+    
+    /**
+     * Split the given classes (or class ids) into the ones that are managed by the solver (returned)
+     * and the ones that are not (added to the notInSolver list).
+     */
+    private List<Long> getSolverClassIds(Collection classesOrClassIds, List<Class_> notInSolver) {
+    	List<Long> classIds = new ArrayList<Long>(classesOrClassIds.size());
+		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
+			Object classOrClassId = i.next();
+			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
+			if (classOrClassId instanceof Class_) {
+				Class_ clazz = (Class_)classOrClassId;
+				Department dept = clazz.getManagingDept();
+				if (dept!=null && getDepartmentIds().contains(dept.getUniqueId()))
+					classIds.add(clazz.getUniqueId());
+				else
+					notInSolver.add(clazz);
+			} else {
+				classIds.add((Long)classOrClassId);
+			}
+		}
+		return classIds;
+    }
 
     @Override
 	public Hashtable getAssignmentTable(Collection classesOrClassIds) {
 		Hashtable assignments = new Hashtable();
-		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
-			Object classOrClassId = i.next();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			Assignment assignment = (classOrClassId instanceof Class_ ? getAssignment((Class_)classOrClassId) : getAssignment((Long)classOrClassId));
+		List<Class_> notInSolver = new ArrayList<Class_>();
+		List<Long> classIds = getSolverClassIds(classesOrClassIds, notInSolver);
+		for (Class_ clazz: notInSolver) {
+			Assignment assignment = iCommitedClassAssignmentProxy.getAssignment(clazz);
 			if (assignment!=null)
-				assignments.put(classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId, assignment);
+				assignments.put(clazz.getUniqueId(), assignment);
+		}
+		if (classIds.isEmpty()) return assignments;
+		Lock lock = currentSolution().getLock().readLock();
+		lock.lock();
+		try {
+			Map<Long, Lecture> lectures = getLectures();
+			for (Long classId: classIds) {
+				Assignment assignment = createAssignment(lectures.get(classId));
+				if (assignment!=null)
+					assignments.put(classId, assignment);
+			}
+		} finally {
+			lock.unlock();
 		}
 		return assignments;
 	}
@@ -855,12 +978,25 @@ public class TimetableSolver extends AbstractSolver<Lecture, Placement, Timetabl
     @Override
 	public Hashtable getAssignmentInfoTable(Collection classesOrClassIds) {
 		Hashtable infos = new Hashtable();
-		for (Iterator i=classesOrClassIds.iterator();i.hasNext();) {
-			Object classOrClassId = i.next();
-			if (classOrClassId instanceof Object[]) classOrClassId = ((Object[])classOrClassId)[0];
-			AssignmentPreferenceInfo info = (classOrClassId instanceof Class_ ? getAssignmentInfo((Class_)classOrClassId) : getAssignmentInfo((Long)classOrClassId));
+		List<Class_> notInSolver = new ArrayList<Class_>();
+		List<Long> classIds = getSolverClassIds(classesOrClassIds, notInSolver);
+		for (Class_ clazz: notInSolver) {
+			AssignmentPreferenceInfo info = iCommitedClassAssignmentProxy.getAssignmentInfo(clazz);
 			if (info!=null)
-				infos.put(classOrClassId instanceof Class_ ? ((Class_)classOrClassId).getUniqueId() : (Long)classOrClassId, info);
+				infos.put(clazz.getUniqueId(), info);
+		}
+		if (classIds.isEmpty()) return infos;
+		Lock lock = currentSolution().getLock().readLock();
+		lock.lock();
+		try {
+			Map<Long, Lecture> lectures = getLectures();
+			for (Long classId: classIds) {
+				AssignmentPreferenceInfo info = createAssignmentInfo(lectures.get(classId));
+				if (info!=null)
+					infos.put(classId, info);
+			}
+		} finally {
+			lock.unlock();
 		}
 		return infos;
 	}
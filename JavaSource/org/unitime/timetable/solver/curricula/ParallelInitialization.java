@@ -98,7 +98,10 @@ public class ParallelInitialization {
 		public void run() {
 			try {
 				while (!isInterrupted()) {
-					Task task = iIterator.next();
+					Task task;
+					synchronized (iIterator) {
+						task = iIterator.next();
+					}
 					
 					// setup task (one at a time)
 					iLock.lock();
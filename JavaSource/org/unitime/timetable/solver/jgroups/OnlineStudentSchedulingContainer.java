@@ -19,6 +19,7 @@
 */
 package org.unitime.timetable.solver.jgroups;
 
+import java.util.Date;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
@@ -44,7 +45,7 @@ import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
 /**
  * @author Tomas Muller
  */
-public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineSectioningServer> {
+public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineSectioningServer>, StudentSectioningQueue.QueueListener {
 	private static Log sLog = LogFactory.getLog(OnlineStudentSchedulingContainer.class);
 	
 	protected Hashtable<Long, OnlineSectioningServer> iInstances = new Hashtable<Long, OnlineSectioningServer>();
@@ -184,6 +185,28 @@ public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineS
 		};
 	}
 	
+	/**
+	 * Called when a new item was added to the student sectioning queue of the given academic session:
+	 * the updater of the session (if there is one) checks the queue right away.
+	 */
+	public void checkForUpdates(Long academicSessionId, Long timeStamp) {
+		OnlineStudentSchedulingUpdater u = iUpdaters.get(academicSessionId);
+		if (u != null) u.wakeUp(timeStamp);
+	}
+	
+	/**
+	 * Notify all the online student scheduling servers about a new item in the student sectioning queue.
+	 * There is only this container when running locally.
+	 */
+	public void publishQueueChange(Long academicSessionId, Date timeStamp) {
+		checkForUpdates(academicSessionId, timeStamp == null ? null : timeStamp.getTime());
+	}
+	
+	@Override
+	public void queueChanged(Long sessionId, Date timeStamp) {
+		publishQueueChange(sessionId, timeStamp);
+	}
+	
 	@Override
 	public void unloadSolver(String sessionId) {
 		unload(Long.valueOf(sessionId), true);
@@ -216,6 +239,7 @@ public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineS
 	public void start() throws Exception {
 		sLog.info("Student Sectioning Service is starting up ...");
 		OnlineSectioningLogger.startLogger();
+		StudentSectioningQueue.addListener(this);
 	}
 	
 	public boolean isEnabled() {
@@ -269,6 +293,7 @@ public class OnlineStudentSchedulingContainer implements SolverContainer<OnlineS
 	@Override
 	public void stop() throws Exception {
 		sLog.info("Student Sectioning Service is going down ...");
+		StudentSectioningQueue.removeListener(this);
 		unloadAll();
 		OnlineSectioningLogger.stopLogger();
 	}
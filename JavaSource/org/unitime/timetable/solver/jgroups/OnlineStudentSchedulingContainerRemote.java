@@ -25,6 +25,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 
@@ -35,6 +36,7 @@ import org.cpsolver.ifs.util.ToolBox;
 import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.SuspectedException;
+import org.jgroups.blocks.RequestOptions;
 import org.jgroups.blocks.RpcDispatcher;
 import org.jgroups.blocks.locking.LockService;
 import org.jgroups.fork.ForkChannel;
@@ -80,6 +82,15 @@ public class OnlineStudentSchedulingContainerRemote extends OnlineStudentSchedul
 	
 	public LockService getLockService() { return iLockService; }
 	
+	@Override
+	public void publishQueueChange(Long academicSessionId, Date timeStamp) {
+		try {
+			iDispatcher.callRemoteMethods(null, "checkForUpdates", new Object[] { academicSessionId, timeStamp == null ? null : timeStamp.getTime() }, new Class[] { Long.class, Long.class }, RequestOptions.ASYNC());
+		} catch (Exception e) {
+			sLog.warn("Failed to publish sectioning queue change: " + e.getMessage(), e);
+		}
+	}
+	
 	@Override
 	public boolean hasMaster(String sessionId) {
 		OnlineSectioningServer server = getInstance(Long.valueOf(sessionId));
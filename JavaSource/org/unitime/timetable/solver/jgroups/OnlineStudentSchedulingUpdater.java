@@ -22,6 +22,7 @@ package org.unitime.timetable.solver.jgroups;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -37,6 +38,7 @@ import org.unitime.timetable.onlinesectioning.AcademicSessionInfo;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningLog;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
 import org.unitime.timetable.onlinesectioning.OnlineSectioningServer.ServerCallback;
+import org.unitime.timetable.onlinesectioning.server.ServerSnapshot;
 import org.unitime.timetable.onlinesectioning.updates.CheckAllOfferingsAction;
 import org.unitime.timetable.onlinesectioning.updates.ClassAssignmentChanged;
 import org.unitime.timetable.onlinesectioning.updates.ExpireReservationsAction;
@@ -45,6 +47,7 @@ import org.unitime.timetable.onlinesectioning.updates.ReloadAllData;
 import org.unitime.timetable.onlinesectioning.updates.ReloadAllStudents;
 import org.unitime.timetable.onlinesectioning.updates.ReloadOfferingAction;
 import org.unitime.timetable.onlinesectioning.updates.ReloadStudent;
+import org.unitime.timetable.util.metrics.MetricsRegistry;
 
 /**
  * @author Tomas Muller
@@ -58,6 +61,13 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 	private AcademicSessionInfo iSession = null; 
 	private Date iLastTimeStamp = null;
 	
+	private boolean iPushEnabled = true;
+	private long iSafetyNetIntervalInSeconds = 300;
+	private Object iWakeUpMonitor = new Object();
+	private boolean iWakeUp = false;
+	private long iLastCheck = 0, iLastMaintenance = 0, iLastSnapshot = 0;
+	private long iSnapshotIntervalInSeconds = 0;
+	
 	public OnlineStudentSchedulingUpdater(OnlineStudentSchedulingContainer container, AcademicSessionInfo session, Date lastTimeStamp) {
 		super();
 		iContainer = container;
@@ -66,6 +76,10 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 		setDaemon(true);
 		setName("Updater[" + getAcademicSession().toCompactString() + "]");
 		iSleepTimeInSeconds = ApplicationProperty.OnlineSchedulingQueueUpdateInterval.intValue();
+		iPushEnabled = ApplicationProperty.OnlineSchedulingQueuePushEnabled.isTrue();
+		iSafetyNetIntervalInSeconds = Math.max(iSleepTimeInSeconds, ApplicationProperty.OnlineSchedulingQueueSafetyNetInterval.intValue());
+		if (ApplicationProperty.OnlineSchedulingSnapshotEnabled.isTrue())
+			iSnapshotIntervalInSeconds = 60l * ApplicationProperty.OnlineSchedulingSnapshotInterval.intValue();
 		iLog = LogFactory.getLog(OnlineStudentSchedulingUpdater.class.getName() + ".updater[" + getAcademicSession().toCompactString() + "]"); 
 	}
 	
@@ -74,19 +88,30 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 			iLog.info(getAcademicSession() + " updater started.");
 			if (getAcademicSession() != null)
 				ApplicationProperties.setSessionId(getAcademicSession().getUniqueId());
+			iLastCheck = iLastMaintenance = iLastSnapshot = System.currentTimeMillis();
 			while (iRun) {
-				try {
-					sleep(iSleepTimeInSeconds * 1000);
-				} catch (InterruptedException e) {}
+				boolean pushed = waitForUpdate();
 				if (!iRun) break;
 				try {
 					OnlineSectioningServer server = iContainer.getInstance(getAcademicSession().getUniqueId());
 					if (server != null) {
 						if (server.isMaster()) {
-							checkForUpdates(server);
+							long now = System.currentTimeMillis();
+							// with notifications enabled, the queue is only polled as a safety net
+							if (!iPushEnabled || pushed || now - iLastCheck >= 1000 * iSafetyNetIntervalInSeconds) {
+								iLastCheck = now;
+								checkForUpdates(server);
+							}
 							if (!iRun) break;
-							checkForExpiredReservations(server);
-							persistExpectedSpaces(server);
+							if (now - iLastMaintenance >= 1000 * iSleepTimeInSeconds) {
+								iLastMaintenance = now;
+								checkForExpiredReservations(server);
+								persistExpectedSpaces(server);
+							}
+							if (iSnapshotIntervalInSeconds > 0 && now - iLastSnapshot >= 1000 * iSnapshotIntervalInSeconds && server.isReady()) {
+								iLastSnapshot = now;
+								persistSnapshot(server);
+							}
 						} else {
 							// not master, but replication is disabled -> unload
 							try {
@@ -108,6 +133,45 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 		}
 	}
 	
+	/**
+	 * Wait until there is a change in the student sectioning queue or the update interval elapses.
+	 * @return true if woken up by a notification
+	 */
+	protected boolean waitForUpdate() {
+		synchronized (iWakeUpMonitor) {
+			if (!iWakeUp && iRun) {
+				try {
+					iWakeUpMonitor.wait(1000 * iSleepTimeInSeconds);
+				} catch (InterruptedException e) {}
+			}
+			boolean pushed = iWakeUp;
+			iWakeUp = false;
+			return pushed;
+		}
+	}
+	
+	/**
+	 * Notify the updater that there is a new item in the student sectioning queue.
+	 * @param timeStamp time stamp of the new item (only used for logging)
+	 */
+	public void wakeUp(Long timeStamp) {
+		if (!iPushEnabled) return;
+		if (timeStamp != null && iLog.isDebugEnabled())
+			iLog.debug("Queue change notification received (" + (System.currentTimeMillis() - timeStamp) + " ms after the change).");
+		synchronized (iWakeUpMonitor) {
+			iWakeUp = true;
+			iWakeUpMonitor.notifyAll();
+		}
+	}
+	
+	protected void recordPropagation(StudentSectioningQueue q) {
+		if (q.getTimeStamp() == null) return;
+		long latency = Math.max(0l, System.currentTimeMillis() - q.getTimeStamp().getTime());
+		MetricsRegistry.getInstance().histogram("unitime_sectioning_queue_propagation_seconds", "Time between a change is put in the student sectioning queue and processed by the online student scheduling server", "session", getAcademicSession().toCompactString()).record(latency, TimeUnit.MILLISECONDS);
+		if (iLog.isDebugEnabled())
+			iLog.debug(StudentSectioningQueue.Type.values()[q.getType()] + " propagated in " + latency + " ms.");
+	}
+	
 	public AcademicSessionInfo getAcademicSession() {
 		return iSession;
 	}
@@ -125,6 +189,7 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 				for (StudentSectioningQueue q: StudentSectioningQueue.getItems(hibSession, getAcademicSession().getUniqueId(), iLastTimeStamp)) {
 					try {
 						processChange(server, q);
+						recordPropagation(q);
 					} catch (Exception e) {
 						iLog.error("Update failed: " + e.getMessage(), e);
 					}
@@ -182,6 +247,20 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 		}
 	}
 	
+	/**
+	 * Store a snapshot of the server, together with the time stamp of the last processed student sectioning queue item.
+	 * The snapshot is taken in the updater thread, so that no queue item is being processed at the same time.
+	 */
+	public void persistSnapshot(OnlineSectioningServer server) {
+		try {
+			long t0 = System.currentTimeMillis();
+			ServerSnapshot snapshot = ServerSnapshot.write(server, server.getProperty("Updater.LastTimeStamp", iLastTimeStamp));
+			iLog.info("Stored " + snapshot + " in " + (System.currentTimeMillis() - t0) + " ms.");
+		} catch (Exception e) {
+			iLog.error("Failed to store snapshot: " + e.getMessage(), e);
+		}
+	}
+	
 	protected void processChange(OnlineSectioningServer server, StudentSectioningQueue q) {
 		switch (StudentSectioningQueue.Type.values()[q.getType()]) {
 		case SESSION_RELOAD:
@@ -233,6 +312,9 @@ public class OnlineStudentSchedulingUpdater extends Thread {
 
 	public void stopUpdating(boolean interrupt) {
 		iRun = false;
+		synchronized (iWakeUpMonitor) {
+			iWakeUpMonitor.notifyAll();
+		}
 		if (interrupt) {
 			interrupt();
 			try {
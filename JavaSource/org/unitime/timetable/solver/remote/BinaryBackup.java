@@ -0,0 +1,255 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.solver.remote;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.dom4j.Attribute;
+import org.dom4j.Document;
+import org.dom4j.DocumentFactory;
+import org.dom4j.Element;
+import org.dom4j.Node;
+
+/**
+ * Compact binary form of a solver backup document, used for solver passivation.
+ * Element and attribute names are written only once (later referenced by their index),
+ * there is no text escaping and the document is read back without an XML parser.
+ * The content can be optionally compressed (deflate, fastest compression level).
+ * 
+ * @author Tomas Muller
+ */
+public class BinaryBackup {
+	private static final int MAGIC = 0x55544244; // UTBD
+	private static final int VERSION = 1;
+	private static final int FLAG_COMPRESSED = 1;
+	
+	private static final byte NODE_ELEMENT = 1;
+	private static final byte NODE_TEXT = 2;
+	private static final byte NODE_END = 0;
+	
+	public static void write(Document document, File file, boolean compress) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			write(document, out, compress);
+		} finally {
+			out.close();
+		}
+	}
+	
+	public static void write(Document document, OutputStream output, boolean compress) throws IOException {
+		DataOutputStream header = new DataOutputStream(output);
+		header.writeInt(MAGIC);
+		header.writeByte(VERSION);
+		header.writeByte(compress ? FLAG_COMPRESSED : 0);
+		header.flush();
+		Deflater deflater = null;
+		DeflaterOutputStream deflaterOutput = null;
+		if (compress) {
+			deflater = new Deflater(Deflater.BEST_SPEED);
+			deflaterOutput = new DeflaterOutputStream(output, deflater, 65536);
+			output = deflaterOutput;
+		}
+		try {
+			Writer writer = new Writer(new DataOutputStream(output));
+			writer.writeElement(document.getRootElement());
+			writer.flush();
+			if (deflaterOutput != null) deflaterOutput.finish();
+			output.flush();
+		} finally {
+			if (deflater != null) deflater.end();
+		}
+	}
+	
+	public static Document read(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	public static Document read(InputStream input) throws IOException {
+		DataInputStream header = new DataInputStream(input);
+		if (header.readInt() != MAGIC)
+			throw new IOException("Not a binary solver backup.");
+		int version = header.readByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported binary solver backup version " + version + ".");
+		int flags = header.readByte();
+		if ((flags & FLAG_COMPRESSED) != 0)
+			input = new BufferedInputStream(new InflaterInputStream(input), 65536);
+		Document document = DocumentFactory.getInstance().createDocument();
+		Reader reader = new Reader(new DataInputStream(input));
+		if (reader.readByte() != NODE_ELEMENT)
+			throw new IOException("Root element expected.");
+		reader.readElement(document.addElement(reader.readName()));
+		return document;
+	}
+	
+	private static class Writer {
+		private DataOutputStream iOut;
+		private Map<String, Integer> iNames = new HashMap<String, Integer>();
+		
+		Writer(DataOutputStream out) {
+			iOut = out;
+		}
+		
+		void writeElement(Element element) throws IOException {
+			iOut.writeByte(NODE_ELEMENT);
+			writeName(element.getQualifiedName());
+			writeInt(element.attributeCount());
+			for (Iterator<Attribute> i = element.attributeIterator(); i.hasNext(); ) {
+				Attribute attribute = i.next();
+				writeName(attribute.getQualifiedName());
+				writeString(attribute.getValue());
+			}
+			for (Iterator<Node> i = element.nodeIterator(); i.hasNext(); ) {
+				Node node = i.next();
+				switch (node.getNodeType()) {
+				case Node.ELEMENT_NODE:
+					writeElement((Element)node);
+					break;
+				case Node.TEXT_NODE:
+				case Node.CDATA_SECTION_NODE:
+				case Node.ENTITY_REFERENCE_NODE:
+					iOut.writeByte(NODE_TEXT);
+					writeString(node.getText());
+					break;
+				}
+			}
+			iOut.writeByte(NODE_END);
+		}
+		
+		void writeName(String name) throws IOException {
+			Integer index = iNames.get(name);
+			if (index != null) {
+				writeInt(index);
+			} else {
+				// new name: zero followed by the name, it gets the next index
+				writeInt(0);
+				writeString(name);
+				iNames.put(name, iNames.size() + 1);
+			}
+		}
+		
+		void writeString(String value) throws IOException {
+			byte[] data = value.getBytes(StandardCharsets.UTF_8);
+			writeInt(data.length);
+			iOut.write(data);
+		}
+		
+		void writeInt(int value) throws IOException {
+			while ((value & ~0x7F) != 0) {
+				iOut.writeByte((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			iOut.writeByte(value);
+		}
+		
+		void flush() throws IOException {
+			iOut.flush();
+		}
+	}
+	
+	private static class Reader {
+		private DataInputStream iIn;
+		private List<String> iNames = new ArrayList<String>();
+		private byte[] iBuffer = new byte[256];
+		
+		Reader(DataInputStream in) {
+			iIn = in;
+		}
+		
+		void readElement(Element element) throws IOException {
+			int nrAttributes = readInt();
+			for (int i = 0; i < nrAttributes; i++)
+				element.addAttribute(readName(), readString());
+			while (true) {
+				byte type = readByte();
+				switch (type) {
+				case NODE_ELEMENT:
+					readElement(element.addElement(readName()));
+					break;
+				case NODE_TEXT:
+					element.addText(readString());
+					break;
+				case NODE_END:
+					return;
+				default:
+					throw new IOException("Unknown node type " + type + ".");
+				}
+			}
+		}
+		
+		byte readByte() throws IOException {
+			return iIn.readByte();
+		}
+		
+		String readName() throws IOException {
+			int index = readInt();
+			if (index == 0) {
+				String name = readString();
+				iNames.add(name);
+				return name;
+			}
+			if (index > iNames.size())
+				throw new IOException("Unknown name reference " + index + ".");
+			return iNames.get(index - 1);
+		}
+		
+		String readString() throws IOException {
+			int length = readInt();
+			if (length > iBuffer.length)
+				iBuffer = new byte[Math.max(length, 2 * iBuffer.length)];
+			iIn.readFully(iBuffer, 0, length);
+			return new String(iBuffer, 0, length, StandardCharsets.UTF_8);
+		}
+		
+		int readInt() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				int b = iIn.readByte();
+				value |= (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) return value;
+			}
+			throw new EOFException("Malformed number.");
+		}
+	}
+}
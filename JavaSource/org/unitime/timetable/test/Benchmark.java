@@ -0,0 +1,102 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.text.DecimalFormat;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Common part of the benchmarks in this package. Benchmark parameters are given as system properties.
+ * The compared tasks are run for the given number of rounds, each task is executed the given number of times in each round,
+ * and the average time of one execution of each task is logged after each round.
+ * 
+ * @author Tomas Muller
+ */
+public class Benchmark {
+	private static DecimalFormat sDF = new DecimalFormat("#,##0.000");
+	
+	public static String format(double value) {
+		return sDF.format(value);
+	}
+	
+	public static int getInt(String property, int defaultValue) {
+		String value = System.getProperty(property);
+		return (value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value));
+	}
+	
+	public static double getDouble(String property, double defaultValue) {
+		String value = System.getProperty(property);
+		return (value == null || value.isEmpty() ? defaultValue : Double.parseDouble(value));
+	}
+	
+	public static Long getLong(String property) {
+		String value = System.getProperty(property);
+		if (value == null || value.isEmpty())
+			throw new IllegalArgumentException("Property " + property + " is not set.");
+		return Long.valueOf(value);
+	}
+	
+	/**
+	 * Run the given tasks, logging a line for each round
+	 * @param log log to use
+	 * @param rounds number of rounds
+	 * @param iterations number of executions of each task in a round
+	 * @param tasks tasks to compare
+	 */
+	public static void run(Log log, int rounds, int iterations, Task... tasks) throws Exception {
+		for (int round = 0; round < rounds; round++) {
+			String line = "Round " + (1 + round) + ":";
+			for (int t = 0; t < tasks.length; t++) {
+				Task task = tasks[t];
+				task.before();
+				long t0 = System.nanoTime();
+				for (int i = 0; i < iterations; i++)
+					task.execute(i);
+				long t1 = System.nanoTime();
+				String note = task.after();
+				line += (t == 0 ? " " : ", ") + task.getName() + " " + format((t1 - t0) / 1e6 / iterations) + " ms" + (note == null ? "" : " (" + note + ")");
+			}
+			log.info(line + (iterations > 1 ? " per execution." : "."));
+		}
+	}
+	
+	/**
+	 * One of the compared tasks
+	 */
+	public static abstract class Task {
+		private String iName;
+		
+		public Task(String name) {
+			iName = name;
+		}
+		
+		public String getName() { return iName; }
+		
+		/** Called before the executions of each round, not timed */
+		public void before() throws Exception {}
+		
+		/** One (timed) execution of the task */
+		public abstract void execute(int iteration) throws Exception;
+		
+		/** Called after the executions of each round, not timed; returns an optional note to log with the time of the task */
+		public String after() throws Exception { return null; }
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.server.CourseComparator;
+import org.unitime.timetable.onlinesectioning.server.CourseSearchIndex;
+import org.unitime.timetable.onlinesectioning.server.SubSet;
+
+/**
+ * Micro-benchmark of the course search of the online student scheduling server. The given number of courses
+ * (property courses, defaults to 10000) with random subject areas, course numbers and titles are generated.
+ * For the given number of random queries (property iterations, defaults to 10000), the matching courses are found
+ * by checking all the courses and by using the {@link CourseSearchIndex}, in each round (property rounds, defaults to 5).
+ * Both methods are checked to return the same courses.
+ * 
+ * @author Tomas Muller
+ */
+public class CourseSearchIndexBenchmark {
+	private static Log sLog = LogFactory.getLog(CourseSearchIndexBenchmark.class);
+	
+	public static void main(String[] args) {
+		try {
+			run(Benchmark.getInt("courses", 10000), Benchmark.getInt("iterations", 10000), Benchmark.getInt("rounds", 5));
+		} catch (Exception e) {
+			sLog.error("Benchmark failed: " + e.getMessage(), e);
+		}
+	}
+	
+	private static void run(int nrCourses, final int iterations, int rounds) throws Exception {
+		Random rnd = new Random(1234);
+		String[] subjects = new String[] { "MA", "MATH", "CS", "ENGL", "PHYS", "CHM", "BIOL", "HIST", "ECON", "PSY", "ME", "ECE", "AAE", "COM", "SOC", "STAT" };
+		String[] words = new String[] { "Introduction", "to", "Advanced", "Topics", "in", "Calculus", "Linear", "Algebra", "Programming", "Systems", "Modern", "History", "of", "the", "World",
+				"Organic", "Chemistry", "Principles", "Design", "Analysis", "Theory", "Laboratory", "Seminar", "Research", "Methods", "Applied", "Statistics", "Engineering" };
+		final List<XCourseId> courses = new ArrayList<XCourseId>(nrCourses);
+		for (int i = 0; i < nrCourses; i++) {
+			String subject = subjects[rnd.nextInt(subjects.length)];
+			String number = String.valueOf(10000 + rnd.nextInt(50000));
+			String title = "";
+			for (int w = 2 + rnd.nextInt(4); w > 0; w--)
+				title += (title.isEmpty() ? "" : " ") + words[rnd.nextInt(words.length)];
+			courses.add(new BenchmarkCourse(Long.valueOf(i), subject, number, title));
+		}
+		final List<String> queries = new ArrayList<String>(iterations);
+		for (int i = 0; i < iterations; i++) {
+			XCourseId course = courses.get(rnd.nextInt(courses.size()));
+			String text;
+			switch (rnd.nextInt(3)) {
+			case 0: text = course.getCourseName(); break;
+			case 1: text = course.getCourseNumber(); break;
+			default: text = course.getTitle().substring(course.getTitle().indexOf(' ') + 1);
+			}
+			queries.add(text.substring(0, 1 + rnd.nextInt(text.length())));
+		}
+		
+		long t0 = System.nanoTime();
+		final CourseSearchIndex index = new CourseSearchIndex();
+		for (XCourseId course: courses)
+			index.add(course);
+		long t1 = System.nanoTime();
+		sLog.info("Index of " + index.size() + " courses created in " + Benchmark.format((t1 - t0) / 1e6) + " ms.");
+		
+		final List<List<XCourseId>> expected = new ArrayList<List<XCourseId>>(iterations);
+		final List<List<XCourseId>> actual = new ArrayList<List<XCourseId>>(iterations);
+		Benchmark.run(sLog, rounds, iterations,
+				new Benchmark.Task("all courses") {
+					@Override
+					public void before() {
+						expected.clear();
+					}
+					@Override
+					public void execute(int iteration) {
+						expected.add(new ArrayList<XCourseId>(scan(courses, queries.get(iteration), 20, new CourseComparator(queries.get(iteration)))));
+					}
+				},
+				new Benchmark.Task("search index") {
+					@Override
+					public void before() {
+						actual.clear();
+					}
+					@Override
+					public void execute(int iteration) {
+						actual.add(new ArrayList<XCourseId>(index.findCourses(queries.get(iteration), 20, null, new CourseComparator(queries.get(iteration)))));
+					}
+					@Override
+					public String after() {
+						int found = 0;
+						for (int i = 0; i < iterations; i++) {
+							if (!expected.get(i).equals(actual.get(i)))
+								throw new IllegalStateException("Search index returned " + actual.get(i) + " for " + queries.get(i) + ", " + expected.get(i) + " expected.");
+							found += actual.get(i).size();
+						}
+						return (found / iterations) + " courses on average";
+					}
+				});
+	}
+	
+	/**
+	 * Linear scan of all the courses, same as the course lookup of the {@link org.unitime.timetable.onlinesectioning.server.InMemoryServer}
+	 */
+	private static SubSet<XCourseId> scan(Collection<XCourseId> courses, String query, Integer limit, CourseComparator cmp) {
+		SubSet<XCourseId> ret = new SubSet<XCourseId>(limit, cmp);
+		String queryInLowerCase = query.toLowerCase();
+		for (XCourseId c : courses) {
+			if (c.matchCourseName(queryInLowerCase)) ret.add(c);
+		}
+		if (!ret.isLimitReached() && queryInLowerCase.length() > 2) {
+			for (XCourseId c : courses) {
+				if (c.matchTitle(queryInLowerCase)) ret.add(c);
+			}
+		}
+		return ret;
+	}
+	
+	private static class BenchmarkCourse extends XCourseId {
+		private static final long serialVersionUID = 1L;
+		private String iCourseTitle;
+		
+		private BenchmarkCourse(Long id, String subject, String number, String title) {
+			super(id, id, subject, number);
+			iCourseTitle = title;
+		}
+		
+		@Override
+		public String getTitle() { return iCourseTitle; }
+	}
+}
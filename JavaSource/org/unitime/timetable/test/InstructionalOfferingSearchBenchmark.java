@@ -0,0 +1,155 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.stat.Statistics;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.Class_;
+import org.unitime.timetable.model.InstrOfferingConfig;
+import org.unitime.timetable.model.InstructionalOffering;
+import org.unitime.timetable.model.SchedulingSubpart;
+import org.unitime.timetable.model.dao.InstructionalOfferingDAO;
+
+/**
+ * Compares the original single fetch-join query of the Instructional Offerings page with
+ * {@link InstructionalOffering#search(Long, Long, String, boolean, boolean, boolean, boolean, boolean, boolean)}
+ * that loads the offering structure using one query per collection.<br>
+ * Usage: -Dsession=&lt;academic session id&gt; -Dsubject=&lt;subject area id&gt; [-Drounds=5]
+ * 
+ * @author Tomas Muller
+ */
+public class InstructionalOfferingSearchBenchmark {
+	protected static Log sLog = LogFactory.getLog(InstructionalOfferingSearchBenchmark.class);
+	
+	private static final String sFetchJoinQuery =
+			"select distinct io from InstructionalOffering as io inner join io.courseOfferings as co " +
+			"left join fetch io.courseOfferings as cox " +
+			"left join fetch io.instrOfferingConfigs as ioc " +
+			"left join fetch ioc.schedulingSubparts as ss " +
+			"left join fetch ss.classes as c " +
+			"left join fetch ss.childSubparts as css " +
+			"left join fetch c.childClasses as cc " +
+			"where io.session.uniqueId = :sessionId and co.subjectArea.uniqueId = :subjectAreaId";
+	
+	/** Touch everything the listing touches, counting the classes */
+	private static int walk(List<InstructionalOffering> offerings) {
+		int classes = 0;
+		for (InstructionalOffering io: offerings) {
+			io.getCourseOfferings().size();
+			for (InstrOfferingConfig ioc: io.getInstrOfferingConfigs())
+				for (SchedulingSubpart ss: ioc.getSchedulingSubparts()) {
+					ss.getChildSubparts().size();
+					for (Class_ c: ss.getClasses()) {
+						c.getChildClasses().size();
+						classes ++;
+					}
+				}
+		}
+		return classes;
+	}
+	
+	/**
+	 * Loads and walks the offerings of the subject area, starting with an empty session and second level cache
+	 */
+	private static class Search extends Benchmark.Task {
+		private Long iSessionId, iSubjectAreaId;
+		private boolean iFetchJoin;
+		private Statistics iStats;
+		private int iOfferings, iClasses;
+		private long iStatements;
+		
+		private Search(String name, Long sessionId, Long subjectAreaId, boolean fetchJoin) {
+			super(name);
+			iSessionId = sessionId; iSubjectAreaId = subjectAreaId; iFetchJoin = fetchJoin;
+		}
+		
+		@Override
+		public void before() {
+			HibernateUtil.closeCurrentThreadSessions();
+			org.hibernate.Session hibSession = InstructionalOfferingDAO.getInstance().getSession();
+			iStats = hibSession.getSessionFactory().getStatistics();
+			hibSession.getSessionFactory().getCache().evictAllRegions();
+			iStats.clear();
+		}
+		
+		@Override
+		public void execute(int iteration) {
+			org.hibernate.Session hibSession = InstructionalOfferingDAO.getInstance().getSession();
+			List<InstructionalOffering> offerings = null;
+			if (iFetchJoin) {
+				offerings = hibSession.createQuery(sFetchJoinQuery, InstructionalOffering.class)
+						.setParameter("sessionId", iSessionId).setParameter("subjectAreaId", iSubjectAreaId).list();
+			} else {
+				offerings = new ArrayList<InstructionalOffering>(
+						InstructionalOffering.search(iSessionId, iSubjectAreaId, null, true, false, false, false, false, false));
+			}
+			iStatements = iStats.getPrepareStatementCount();
+			iOfferings = offerings.size();
+			iClasses = walk(offerings);
+		}
+		
+		@Override
+		public String after() {
+			try {
+				return iOfferings + " offerings, " + iClasses + " classes, " +
+						iStatements + " statements (" + (iStats.getPrepareStatementCount() - iStatements) + " more during walk), " +
+						iStats.getEntityLoadCount() + " entities loaded, " + iStats.getCollectionFetchCount() + " lazy collection fetches";
+			} finally {
+				HibernateUtil.closeCurrentThreadSessions();
+			}
+		}
+	}
+	
+	public static void main(String[] args) {
+		try {
+			HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
+			
+			Long sessionId = Benchmark.getLong("session");
+			Long subjectAreaId = Benchmark.getLong("subject");
+			int rounds = Benchmark.getInt("rounds", 5);
+			
+			org.hibernate.Session hibSession = InstructionalOfferingDAO.getInstance().createNewSession();
+			try {
+				Number rows = hibSession.createQuery(sFetchJoinQuery.replace("select distinct io", "select count(io)").replace("join fetch", "join"), Number.class)
+						.setParameter("sessionId", sessionId).setParameter("subjectAreaId", subjectAreaId).uniqueResult();
+				sLog.info("The fetch-join query returns " + rows + " rows.");
+				hibSession.getSessionFactory().getStatistics().setStatisticsEnabled(true);
+			} finally {
+				hibSession.close();
+			}
+			
+			Benchmark.run(sLog, rounds, 1,
+					new Search("fetch join", sessionId, subjectAreaId, true),
+					new Search("batched", sessionId, subjectAreaId, false));
+			
+			sLog.info("All done.");
+		} catch (Exception e) {
+			sLog.error(e.getMessage(), e);
+		} finally {
+			HibernateUtil.closeHibernate();
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.ifs.util.DistanceMetric;
+import org.unitime.timetable.util.LocationSpatialIndex;
+
+/**
+ * Micro-benchmark of the nearby location lookup of the {@link org.unitime.timetable.events.RoomFilterBackend}. The given number of rooms
+ * (property rooms, defaults to 3000) are randomly placed into buildings of three campuses, each about 2 km wide.
+ * For the given number of random buildings (property iterations, defaults to 200), rooms within the distance (property distance,
+ * defaults to 670 meters) from any of the rooms of the building are found by comparing the distances to all the rooms and by
+ * using the {@link LocationSpatialIndex}, in each round (property rounds, defaults to 5). Both methods are checked to return the same rooms.
+ * 
+ * @author Tomas Muller
+ */
+public class LocationSpatialIndexBenchmark {
+	private static Log sLog = LogFactory.getLog(LocationSpatialIndexBenchmark.class);
+	
+	public static void main(String[] args) {
+		try {
+			run(Benchmark.getInt("rooms", 3000), Benchmark.getInt("iterations", 200), Benchmark.getDouble("distance", 670.0), Benchmark.getInt("rounds", 5));
+		} catch (Exception e) {
+			sLog.error("Benchmark failed: " + e.getMessage(), e);
+		}
+	}
+	
+	private static void run(final int nrRooms, final int iterations, final double distance, int rounds) throws Exception {
+		Random rnd = new Random(1234);
+		
+		DataProperties config = new DataProperties();
+		config.setProperty("Distances.Ellipsoid", DistanceMetric.Ellipsoid.WGS84.name());
+		final DistanceMetric metric = new DistanceMetric(config);
+		
+		double[][] campuses = new double[][] { {40.4259, -86.9081}, {41.0806, -85.1394}, {39.7745, -86.1764} };
+		int nrBuildings = Math.max(1, nrRooms / 20);
+		double[][] buildings = new double[nrBuildings][];
+		for (int b = 0; b < nrBuildings; b++) {
+			double[] campus = campuses[b % campuses.length];
+			buildings[b] = new double[] { campus[0] + 0.02 * (rnd.nextDouble() - 0.5), campus[1] + 0.025 * (rnd.nextDouble() - 0.5) };
+		}
+		final double[][] rooms = new double[nrRooms][];
+		final int[] roomBuilding = new int[nrRooms];
+		for (int r = 0; r < nrRooms; r++) {
+			roomBuilding[r] = rnd.nextInt(nrBuildings);
+			double[] b = buildings[roomBuilding[r]];
+			rooms[r] = new double[] { b[0] + 0.0002 * (rnd.nextDouble() - 0.5), b[1] + 0.0002 * (rnd.nextDouble() - 0.5) };
+		}
+		
+		// buildings to look up, with the coordinates of their rooms
+		final int[] lookups = new int[iterations];
+		final List<List<double[]>> coordinates = new ArrayList<List<double[]>>(iterations);
+		for (int i = 0; i < iterations; i++) {
+			lookups[i] = rnd.nextInt(nrBuildings);
+			List<double[]> coord = new ArrayList<double[]>();
+			for (int r = 0; r < nrRooms; r++)
+				if (roomBuilding[r] == lookups[i]) coord.add(rooms[r]);
+			coordinates.add(coord);
+		}
+		
+		long t0 = System.nanoTime();
+		final LocationSpatialIndex index = new LocationSpatialIndex(false, distance);
+		for (int r = 0; r < nrRooms; r++)
+			index.add(Long.valueOf(r), rooms[r][0], rooms[r][1]);
+		long t1 = System.nanoTime();
+		sLog.info("Index of " + index.size() + " rooms created in " + Benchmark.format((t1 - t0) / 1e6) + " ms.");
+		
+		final List<Set<Long>> expected = new ArrayList<Set<Long>>(iterations);
+		final List<Set<Long>> actual = new ArrayList<Set<Long>>(iterations);
+		Benchmark.run(sLog, rounds, iterations,
+				new Benchmark.Task("all rooms") {
+					@Override
+					public void before() {
+						expected.clear();
+					}
+					@Override
+					public void execute(int iteration) {
+						Set<Long> nearby = new HashSet<Long>();
+						for (int r = 0; r < nrRooms; r++)
+							if (roomBuilding[r] != lookups[iteration] && isNearby(metric, rooms[r], coordinates.get(iteration), distance)) nearby.add(Long.valueOf(r));
+						expected.add(nearby);
+					}
+				},
+				new Benchmark.Task("spatial index") {
+					@Override
+					public void before() {
+						actual.clear();
+					}
+					@Override
+					public void execute(int iteration) {
+						Set<Long> nearby = new HashSet<Long>();
+						for (Long r: index.getCandidates(coordinates.get(iteration)))
+							if (roomBuilding[r.intValue()] != lookups[iteration] && isNearby(metric, rooms[r.intValue()], coordinates.get(iteration), distance)) nearby.add(r);
+						actual.add(nearby);
+					}
+					@Override
+					public String after() {
+						int found = 0;
+						for (int i = 0; i < iterations; i++) {
+							if (!expected.get(i).equals(actual.get(i)))
+								throw new IllegalStateException("Spatial index returned " + actual.get(i).size() + " rooms, " + expected.get(i).size() + " expected.");
+							found += actual.get(i).size();
+						}
+						return (found / iterations) + " nearby rooms on average";
+					}
+				});
+	}
+	
+	private static boolean isNearby(DistanceMetric metric, double[] room, List<double[]> coord, double distance) {
+		for (double[] c: coord)
+			if (metric.getDistanceInMeters(null, room[0], room[1], null, c[0], c[1]) <= distance) return true;
+		return false;
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cpsolver.coursett.model.Lecture;
+import org.cpsolver.coursett.model.Placement;
+import org.cpsolver.coursett.model.RoomLocation;
+import org.cpsolver.coursett.model.TimeLocation;
+import org.cpsolver.ifs.util.DataProperties;
+import org.cpsolver.studentsct.model.Config;
+import org.cpsolver.studentsct.model.Course;
+import org.cpsolver.studentsct.model.CourseRequest;
+import org.cpsolver.studentsct.model.Enrollment;
+import org.cpsolver.studentsct.model.Offering;
+import org.cpsolver.studentsct.model.SctAssignment;
+import org.cpsolver.studentsct.model.Section;
+import org.cpsolver.studentsct.model.Student;
+import org.cpsolver.studentsct.model.Subpart;
+import org.cpsolver.studentsct.online.OnlineSectioningModel;
+import org.unitime.timetable.onlinesectioning.model.XCourseRequest;
+import org.unitime.timetable.onlinesectioning.model.XEnrollments;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XOffering;
+import org.unitime.timetable.onlinesectioning.solver.FindAssignmentAction;
+import org.unitime.timetable.onlinesectioning.solver.OfferingTemplate;
+
+/**
+ * Micro-benchmark of the creation of the solver copy of an offering, as done by {@link FindAssignmentAction}
+ * for each requested course. A synthetic offering with 20 lectures and 180 recitations (200 sections) with
+ * the given number of enrolled students (property students, defaults to 5000) is used. The copy is created
+ * the given number of times (property iterations, defaults to 2000) in each round (property rounds, defaults to 3)
+ * both from a template created for each request (which is what the server without the offering template cache does)
+ * and from a shared template.
+ * 
+ * @author Tomas Muller
+ */
+public class OfferingTemplateBenchmark {
+	private static Log sLog = LogFactory.getLog(OfferingTemplateBenchmark.class);
+	
+	private static Placement placement(long sectionId, String name, int dayCode, int slot, int limit, BitSet weeks) {
+		TimeLocation time = new TimeLocation(dayCode, slot, 12, 0, 0.0, null, "Full Term", weeks, 10);
+		List<RoomLocation> rooms = new ArrayList<RoomLocation>();
+		rooms.add(new RoomLocation(sectionId, "ROOM " + sectionId, null, 0, limit, 0.0, 0.0, false, null));
+		return new Placement(new Lecture(sectionId, null, null, name, new ArrayList<TimeLocation>(), rooms, 1, null, limit, limit, 1.0), time, rooms);
+	}
+	
+	public static void main(String[] args) {
+		try {
+			run(Benchmark.getInt("students", 5000), Benchmark.getInt("iterations", 2000), Benchmark.getInt("rounds", 3));
+		} catch (Exception e) {
+			sLog.error("Benchmark failed: " + e.getMessage(), e);
+		}
+	}
+	
+	private static void run(final int nrStudents, int iterations, int rounds) throws Exception {
+
+		BitSet weeks = new BitSet(); weeks.set(0, 100);
+		int[] days = new int[] { 64 + 16 + 4, 32 + 8, 64, 32, 16, 8, 4 };
+		Offering offering = new Offering(1l, "BENCH 101");
+		final Course course = new Course(1l, "BENCH", "101", offering, -1, 0);
+		Config config = new Config(1l, -1, "Lec + Rec", offering);
+		Subpart lec = new Subpart(1l, "Lec", "Lecture", config, null);
+		Subpart rec = new Subpart(2l, "Rec", "Recitation", config, lec);
+		List<Section> lectures = new ArrayList<Section>();
+		List<Section> recitations = new ArrayList<Section>();
+		for (int i = 0; i < 20; i++)
+			lectures.add(new Section(1000l + i, 300, "L" + (1 + i), lec, placement(1000l + i, "L" + (1 + i), days[i % 2], 90 + 12 * (i / 2), 300, weeks), null, null, null));
+		for (int i = 0; i < 180; i++)
+			recitations.add(new Section(2000l + i, 35, "R" + (1 + i), rec, placement(2000l + i, "R" + (1 + i), days[2 + i % 5], 90 + 12 * (i % 12), 35, weeks), null, null, lectures.get(i % 20)));
+		
+		final List<XCourseRequest> requests = new ArrayList<XCourseRequest>();
+		for (int i = 0; i < nrStudents; i++) {
+			Student student = new Student(i);
+			List<Course> courses = new ArrayList<Course>(); courses.add(course);
+			CourseRequest request = new CourseRequest(i, 0, false, student, courses, false, null);
+			Set<SctAssignment> sections = new HashSet<SctAssignment>();
+			Section recitation = recitations.get(i % 180);
+			sections.add(recitation); sections.add(recitation.getParent());
+			requests.add(new XCourseRequest(request, new Enrollment(request, 0, course, config, sections, null)));
+		}
+		final XOffering xoffering = new XOffering(offering, null);
+		final XExpectations expectations = new XExpectations(xoffering.getOfferingId());
+		
+		final OfferingTemplate shared = new OfferingTemplate(0l, xoffering, new XEnrollments(xoffering.getOfferingId(), requests), expectations);
+		final DataProperties properties = new DataProperties();
+		
+		Benchmark.run(sLog, rounds, iterations,
+				new Benchmark.Task("no template cache") {
+					@Override
+					public void execute(int iteration) {
+						OfferingTemplate template = new OfferingTemplate(-1l, xoffering, new XEnrollments(xoffering.getOfferingId(), requests), expectations);
+						FindAssignmentAction.clone(template, course.getId(), iteration % nrStudents, null, new HashMap<Long, Section>(), null, new OnlineSectioningModel(properties), false, false, null, false);
+					}
+				},
+				new Benchmark.Task("shared template") {
+					@Override
+					public void execute(int iteration) {
+						FindAssignmentAction.clone(shared, course.getId(), iteration % nrStudents, null, new HashMap<Long, Section>(), null, new OnlineSectioningModel(properties), false, false, null, false);
+					}
+				});
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.text.DecimalFormat;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jgroups.blocks.locking.LockService;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.server.CompactServer;
+import org.unitime.timetable.onlinesectioning.server.InMemoryServer;
+
+/**
+ * Memory footprint comparison of online sectioning server implementations. Each server is loaded
+ * with the given academic session (properties initiative, year, term), its size is estimated
+ * using {@link org.unitime.timetable.util.MemoryCounter} (see {@link OnlineSectioningServer#getMemUsage()})
+ * and by the change of the used heap, and the time needed to materialize all the students and offerings is measured.
+ * Use property servers to provide a comma separated list of server implementations
+ * (defaults to {@link InMemoryServer} and {@link CompactServer}).
+ * 
+ * @author Tomas Muller
+ */
+public class OnlineSectioningMemoryBenchmark {
+	private static Log sLog = LogFactory.getLog(OnlineSectioningMemoryBenchmark.class);
+	private static DecimalFormat sDF = new DecimalFormat("#,##0.0");
+	
+	private static long usedMemory() throws InterruptedException {
+		Runtime rt = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(500);
+		}
+		return rt.totalMemory() - rt.freeMemory();
+	}
+	
+	public static void main(String[] args) {
+		try {
+			HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
+			
+			final Session session = Session.getSessionUsingInitiativeYearTerm(
+                    ApplicationProperties.getProperty("initiative", "PWL"),
+                    ApplicationProperties.getProperty("year","2008"),
+                    ApplicationProperties.getProperty("term","Fal")
+                    );
+			if (session == null) {
+				sLog.error("Academic session not found, use properties initiative, year, and term to set academic session.");
+				System.exit(0);
+			}
+			final Long sessionId = session.getUniqueId();
+			
+			String servers = ApplicationProperties.getProperty("servers", InMemoryServer.class.getName() + "," + CompactServer.class.getName());
+			StringBuffer summary = new StringBuffer();
+			for (String serverClassName: servers.split(",")) {
+				serverClassName = serverClassName.trim();
+				if (serverClassName.isEmpty()) continue;
+				
+				long m0 = usedMemory();
+				sLog.info("Loading " + serverClassName + " for " + session.getLabel() + " ...");
+				long t0 = System.currentTimeMillis();
+				OnlineSectioningServer server = (OnlineSectioningServer)Class.forName(serverClassName).getConstructor(OnlineSectioningServerContext.class).newInstance(
+						new OnlineSectioningServerContext() {
+							@Override
+							public Long getAcademicSessionId() { return sessionId; }
+							@Override
+							public boolean isWaitTillStarted() { return false; }
+							@Override
+							public LockService getLockService() { return null; }
+						});
+				while (!server.isReady())
+					Thread.sleep(100);
+				long t1 = System.currentTimeMillis();
+				long m1 = usedMemory();
+				long estimate = server.getMemUsage();
+				
+				long t2 = System.currentTimeMillis();
+				int nrStudents = server.findStudents(null).size();
+				long t3 = System.currentTimeMillis();
+				Set<Long> offeringIds = new HashSet<Long>();
+				for (XCourseId course: server.findCourses((CourseMatcher)null))
+					if (offeringIds.add(course.getOfferingId())) server.getOffering(course.getOfferingId());
+				long t4 = System.currentTimeMillis();
+				
+				String line = serverClassName.substring(serverClassName.lastIndexOf('.') + 1) +
+						": load " + sDF.format((t1 - t0) / 1000.0) + " s" +
+						", estimated size " + sDF.format(estimate / 1048576.0) + " MB" +
+						", heap change " + sDF.format((m1 - m0) / 1048576.0) + " MB" +
+						", " + nrStudents + " students materialized in " + (t3 - t2) + " ms" +
+						", " + offeringIds.size() + " offerings materialized in " + (t4 - t3) + " ms";
+				if (server instanceof CompactServer)
+					line += ", encoded records " + sDF.format(((CompactServer)server).getEncodedSize() / 1048576.0) + " MB";
+				sLog.info(line);
+				summary.append("\n  " + line);
+				
+				server.unload();
+			}
+			sLog.info("Summary:" + summary);
+			
+			HibernateUtil.closeHibernate();
+		} catch (Exception e) {
+			sLog.error("Benchmark failed: " + e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.cpsolver.ifs.util.ToolBox;
+import org.jgroups.blocks.locking.LockService;
+import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
+import org.unitime.timetable.model.Session;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServer;
+import org.unitime.timetable.onlinesectioning.OnlineSectioningServerContext;
+import org.unitime.timetable.onlinesectioning.match.CourseMatcher;
+import org.unitime.timetable.onlinesectioning.model.XCourseId;
+import org.unitime.timetable.onlinesectioning.model.XExpectations;
+import org.unitime.timetable.onlinesectioning.model.XStudent;
+import org.unitime.timetable.onlinesectioning.model.XStudentId;
+import org.unitime.timetable.onlinesectioning.server.ConcurrentServer;
+
+/**
+ * Simple load test of an online sectioning server implementation: a number of reader threads
+ * call {@link OnlineSectioningServer#getOffering(Long)} and {@link OnlineSectioningServer#findCourses(String, Integer, CourseMatcher)}
+ * while a steady stream of student and expectation updates is being made by the writer threads.
+ * Use properties initiative, year, term to select the academic session, server to select
+ * the server implementation (defaults to {@link ConcurrentServer}), and readers, writers, and duration (in seconds)
+ * to set up the test.
+ * 
+ * @author Tomas Muller
+ */
+public class OnlineSectioningServerLoadTest {
+	private static Log sLog = LogFactory.getLog(OnlineSectioningServerLoadTest.class);
+	private static DecimalFormat sDF = new DecimalFormat("#,##0.0");
+	
+	public static void main(String[] args) {
+		try {
+			HibernateUtil.configureHibernate(ApplicationProperties.getProperties());
+			
+			final Session session = Session.getSessionUsingInitiativeYearTerm(
+                    ApplicationProperties.getProperty("initiative", "PWL"),
+                    ApplicationProperties.getProperty("year","2008"),
+                    ApplicationProperties.getProperty("term","Fal")
+                    );
+			if (session == null) {
+				sLog.error("Academic session not found, use properties initiative, year, and term to set academic session.");
+				System.exit(0);
+			}
+			
+			String serverClassName = ApplicationProperties.getProperty("server", ConcurrentServer.class.getName());
+			sLog.info("Loading " + serverClassName + " for " + session.getLabel() + " ...");
+			final Long sessionId = session.getUniqueId();
+			final OnlineSectioningServer server = (OnlineSectioningServer)Class.forName(serverClassName).getConstructor(OnlineSectioningServerContext.class).newInstance(
+					new OnlineSectioningServerContext() {
+						@Override
+						public Long getAcademicSessionId() { return sessionId; }
+						@Override
+						public boolean isWaitTillStarted() { return false; }
+						@Override
+						public LockService getLockService() { return null; }
+					});
+			while (!server.isReady())
+				Thread.sleep(1000);
+			
+			final List<Long> offeringIds = new ArrayList<Long>();
+			final List<String> queries = new ArrayList<String>();
+			Set<Long> ids = new HashSet<Long>();
+			for (XCourseId course: server.findCourses((CourseMatcher)null)) {
+				if (ids.add(course.getOfferingId())) offeringIds.add(course.getOfferingId());
+				String name = course.getCourseName();
+				queries.add(name.length() > 5 ? name.substring(0, 5) : name);
+			}
+			final List<Long> studentIds = new ArrayList<Long>();
+			for (XStudentId student: server.findStudents(null))
+				studentIds.add(student.getStudentId());
+			if (offeringIds.isEmpty() || studentIds.isEmpty()) {
+				sLog.error("There are no offerings or students loaded.");
+				server.unload();
+				System.exit(0);
+			}
+			sLog.info("Loaded " + offeringIds.size() + " offerings and " + studentIds.size() + " students.");
+			
+			int nrReaders = Integer.valueOf(ApplicationProperties.getProperty("readers", "16"));
+			int nrWriters = Integer.valueOf(ApplicationProperties.getProperty("writers", "4"));
+			int duration = Integer.valueOf(ApplicationProperties.getProperty("duration", "60"));
+			
+			final AtomicBoolean stop = new AtomicBoolean(false);
+			final AtomicLong reads = new AtomicLong(0), writes = new AtomicLong(0);
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int i = 0; i < nrReaders; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (!stop.get()) {
+							server.getOffering(offeringIds.get(ToolBox.random(offeringIds.size())));
+							server.getRequests(offeringIds.get(ToolBox.random(offeringIds.size())));
+							server.findCourses(queries.get(ToolBox.random(queries.size())), 20, null);
+							reads.addAndGet(3);
+						}
+					}
+				});
+				t.setName("Reader-" + (1 + i));
+				threads.add(t);
+			}
+			for (int i = 0; i < nrWriters; i++) {
+				Thread t = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						while (!stop.get()) {
+							XStudent student = server.getStudent(studentIds.get(ToolBox.random(studentIds.size())));
+							if (student != null) server.update(student, true);
+							Long offeringId = offeringIds.get(ToolBox.random(offeringIds.size()));
+							XExpectations expectations = server.getExpectations(offeringId);
+							if (expectations != null) server.update(expectations);
+							writes.addAndGet(2);
+						}
+					}
+				});
+				t.setName("Writer-" + (1 + i));
+				threads.add(t);
+			}
+			
+			long t0 = System.currentTimeMillis();
+			for (Thread t: threads) t.start();
+			Thread.sleep(1000l * duration);
+			stop.set(true);
+			for (Thread t: threads) t.join();
+			long t1 = System.currentTimeMillis();
+			
+			double seconds = (t1 - t0) / 1000.0;
+			sLog.info("Server: " + serverClassName);
+			sLog.info("Readers: " + nrReaders + ", writers: " + nrWriters + ", duration: " + sDF.format(seconds) + " s");
+			sLog.info("Reads: " + reads.get() + " (" + sDF.format(reads.get() / seconds) + " per second)");
+			sLog.info("Writes: " + writes.get() + " (" + sDF.format(writes.get() / seconds) + " per second)");
+			
+			server.unload();
+			HibernateUtil.closeHibernate();
+		} catch (Exception e) {
+			sLog.error("Test failed: " + e.getMessage(), e);
+		}
+	}
+}
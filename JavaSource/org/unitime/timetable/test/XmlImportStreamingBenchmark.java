@@ -0,0 +1,163 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.dom4j.Document;
+import org.dom4j.Element;
+import org.dom4j.io.SAXReader;
+import org.unitime.timetable.dataexchange.XmlElementStream;
+
+/**
+ * Benchmark of the streaming data exchange import. A student enrollments file with the given number of students
+ * (property students, defaults to 100000) is generated and then read by the {@link SAXReader} (the whole document is
+ * kept in memory) and by the {@link XmlElementStream} (one student at a time), in each round (property rounds, defaults to 3).
+ * For each, the time and the peak of the used heap (sampled after each 1000 students) is logged. Both readers are checked
+ * to see the same students and classes.
+ * 
+ * @author Tomas Muller
+ */
+public class XmlImportStreamingBenchmark {
+	private static Log sLog = LogFactory.getLog(XmlImportStreamingBenchmark.class);
+	private static long sPeak = 0;
+	
+	public static void main(String[] args) {
+		try {
+			run(Benchmark.getInt("students", 100000), Benchmark.getInt("rounds", 3));
+		} catch (Exception e) {
+			sLog.error("Benchmark failed: " + e.getMessage(), e);
+		}
+	}
+	
+	private static void run(int nrStudents, int rounds) throws Exception {
+		final File file = File.createTempFile("studentEnrollments", ".xml");
+		file.deleteOnExit();
+		generate(file, nrStudents, new Random(1234));
+		sLog.info("Generated " + nrStudents + " students (" + Benchmark.format(file.length() / 1048576.0) + " MB).");
+		
+		final long[][] counts = new long[2][];
+		Benchmark.run(sLog, rounds, 1,
+				new Benchmark.Task("document") {
+					@Override
+					public void before() {
+						resetPeak();
+					}
+					@Override
+					public void execute(int iteration) throws Exception {
+						counts[0] = readDocument(file);
+					}
+					@Override
+					public String after() {
+						return "peak heap " + Benchmark.format(sPeak / 1048576.0) + " MB";
+					}
+				},
+				new Benchmark.Task("streaming") {
+					@Override
+					public void before() {
+						resetPeak();
+					}
+					@Override
+					public void execute(int iteration) throws Exception {
+						counts[1] = readStream(file);
+					}
+					@Override
+					public String after() {
+						if (counts[0][0] != counts[1][0] || counts[0][1] != counts[1][1])
+							throw new IllegalStateException("Streaming reader returned " + counts[1][0] + " students and " + counts[1][1] + " classes, " + counts[0][0] + " students and " + counts[0][1] + " classes expected.");
+						return "peak heap " + Benchmark.format(sPeak / 1048576.0) + " MB";
+					}
+				});
+	}
+	
+	private static void generate(File file, int nrStudents, Random rnd) throws IOException {
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file)));
+		try {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			out.println("<studentEnrollments campus=\"woebegon\" year=\"2010\" term=\"Fal\" created=\"" + new java.util.Date() + "\">");
+			for (int s = 0; s < nrStudents; s++) {
+				out.println("  <student externalId=\"" + (1000000 + s) + "\" firstName=\"First" + s + "\" lastName=\"Last" + s + "\">");
+				int nrClasses = 3 + rnd.nextInt(6);
+				for (int c = 0; c < nrClasses; c++) {
+					int course = rnd.nextInt(500);
+					out.println("    <class externalId=\"C" + course + "-" + rnd.nextInt(20) + "\" course=\"SUBJ " + (100 + course) + "\" type=\"Lec\" suffix=\"" + (1 + rnd.nextInt(9)) + "\"/>");
+				}
+				out.println("  </student>");
+			}
+			out.println("</studentEnrollments>");
+		} finally {
+			out.close();
+		}
+	}
+	
+	private static void resetPeak() {
+		System.gc();
+		sPeak = 0;
+		sample();
+	}
+	
+	private static void sample() {
+		Runtime rt = Runtime.getRuntime();
+		sPeak = Math.max(sPeak, rt.totalMemory() - rt.freeMemory());
+	}
+	
+	private static long[] readDocument(File file) throws Exception {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			Document document = new SAXReader().read(in);
+			sample();
+			return count(document.getRootElement().elementIterator());
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static long[] readStream(File file) throws Exception {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return count(new XmlElementStream(in));
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static long[] count(Iterator<Element> students) {
+		long nrStudents = 0, nrClasses = 0;
+		while (students.hasNext()) {
+			Element student = students.next();
+			if (!"student".equals(student.getName()) || student.attributeValue("externalId") == null) continue;
+			nrStudents ++;
+			nrClasses += student.elements("class").size();
+			if (nrStudents % 1000 == 0) sample();
+		}
+		return new long[] { nrStudents, nrClasses };
+	}
+}
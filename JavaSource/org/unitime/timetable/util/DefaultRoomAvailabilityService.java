@@ -27,8 +27,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.TreeSet;
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.interfaces.RoomAvailabilityInterface;
@@ -49,7 +50,7 @@ import org.unitime.timetable.model.dao.LocationDAO;
  * @author Tomas Muller
  */
 public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface {
-    private Vector<CacheElement> iCache = new Vector<CacheElement>();
+    private List<CacheElement> iCache = new CopyOnWriteArrayList<CacheElement>();
     private boolean iInstructorAvailabilityEnabled = false;
     
     public String getTimeStamp(Date startTime, Date endTime, String excludeType) {
@@ -59,9 +60,11 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
     }
     
     public CacheElement get(TimeFrame time, String excludeType) {
-        synchronized (iCache) {
-            for (CacheElement cache : iCache) if (cache.cover(time) && cache.exclude(excludeType)) return cache;
-        }
+        for (CacheElement cache : iCache)
+        	if (cache.cover(time) && cache.exclude(excludeType)) {
+        		cache.touch();
+        		return cache;
+        	}
         return null;
     }
     
@@ -71,93 +74,101 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         if (location == null || location.getPermanentId() == null) return null;
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(location.getSession().getUniqueId()) : null);
         TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) return cache.get(location.getPermanentId(), excludeType);
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            Class<? extends Event> exclude = null;
-            ExamType examType = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = FinalExamEvent.class;
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = MidtermExamEvent.class;
-                else if (sClassType.equals(excludeType))
-                    exclude = ClassEvent.class;
-                else {
-                	exclude = ExamEvent.class;
-                	examType = ExamType.findByReference(excludeType);
-                }
-            }
-            for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                    "select m from Meeting m inner join m.event e where m.locationPermanentId=:locPermId and "+
-                    "m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType = " + examType.getUniqueId() + ")" :
-                    exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
-                    .setParameter("locPermId", location.getPermanentId())
-                    .setParameter("startDate", time.getStartDate())
-                    .setParameter("endDate", time.getEndDate())
-                    .setParameter("startSlot", time.getStartSlot())
-                    .setParameter("endSlot", time.getEndSlot())
-                    .setCacheable(true).list()) {
-                MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
-            	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
-                            "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
-                            .setParameter("locPermId", location.getPermanentId())
-                            .setParameter("sessionId", location.getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
-                            "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                            (examType != null ? " and e.exam.examType = " + examType.getUniqueId() : ""), Meeting.class)
-                            .setParameter("locPermId", location.getPermanentId())
-                            .setParameter("sessionId", location.getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	}
+        CacheElement cache = get(time, excludeType);
+        if (cache!=null) return cache.get(location.getPermanentId(), excludeType, time);
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        Class<? extends Event> exclude = null;
+        ExamType examType = null;
+        if (excludeType!=null) {
+            if (sFinalExamType.equals(excludeType))
+                exclude = FinalExamEvent.class;
+            else if (sMidtermExamType.equals(excludeType))
+                exclude = MidtermExamEvent.class;
+            else if (sClassType.equals(excludeType))
+                exclude = ClassEvent.class;
+            else {
+            	exclude = ExamEvent.class;
+            	examType = ExamType.findByReference(excludeType);
             }
-            return ret;
         }
+        for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                "select m from Meeting m inner join m.event e where m.locationPermanentId=:locPermId and "+
+                "m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType = " + examType.getUniqueId() + ")" :
+                exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
+                .setParameter("locPermId", location.getPermanentId())
+                .setParameter("startDate", time.getStartDate())
+                .setParameter("endDate", time.getEndDate())
+                .setParameter("startSlot", time.getStartSlot())
+                .setParameter("endSlot", time.getEndSlot())
+                .setCacheable(true).list()) {
+            MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
+        }
+        if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
+        	if (ClassEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
+                        "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
+                        .setParameter("locPermId", location.getPermanentId())
+                        .setParameter("sessionId", location.getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId=:locPermId and "+
+                        "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                        (examType != null ? " and e.exam.examType = " + examType.getUniqueId() : ""), Meeting.class)
+                        .setParameter("locPermId", location.getPermanentId())
+                        .setParameter("sessionId", location.getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	}
+        }
+        return ret;
     }
     public void activate(Long sessionId, Date startTime, Date endTime, String excludeType, boolean waitForSync) {
         iInstructorAvailabilityEnabled = ApplicationProperty.RoomAvailabilityIncludeInstructors.isTrue();
         TimeFrame time = new TimeFrame(startTime, endTime);
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(sessionId) : null);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache==null) {
-                cache = new CacheElement(time, excludeType);
-                iCache.insertElementAt(cache, 0);
-            }
-            cache.update(class2eventDateMap, sessionId, iInstructorAvailabilityEnabled);
+        CacheElement cache = get(time, excludeType);
+        if (cache != null) {
+        	// the old data remain available to the readers until the update is done
+        	cache.update(class2eventDateMap, sessionId, iInstructorAvailabilityEnabled);
+        	return;
+        }
+        cache = new CacheElement(time, excludeType);
+        cache.update(class2eventDateMap, sessionId, iInstructorAvailabilityEnabled);
+        synchronized (iCache) {
+        	iCache.add(0, cache);
+        	int limit = ApplicationProperty.RoomAvailabilityCacheSize.intValue();
+        	while (limit > 0 && iCache.size() > limit) {
+        		CacheElement lru = null;
+        		for (CacheElement c: iCache)
+        			if (lru == null || c.getLastAccess() < lru.getLastAccess()) lru = c;
+        		iCache.remove(lru);
+        	}
         }
     }
     
@@ -203,18 +214,23 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
 
     public static class CacheElement{
         private TimeFrame iTime;
-        private Map<Long, TreeSet<TimeBlock>> iAvailability = new HashMap<Long, TreeSet<TimeBlock>>();
-        private Map<String, TreeSet<TimeBlock>> iInstructorAvailability = new HashMap<String, TreeSet<TimeBlock>>();
-        private String iTimestamp = null;
+        private volatile Map<Long, TreeSet<TimeBlock>> iAvailability = new HashMap<Long, TreeSet<TimeBlock>>();
+        private volatile Map<String, TreeSet<TimeBlock>> iInstructorAvailability = new HashMap<String, TreeSet<TimeBlock>>();
+        private volatile String iTimestamp = null;
+        private volatile long iLastAccess = System.currentTimeMillis();
         private String iExcludeType = null;
         public CacheElement(TimeFrame time, String excludeType) {
             iTime = time;
             iExcludeType = excludeType;
         }
 
-        public void update(EventDateMapping.Class2EventDateMap class2eventDateMap, Long sessionId, boolean includeInstructors) {
-        	iAvailability.clear();
-        	iInstructorAvailability.clear();
+        /**
+         * Reload the cache element. The new data are collected aside and swapped in when done, so that concurrent readers
+         * always see a complete snapshot.
+         */
+        public synchronized void update(EventDateMapping.Class2EventDateMap class2eventDateMap, Long sessionId, boolean includeInstructors) {
+        	Map<Long, TreeSet<TimeBlock>> availability = new HashMap<Long, TreeSet<TimeBlock>>();
+        	Map<String, TreeSet<TimeBlock>> instructorAvailability = new HashMap<String, TreeSet<TimeBlock>>();
             Class<? extends Event> exclude = null;
             ExamType examType = null;
             if (iExcludeType!=null) {
@@ -229,7 +245,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                 	examType = ExamType.findByReference(iExcludeType);
                 }
             }
-            addAll(LocationDAO.getInstance().getSession().createQuery(
+            addAll(availability, LocationDAO.getInstance().getSession().createQuery(
                     "select m from Meeting m inner join m.event e where m.locationPermanentId!=null and "+
                     "m.approvalStatus = 1 and "+
                     "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
@@ -244,7 +260,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                     .list(), class2eventDateMap);
             if (sessionId != null && ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && exclude != null) {
             	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		addAll(LocationDAO.getInstance().getSession().createQuery(
+            		addAll(availability, LocationDAO.getInstance().getSession().createQuery(
                             "select m from ClassEvent e inner join e.meetings m where m.locationPermanentId in (select l.permanentId from Location l where l.session.uniqueId = :sessionId) and "+
                             "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
                             "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
@@ -256,7 +272,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                             .setParameter("endSlot", iTime.getEndSlot())
                             .setCacheable(true).list(), class2eventDateMap);
             	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		addAll(LocationDAO.getInstance().getSession().createQuery(
+            		addAll(availability, LocationDAO.getInstance().getSession().createQuery(
                             "select m from " + exclude.getSimpleName() + " e inner join e.meetings m where m.locationPermanentId in (select l.permanentId from Location l where l.session.uniqueId = :sessionId) and "+
                             "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
                             "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
@@ -271,7 +287,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
             	}
             }
             if (sessionId != null && includeInstructors) {
-            	addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+            	addAllInstructors(instructorAvailability, LocationDAO.getInstance().getSession().createQuery(
             			"select distinct m, i.externalUniqueId from Meeting m inner join m.event e left outer join m.event.additionalContacts c, DepartmentalInstructor i where " +
                          "i.department.session.uniqueId = :sessionId and i.externalUniqueId is not null and "+
                          "(m.event.mainContact.externalUniqueId = i.externalUniqueId or c.externalUniqueId = i.externalUniqueId) and "+
@@ -288,7 +304,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                          .setCacheable(true).list(), class2eventDateMap);
             	if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && exclude != null) {
             		if (ClassEvent.class.isAssignableFrom(exclude)) {
-            			addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+            			addAllInstructors(instructorAvailability, LocationDAO.getInstance().getSession().createQuery(
                                 "select m, ci.instructor.externalUniqueId from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
                                 "ci.lead = true and m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
                                 "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
@@ -300,7 +316,7 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                                 .setParameter("endSlot", iTime.getEndSlot())
                                 .setCacheable(true).list(), class2eventDateMap);
                 	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-                		addAllInstructors(LocationDAO.getInstance().getSession().createQuery(
+                		addAllInstructors(instructorAvailability, LocationDAO.getInstance().getSession().createQuery(
                                 "select m, di.externalUniqueId from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
                                 "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
                                 "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
@@ -315,44 +331,61 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                 	}
                 }
             }
+            iAvailability = availability;
+            iInstructorAvailability = instructorAvailability;
             iTimestamp = new Date().toString();
         }
         
-        private void add(Meeting m, EventDateMapping.Class2EventDateMap class2eventDateMap) {
-        	TreeSet<TimeBlock> blocks = iAvailability.get(m.getLocationPermanentId());
+        private void add(Map<Long, TreeSet<TimeBlock>> availability, Meeting m, EventDateMapping.Class2EventDateMap class2eventDateMap) {
+        	TreeSet<TimeBlock> blocks = availability.get(m.getLocationPermanentId());
             if (blocks==null) {
-                blocks = new TreeSet(); iAvailability.put(m.getLocationPermanentId(), blocks);
+                blocks = new TreeSet(); availability.put(m.getLocationPermanentId(), blocks);
             }
             MeetingTimeBlock block = new MeetingTimeBlock(m, class2eventDateMap);
             if (block.getStartTime() != null)
             	blocks.add(block);
         }
-        private void addAll(List<Meeting> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
+        private void addAll(Map<Long, TreeSet<TimeBlock>> availability, List<Meeting> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
         	if (meetings != null)
         		for (Meeting m: meetings)
-        			add(m, class2eventDateMap);
+        			add(availability, m, class2eventDateMap);
         }
-        private void add(Meeting m, String instructorExternalId, EventDateMapping.Class2EventDateMap class2eventDateMap) {
-        	TreeSet<TimeBlock> blocks = iInstructorAvailability.get(instructorExternalId);
+        private void add(Map<String, TreeSet<TimeBlock>> instructorAvailability, Meeting m, String instructorExternalId, EventDateMapping.Class2EventDateMap class2eventDateMap) {
+        	TreeSet<TimeBlock> blocks = instructorAvailability.get(instructorExternalId);
             if (blocks==null) {
-                blocks = new TreeSet(); iInstructorAvailability.put(instructorExternalId, blocks);
+                blocks = new TreeSet(); instructorAvailability.put(instructorExternalId, blocks);
             }
             MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
             if (block.getStartTime() != null)
             	blocks.add(block);
         }
-        private void addAllInstructors(List<Object[]> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
+        private void addAllInstructors(Map<String, TreeSet<TimeBlock>> instructorAvailability, List<Object[]> meetings, EventDateMapping.Class2EventDateMap class2eventDateMap) {
         	if (meetings != null)
         		for (Object[] o: meetings) {
         			Meeting m = (Meeting)o[0];
                 	String id = (String)o[1];
-        			add(m, id, class2eventDateMap);
+        			add(instructorAvailability, m, id, class2eventDateMap);
         		}
         }
         
+        /**
+         * Blocks of the given set that start within the dates of the given time frame (blocks are ordered by their start times,
+         * so this is a range lookup instead of a full scan when the cache element covers a longer period)
+         */
+        protected NavigableSet<TimeBlock> window(TreeSet<TimeBlock> blocks, TimeFrame time) {
+        	if (blocks == null) return null;
+        	if (time == null) return blocks;
+        	Calendar end = Calendar.getInstance(Locale.US); end.setTime(time.getEndDate()); end.add(Calendar.DAY_OF_YEAR, 1);
+        	return blocks.subSet(new BoundaryTimeBlock(time.getStartDate()), true, new BoundaryTimeBlock(end.getTime()), false);
+        }
+        
         public TreeSet<TimeBlock> get(Long roomPermId, String excludeType) {
-            TreeSet<TimeBlock> roomAvailability = iAvailability.get(roomPermId);
-            if (roomAvailability==null || excludeType==null || excludeType.equals(iExcludeType)) return roomAvailability;
+        	return get(roomPermId, excludeType, null);
+        }
+        public TreeSet<TimeBlock> get(Long roomPermId, String excludeType, TimeFrame time) {
+            NavigableSet<TimeBlock> roomAvailability = window(iAvailability.get(roomPermId), time);
+            if (roomAvailability==null) return null;
+            if (excludeType==null || excludeType.equals(iExcludeType)) return new TreeSet<TimeBlock>(roomAvailability);
             TreeSet<TimeBlock> ret = new TreeSet();
             for (TimeBlock block : roomAvailability) {
             	if (excludeType.equals(block.getEventType())) continue;
@@ -361,9 +394,13 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
             return ret;
         }
         public TreeSet<TimeBlock> get(String instructorExternalId, String excludeType) {
+        	return get(instructorExternalId, excludeType, null);
+        }
+        public TreeSet<TimeBlock> get(String instructorExternalId, String excludeType, TimeFrame time) {
         	if (instructorExternalId == null) return null;
-            TreeSet<TimeBlock> instructorAvailability = iInstructorAvailability.get(instructorExternalId);
-            if (instructorAvailability==null || excludeType==null || excludeType.equals(iExcludeType)) return instructorAvailability;
+            NavigableSet<TimeBlock> instructorAvailability = window(iInstructorAvailability.get(instructorExternalId), time);
+            if (instructorAvailability==null) return null;
+            if (excludeType==null || excludeType.equals(iExcludeType)) return new TreeSet<TimeBlock>(instructorAvailability);
             TreeSet<TimeBlock> ret = new TreeSet();
             for (TimeBlock block : instructorAvailability) {
             	if (excludeType.equals(block.getEventType())) continue;
@@ -383,11 +420,34 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
                     time.getEndSlot()<=iTime.getEndSlot());
         }
         public String getTimestamp() { return iTimestamp; }
+        public long getLastAccess() { return iLastAccess; }
+        public void touch() { iLastAccess = System.currentTimeMillis(); }
         public String toString() {
             return iTime.toString();
         }
     }
     
+    /**
+     * Search key used to lookup blocks that start at (or after) the given time
+     */
+    private static class BoundaryTimeBlock implements TimeBlock, Comparable<TimeBlock> {
+		private static final long serialVersionUID = 1L;
+		private Date iTime;
+    	BoundaryTimeBlock(Date time) { iTime = time; }
+		public Long getEventId() { return null; }
+		public String getEventName() { return ""; }
+		public String getEventType() { return null; }
+		public Date getStartTime() { return iTime; }
+		public Date getEndTime() { return iTime; }
+		public int compareTo(TimeBlock block) {
+			int cmp = getStartTime().compareTo(block.getStartTime());
+			if (cmp != 0) return cmp;
+			cmp = getEndTime().compareTo(block.getEndTime());
+			if (cmp != 0) return cmp;
+			return getEventName().compareTo(block.getEventName());
+		}
+    }
+    
     public static class MeetingTimeBlock implements TimeBlock, Comparable<TimeBlock> {
 		private static final long serialVersionUID = -5557707709984628517L;
 		Long iEventId, iMeetingId, iLocationPermanentId;
@@ -491,94 +551,92 @@ public class DefaultRoomAvailabilityService implements RoomAvailabilityInterface
         }
         EventDateMapping.Class2EventDateMap class2eventDateMap = (sClassType.equals(excludeType) ? EventDateMapping.getMapping(instructor.getDepartment().getSession().getUniqueId()) : null);
         TimeFrame time = new TimeFrame(startTime, endTime);
-        synchronized(iCache) {
-            CacheElement cache = get(time, excludeType);
-            if (cache!=null) {
-            	Collection<TimeBlock> cached = cache.get(instructor.getExternalUniqueId(), excludeType);
-            	if (instructor.hasUnavailabilities()) {
-            		Collection<TimeBlock> ret = instructor.listUnavailableDays();
-            		if (cached != null) ret.addAll(cached);
-            		return ret;
-            	} else {
-            		return cached;
-            	}
+        CacheElement cache = get(time, excludeType);
+        if (cache!=null) {
+        	Collection<TimeBlock> cached = cache.get(instructor.getExternalUniqueId(), excludeType, time);
+        	if (instructor.hasUnavailabilities()) {
+        		Collection<TimeBlock> ret = instructor.listUnavailableDays();
+        		if (cached != null) ret.addAll(cached);
+        		return ret;
+        	} else {
+        		return cached;
+        	}
+        }
+        TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
+        Class<? extends Event> exclude = null;
+        ExamType examType = null;
+        if (excludeType!=null) {
+            if (sFinalExamType.equals(excludeType))
+                exclude = FinalExamEvent.class;
+            else if (sMidtermExamType.equals(excludeType))
+                exclude = MidtermExamEvent.class;
+            else if (sClassType.equals(excludeType))
+                exclude = ClassEvent.class;
+            else {
+            	exclude = ExamEvent.class;
+            	examType = ExamType.findByReference(excludeType);
             }
-            TreeSet<TimeBlock> ret = new TreeSet<TimeBlock>();
-            Class<? extends Event> exclude = null;
-            ExamType examType = null;
-            if (excludeType!=null) {
-                if (sFinalExamType.equals(excludeType))
-                    exclude = FinalExamEvent.class;
-                else if (sMidtermExamType.equals(excludeType))
-                    exclude = MidtermExamEvent.class;
-                else if (sClassType.equals(excludeType))
-                    exclude = ClassEvent.class;
-                else {
-                	exclude = ExamEvent.class;
-                	examType = ExamType.findByReference(excludeType);
+        }
+        for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+        		"select m from Meeting m inner join m.event e left outer join m.event.additionalContacts c where " +
+        		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
+        		"m.approvalStatus = 1 and "+
+                "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
+                (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
+                	exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
+                .setParameter("user", instructor.getExternalUniqueId())
+                .setParameter("startDate", time.getStartDate())
+                .setParameter("endDate", time.getEndDate())
+                .setParameter("startSlot", time.getStartSlot())
+                .setParameter("endSlot", time.getEndSlot())
+                .setCacheable(true).list()) {
+            MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+            if (block.getStartTime() != null)
+            	ret.add(block);
+        }
+        if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
+        	if (ClassEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
+                        "ci.instructor.externalUniqueId = :user and ci.lead = true and "+
+                        "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
+        				.setParameter("user", instructor.getExternalUniqueId())
+                        .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
                 }
-            }
-            for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-            		"select m from Meeting m inner join m.event e left outer join m.event.additionalContacts c where " +
-            		"(m.event.mainContact.externalUniqueId = :user or c.externalUniqueId = :user) and "+
-            		"m.approvalStatus = 1 and "+
-                    "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                    "m.startPeriod<:endSlot and m.stopPeriod>:startSlot"+
-                    (examType != null ? " and m.event.uniqueId not in (select x.uniqueId from ExamEvent x where x.exam.examType.uniqueId = " + examType.getUniqueId() + ")" :
-                    	exclude != null ? " and type(e)!=" + exclude.getSimpleName() : ""), Meeting.class)
-                    .setParameter("user", instructor.getExternalUniqueId())
-                    .setParameter("startDate", time.getStartDate())
-                    .setParameter("endDate", time.getEndDate())
-                    .setParameter("startSlot", time.getStartSlot())
-                    .setParameter("endSlot", time.getEndSlot())
-                    .setCacheable(true).list()) {
-                MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                if (block.getStartTime() != null)
-                	ret.add(block);
-            }
-            if (ApplicationProperty.RoomAvailabilityIncludeOtherTerms.isTrue() && excludeType != null) {
-            	if (ClassEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from ClassEvent e inner join e.meetings m inner join e.clazz.classInstructors ci where "+
-                            "ci.instructor.externalUniqueId = :user and ci.lead = true and "+
-                            "m.approvalStatus = 1 and e.clazz.schedulingSubpart.instrOfferingConfig.instructionalOffering.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot", Meeting.class)
-            				.setParameter("user", instructor.getExternalUniqueId())
-                            .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
-            		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
-                            "select m from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
-                            "di.externalUniqueId = :user and "+
-                            "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
-                            "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
-                            "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" + 
-                            (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
-            				.setParameter("user", instructor.getExternalUniqueId())
-                            .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
-                            .setParameter("startDate", time.getStartDate())
-                            .setParameter("endDate", time.getEndDate())
-                            .setParameter("startSlot", time.getStartSlot())
-                            .setParameter("endSlot", time.getEndSlot())
-                            .setCacheable(true).list()) {
-                        MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
-                        if (block.getStartTime() != null)
-                        	ret.add(block);
-                    }
-            	}
-            }
-            if (instructor.hasUnavailabilities())
-            	ret.addAll(instructor.listUnavailableDays());
-            return ret;
+        	} else if (ExamEvent.class.isAssignableFrom(exclude)) {
+        		for (Meeting m: LocationDAO.getInstance().getSession().createQuery(
+                        "select m from " + exclude.getSimpleName() + " e inner join e.meetings m inner join e.exam.instructors di where  "+
+                        "di.externalUniqueId = :user and "+
+                        "m.approvalStatus = 1 and e.exam.session.uniqueId != :sessionId and "+
+                        "m.meetingDate>=:startDate and m.meetingDate<=:endDate and "+
+                        "m.startPeriod<:endSlot and m.stopPeriod>:startSlot" + 
+                        (examType != null ? " and e.exam.examType.uniqueId = " + examType.getUniqueId() : ""), Meeting.class)
+        				.setParameter("user", instructor.getExternalUniqueId())
+                        .setParameter("sessionId", instructor.getDepartment().getSession().getUniqueId())
+                        .setParameter("startDate", time.getStartDate())
+                        .setParameter("endDate", time.getEndDate())
+                        .setParameter("startSlot", time.getStartSlot())
+                        .setParameter("endSlot", time.getEndSlot())
+                        .setCacheable(true).list()) {
+                    MeetingTimeBlock block = new MeetingTimeBlockWithRoom(m, class2eventDateMap);
+                    if (block.getStartTime() != null)
+                    	ret.add(block);
+                }
+        	}
         }
+        if (instructor.hasUnavailabilities())
+        	ret.addAll(instructor.listUnavailableDays());
+        return ret;
 	}
 }
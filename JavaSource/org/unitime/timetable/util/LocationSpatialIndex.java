@@ -0,0 +1,139 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Uniform grid over location coordinates, used to quickly find locations that are (or may be) within
+ * the given distance from a set of reference coordinates. The candidates are selected using a bounding box that is
+ * guaranteed to contain all the locations within the given distance, the exact distances are still to be computed
+ * by the caller (using the appropriate {@link org.cpsolver.ifs.util.DistanceMetric}).
+ * In the legacy (Euclidean) mode, coordinates are in the same units as the distance.
+ * Otherwise, coordinates are latitudes and longitudes and the distance is in meters.
+ * 
+ * @author Tomas Muller
+ */
+public class LocationSpatialIndex {
+	/** Lower bound on the length of one degree of latitude (in meters), with some slack */
+	private static final double METERS_PER_DEGREE = 110000.0;
+	
+	private boolean iLegacy;
+	private double iDistance;
+	private double iCellSize;
+	private Map<Long, double[]> iCoordinates = new HashMap<Long, double[]>();
+	private Map<Long, List<Long>> iCells = new HashMap<Long, List<Long>>();
+	private Set<Long> iAlwaysCheck = new HashSet<Long>();
+	
+	/**
+	 * @param legacy legacy distance metric (Euclidean distance, coordinates are in the distance units)
+	 * @param distance maximal distance that will be looked up
+	 */
+	public LocationSpatialIndex(boolean legacy, double distance) {
+		iLegacy = legacy;
+		iDistance = distance;
+		iCellSize = Math.max(legacy ? distance : distance / METERS_PER_DEGREE, 0.000001);
+	}
+	
+	public boolean isLegacy() { return iLegacy; }
+	
+	public double getDistance() { return iDistance; }
+	
+	public int size() { return iCoordinates.size(); }
+	
+	/**
+	 * Legacy metric returns a constant (null) distance when any coordinate is negative, such locations are always candidates
+	 */
+	protected boolean isNullDistance(double x, double y) {
+		return iLegacy && (x < 0 || y < 0);
+	}
+	
+	private long cell(long cx, long cy) {
+		return (cx << 32) ^ (cy & 0xffffffffl);
+	}
+	
+	/**
+	 * Add a location, locations without coordinates are ignored
+	 */
+	public void add(Long id, Double x, Double y) {
+		if (id == null || x == null || y == null) return;
+		iCoordinates.put(id, new double[] {x, y});
+		if (isNullDistance(x, y)) {
+			iAlwaysCheck.add(id);
+		} else {
+			long key = cell((long)Math.floor(x / iCellSize), (long)Math.floor(y / iCellSize));
+			List<Long> ids = iCells.get(key);
+			if (ids == null) {
+				ids = new ArrayList<Long>();
+				iCells.put(key, ids);
+			}
+			ids.add(id);
+		}
+	}
+	
+	/**
+	 * Check that the location has the same coordinates as when the index was created
+	 */
+	public boolean isUpToDate(Long id, Double x, Double y) {
+		double[] xy = iCoordinates.get(id);
+		if (x == null || y == null) return xy == null;
+		return xy != null && xy[0] == x && xy[1] == y;
+	}
+	
+	/**
+	 * Find candidates for locations within the distance of any of the given coordinates
+	 * @param coordinates reference coordinates, each an array {x, y}
+	 * @return ids of the locations that may be within the distance, null if all the locations need to be checked
+	 */
+	public Set<Long> getCandidates(Iterable<double[]> coordinates) {
+		Set<Long> ret = new HashSet<Long>(iAlwaysCheck);
+		for (double[] xy: coordinates) {
+			if (isNullDistance(xy[0], xy[1])) return null;
+			double dx, dy;
+			if (iLegacy) {
+				dx = iDistance; dy = iDistance;
+			} else {
+				dx = 1.01 * iDistance / METERS_PER_DEGREE;
+				double lat = Math.abs(xy[0]) + dx;
+				if (lat >= 89.0) return null;
+				dy = dx / Math.cos(Math.toRadians(lat));
+				if (xy[1] - dy < -180.0 || xy[1] + dy > 180.0) return null;
+			}
+			long x0 = (long)Math.floor((xy[0] - dx) / iCellSize), x1 = (long)Math.floor((xy[0] + dx) / iCellSize);
+			long y0 = (long)Math.floor((xy[1] - dy) / iCellSize), y1 = (long)Math.floor((xy[1] + dy) / iCellSize);
+			for (long cx = x0; cx <= x1; cx++)
+				for (long cy = y0; cy <= y1; cy++) {
+					List<Long> ids = iCells.get(cell(cx, cy));
+					if (ids == null) continue;
+					for (Long id: ids) {
+						double[] c = iCoordinates.get(id);
+						if (Math.abs(c[0] - xy[0]) <= dx && Math.abs(c[1] - xy[1]) <= dy)
+							ret.add(id);
+					}
+				}
+		}
+		return ret;
+	}
+}
@@ -19,117 +19,65 @@
 */
 package org.unitime.timetable.util;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.hibernate.Transaction;
+import org.hibernate.query.Query;
 import org.unitime.commons.hibernate.util.HibernateUtil;
+import org.unitime.timetable.ApplicationProperties;
 import org.unitime.timetable.defaults.ApplicationProperty;
 import org.unitime.timetable.model.dao._RootDAO;
 
 /**
+ * Removes old records from the log tables.<br>
+ * By default, records are removed in batches of {@link ApplicationProperty#LogCleanupBatchSize} records
+ * (ordered by unique id, each batch is removed in its own transaction), with a short pause between two
+ * batches. When interrupted, the next run simply continues with the records that are left.
+ * Removed records can be archived into compressed CSV files (see {@link ApplicationProperty#LogCleanupArchiveFolder}).
+ * 
  * @author Tomas Muller
  */
 public class LogCleaner {
 	private static  Log sLog = LogFactory.getLog(LogCleaner.class);
 	
 	public static void cleanupQueryLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from QueryLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the query log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("QueryLog", "query_log", days, "query log");
 	}
 	
 	public static void cleanupChangeLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from ChangeLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the change log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("ChangeLog", "change_log", days, "change log");
 	}
 	
 	public static void cleanupOnlineSectioningLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from OnlineSectioningLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the online sectioning log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup query log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("OnlineSectioningLog", "sectioning_log", days, "online sectioning log");
 	}
 	
 	public static void cleanupMessageLog(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from MessageLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the message log (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup message log: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("MessageLog", "message_log", days, "message log");
 	}
 	
 	public static void cleanupStudentSectioningQueue(int days) {
-		if (days < 0) return;
-		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
-		Transaction tx = null;
-		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from StudentSectioningQueue where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the student sectioning queue (" + rows + " records).");
-			tx.commit();
-		} catch (Throwable t) {
-			sLog.warn("Failed to cleanup student sectioning queue: " + t.getMessage(), t);
-			if (tx != null) tx.rollback();
-		} finally {
-			hibSession.close();
-		}
+		cleanup("StudentSectioningQueue", "sectioning_queue", days, "student sectioning queue");
 	}
 	
 	public static void cleanupHashedQueries(int days) {
@@ -153,22 +101,170 @@ public class LogCleaner {
 	}
 	
 	public static void cleanupSctSolutionLog(int days) {
+		cleanup("SectioningSolutionLog", "sct_solution_log", days, "sectioning solutions log");
+	}
+	
+	/**
+	 * Remove records older than the given number of days
+	 * @param entity entity name (must have uniqueId and timeStamp properties)
+	 * @param table table name (used when archiving removed records)
+	 * @param days number of days, nothing is removed when negative
+	 * @param name log name (for the info and warning messages)
+	 */
+	protected static void cleanup(String entity, String table, int days, String name) {
 		if (days < 0) return;
+		int batchSize = ApplicationProperty.LogCleanupBatchSize.intValue();
+		File archiveFolder = getArchiveFolder();
+		if (batchSize <= 0 && archiveFolder == null) {
+			org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+			Transaction tx = null;
+			try {
+				tx = hibSession.beginTransaction();
+				int rows = hibSession.createMutationQuery(
+						"delete from " + entity + " where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
+						).setParameter("days", - days).executeUpdate();
+				if (rows > 0)
+					sLog.info("All records older than " + days + " days deleted from the " + name + " (" + rows + " records).");
+				tx.commit();
+			} catch (Throwable t) {
+				sLog.warn("Failed to cleanup " + name + ": " + t.getMessage(), t);
+				if (tx != null) tx.rollback();
+			} finally {
+				hibSession.close();
+			}
+			return;
+		}
+		if (batchSize <= 0) batchSize = 10000;
+		int pause = ApplicationProperty.LogCleanupBatchPause.intValue();
+		
 		org.hibernate.Session hibSession = new _RootDAO().createNewSession();
+		Archive archive = null;
 		Transaction tx = null;
+		int total = 0;
 		try {
-			tx = hibSession.beginTransaction();
-			int rows = hibSession.createMutationQuery(
-					"delete from SectioningSolutionLog where timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
-					).setParameter("days", - days).executeUpdate();
-			if (rows > 0)
-				sLog.info("All records older than " + days + " days deleted from the sectioning solutions log (" + rows + " records).");
-			tx.commit();
+			Long lastId = null;
+			while (true) {
+				tx = hibSession.beginTransaction();
+				Query<Long> q = hibSession.createQuery(
+						"select uniqueId from " + entity + " where timeStamp < " + HibernateUtil.addDate("current_date()", ":days") +
+						(lastId == null ? "" : " and uniqueId > :lastId") + " order by uniqueId", Long.class
+						).setParameter("days", - days).setMaxResults(batchSize);
+				if (lastId != null) q.setParameter("lastId", lastId);
+				List<Long> ids = q.list();
+				if (ids.isEmpty()) {
+					tx.commit(); tx = null;
+					break;
+				}
+				Long minId = ids.get(0), maxId = ids.get(ids.size() - 1);
+				if (archiveFolder != null) {
+					if (archive == null) archive = new Archive(archiveFolder, table);
+					archive.write(hibSession, new HashSet<Long>(ids), minId, maxId);
+				}
+				int rows = hibSession.createMutationQuery(
+						"delete from " + entity + " where uniqueId >= :minId and uniqueId <= :maxId and timeStamp < " + HibernateUtil.addDate("current_date()", ":days")
+						).setParameter("days", - days).setParameter("minId", minId).setParameter("maxId", maxId).executeUpdate();
+				tx.commit(); tx = null;
+				total += rows;
+				lastId = maxId;
+				if (ids.size() < batchSize) break;
+				if (pause > 0) Thread.sleep(pause);
+			}
 		} catch (Throwable t) {
-			sLog.warn("Failed to sectioning solutions log: " + t.getMessage(), t);
+			sLog.warn("Failed to cleanup " + name + ": " + t.getMessage(), t);
 			if (tx != null) tx.rollback();
 		} finally {
+			if (archive != null) archive.close();
 			hibSession.close();
+			if (total > 0)
+				sLog.info("All records older than " + days + " days deleted from the " + name + " (" + total + " records)." +
+						(archive != null ? " Deleted records were archived in " + archive.getFile() + "." : ""));
+		}
+	}
+	
+	protected static File getArchiveFolder() {
+		String folder = ApplicationProperty.LogCleanupArchiveFolder.value();
+		if (folder == null || folder.isEmpty()) return null;
+		File file = new File(folder);
+		if (!file.isAbsolute()) file = new File(ApplicationProperties.getDataFolder(), folder);
+		file.mkdirs();
+		return file;
+	}
+	
+	/**
+	 * Compressed CSV file into which removed records are written, the first line contains the column names.
+	 */
+	protected static class Archive {
+		private File iFile;
+		private String iTable;
+		private PrintWriter iWriter = null;
+		private boolean iHeader = false;
+		
+		protected Archive(File folder, String table) throws IOException {
+			iTable = table;
+			String schema = HibernateUtil.getConfiguration().getProperty("default_schema");
+			if (schema != null && !schema.isEmpty()) iTable = schema + "." + table;
+			iFile = new File(folder, table + "_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".csv.gz");
+			iWriter = new PrintWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(iFile)), StandardCharsets.UTF_8));
+		}
+		
+		public File getFile() { return iFile; }
+		
+		protected void write(org.hibernate.Session hibSession, final Set<Long> ids, final Long minId, final Long maxId) throws IOException {
+			hibSession.doWork(connection -> {
+				try (PreparedStatement stmt = connection.prepareStatement("select * from " + iTable + " where uniqueid >= ? and uniqueid <= ? order by uniqueid")) {
+					stmt.setLong(1, minId);
+					stmt.setLong(2, maxId);
+					try (ResultSet rs = stmt.executeQuery()) {
+						ResultSetMetaData md = rs.getMetaData();
+						int idColumn = 0;
+						for (int i = 1; i <= md.getColumnCount(); i++)
+							if ("uniqueid".equalsIgnoreCase(md.getColumnName(i))) idColumn = i;
+						if (!iHeader) {
+							for (int i = 1; i <= md.getColumnCount(); i++) {
+								if (i > 1) iWriter.print(',');
+								iWriter.print(quote(md.getColumnName(i).toLowerCase()));
+							}
+							iWriter.println();
+							iHeader = true;
+						}
+						while (rs.next()) {
+							if (idColumn > 0 && !ids.contains(rs.getLong(idColumn))) continue;
+							for (int i = 1; i <= md.getColumnCount(); i++) {
+								if (i > 1) iWriter.print(',');
+								iWriter.print(quote(rs.getObject(i)));
+							}
+							iWriter.println();
+						}
+					}
+				}
+			});
+			iWriter.flush();
+			if (iWriter.checkError())
+				throw new IOException("Failed to write " + iFile);
+		}
+		
+		protected void close() {
+			if (iWriter != null) {
+				iWriter.close();
+				iWriter = null;
+			}
+		}
+		
+		private static String quote(Object value) throws SQLException {
+			if (value == null) return "";
+			if (value instanceof Blob) {
+				Blob blob = (Blob)value;
+				value = blob.getBytes(1, (int)blob.length());
+			}
+			if (value instanceof Clob) {
+				Clob clob = (Clob)value;
+				value = clob.getSubString(1, (int)clob.length());
+			}
+			if (value instanceof byte[])
+				return Base64.getEncoder().encodeToString((byte[])value);
+			if (value instanceof Number)
+				return value.toString();
+			return "\"" + value.toString().replace("\"", "\"\"") + "\"";
 		}
 	}
 	
@@ -0,0 +1,280 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.unitime.timetable.defaults.ApplicationProperty;
+import org.unitime.timetable.model.Meeting;
+
+/**
+ * In-memory index of room occupancy: for each location (permanent id) and date a bitmap of the time slots
+ * that are taken by a pending or approved meeting. The index is filled lazily (when a location and date is
+ * looked up for the first time) and entries are invalidated when a meeting is saved, updated, or deleted
+ * (see {@link Meeting#meetingChanged()}). It is used to avoid conflict checking queries for locations
+ * that are not used at the given times. Since changes made on other cluster nodes are not seen, entries also expire
+ * after unitime.events.occupancyIndex.timeToLive seconds.
+ * 
+ * @author Tomas Muller
+ */
+public class RoomOccupancyIndex {
+	/** Entries that have been invalidated recently are not cached, as the change may not have been committed yet */
+	private static final long INVALIDATION_GRACE = 60000l;
+	private static RoomOccupancyIndex sInstance = null;
+	
+	private Map<Long, Map<Integer, Occupancy>> iOccupancy = new ConcurrentHashMap<Long, Map<Integer, Occupancy>>();
+	private Map<Long, long[]> iMeetings = new ConcurrentHashMap<Long, long[]>();
+	private Map<Long, Map<Integer, Long>> iInvalidated = new ConcurrentHashMap<Long, Map<Integer, Long>>();
+	
+	private RoomOccupancyIndex() {}
+	
+	public static boolean isEnabled() {
+		return ApplicationProperty.EventOccupancyIndexEnabled.isTrue();
+	}
+	
+	/**
+	 * Room occupancy index, null when disabled
+	 */
+	public static synchronized RoomOccupancyIndex getInstance() {
+		if (!isEnabled()) {
+			sInstance = null;
+		} else if (sInstance == null) {
+			sInstance = new RoomOccupancyIndex();
+		}
+		return sInstance;
+	}
+	
+	/**
+	 * Called when a meeting is created, changed, or deleted
+	 */
+	public static void meetingChanged(Meeting meeting) {
+		RoomOccupancyIndex index = sInstance;
+		if (index != null) index.invalidate(meeting);
+	}
+	
+	protected static int day(Date date) {
+		Calendar c = Calendar.getInstance(Locale.US);
+		c.setTime(date);
+		return 1000 * c.get(Calendar.YEAR) + c.get(Calendar.DAY_OF_YEAR);
+	}
+	
+	protected void invalidate(Meeting meeting) {
+		long now = System.currentTimeMillis();
+		if (meeting.getUniqueId() != null) {
+			long[] old = iMeetings.remove(meeting.getUniqueId());
+			if (old != null) invalidate(old[0], (int)old[1], now);
+		}
+		if (meeting.getLocationPermanentId() != null && meeting.getMeetingDate() != null)
+			invalidate(meeting.getLocationPermanentId(), day(meeting.getMeetingDate()), now);
+	}
+	
+	protected void invalidate(Long permanentId, int day, long now) {
+		Map<Integer, Occupancy> occupancy = iOccupancy.get(permanentId);
+		if (occupancy != null) occupancy.remove(day);
+		Map<Integer, Long> invalidated = iInvalidated.get(permanentId);
+		if (invalidated == null) {
+			invalidated = new ConcurrentHashMap<Integer, Long>();
+			Map<Integer, Long> old = ((ConcurrentHashMap<Long, Map<Integer, Long>>)iInvalidated).putIfAbsent(permanentId, invalidated);
+			if (old != null) invalidated = old;
+		}
+		invalidated.put(day, now);
+	}
+	
+	protected Occupancy get(Long permanentId, int day, long now, long timeToLive) {
+		Map<Integer, Occupancy> occupancy = iOccupancy.get(permanentId);
+		Occupancy o = (occupancy == null ? null : occupancy.get(day));
+		if (o != null && now - o.iCreated > timeToLive) {
+			occupancy.remove(day);
+			return null;
+		}
+		return o;
+	}
+	
+	protected void put(Long permanentId, int day, Occupancy o) {
+		Map<Integer, Long> invalidated = iInvalidated.get(permanentId);
+		Long ts = (invalidated == null ? null : invalidated.get(day));
+		if (ts != null) {
+			if (o.iCreated - ts < INVALIDATION_GRACE) return;
+			invalidated.remove(day);
+		}
+		Map<Integer, Occupancy> occupancy = iOccupancy.get(permanentId);
+		if (occupancy == null) {
+			occupancy = new ConcurrentHashMap<Integer, Occupancy>();
+			Map<Integer, Occupancy> old = ((ConcurrentHashMap<Long, Map<Integer, Occupancy>>)iOccupancy).putIfAbsent(permanentId, occupancy);
+			if (old != null) occupancy = old;
+		}
+		occupancy.put(day, o);
+		for (Long meetingId: o.iMeetingIds)
+			iMeetings.put(meetingId, new long[] {permanentId, day});
+	}
+	
+	/**
+	 * Locations (permanent ids) that are used at the given time on any of the given dates, including
+	 * the occupancy of parent rooms and room partitions. Locations and dates that are not in the index are loaded from the database.
+	 * @param sessionId academic session (used to lookup room partitions)
+	 * @param permanentIds locations to check
+	 * @param dates meeting dates
+	 * @param startSlot first time slot
+	 * @param endSlot end time slot (exclusive)
+	 * @param hibSession hibernate session to be used to load missing entries
+	 * @return locations that have at least one overlapping meeting
+	 */
+	public Set<Long> getOccupied(Long sessionId, Collection<Long> permanentIds, Collection<Date> dates, int startSlot, int endSlot, org.hibernate.Session hibSession) {
+		Map<Long, Set<Long>> related = getRelatedLocations(sessionId, hibSession);
+		Set<Long> allIds = new HashSet<Long>(permanentIds);
+		for (Long permanentId: permanentIds) {
+			Set<Long> r = related.get(permanentId);
+			if (r != null) allIds.addAll(r);
+		}
+		Map<Integer, Date> days = new HashMap<Integer, Date>();
+		for (Date date: dates) days.put(day(date), date);
+		
+		long now = System.currentTimeMillis();
+		long timeToLive = 1000l * ApplicationProperty.EventOccupancyIndexTimeToLive.intValue();
+		Map<Long, Map<Integer, Occupancy>> occupancy = new HashMap<Long, Map<Integer, Occupancy>>();
+		Set<Long> missingIds = new HashSet<Long>();
+		Set<Date> missingDates = new HashSet<Date>();
+		for (Long permanentId: allIds) {
+			Map<Integer, Occupancy> o = new HashMap<Integer, Occupancy>();
+			occupancy.put(permanentId, o);
+			for (Map.Entry<Integer, Date> day: days.entrySet()) {
+				Occupancy x = get(permanentId, day.getKey(), now, timeToLive);
+				if (x == null) {
+					missingIds.add(permanentId);
+					missingDates.add(day.getValue());
+				} else {
+					o.put(day.getKey(), x);
+				}
+			}
+		}
+		if (!missingIds.isEmpty())
+			load(missingIds, missingDates, occupancy, hibSession);
+		
+		long[] mask = Occupancy.mask(startSlot, endSlot);
+		Set<Long> ret = new HashSet<Long>();
+		ids: for (Long permanentId: permanentIds) {
+			Set<Long> r = related.get(permanentId);
+			for (Long id: (r == null ? Collections.singleton(permanentId) : r)) {
+				for (Occupancy o: occupancy.get(id).values())
+					if (o.overlaps(mask)) { ret.add(permanentId); continue ids; }
+			}
+		}
+		return ret;
+	}
+	
+	/**
+	 * Load occupancy of the given locations and dates
+	 */
+	protected void load(Set<Long> permanentIds, Set<Date> dates, Map<Long, Map<Integer, Occupancy>> occupancy, org.hibernate.Session hibSession) {
+		long now = System.currentTimeMillis();
+		Map<Long, Map<Integer, Occupancy>> loaded = new HashMap<Long, Map<Integer, Occupancy>>();
+		for (Long permanentId: permanentIds) {
+			Map<Integer, Occupancy> o = new HashMap<Integer, Occupancy>();
+			for (Date date: dates) o.put(day(date), new Occupancy(now));
+			loaded.put(permanentId, o);
+		}
+		List<Long> ids = new ArrayList<Long>(permanentIds);
+		for (int idx = 0; idx < ids.size(); idx += 1000) {
+			for (Object[] m: hibSession.createQuery(
+					"select m.uniqueId, m.locationPermanentId, m.meetingDate, m.startPeriod, m.stopPeriod from Meeting m where " +
+					"m.approvalStatus <= 1 and m.locationPermanentId in :permanentIds and m.meetingDate in :dates", Object[].class)
+					.setParameterList("permanentIds", ids.subList(idx, Math.min(ids.size(), idx + 1000)), Long.class)
+					.setParameterList("dates", dates, Date.class)
+					.list()) {
+				Occupancy o = loaded.get((Long)m[1]).get(day((Date)m[2]));
+				if (o != null) o.add((Long)m[0], (Integer)m[3], (Integer)m[4]);
+			}
+		}
+		for (Map.Entry<Long, Map<Integer, Occupancy>> e: loaded.entrySet()) {
+			Map<Integer, Occupancy> o = occupancy.get(e.getKey());
+			for (Map.Entry<Integer, Occupancy> x: e.getValue().entrySet()) {
+				if (!o.containsKey(x.getKey())) o.put(x.getKey(), x.getValue());
+				put(e.getKey(), x.getKey(), x.getValue());
+			}
+		}
+	}
+	
+	/**
+	 * Room partitions: permanent id of a location -&gt; permanent ids of its parent room and its partitions
+	 */
+	protected Map<Long, Set<Long>> getRelatedLocations(Long sessionId, org.hibernate.Session hibSession) {
+		Map<Long, Set<Long>> related = new HashMap<Long, Set<Long>>();
+		for (Object[] o: hibSession.createQuery(
+				"select r.permanentId, p.permanentId from Room r inner join r.parentRoom p where r.session.uniqueId = :sessionId", Object[].class)
+				.setParameter("sessionId", sessionId).setCacheable(true).list()) {
+			Long child = (Long)o[0], parent = (Long)o[1];
+			Set<Long> r = related.get(child);
+			if (r == null) { r = new HashSet<Long>(); r.add(child); related.put(child, r); }
+			r.add(parent);
+			r = related.get(parent);
+			if (r == null) { r = new HashSet<Long>(); r.add(parent); related.put(parent, r); }
+			r.add(child);
+		}
+		return related;
+	}
+	
+	/**
+	 * Occupancy of a location on a particular date: bitmap of the time slots (288 slots a day, 5 minutes each) and the meetings
+	 */
+	protected static class Occupancy {
+		private long iCreated;
+		private long[] iSlots = new long[(Constants.SLOTS_PER_DAY + 63) / 64];
+		private List<Long> iMeetingIds = new ArrayList<Long>();
+		
+		Occupancy(long created) {
+			iCreated = created;
+		}
+		
+		void add(Long meetingId, int startSlot, int endSlot) {
+			iMeetingIds.add(meetingId);
+			long[] mask = mask(startSlot, endSlot);
+			for (int i = 0; i < iSlots.length; i++)
+				iSlots[i] |= mask[i];
+		}
+		
+		boolean overlaps(long[] mask) {
+			for (int i = 0; i < iSlots.length; i++)
+				if ((iSlots[i] & mask[i]) != 0) return true;
+			return false;
+		}
+		
+		static long[] mask(int startSlot, int endSlot) {
+			long[] mask = new long[(Constants.SLOTS_PER_DAY + 63) / 64];
+			for (int i = 0; i < mask.length; i++) {
+				int from = Math.max(startSlot, 64 * i) - 64 * i;
+				int to = Math.min(endSlot, 64 * (i + 1)) - 64 * i;
+				if (from >= to) continue;
+				mask[i] = (to == 64 ? -1l : (1l << to) - 1) & (-1l << from);
+			}
+			return mask;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (in the spirit of HdrHistogram).
+ * Values are kept in microseconds, each power of two is split into 32 sub-buckets,
+ * so a percentile is reported with a relative error of about 3%. Values up to
+ * 2^40 microseconds (about 12 days) are tracked, larger values are clamped.
+ * 
+ * @author Tomas Muller
+ */
+public class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_BITS = 40;
+	private static final long MAX_VALUE = (1l << MAX_BITS) - 1;
+	private static final int BUCKETS = (MAX_BITS - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+	
+	private AtomicLongArray iCounts = new AtomicLongArray(BUCKETS);
+	private AtomicLong iCount = new AtomicLong(0);
+	private AtomicLong iTotal = new AtomicLong(0);
+	private AtomicLong iMax = new AtomicLong(0);
+	
+	static int bucket(long value) {
+		if (value < 0) value = 0;
+		if (value > MAX_VALUE) value = MAX_VALUE;
+		int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+		return (shift << SUB_BUCKET_BITS) + (int)(value >> shift);
+	}
+	
+	static long highestValue(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS) return bucket;
+		int shift = (bucket >> SUB_BUCKET_BITS) - 1;
+		long mantissa = bucket - (shift << SUB_BUCKET_BITS);
+		return ((mantissa + 1) << shift) - 1;
+	}
+	
+	/** Record a value in microseconds */
+	public void record(long micros) {
+		if (micros < 0) micros = 0;
+		iCounts.incrementAndGet(bucket(micros));
+		iCount.incrementAndGet();
+		iTotal.addAndGet(micros);
+		long max = iMax.get();
+		while (micros > max && !iMax.compareAndSet(max, micros))
+			max = iMax.get();
+	}
+	
+	/** Record a value in the given time unit */
+	public void record(long time, TimeUnit unit) {
+		record(unit.toMicros(time));
+	}
+	
+	/** Record elapsed time since the given {@link System#nanoTime()} */
+	public void recordSince(long startNanos) {
+		record((System.nanoTime() - startNanos) / 1000);
+	}
+	
+	/** Number of recorded values */
+	public long getCount() { return iCount.get(); }
+	
+	/** Sum of all the recorded values in microseconds */
+	public long getTotal() { return iTotal.get(); }
+	
+	/** Maximal recorded value in microseconds */
+	public long getMax() { return iMax.get(); }
+	
+	/** Average recorded value in microseconds */
+	public double getMean() {
+		long count = getCount();
+		return count == 0 ? 0.0 : ((double)getTotal()) / count;
+	}
+	
+	/**
+	 * Value (in microseconds) at the given percentile
+	 * @param percentile percentile between 0 and 100
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = getCount();
+		if (count == 0) return 0;
+		long limit = Math.max(1, (long)Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) * count / 100.0));
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += iCounts.get(i);
+			if (total >= limit)
+				return Math.min(highestValue(i), getMax());
+		}
+		return getMax();
+	}
+	
+	/** Clear all recorded values */
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			iCounts.set(i, 0);
+		iCount.set(0);
+		iTotal.set(0);
+		iMax.set(0);
+	}
+	
+	@Override
+	public String toString() {
+		return "count=" + getCount() + ", mean=" + Math.round(getMean() / 1000.0) + "ms, p50=" + (getValueAtPercentile(50) / 1000) + "ms, p99=" + (getValueAtPercentile(99) / 1000) + "ms, max=" + (getMax() / 1000) + "ms";
+	}
+}
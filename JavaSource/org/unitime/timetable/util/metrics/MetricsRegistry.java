@@ -0,0 +1,299 @@
+/*
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+*/
+package org.unitime.timetable.util.metrics;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.unitime.commons.hibernate.stats.StatsProvider;
+
+/**
+ * In-process metrics registry: latency histograms, counters, and gauges.
+ * Metrics are identified by a name and an optional label (e.g., request type),
+ * they can be exported in the Prometheus text format (see {@link #writePrometheus(PrintWriter)}).
+ * The registry is kept per JVM.
+ * 
+ * @author Tomas Muller
+ */
+public class MetricsRegistry {
+	private static Log sLog = LogFactory.getLog(MetricsRegistry.class);
+	private static MetricsRegistry sInstance = null;
+	private static final double[] sQuantiles = new double[] { 0.5, 0.9, 0.99 };
+	
+	private Map<String, Family> iFamilies = new ConcurrentSkipListMap<String, Family>();
+	
+	public static enum Type {
+		SUMMARY("summary"),
+		COUNTER("counter"),
+		GAUGE("gauge");
+		
+		private String iName;
+		Type(String name) { iName = name; }
+		public String getName() { return iName; }
+	}
+	
+	public static interface Gauge {
+		public Number getValue();
+	}
+	
+	public static interface LabeledGauge {
+		/** Gauge values by label value */
+		public Map<String, ? extends Number> getValues();
+	}
+	
+	public static class Counter {
+		private AtomicLong iValue = new AtomicLong(0);
+		public void increment() { iValue.incrementAndGet(); }
+		public void add(long value) { iValue.addAndGet(value); }
+		public long get() { return iValue.get(); }
+		public void reset() { iValue.set(0); }
+	}
+	
+	public static synchronized MetricsRegistry getInstance() {
+		if (sInstance == null) {
+			sInstance = new MetricsRegistry();
+			StatsProvider.registerMetrics(sInstance);
+		}
+		return sInstance;
+	}
+	
+	protected Family family(String name, String help, String label, Type type) {
+		Family family = iFamilies.get(name);
+		if (family == null) {
+			family = new Family(name, help, label, type);
+			Family old = iFamilies.putIfAbsent(name, family);
+			if (old != null) family = old;
+		}
+		if (family.getType() != type)
+			throw new IllegalArgumentException("Metric " + name + " is a " + family.getType().getName() + ", not a " + type.getName() + ".");
+		return family;
+	}
+	
+	/**
+	 * Latency histogram
+	 * @param name metric name (e.g., unitime_rpc_request_seconds)
+	 * @param help metric description
+	 * @param label label name (e.g., request), null if there is no label
+	 * @param value label value (e.g., the request class name)
+	 */
+	public LatencyHistogram histogram(String name, String help, String label, String value) {
+		return (LatencyHistogram)family(name, help, label, Type.SUMMARY).get(value);
+	}
+	
+	public LatencyHistogram histogram(String name, String help) {
+		return histogram(name, help, null, null);
+	}
+	
+	/**
+	 * Monotonically increasing counter
+	 * @param name metric name (e.g., unitime_rpc_errors_total)
+	 * @param help metric description
+	 * @param label label name, null if there is no label
+	 * @param value label value
+	 */
+	public Counter counter(String name, String help, String label, String value) {
+		return (Counter)family(name, help, label, Type.COUNTER).get(value);
+	}
+	
+	public Counter counter(String name, String help) {
+		return counter(name, help, null, null);
+	}
+	
+	/**
+	 * Register a gauge, the value is computed when the metrics are collected. An existing gauge of the same name is replaced.
+	 */
+	public void gauge(String name, String help, final Gauge gauge) {
+		family(name, help, null, Type.GAUGE).setGauge(new LabeledGauge() {
+			@Override
+			public Map<String, ? extends Number> getValues() {
+				Number value = gauge.getValue();
+				return value == null ? Collections.<String, Number>emptyMap() : Collections.singletonMap("", value);
+			}
+		});
+	}
+	
+	/**
+	 * Register a gauge with one value for each label value, computed when the metrics are collected. An existing gauge of the same name is replaced.
+	 */
+	public void gauge(String name, String help, String label, LabeledGauge gauge) {
+		family(name, help, label, Type.GAUGE).setGauge(gauge);
+	}
+	
+	/**
+	 * All latency histograms
+	 * @return metric name and label value (separated by a space if there is a label) -&gt; histogram
+	 */
+	public Map<String, LatencyHistogram> getHistograms() {
+		Map<String, LatencyHistogram> ret = new TreeMap<String, LatencyHistogram>();
+		for (Family family: iFamilies.values()) {
+			if (family.getType() != Type.SUMMARY) continue;
+			for (Map.Entry<String, Object> e: family.getMetrics().entrySet())
+				ret.put(e.getKey().isEmpty() ? family.getName() : family.getName() + " " + e.getKey(), (LatencyHistogram)e.getValue());
+		}
+		return ret;
+	}
+	
+	/**
+	 * All counters and gauges
+	 * @return metric name and label value (separated by a space if there is a label) -&gt; value
+	 */
+	public Map<String, Number> getValues() {
+		Map<String, Number> ret = new TreeMap<String, Number>();
+		for (Family family: iFamilies.values()) {
+			if (family.getType() == Type.SUMMARY) continue;
+			for (Map.Entry<String, ? extends Number> e: family.getValues().entrySet())
+				ret.put(e.getKey().isEmpty() ? family.getName() : family.getName() + " " + e.getKey(), e.getValue());
+		}
+		return ret;
+	}
+	
+	public String getHelp(String name) {
+		Family family = iFamilies.get(name);
+		return family == null ? null : family.getHelp();
+	}
+	
+	/**
+	 * Reset all histograms and counters
+	 */
+	public void reset() {
+		for (Family family: iFamilies.values())
+			family.reset();
+	}
+	
+	/**
+	 * Write all the metrics in the Prometheus text exposition format (latency histograms are exported as summaries in seconds)
+	 */
+	public void writePrometheus(PrintWriter out) {
+		for (Family family: iFamilies.values()) {
+			try {
+				family.writePrometheus(out);
+			} catch (Exception e) {
+				sLog.warn("Failed to export metric " + family.getName() + ": " + e.getMessage(), e);
+			}
+		}
+		out.flush();
+	}
+	
+	protected static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+	protected static String format(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+			return String.valueOf((long)value);
+		return String.valueOf(value);
+	}
+	
+	protected static class Family {
+		private String iName, iHelp, iLabel;
+		private Type iType;
+		private Map<String, Object> iMetrics = new ConcurrentHashMap<String, Object>();
+		private LabeledGauge iGauge;
+		
+		Family(String name, String help, String label, Type type) {
+			iName = name; iHelp = help; iLabel = label; iType = type;
+		}
+		
+		String getName() { return iName; }
+		String getHelp() { return iHelp; }
+		Type getType() { return iType; }
+		Map<String, Object> getMetrics() { return new TreeMap<String, Object>(iMetrics); }
+		void setGauge(LabeledGauge gauge) { iGauge = gauge; }
+		
+		Object get(String value) {
+			String key = (iLabel == null || value == null ? "" : value);
+			Object metric = iMetrics.get(key);
+			if (metric == null) {
+				metric = (iType == Type.SUMMARY ? new LatencyHistogram() : new Counter());
+				Object old = iMetrics.putIfAbsent(key, metric);
+				if (old != null) metric = old;
+			}
+			return metric;
+		}
+		
+		Map<String, ? extends Number> getValues() {
+			if (iType == Type.GAUGE) {
+				if (iGauge == null) return Collections.emptyMap();
+				Map<String, ? extends Number> values = iGauge.getValues();
+				return values == null ? Collections.<String, Number>emptyMap() : new TreeMap<String, Number>(values);
+			}
+			Map<String, Number> ret = new TreeMap<String, Number>();
+			for (Map.Entry<String, Object> e: iMetrics.entrySet())
+				ret.put(e.getKey(), ((Counter)e.getValue()).get());
+			return ret;
+		}
+		
+		void reset() {
+			for (Object metric: iMetrics.values()) {
+				if (metric instanceof LatencyHistogram)
+					((LatencyHistogram)metric).reset();
+				else if (metric instanceof Counter)
+					((Counter)metric).reset();
+			}
+		}
+		
+		String labels(String value, String... extra) {
+			List<String> labels = new ArrayList<String>();
+			if (iLabel != null && value != null && !value.isEmpty())
+				labels.add(iLabel + "=\"" + escape(value) + "\"");
+			for (int i = 0; i + 1 < extra.length; i += 2)
+				labels.add(extra[i] + "=\"" + escape(extra[i + 1]) + "\"");
+			if (labels.isEmpty()) return "";
+			StringBuffer ret = new StringBuffer("{");
+			for (String label: labels) {
+				if (ret.length() > 1) ret.append(",");
+				ret.append(label);
+			}
+			return ret.append("}").toString();
+		}
+		
+		void writePrometheus(PrintWriter out) {
+			if (iType == Type.SUMMARY) {
+				Map<String, Object> metrics = getMetrics();
+				if (metrics.isEmpty()) return;
+				if (iHelp != null) out.println("# HELP " + iName + " " + iHelp.replace("\\", "\\\\").replace("\n", "\\n"));
+				out.println("# TYPE " + iName + " " + iType.getName());
+				for (Map.Entry<String, Object> e: metrics.entrySet()) {
+					LatencyHistogram h = (LatencyHistogram)e.getValue();
+					for (double q: sQuantiles)
+						out.println(iName + labels(e.getKey(), "quantile", String.valueOf(q)) + " " + format(h.getValueAtPercentile(100.0 * q) / 1e6));
+					out.println(iName + "_sum" + labels(e.getKey()) + " " + format(h.getTotal() / 1e6));
+					out.println(iName + "_count" + labels(e.getKey()) + " " + h.getCount());
+				}
+			} else {
+				Map<String, ? extends Number> values = getValues();
+				if (values.isEmpty()) return;
+				if (iHelp != null) out.println("# HELP " + iName + " " + iHelp.replace("\\", "\\\\").replace("\n", "\\n"));
+				out.println("# TYPE " + iName + " " + iType.getName());
+				for (Map.Entry<String, ? extends Number> e: values.entrySet())
+					out.println(iName + labels(e.getKey()) + " " + format(e.getValue().doubleValue()));
+			}
+		}
+	}
+}
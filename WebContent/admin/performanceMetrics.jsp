@@ -0,0 +1,70 @@
+<%-- 
+ * Licensed to The Apereo Foundation under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.
+ *
+ * The Apereo Foundation licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at:
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ --%>
+<%@ taglib prefix="s" uri="/struts-tags" %>
+<%@ taglib prefix="tt" uri="http://www.unitime.org/tags-custom" %>
+<%@ taglib prefix="loc" uri="http://www.unitime.org/tags-localization" %>
+<loc:bundle name="CourseMessages"><s:set var="msg" value="#attr.MSG"/>
+<s:form action="performanceMetrics">
+<table class="unitime-MainTable">
+	<TR>
+		<TD>
+			<tt:section-header>
+				<tt:section-title><loc:message name="sectMetricsLatency"/></tt:section-title>
+				<s:submit name='op' value='%{#msg.actionRefreshMetrics()}'/>
+				<s:submit name='op' value='%{#msg.actionResetMetrics()}'/>
+			</tt:section-header>
+		</TD>
+	</TR>
+	<s:if test="latency != null">
+		<TR>
+			<TD>
+				<table class="unitime-MainTable">
+					<s:property value="latency" escapeHtml="false"/>
+				</table>
+			</TD>
+		</TR>
+	</s:if><s:else>
+		<TR>
+			<TD><i><loc:message name="infoNoMetrics"/></i></TD>
+		</TR>
+	</s:else>
+	<s:if test="values != null">
+		<TR>
+			<TD style="padding-top: 20px;">
+				<table class="unitime-MainTable">
+					<s:property value="values" escapeHtml="false"/>
+				</table>
+			</TD>
+		</TR>
+	</s:if>
+	<TR>
+		<TD>
+			<tt:section-title/>
+		</TD>
+	</TR>
+	<TR>
+		<TD align='right'>
+			<s:submit name='op' value='%{#msg.actionRefreshMetrics()}'/>
+			<s:submit name='op' value='%{#msg.actionResetMetrics()}'/>
+		</TD>
+	</TR>
+</table>
+</s:form>
+</loc:bundle>